@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache;
+
+/**
+ * Immutable snapshot of cache statistics. Counters are collected since cache creation.<br />
+ * Size is measured in units of cache limit (bytes for size-limited caches, count of entries for others). Caches which
+ * don't track their size report {@value #UNKNOWN_SIZE}.
+ *
+ * @see CacheStatsAware
+ * @since 1.9.2
+ */
+public final class CacheStats {
+
+	/** Size of cache which doesn't track its size */
+	public static final long UNKNOWN_SIZE = -1;
+
+	/** Cause of entry eviction */
+	public enum EvictionCause {
+		/** Entry was evicted to keep cache within its limit */
+		SIZE,
+		/** Entry exceeded max age */
+		EXPIRED,
+		/** Entry value was collected by GC */
+		COLLECTED
+	}
+
+	private final long hitCount;
+	private final long missCount;
+	private final long putCount;
+	private final long[] evictionCounts;
+	private final long evictedBytes;
+	private final long size;
+	private final long peakSize;
+	private final long loadCount;
+	private final long totalLoadTime;
+
+	CacheStats(long hitCount, long missCount, long putCount, long[] evictionCounts, long evictedBytes, long size,
+			long peakSize, long loadCount, long totalLoadTime) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.putCount = putCount;
+		this.evictionCounts = evictionCounts;
+		this.evictedBytes = evictedBytes;
+		this.size = size;
+		this.peakSize = peakSize;
+		this.loadCount = loadCount;
+		this.totalLoadTime = totalLoadTime;
+	}
+
+	/** Returns count of cache requests which returned cached value */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/** Returns count of cache requests which didn't find cached value */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/** Returns ratio of hits to requests or <b>1.0</b> if there were no requests */
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	public long getPutCount() {
+		return putCount;
+	}
+
+	/** Returns count of all evictions (explicit removals aren't evictions) */
+	public long getEvictionCount() {
+		long count = 0;
+		for (long evictionCount : evictionCounts) {
+			count += evictionCount;
+		}
+		return count;
+	}
+
+	public long getEvictionCount(EvictionCause cause) {
+		return evictionCounts[cause.ordinal()];
+	}
+
+	/** Returns sum of sizes of evicted entries in bytes (if cache knows sizes of its entries) */
+	public long getEvictedBytes() {
+		return evictedBytes;
+	}
+
+	/** Returns current size of cache or {@value #UNKNOWN_SIZE} */
+	public long getSize() {
+		return size;
+	}
+
+	/** Returns the largest size cache ever had or {@value #UNKNOWN_SIZE} */
+	public long getPeakSize() {
+		return peakSize;
+	}
+
+	/** Returns count of {@linkplain CacheStatsAware#recordLoad(long) recorded loads} */
+	public long getLoadCount() {
+		return loadCount;
+	}
+
+	/** Returns total time of {@linkplain CacheStatsAware#recordLoad(long) recorded loads} (in nanoseconds) */
+	public long getTotalLoadTime() {
+		return totalLoadTime;
+	}
+
+	/** Returns average time of loading of missed value (in nanoseconds) */
+	public double getAverageLoadPenalty() {
+		return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+	}
+
+	/**
+	 * Returns sum of this and incoming statistics. Used by cache decorators which collect own statistics (e.g.
+	 * expirations) in addition to wrapped cache ones. Known sizes are summed.
+	 */
+	public CacheStats plus(CacheStats other) {
+		long[] counts = new long[evictionCounts.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = evictionCounts[i] + other.evictionCounts[i];
+		}
+		return new CacheStats(hitCount + other.hitCount, missCount + other.missCount, putCount + other.putCount, counts,
+				evictedBytes + other.evictedBytes, plusSize(size, other.size), plusSize(peakSize, other.peakSize),
+				loadCount + other.loadCount, totalLoadTime + other.totalLoadTime);
+	}
+
+	private static long plusSize(long size, long otherSize) {
+		if (size == UNKNOWN_SIZE) return otherSize;
+		if (otherSize == UNKNOWN_SIZE) return size;
+		return size + otherSize;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats[hits=%d,misses=%d,hitRate=%d%%,puts=%d,evictions(size=%d,expired=%d,"
+				+ "collected=%d),evictedBytes=%d,size=%d,peakSize=%d,loads=%d,avgLoadPenalty=%dms]", hitCount,
+				missCount, (int) (getHitRate() * 100), putCount, getEvictionCount(EvictionCause.SIZE),
+				getEvictionCount(EvictionCause.EXPIRED), getEvictionCount(EvictionCause.COLLECTED), evictedBytes, size,
+				peakSize, loadCount, (long) (getAverageLoadPenalty() / 1000000));
+	}
+}
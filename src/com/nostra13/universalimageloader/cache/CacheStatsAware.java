@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache;
+
+/**
+ * Cache which collects {@linkplain CacheStats statistics} of its usage. All memory and disc caches of the library
+ * implement this interface; cache decorators delegate to wrapped cache.
+ *
+ * @see CacheStats
+ * @see StatsCounter
+ * @since 1.9.2
+ */
+public interface CacheStatsAware {
+
+	/** Returns snapshot of cache statistics */
+	CacheStats getStats();
+
+	/**
+	 * Records time which was spent for loading of value which was missed in this cache (e.g. downloading of image for
+	 * disc cache, loading and decoding of image for memory cache).
+	 *
+	 * @param loadTime Load time (in nanoseconds)
+	 */
+	void recordLoad(long loadTime);
+}
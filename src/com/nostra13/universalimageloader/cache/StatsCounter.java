@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache;
+
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects statistics of cache. Counters are striped by thread, so threads which update counters concurrently don't
+ * contend for the same memory; counters are summed only when {@linkplain #snapshot(long) snapshot} is taken. Recording
+ * costs one uncontended atomic increment, so statistics can be left on in production.
+ *
+ * @see CacheStats
+ * @since 1.9.2
+ */
+public final class StatsCounter {
+
+	private static final int HIT = 0;
+	private static final int MISS = 1;
+	private static final int PUT = 2;
+	private static final int EVICTION = 3; // + EvictionCause.ordinal()
+	private static final int EVICTED_BYTES = EVICTION + EvictionCause.values().length;
+	private static final int LOAD = EVICTED_BYTES + 1;
+	private static final int LOAD_TIME = LOAD + 1;
+
+	/** Counters of one stripe occupy 128 bytes so stripes don't share cache lines */
+	private static final int STRIPE_LENGTH = 16;
+	private static final int STRIPES = 8; // power of two
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+	private final AtomicLong peakSize = new AtomicLong(CacheStats.UNKNOWN_SIZE);
+
+	public void recordHit() {
+		add(HIT, 1);
+	}
+
+	public void recordMiss() {
+		add(MISS, 1);
+	}
+
+	public void recordPut() {
+		add(PUT, 1);
+	}
+
+	/** @param bytes Size of evicted entry in bytes; <b>0</b> if it's unknown */
+	public void recordEviction(EvictionCause cause, long bytes) {
+		add(EVICTION + cause.ordinal(), 1);
+		if (bytes > 0) {
+			add(EVICTED_BYTES, bytes);
+		}
+	}
+
+	/** @param loadTime Load time (in nanoseconds) */
+	public void recordLoad(long loadTime) {
+		add(LOAD, 1);
+		add(LOAD_TIME, loadTime);
+	}
+
+	/** Must be called when cache size grows so peak size is tracked */
+	public void recordSize(long size) {
+		long peak = peakSize.get();
+		while (size > peak && !peakSize.compareAndSet(peak, size)) {
+			peak = peakSize.get();
+		}
+	}
+
+	/**
+	 * Returns snapshot of collected statistics.
+	 *
+	 * @param size Current size of cache or {@link CacheStats#UNKNOWN_SIZE}
+	 */
+	public CacheStats snapshot(long size) {
+		long[] evictionCounts = new long[EvictionCause.values().length];
+		for (int i = 0; i < evictionCounts.length; i++) {
+			evictionCounts[i] = sum(EVICTION + i);
+		}
+		long peak = size == CacheStats.UNKNOWN_SIZE ? CacheStats.UNKNOWN_SIZE : Math.max(size, peakSize.get());
+		return new CacheStats(sum(HIT), sum(MISS), sum(PUT), evictionCounts, sum(EVICTED_BYTES), size, peak, sum(LOAD),
+				sum(LOAD_TIME));
+	}
+
+	private void add(int counter, long delta) {
+		int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+		cells.addAndGet(stripe * STRIPE_LENGTH + counter, delta);
+	}
+
+	private long sum(int counter) {
+		long sum = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			sum += cells.get(stripe * STRIPE_LENGTH + counter);
+		}
+		return sum;
+	}
+}
@@ -15,32 +15,117 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.cache.disc;
 
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import com.nostra13.universalimageloader.cache.disc.naming.ShardedFileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.utils.L;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
- * Base disc cache. Implements common functionality for disc cache.
+ * Base disc cache. Implements common functionality for disc cache. Collects {@linkplain CacheStats statistics}: hits
+ * and misses are counted by presence index (so request doesn't touch file system), therefore ~1% of misses and requests
+ * of removed files are counted as hits. Subclasses which keep index of cached files in memory count requests by it.
+ * Requests aren't counted for subclasses which don't {@linkplain #isPutRecorded() record puts}.<br />
+ * <br />
+ * If {@link ShardedFileNameGenerator} is used then files of flat cache directory (cached by previous app versions) are
+ * moved into subdirectories in background; file which is requested before it's moved is moved at once. Only
+ * {@linkplain #isCacheDirDedicated() dedicated} cache directory is sharded; shared directory keeps flat layout, so
+ * files of other components are never moved.<br />
+ * <br />
+ * {@linkplain EntryMetadata Metadata} of cached images is kept in {@value #METADATA_FILE_NAME} file of cache directory.
+ * <br />
+ * {@linkplain PresenceIndex Presence index} of cached files is kept in {@value #PRESENCE_FILE_NAME} file of cache
+ * directory, so requests of not cached images don't touch file system. Index is used only by subclasses which call
+ * {@link #recordPut(String)} on every {@link #put(String, File)} and declare it by {@link #isPutRecorded()}; for
+ * other subclasses every image may be cached.<br />
+ * <br />
+ * {@link #clear()} renames {@linkplain #isCacheDirDedicated() dedicated} cache directory (it's atomic and fast) and
+ * deletes renamed directory in background. Cache directory which is shared with other components (e.g. app cache
+ * directory) isn't renamed: only files of cached images are deleted in background. Images are
+ * {@linkplain #invalidate(KeyFilter) invalidated} in background too; they are found by keys of their metadata (every put
+ * image gets metadata entry).
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see DiscCacheAware
  * @see FileNameGenerator
  * @since 1.0.0
  */
-public abstract class BaseDiscCache implements DiscCacheAware {
+public abstract class BaseDiscCache implements MetadataDiscCacheAware, PresenceDiscCacheAware, InvalidatableDiscCacheAware,
+		CountingDiscCacheAware, CacheStatsAware {
 
 	private static final String ERROR_ARG_NULL = "\"%s\" argument must be not null";
+	private static final String WARNING_SHARED_DIR_NOT_SHARDED = "Cache directory is shared with other components, it won't be sharded [%s]";
+	/** Names of service files (journals, indexes) in cache directory start with this prefix */
+	protected static final String SERVICE_FILE_PREFIX = ".";
+	/** Name of metadata file in cache directory */
+	public static final String METADATA_FILE_NAME = ".metadata";
+	/** Name of presence index file in cache directory */
+	public static final String PRESENCE_FILE_NAME = ".presence";
+	/** Count of levels of subdirectories in sharded layout */
+	private static final int SHARD_LEVELS = 2;
+	/** Cleared dedicated cache directory is moved into sibling directory [cache dir name][suffix] before deletion */
+	private static final String TRASH_DIR_SUFFIX = ".trash";
+	/** Files of cleared cache directory which can't be renamed are moved into this directory of cache directory */
+	private static final String TRASH_FILE_NAME = ".trash";
 
 	protected File cacheDir;
 
 	private FileNameGenerator fileNameGenerator;
 
+	private final StatsCounter statsCounter = new StatsCounter();
+	private final MetadataStore metadataStore;
+	private final PresenceIndex presenceIndex;
+	/**
+	 * Runs background work of cache and of its subclasses (trash deletion, migration, metadata and index maintenance,
+	 * evictions). Default executor has one thread, so tasks are run one by one in order of scheduling.
+	 */
+	protected final Executor maintenanceExecutor;
+
+	/** Whether nothing but files of this cache is kept in cache directory */
+	private final boolean cacheDirDedicated;
+	/** Whether cached files are spread over subdirectories */
+	private final boolean sharded;
+	/** Whether files of flat layout can be in cache directory */
+	private volatile boolean migrationPending;
+	private final Object migrationLock = new Object();
+
 	public BaseDiscCache(File cacheDir) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator());
 	}
 
 	public BaseDiscCache(File cacheDir, FileNameGenerator fileNameGenerator) {
+		this(cacheDir, fileNameGenerator, false);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param cacheDirDedicated <b>true</b> - nothing but files of this cache is kept in cache directory, so it's
+	 *                          sharded and is cleared as a whole; <b>false</b> - directory is shared with other
+	 *                          components (or other caches)
+	 */
+	protected BaseDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, boolean cacheDirDedicated) {
+		this(cacheDir, fileNameGenerator, cacheDirDedicated, DefaultConfigurationFactory.createMaintenanceExecutor());
+	}
+
+	/**
+	 * @param cacheDir            Directory for file caching
+	 * @param fileNameGenerator   Name generator for cached files
+	 * @param cacheDirDedicated   <b>true</b> - nothing but files of this cache is kept in cache directory, so it's
+	 *                            sharded and is cleared as a whole; <b>false</b> - directory is shared with other
+	 *                            components (or other caches)
+	 * @param maintenanceExecutor Executor for background work of cache (see {@link #maintenanceExecutor})
+	 */
+	protected BaseDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, boolean cacheDirDedicated,
+			Executor maintenanceExecutor) {
 		if (cacheDir == null) {
 			throw new IllegalArgumentException(String.format(ERROR_ARG_NULL, "cacheDir"));
 		}
@@ -49,22 +134,376 @@ public abstract class BaseDiscCache implements DiscCacheAware {
 		}
 
 		this.cacheDir = cacheDir;
+		this.cacheDirDedicated = cacheDirDedicated;
+		sharded = fileNameGenerator instanceof ShardedFileNameGenerator && isCacheDirDedicated();
+		if (fileNameGenerator instanceof ShardedFileNameGenerator && !sharded) {
+			L.w(WARNING_SHARED_DIR_NOT_SHARDED, cacheDir);
+			fileNameGenerator = ((ShardedFileNameGenerator) fileNameGenerator).getWrappedGenerator();
+		}
 		this.fileNameGenerator = fileNameGenerator;
+
+		if (maintenanceExecutor == null) {
+			throw new IllegalArgumentException(String.format(ERROR_ARG_NULL, "maintenanceExecutor"));
+		}
+		this.maintenanceExecutor = maintenanceExecutor;
+		maintenanceExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				deleteTrash();
+			}
+		});
+		metadataStore = new MetadataStore(new File(cacheDir, METADATA_FILE_NAME), maintenanceExecutor,
+				new MetadataStore.EntryChecker() {
+					@Override
+					public boolean isCached(String key) {
+						return getFile(key).exists();
+					}
+				});
+
+		presenceIndex = new PresenceIndex(new File(cacheDir, PRESENCE_FILE_NAME), maintenanceExecutor,
+				new PresenceIndex.NameLister() {
+					@Override
+					public Collection<String> listNames() {
+						List<File> files = listCachedFiles();
+						List<String> names = new ArrayList<String>(files.size());
+						for (File file : files) {
+							names.add(file.getName());
+						}
+						return names;
+					}
+				});
+
+		if (sharded) {
+			migrationPending = true;
+			maintenanceExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					migrateToShardedLayout();
+				}
+			});
+		}
 	}
 
+	/** Request is counted by presence index, file system isn't touched */
 	@Override
 	public File get(String key) {
+		File file = getFile(key);
+		if (isPutRecorded()) {
+			if (mightContainFile(file)) {
+				statsCounter.recordHit();
+			} else {
+				statsCounter.recordMiss();
+			}
+		}
+		return file;
+	}
+
+	/** Files are indexed by names (without shard directories), so index can be rebuilt from any layout */
+	@Override
+	public boolean mightContain(String key) {
+		return mightContainFile(new File(fileNameGenerator.generate(key)));
+	}
+
+	/** Same as {@link #mightContain(String)} for file which is returned by {@link #getFile(String)} */
+	protected final boolean mightContainFile(File file) {
+		return !isPutRecorded() || presenceIndex.mightContain(file.getName());
+	}
+
+	/**
+	 * Returns <b>true</b> if subclass calls {@link #recordPut(String)} on every {@link #put(String, File)}, so presence
+	 * index knows all cached images and can filter out requests of not cached ones. Returns <b>false</b> by default.
+	 */
+	protected boolean isPutRecorded() {
+		return false;
+	}
+
+	/**
+	 * Records put into cache statistics and into presence index. Subclasses which call it on every put should return
+	 * <b>true</b> from {@link #isPutRecorded()}.
+	 */
+	protected final void recordPut(String key) {
+		statsCounter.recordPut();
+		presenceIndex.add(new File(fileNameGenerator.generate(key)).getName());
+		metadataStore.addKey(key);
+	}
+
+	/** Returns file for key without recording of cache hit or miss */
+	@Override
+	public final File getFile(String key) {
 		String fileName = fileNameGenerator.generate(key);
-		return new File(cacheDir, fileName);
+		File file = new File(cacheDir, fileName);
+		if (migrationPending) {
+			File flatFile = new File(cacheDir, file.getName());
+			if (flatFile.exists()) {
+				moveFile(flatFile, file);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Moves files of flat layout into subdirectories of sharded layout. Is called in background on cache creation and
+	 * before {@linkplain #listCachedFiles() listing of cached files}; work is done only once.
+	 *
+	 * @return Count of moved files
+	 */
+	protected final int migrateToShardedLayout() {
+		if (!migrationPending) return 0;
+		synchronized (migrationLock) {
+			if (!migrationPending) return 0;
+
+			int movedCount = 0;
+			File[] files = cacheDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					String fileName = file.getName();
+					if (fileName.startsWith(SERVICE_FILE_PREFIX) || !file.isFile()) continue;
+					File target = new File(cacheDir, ShardedFileNameGenerator.getShardedPath(fileName));
+					if (moveFile(file, target)) {
+						movedCount++;
+					}
+				}
+			}
+			migrationPending = false;
+			return movedCount;
+		}
+	}
+
+	private static boolean moveFile(File source, File target) {
+		File targetDir = target.getParentFile();
+		if (!targetDir.exists()) {
+			targetDir.mkdirs();
+		}
+		if (target.exists()) { // file was loaded again before moving
+			source.delete();
+			return false;
+		}
+		return source.renameTo(target);
+	}
+
+	/**
+	 * Returns all cached files (excluding service files). Only subdirectories of sharded layout are listed, other
+	 * subdirectories of cache directory are ignored.
+	 */
+	protected final List<File> listCachedFiles() {
+		migrateToShardedLayout();
+		List<File> cachedFiles = new ArrayList<File>();
+		collectCachedFiles(cacheDir, sharded ? SHARD_LEVELS : 0, cachedFiles);
+		return cachedFiles;
+	}
+
+	/** @param shardLevels Count of levels of shard subdirectories in <b>dir</b> */
+	private static void collectCachedFiles(File dir, int shardLevels, List<File> cachedFiles) {
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		for (File file : files) {
+			String fileName = file.getName();
+			if (fileName.startsWith(SERVICE_FILE_PREFIX)) continue;
+			if (file.isDirectory()) {
+				if (shardLevels > 0 && ShardedFileNameGenerator.isShardName(fileName)) {
+					collectCachedFiles(file, shardLevels - 1, cachedFiles);
+				}
+			} else {
+				cachedFiles.add(file);
+			}
+		}
+	}
+
+	/**
+	 * Returns path (relative to cache directory) which file with passed relative path has in current layout of cache
+	 * directory. Paths which are kept in indexes of previous layout can be converted by this method.
+	 */
+	protected final String toCurrentLayout(String relativePath) {
+		String fileName = new File(relativePath).getName();
+		return sharded ? ShardedFileNameGenerator.getShardedPath(fileName) : fileName;
+	}
+
+	/** Returns path of cached file relative to cache directory */
+	protected final String getRelativePath(File file) {
+		return file.getPath().substring(cacheDir.getPath().length() + 1);
+	}
+
+	@Override
+	public EntryMetadata getMetadata(String key) {
+		return metadataStore.get(key);
+	}
+
+	@Override
+	public void putMetadata(String key, EntryMetadata metadata) {
+		metadataStore.put(key, metadata);
+	}
+
+	@Override
+	public void invalidateByPrefix(final String keyPrefix) {
+		invalidate(new KeyFilter() {
+			@Override
+			public boolean accept(String key) {
+				return key.startsWith(keyPrefix);
+			}
+		});
+	}
+
+	@Override
+	public void invalidate(final KeyFilter filter) {
+		maintenanceExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (String key : metadataStore.keys()) {
+					if (filter.accept(key)) {
+						remove(key);
+					}
+				}
+			}
+		});
 	}
 
+	/**
+	 * Removes cached file and metadata for key. Subclasses which index cached files must override it to update their
+	 * indexes.
+	 *
+	 * @return <b>true</b> - if cached file existed and was deleted; <b>false</b> - otherwise
+	 */
+	@Override
+	public boolean remove(String key) {
+		metadataStore.remove(key);
+		return getFile(key).delete();
+	}
+
+	/**
+	 * Returns <b>true</b> if nothing but files of this cache is kept in cache directory, so the whole directory can be
+	 * deleted on {@link #clear()} and can be sharded. Directory is dedicated only if cache was created with such flag
+	 * (e.g. by {@link DefaultConfigurationFactory#createDiscCache(android.content.Context, FileNameGenerator, long, int)
+	 * DefaultConfigurationFactory} for individual cache directory); name of directory proves nothing.
+	 */
+	protected final boolean isCacheDirDedicated() {
+		return cacheDirDedicated;
+	}
+
+	/** Returns directory of cached files */
+	public final File getCacheDir() {
+		return cacheDir;
+	}
+
+	/** Returns executor of background work of cache, so wrappers and helpers of cache needn't start their own threads */
+	public final Executor getMaintenanceExecutor() {
+		return maintenanceExecutor;
+	}
+
+	/**
+	 * Deletes cached files. Dedicated cache directory is moved to trash at once (including service files), trash is
+	 * deleted in background. Shared cache directory isn't moved, all {@linkplain #listCachedFiles() cached files} are
+	 * deleted from it in background (including files which were cached by previous versions of cache or whose metadata
+	 * wasn't flushed); service files and foreign subdirectories aren't touched.
+	 */
 	@Override
 	public void clear() {
+		presenceIndex.clear(); // cached images are definite misses from now
+		if (isCacheDirDedicated()) {
+			metadataStore.clear();
+			final File trashDir = moveToTrash();
+			maintenanceExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					deleteRecursively(trashDir);
+					getTrashRoot().delete(); // if no other cleared directories are there
+				}
+			});
+		} else {
+			maintenanceExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					metadataStore.clear();
+					for (File file : listCachedFiles()) {
+						file.delete();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Moves cache directory into trash and creates empty cache directory. If cache directory can't be renamed then its
+	 * files are moved into {@value #TRASH_FILE_NAME} directory inside of it.
+	 *
+	 * @return Directory which should be deleted
+	 */
+	private File moveToTrash() {
+		String trashName = String.valueOf(System.nanoTime());
+		File trashRoot = getTrashRoot();
+		if (trashRoot != null && (trashRoot.isDirectory() || trashRoot.mkdirs())) {
+			File trashDir = new File(trashRoot, trashName);
+			if (cacheDir.renameTo(trashDir)) {
+				cacheDir.mkdirs();
+				return trashDir;
+			}
+		}
+
+		File trashDir = new File(new File(cacheDir, TRASH_FILE_NAME), trashName);
+		trashDir.mkdirs();
 		File[] files = cacheDir.listFiles();
 		if (files != null) {
-			for (File f : files) {
-				f.delete();
+			for (File file : files) {
+				if (file.getName().equals(TRASH_FILE_NAME)) continue;
+				if (!file.renameTo(new File(trashDir, file.getName()))) {
+					deleteRecursively(file);
+				}
+			}
+		}
+		return trashDir;
+	}
+
+	/** Returns sibling directory which cleared cache directories are moved into */
+	private File getTrashRoot() {
+		File parentDir = cacheDir.getParentFile();
+		return parentDir == null ? null : new File(parentDir, cacheDir.getName() + TRASH_DIR_SUFFIX);
+	}
+
+	/** Deletes trash which wasn't deleted before app was killed. Trash is only in known places, nothing is listed. */
+	private void deleteTrash() {
+		if (!isCacheDirDedicated()) return;
+
+		File trashRoot = getTrashRoot();
+		if (trashRoot != null && trashRoot.exists()) {
+			deleteRecursively(trashRoot);
+		}
+		File trashDir = new File(cacheDir, TRASH_FILE_NAME);
+		if (trashDir.exists()) {
+			deleteRecursively(trashDir);
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		if (!file.delete() && file.isDirectory()) { // only empty directory can be deleted
+			File[] files = file.listFiles();
+			if (files != null) {
+				for (File f : files) {
+					deleteRecursively(f);
+				}
 			}
+			file.delete();
 		}
 	}
+
+	@Override
+	public CacheStats getStats() {
+		return statsCounter.snapshot(getCacheSize());
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		statsCounter.recordLoad(loadTime);
+	}
+
+	/** Returns counter of cache statistics for subclasses which record own events (puts, evictions) */
+	protected final StatsCounter getStatsCounter() {
+		return statsCounter;
+	}
+
+	/**
+	 * Returns current size of cache for {@linkplain #getStats() statistics} or {@link CacheStats#UNKNOWN_SIZE} if cache
+	 * doesn't track its size
+	 */
+	protected long getCacheSize() {
+		return CacheStats.UNKNOWN_SIZE;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Disc cache which can keep images not in separate files but as blobs inside its own storage (e.g. packed into
+ * segment files). {@link #get(String)} returns non-existing file for such images, so they must be checked by
+ * {@link #containsBlob(String)} and read by {@link #openBlob(String)}.
+ *
+ * @since 1.9.2
+ */
+public interface BlobDiscCacheAware extends DiscCacheAware {
+
+	/** Returns <b>true</b> if image for key is stored as blob */
+	boolean containsBlob(String key);
+
+	/**
+	 * Opens stream of blob for key.
+	 *
+	 * @return Stream of blob or <b>null</b> if image for key isn't stored as blob
+	 */
+	InputStream openBlob(String key) throws IOException;
+
+	/**
+	 * Removes blob for key
+	 *
+	 * @return <b>true</b> - if blob existed and was removed; <b>false</b> - otherwise
+	 */
+	boolean removeBlob(String key);
+}
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import java.io.File;
+
+/**
+ * Disc cache which counts every {@link #get(String)} call as request in its
+ * {@linkplain com.nostra13.universalimageloader.cache.CacheStats statistics}. Image loader calls {@link #get(String)}
+ * once per image loading and uses {@link #getFile(String)} for its other lookups (e.g. checks whether image is cached,
+ * lookups of renditions), so hit rate isn't distorted by them.
+ *
+ * @since 1.9.2
+ */
+public interface CountingDiscCacheAware extends DiscCacheAware {
+
+	/** Returns file for key like {@link #get(String)} but doesn't count request in statistics */
+	File getFile(String key);
+}
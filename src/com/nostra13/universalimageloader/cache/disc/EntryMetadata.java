@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * Immutable metadata of cached image: HTTP validators ({@code ETag}, {@code Last-Modified}) and freshness lifetime
+ * (from {@code Cache-Control} header) of response which image was downloaded with. Stale image is revalidated by
+ * conditional request, so unchanged image isn't downloaded again. Image without validators isn't revalidated.<br />
+ * Metadata also keeps image info which is defined at first decoding of cached image (size, MIME type, EXIF
+ * orientation), so next decodings don't read image bounds and EXIF tags again.<br />
+ * Metadata is kept by {@link MetadataDiscCacheAware disc caches}.
+ *
+ * @see MetadataDiscCacheAware
+ * @since 1.9.2
+ */
+public final class EntryMetadata {
+
+	/** Max age of image which has no known freshness lifetime (it never becomes stale) */
+	public static final long NO_MAX_AGE = -1;
+	/** EXIF rotation of image which EXIF tags weren't read */
+	public static final int NO_EXIF_ROTATION = -1;
+
+	private static final char FIELD_SEPARATOR = '\t';
+	private static final char VALUE_SEPARATOR = '=';
+	private static final String FIELD_ETAG = "etag";
+	private static final String FIELD_LAST_MODIFIED = "lm";
+	private static final String FIELD_RESPONSE_TIME = "rt";
+	private static final String FIELD_MAX_AGE = "ma";
+	private static final String FIELD_IMAGE_WIDTH = "w";
+	private static final String FIELD_IMAGE_HEIGHT = "h";
+	private static final String FIELD_MIME_TYPE = "mime";
+	private static final String FIELD_EXIF_ROTATION = "er";
+	private static final String FIELD_EXIF_FLIP = "ef";
+
+	private final String eTag;
+	private final String lastModified;
+	private final long responseTime;
+	private final long maxAge;
+	private final int imageWidth;
+	private final int imageHeight;
+	private final String mimeType;
+	private final int exifRotation;
+	private final boolean exifFlipHorizontal;
+
+	private EntryMetadata(Builder builder) {
+		eTag = builder.eTag;
+		lastModified = builder.lastModified;
+		responseTime = builder.responseTime;
+		maxAge = builder.maxAge;
+		imageWidth = builder.imageWidth;
+		imageHeight = builder.imageHeight;
+		mimeType = builder.mimeType;
+		exifRotation = builder.exifRotation;
+		exifFlipHorizontal = builder.exifFlipHorizontal;
+	}
+
+	/** Returns value of {@code ETag} response header or <b>null</b> */
+	public String getETag() {
+		return eTag;
+	}
+
+	/** Returns value of {@code Last-Modified} response header or <b>null</b> */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/** Returns wall clock time (in milliseconds) of the last response (full or "Not Modified") for image */
+	public long getResponseTime() {
+		return responseTime;
+	}
+
+	/** Returns freshness lifetime of image (in seconds) or {@link #NO_MAX_AGE} */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/** Returns width of image as it's stored (without EXIF rotation) or 0 if it's unknown */
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	/** Returns height of image as it's stored (without EXIF rotation) or 0 if it's unknown */
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	/** Returns MIME type of image or <b>null</b> */
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	/** Returns rotation of image (in degrees) from its EXIF tags or {@link #NO_EXIF_ROTATION} */
+	public int getExifRotation() {
+		return exifRotation;
+	}
+
+	/** Returns <b>true</b> if EXIF tags of image require horizontal flip */
+	public boolean isExifFlipHorizontal() {
+		return exifFlipHorizontal;
+	}
+
+	/** Returns <b>true</b> if size of image is known */
+	public boolean hasImageInfo() {
+		return imageWidth > 0 && imageHeight > 0;
+	}
+
+	/** Returns <b>true</b> if EXIF orientation of image is known */
+	public boolean hasExifInfo() {
+		return exifRotation != NO_EXIF_ROTATION;
+	}
+
+	/** Returns <b>true</b> if image can be revalidated by conditional request */
+	public boolean hasValidators() {
+		return eTag != null || lastModified != null;
+	}
+
+	/** Returns <b>true</b> if freshness lifetime of image is over at passed time */
+	public boolean isStale(long now) {
+		return maxAge != NO_MAX_AGE && now - responseTime >= maxAge * 1000;
+	}
+
+	/** Returns one-line form of metadata for persisting */
+	String encode() {
+		StringBuilder sb = new StringBuilder();
+		appendField(sb, FIELD_ETAG, eTag);
+		appendField(sb, FIELD_LAST_MODIFIED, lastModified);
+		appendField(sb, FIELD_RESPONSE_TIME, String.valueOf(responseTime));
+		if (maxAge != NO_MAX_AGE) {
+			appendField(sb, FIELD_MAX_AGE, String.valueOf(maxAge));
+		}
+		if (hasImageInfo()) {
+			appendField(sb, FIELD_IMAGE_WIDTH, String.valueOf(imageWidth));
+			appendField(sb, FIELD_IMAGE_HEIGHT, String.valueOf(imageHeight));
+			appendField(sb, FIELD_MIME_TYPE, mimeType);
+			if (hasExifInfo()) {
+				appendField(sb, FIELD_EXIF_ROTATION, String.valueOf(exifRotation));
+				appendField(sb, FIELD_EXIF_FLIP, String.valueOf(exifFlipHorizontal));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void appendField(StringBuilder sb, String name, String value) {
+		if (value == null) return;
+		if (sb.length() > 0) {
+			sb.append(FIELD_SEPARATOR);
+		}
+		sb.append(name).append(VALUE_SEPARATOR).append(value);
+	}
+
+	/** Restores metadata from {@linkplain #encode() one-line form}. Unknown and broken fields are ignored. */
+	static EntryMetadata decode(String line) {
+		Builder builder = new Builder();
+		int imageWidth = 0;
+		int imageHeight = 0;
+		String mimeType = null;
+		int exifRotation = NO_EXIF_ROTATION;
+		boolean exifFlip = false;
+		int start = 0;
+		while (start < line.length()) {
+			int end = line.indexOf(FIELD_SEPARATOR, start);
+			if (end == -1) {
+				end = line.length();
+			}
+			int separator = line.indexOf(VALUE_SEPARATOR, start);
+			if (separator != -1 && separator < end) {
+				String name = line.substring(start, separator);
+				String value = line.substring(separator + 1, end);
+				if (FIELD_ETAG.equals(name)) {
+					builder.eTag(value);
+				} else if (FIELD_LAST_MODIFIED.equals(name)) {
+					builder.lastModified(value);
+				} else if (FIELD_RESPONSE_TIME.equals(name)) {
+					builder.responseTime(parseLong(value, 0));
+				} else if (FIELD_MAX_AGE.equals(name)) {
+					builder.maxAge(parseLong(value, NO_MAX_AGE));
+				} else if (FIELD_IMAGE_WIDTH.equals(name)) {
+					imageWidth = (int) parseLong(value, 0);
+				} else if (FIELD_IMAGE_HEIGHT.equals(name)) {
+					imageHeight = (int) parseLong(value, 0);
+				} else if (FIELD_MIME_TYPE.equals(name)) {
+					mimeType = value;
+				} else if (FIELD_EXIF_ROTATION.equals(name)) {
+					exifRotation = (int) parseLong(value, NO_EXIF_ROTATION);
+				} else if (FIELD_EXIF_FLIP.equals(name)) {
+					exifFlip = Boolean.parseBoolean(value);
+				}
+			}
+			start = end + 1;
+		}
+		builder.imageInfo(imageWidth, imageHeight, mimeType);
+		if (exifRotation != NO_EXIF_ROTATION) {
+			builder.exifInfo(exifRotation, exifFlip);
+		}
+		return builder.build();
+	}
+
+	private static long parseLong(String value, long defaultValue) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/** Returns <b>true</b> if value can be kept in {@linkplain #encode() one-line form} */
+	static boolean isEncodable(String value) {
+		return value.indexOf(FIELD_SEPARATOR) == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1;
+	}
+
+	/**
+	 * Builder for {@link EntryMetadata}
+	 */
+	public static class Builder {
+		private String eTag = null;
+		private String lastModified = null;
+		private long responseTime = 0;
+		private long maxAge = NO_MAX_AGE;
+		private int imageWidth = 0;
+		private int imageHeight = 0;
+		private String mimeType = null;
+		private int exifRotation = NO_EXIF_ROTATION;
+		private boolean exifFlipHorizontal = false;
+
+		/** Sets value of {@code ETag} response header. Values which can't be persisted are ignored. */
+		public Builder eTag(String eTag) {
+			this.eTag = eTag == null || !isEncodable(eTag) ? null : eTag;
+			return this;
+		}
+
+		/** Sets value of {@code Last-Modified} response header. Values which can't be persisted are ignored. */
+		public Builder lastModified(String lastModified) {
+			this.lastModified = lastModified == null || !isEncodable(lastModified) ? null : lastModified;
+			return this;
+		}
+
+		/** Sets wall clock time (in milliseconds) of response */
+		public Builder responseTime(long responseTime) {
+			this.responseTime = responseTime;
+			return this;
+		}
+
+		/**
+		 * Sets freshness lifetime of image (in seconds) from {@code Cache-Control} response header; {@link #NO_MAX_AGE}
+		 * by default
+		 */
+		public Builder maxAge(long maxAge) {
+			this.maxAge = maxAge < 0 ? NO_MAX_AGE : maxAge;
+			return this;
+		}
+
+		/**
+		 * Sets info of image as it's stored (without EXIF rotation)
+		 *
+		 * @param width    Image width; 0 - unknown
+		 * @param height   Image height; 0 - unknown
+		 * @param mimeType MIME type of image; can be null
+		 */
+		public Builder imageInfo(int width, int height, String mimeType) {
+			imageWidth = width;
+			imageHeight = height;
+			this.mimeType = mimeType == null || !isEncodable(mimeType) ? null : mimeType;
+			return this;
+		}
+
+		/**
+		 * Sets orientation of image from its EXIF tags
+		 *
+		 * @param rotation       Rotation (in degrees); {@link #NO_EXIF_ROTATION} - EXIF tags weren't read
+		 * @param flipHorizontal Whether image should be flipped horizontally
+		 */
+		public Builder exifInfo(int rotation, boolean flipHorizontal) {
+			exifRotation = rotation;
+			exifFlipHorizontal = flipHorizontal;
+			return this;
+		}
+
+		/** Clears image info and EXIF orientation (e.g. when cached image is replaced by new one) */
+		public Builder clearImageInfo() {
+			return imageInfo(0, 0, null).exifInfo(NO_EXIF_ROTATION, false);
+		}
+
+		/** Sets all fields from passed metadata */
+		public Builder cloneFrom(EntryMetadata metadata) {
+			eTag = metadata.eTag;
+			lastModified = metadata.lastModified;
+			responseTime = metadata.responseTime;
+			maxAge = metadata.maxAge;
+			imageWidth = metadata.imageWidth;
+			imageHeight = metadata.imageHeight;
+			mimeType = metadata.mimeType;
+			exifRotation = metadata.exifRotation;
+			exifFlipHorizontal = metadata.exifFlipHorizontal;
+			return this;
+		}
+
+		public EntryMetadata build() {
+			return new EntryMetadata(this);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * Disc cache which can remove groups of images (e.g. all images of one server or one user) without blocking of
+ * caller. Images are found by keys which cache knows, removal is done in background.
+ *
+ * @since 1.9.2
+ */
+public interface InvalidatableDiscCacheAware extends DiscCacheAware {
+
+	/** Removes all images which keys start with passed prefix. Method returns at once, images are removed in background. */
+	void invalidateByPrefix(String keyPrefix);
+
+	/**
+	 * Removes all images which keys are accepted by filter. Method returns at once, filter is called and images are
+	 * removed in background.
+	 */
+	void invalidate(KeyFilter filter);
+
+	/**
+	 * Removes image for key at once: its file, metadata and entries of cache indexes (so cache size and journal stay
+	 * in sync with files on disc).
+	 *
+	 * @return <b>true</b> - if cached image existed and was deleted; <b>false</b> - otherwise
+	 */
+	boolean remove(String key);
+
+	/** Selects keys of images which should be removed */
+	public interface KeyFilter {
+		boolean accept(String key);
+	}
+}
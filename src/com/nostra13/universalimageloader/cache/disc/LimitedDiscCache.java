@@ -15,20 +15,37 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.cache.disc;
 
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.utils.StorageUtils;
 
 import java.io.File;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Abstract disc cache limited by some parameter. If cache exceeds specified limit then file with the most oldest last
- * usage date will be deleted.
+ * Abstract disc cache limited by some parameter. If cache exceeds specified limit then files with the most oldest last
+ * usage dates will be deleted.<br />
+ * <br />
+ * Cached files are kept in index ordered by last usage, so files to delete are found in constant time. Files are
+ * deleted in background: when cache exceeds its limit, the least recently used files are deleted in one pass until cache
+ * size is below low watermark. So cache can exceed its limit for a short time but putting of file doesn't wait for
+ * deletions.<br />
+ * <br />
+ * Last usage dates are kept in memory. They're persisted as modification dates of cached files lazily, in background
+ * batches, so file reading doesn't cause file system write.<br />
+ * <br />
+ * Cache can count sizes of files in allocated blocks of file system ({@link #getAllocatedSize(File)}), so many small
+ * files don't make real disc usage larger than limit.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseDiscCache
@@ -37,13 +54,61 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public abstract class LimitedDiscCache extends BaseDiscCache {
 
-	private static final int INVALID_SIZE = -1;
+	/** {@value} */
+	public static final float DEFAULT_LOW_WATERMARK = 0.9f;
+	/** Usage dates are flushed when this count of files is used since last flush */
+	private static final int USAGE_FLUSH_BATCH_SIZE = 32;
+	/** Usage dates are flushed on file usage if this time passed since last flush */
+	private static final long USAGE_FLUSH_INTERVAL = 10 * 1000; // 10 seconds
+	/** Is used if block size of file system can't be defined */
+	private static final long DEFAULT_BLOCK_SIZE = 4096;
 
-	private final AtomicInteger cacheSize;
+	private final AtomicLong cacheSize;
 
-	private final int sizeLimit;
+	private final long sizeLimit;
+	/** Background eviction deletes files until cache size is at or below this value */
+	private final long lowWatermarkSize;
+	private final boolean countAllocatedBlocks;
+	/** Block size of file system; 0 - isn't defined yet */
+	private volatile long blockSize;
 
-	private final Map<File, Long> lastUsageDates = Collections.synchronizedMap(new HashMap<File, Long>());
+	/** Sizes of cached files in usage order (the least recently used is first). Guarded by itself. */
+	private final LinkedHashMap<File, Long> index = new LinkedHashMap<File, Long>(0, 0.75f, true);
+	/** Usage dates which aren't persisted yet. Guarded by itself. */
+	private final Map<File, Long> pendingUsageDates = new HashMap<File, Long>();
+	/** Guarded by {@link #pendingUsageDates} */
+	private long lastUsageFlushTime = System.currentTimeMillis();
+	/** Guarded by {@link #pendingUsageDates} */
+	private boolean usageFlushScheduled;
+	/** Guarded by {@link #index} */
+	private boolean evictionScheduled;
+	/** Whether index contains all cached files */
+	private volatile boolean scanned;
+
+	private final Runnable usageFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			Map<File, Long> usageDates;
+			synchronized (pendingUsageDates) {
+				usageFlushScheduled = false;
+				usageDates = new HashMap<File, Long>(pendingUsageDates);
+				pendingUsageDates.clear();
+			}
+			for (Entry<File, Long> entry : usageDates.entrySet()) {
+				entry.getKey().setLastModified(entry.getValue());
+			}
+		}
+	};
+
+	private final Runnable evictionTask = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (index) {
+				evictionScheduled = false;
+			}
+			evictToLowWatermark();
+		}
+	};
 
 	/**
 	 * @param cacheDir  Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
@@ -51,10 +116,15 @@ public abstract class LimitedDiscCache extends BaseDiscCache {
 	 * @param sizeLimit Cache limit value. If cache exceeds this limit then file with the most oldest last usage date
 	 *                  will be deleted.
 	 */
-	public LimitedDiscCache(File cacheDir, int sizeLimit) {
+	public LimitedDiscCache(File cacheDir, long sizeLimit) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), sizeLimit);
 	}
 
+	/** Kept for binary compatibility, see {@link #LimitedDiscCache(File, long)} */
+	public LimitedDiscCache(File cacheDir, int sizeLimit) {
+		this(cacheDir, (long) sizeLimit);
+	}
+
 	/**
 	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
 	 *                          needed for right cache limit work.
@@ -62,101 +132,272 @@ public abstract class LimitedDiscCache extends BaseDiscCache {
 	 * @param sizeLimit         Cache limit value. If cache exceeds this limit then file with the most oldest last usage date
 	 *                          will be deleted.
 	 */
+	public LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long sizeLimit) {
+		this(cacheDir, fileNameGenerator, sizeLimit, DEFAULT_LOW_WATERMARK);
+	}
+
+	/** Kept for binary compatibility, see {@link #LimitedDiscCache(File, FileNameGenerator, long)} */
 	public LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int sizeLimit) {
-		super(cacheDir, fileNameGenerator);
+		this(cacheDir, fileNameGenerator, (long) sizeLimit);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *                          needed for right cache limit work.
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param sizeLimit         Cache limit value. If cache exceeds this limit then files with the most oldest last usage
+	 *                          dates will be deleted.
+	 * @param lowWatermark      Part of limit (0..1] which cache is reduced to when it exceeds its limit
+	 */
+	public LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long sizeLimit, float lowWatermark) {
+		this(cacheDir, fileNameGenerator, sizeLimit, lowWatermark, false);
+	}
+
+	/**
+	 * @param cacheDir             Directory for file caching. <b>Important:</b> Specify separate folder for cached
+	 *                             files. It's needed for right cache limit work.
+	 * @param fileNameGenerator    Name generator for cached files
+	 * @param sizeLimit            Cache limit value. If cache exceeds this limit then files with the most oldest last
+	 *                             usage dates will be deleted.
+	 * @param lowWatermark         Part of limit (0..1] which cache is reduced to when it exceeds its limit
+	 * @param countAllocatedBlocks <b>true</b> - {@link #getAllocatedSize(File)} rounds file length up to size of file
+	 *                             system block; <b>false</b> - it returns file length
+	 */
+	protected LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long sizeLimit, float lowWatermark,
+			boolean countAllocatedBlocks) {
+		this(cacheDir, fileNameGenerator, sizeLimit, lowWatermark, countAllocatedBlocks, false);
+	}
+
+	/**
+	 * @param cacheDir             Directory for file caching. <b>Important:</b> Specify separate folder for cached
+	 *                             files. It's needed for right cache limit work.
+	 * @param fileNameGenerator    Name generator for cached files
+	 * @param sizeLimit            Cache limit value. If cache exceeds this limit then files with the most oldest last
+	 *                             usage dates will be deleted.
+	 * @param lowWatermark         Part of limit (0..1] which cache is reduced to when it exceeds its limit
+	 * @param countAllocatedBlocks <b>true</b> - {@link #getAllocatedSize(File)} rounds file length up to size of file
+	 *                             system block; <b>false</b> - it returns file length
+	 * @param cacheDirDedicated    <b>true</b> - nothing but files of this cache is kept in cache directory (see
+	 *                             {@link #isCacheDirDedicated()})
+	 */
+	protected LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long sizeLimit, float lowWatermark,
+			boolean countAllocatedBlocks, boolean cacheDirDedicated) {
+		super(cacheDir, fileNameGenerator, cacheDirDedicated);
+		if (lowWatermark <= 0 || lowWatermark > 1) {
+			throw new IllegalArgumentException("lowWatermark must be in (0..1]");
+		}
 		this.sizeLimit = sizeLimit;
-		cacheSize = new AtomicInteger();
-		calculateCacheSizeAndFillUsageMap();
+		this.countAllocatedBlocks = countAllocatedBlocks;
+		lowWatermarkSize = (long) (sizeLimit * (double) lowWatermark);
+		cacheSize = new AtomicLong();
+		calculateCacheSizeAndFillIndex();
 	}
 
-	private void calculateCacheSizeAndFillUsageMap() {
-		new Thread(new Runnable() {
+	private void calculateCacheSizeAndFillIndex() {
+		maintenanceExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
-				int size = 0;
-				File[] cachedFiles = cacheDir.listFiles();
-				if (cachedFiles != null) { // rarely but it can happen, don't know why
-					for (File cachedFile : cachedFiles) {
-						size += getSize(cachedFile);
-						lastUsageDates.put(cachedFile, cachedFile.lastModified());
+				File[] cachedFiles = listCachedFiles().toArray(new File[0]);
+
+				final long[] usageDates = new long[cachedFiles.length];
+				Integer[] order = new Integer[cachedFiles.length];
+				for (int i = 0; i < cachedFiles.length; i++) {
+					usageDates[i] = cachedFiles[i].lastModified();
+					order[i] = i;
+				}
+				Arrays.sort(order, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer lhs, Integer rhs) {
+						long l = usageDates[lhs];
+						long r = usageDates[rhs];
+						return l < r ? -1 : (l == r ? 0 : 1);
 					}
-					cacheSize.set(size);
+				});
+
+				List<File> files = new ArrayList<File>(cachedFiles.length);
+				List<Long> sizes = new ArrayList<Long>(cachedFiles.length);
+				for (Integer i : order) {
+					files.add(cachedFiles[i]);
+					sizes.add(getEntrySize(cachedFiles[i]));
 				}
+
+				long size = 0;
+				synchronized (index) {
+					// Files which were put or used while scanning are more recent than scanned ones
+					LinkedHashMap<File, Long> recentEntries = new LinkedHashMap<File, Long>(index);
+					index.clear();
+					for (int i = 0; i < files.size(); i++) {
+						File file = files.get(i);
+						if (!recentEntries.containsKey(file)) {
+							index.put(file, sizes.get(i));
+							size += sizes.get(i);
+						}
+					}
+					index.putAll(recentEntries);
+				}
+				scanned = true;
+				getStatsCounter().recordSize(cacheSize.addAndGet(size));
+				scheduleEvictionIfNeeded();
 			}
-		}).start();
+		});
 	}
 
 	@Override
 	public void put(String key, File file) {
-		int valueSize = getSize(file);
-		int curCacheSize = cacheSize.get();
-
-		while (curCacheSize + valueSize > sizeLimit) {
-			int freedSize = removeNext();
-			if (freedSize == INVALID_SIZE) break; // cache is empty (have nothing to delete)
-			curCacheSize = cacheSize.addAndGet(-freedSize);
+		long valueSize = getEntrySize(file);
+		// File was just written so its modification date is actual
+		Long previousSize;
+		synchronized (index) {
+			previousSize = index.put(file, valueSize);
 		}
-		cacheSize.addAndGet(valueSize);
+		long curCacheSize = cacheSize.addAndGet(previousSize == null ? valueSize : valueSize - previousSize);
+		getStatsCounter().recordSize(curCacheSize);
+		recordPut(key);
+		scheduleEvictionIfNeeded();
+	}
 
-		Long currentTime = System.currentTimeMillis();
-		file.setLastModified(currentTime);
-		lastUsageDates.put(file, currentTime);
+	@Override
+	protected boolean isPutRecorded() {
+		return true;
 	}
 
+	/** Request is counted by index of cached files, until cache directory is scanned - by presence index */
 	@Override
 	public File get(String key) {
-		File file = super.get(key);
-
-		Long currentTime = System.currentTimeMillis();
-		file.setLastModified(currentTime);
-		lastUsageDates.put(file, currentTime);
+		File file = getFile(key);
 
+		boolean cached;
+		synchronized (index) {
+			// Moves file to the end of usage order
+			cached = index.get(file) != null;
+		}
+		if (cached) {
+			getStatsCounter().recordHit();
+			recordUsage(file, System.currentTimeMillis());
+		} else if (scanned || !mightContainFile(file)) {
+			getStatsCounter().recordMiss();
+		} else {
+			getStatsCounter().recordHit(); // file isn't scanned yet
+		}
 		return file;
 	}
 
+	/** Remembers usage date for persisting, schedules flush of pending dates if there are enough of them */
+	private void recordUsage(File file, long usageDate) {
+		synchronized (pendingUsageDates) {
+			pendingUsageDates.put(file, usageDate);
+			if (!usageFlushScheduled && (pendingUsageDates.size() >= USAGE_FLUSH_BATCH_SIZE
+					|| usageDate - lastUsageFlushTime >= USAGE_FLUSH_INTERVAL)) {
+				usageFlushScheduled = true;
+				lastUsageFlushTime = usageDate;
+				maintenanceExecutor.execute(usageFlushTask);
+			}
+		}
+	}
+
+	private void scheduleEvictionIfNeeded() {
+		if (cacheSize.get() <= sizeLimit) return;
+		synchronized (index) {
+			if (evictionScheduled) return;
+			evictionScheduled = true;
+		}
+		maintenanceExecutor.execute(evictionTask);
+	}
+
+	/** Deletes the least recently used files until cache size is at or below low watermark. Runs in background. */
+	private void evictToLowWatermark() {
+		while (cacheSize.get() > lowWatermarkSize) {
+			File file;
+			long fileSize;
+			synchronized (index) {
+				Iterator<Entry<File, Long>> it = index.entrySet().iterator();
+				if (!it.hasNext()) break; // cache is empty (have nothing to delete)
+				Entry<File, Long> eldest = it.next();
+				file = eldest.getKey();
+				fileSize = eldest.getValue();
+				it.remove();
+			}
+			synchronized (pendingUsageDates) {
+				pendingUsageDates.remove(file);
+			}
+
+			long fileLength = file.length();
+			if (file.delete()) {
+				getStatsCounter().recordEviction(EvictionCause.SIZE, fileLength);
+			}
+			cacheSize.addAndGet(-fileSize);
+		}
+	}
+
+	/** Returns size of cache in units of its limit */
+	@Override
+	protected long getCacheSize() {
+		return cacheSize.get();
+	}
+
+	@Override
+	public boolean remove(String key) {
+		File file = getFile(key);
+		Long fileSize;
+		synchronized (index) {
+			fileSize = index.remove(file);
+		}
+		synchronized (pendingUsageDates) {
+			pendingUsageDates.remove(file);
+		}
+		if (fileSize != null) {
+			getStatsCounter().recordSize(cacheSize.addAndGet(-fileSize));
+		}
+		return super.remove(key);
+	}
+
 	@Override
 	public void clear() {
-		lastUsageDates.clear();
+		synchronized (pendingUsageDates) {
+			pendingUsageDates.clear();
+		}
+		synchronized (index) {
+			index.clear();
+		}
 		cacheSize.set(0);
 		super.clear();
 	}
 
-	/** Remove next file and returns it's size */
-	private int removeNext() {
-		if (lastUsageDates.isEmpty()) {
-			return INVALID_SIZE;
-		}
-		Long oldestUsage = null;
-		File mostLongUsedFile = null;
-		Set<Entry<File, Long>> entries = lastUsageDates.entrySet();
-		synchronized (lastUsageDates) {
-			for (Entry<File, Long> entry : entries) {
-				if (mostLongUsedFile == null) {
-					mostLongUsedFile = entry.getKey();
-					oldestUsage = entry.getValue();
-				} else {
-					Long lastValueUsage = entry.getValue();
-					if (lastValueUsage < oldestUsage) {
-						oldestUsage = lastValueUsage;
-						mostLongUsedFile = entry.getKey();
-					}
-				}
-			}
-		}
+	/**
+	 * Returns size of file in units of cache limit. Delegates to {@link #getSize(File)} by default, so subclasses which
+	 * were written for <b>int</b> sizes keep working.
+	 */
+	protected long getEntrySize(File file) {
+		return getSize(file);
+	}
 
-		int fileSize = 0;
-		if (mostLongUsedFile != null) {
-			if (mostLongUsedFile.exists()) {
-				fileSize = getSize(mostLongUsedFile);
-				if (mostLongUsedFile.delete()) {
-					lastUsageDates.remove(mostLongUsedFile);
-				}
-			} else {
-				lastUsageDates.remove(mostLongUsedFile);
+	/**
+	 * Returns size of file in units of cache limit. Returns file size in bytes (capped by {@link Integer#MAX_VALUE}) by
+	 * default.
+	 *
+	 * @deprecated Override {@link #getEntrySize(File)} instead, it supports files larger than 2 Gb
+	 */
+	@Deprecated
+	protected int getSize(File file) {
+		return (int) Math.min(getAllocatedSize(file), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns size of file in bytes: its length or (if cache counts allocated blocks) size of file system blocks which
+	 * file occupies
+	 */
+	protected final long getAllocatedSize(File file) {
+		long length = file.length();
+		if (!countAllocatedBlocks) return length;
+
+		long block = blockSize;
+		if (block == 0) {
+			block = StorageUtils.getBlockSize(cacheDir);
+			if (block <= 0) {
+				block = DEFAULT_BLOCK_SIZE;
 			}
+			blockSize = block;
 		}
-		return fileSize;
+		return (length + block - 1) / block * block;
 	}
-
-	protected abstract int getSize(File file);
-}
\ No newline at end of file
+}
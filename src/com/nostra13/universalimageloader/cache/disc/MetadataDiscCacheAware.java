@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * Disc cache which keeps {@linkplain EntryMetadata metadata} of cached images (HTTP validators, freshness lifetime,
+ * decoding info).
+ * Metadata of image which was removed from cache is dropped lazily.
+ *
+ * @see EntryMetadata
+ * @since 1.9.2
+ */
+public interface MetadataDiscCacheAware extends DiscCacheAware {
+
+	/** Returns metadata of cached image or <b>null</b> if cache has no metadata for key */
+	EntryMetadata getMetadata(String key);
+
+	/** Saves metadata of image. Must be called after image is {@linkplain #put(String, java.io.File) put} in cache. */
+	void putMetadata(String key, EntryMetadata metadata);
+}
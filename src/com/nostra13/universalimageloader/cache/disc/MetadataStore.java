@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import com.nostra13.universalimageloader.utils.IoUtils;
+import com.nostra13.universalimageloader.utils.L;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Persistent store of {@linkplain EntryMetadata metadata} of cached images. Metadata is kept in memory and in
+ * append-only file in cache directory which is read when store is used first time. Removals are appended as
+ * tombstone records. Appended records are flushed to file in background, so several records are written at once;
+ * records which weren't flushed before process is killed are lost (metadata is defined again on next download). File
+ * is compacted in background when it contains too many redundant records; metadata of images which aren't cached
+ * anymore is dropped on compaction.
+ *
+ * @see MetadataDiscCacheAware
+ * @since 1.9.2
+ */
+public final class MetadataStore {
+
+	private static final String HEADER = "uil-metadata 1";
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+	private static final char KEY_SEPARATOR = '\t';
+	/** Tombstone record is the key with this prefix; previous versions skip such records as torn ones */
+	private static final char REMOVAL_PREFIX = KEY_SEPARATOR;
+	private static final String CHARSET = "UTF-8";
+
+	/** File is compacted when this count of records (at least) was appended after last compaction */
+	private static final int COMPACTION_THRESHOLD = 1000;
+
+	/** Metadata of image which is known only by key */
+	private static final EntryMetadata EMPTY_METADATA = new EntryMetadata.Builder().build();
+
+	private static final String LOG_WRITE_FAILED = "Can't write metadata of disc cache [%s]";
+
+	private final File file;
+	private final Executor maintenanceExecutor;
+	private final EntryChecker entryChecker;
+
+	/** Guarded by this */
+	private final Map<String, EntryMetadata> entries = new HashMap<String, EntryMetadata>();
+	/** Guarded by this */
+	private Writer writer;
+	/** Guarded by this */
+	private boolean loaded;
+	/** Count of records which were appended after last compaction. Guarded by this. */
+	private int appendedRecordCount;
+	/** Count of entries after last compaction. Guarded by this. */
+	private int compactedEntryCount;
+	/** Guarded by this */
+	private boolean compactionScheduled;
+	/** Guarded by this */
+	private boolean flushScheduled;
+	/** Records which are appended while file is compacted; <b>null</b> otherwise. Guarded by this. */
+	private List<String> pendingRecords;
+	/** Is incremented on clearing, so file which was being compacted before clearing is dropped. Guarded by this. */
+	private int generation;
+
+	private final Runnable compactionTask = new Runnable() {
+		@Override
+		public void run() {
+			compact();
+		}
+	};
+
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * @param file                File of store
+	 * @param maintenanceExecutor Executor for background compaction
+	 * @param entryChecker        Checks which images are still cached (on compaction)
+	 */
+	public MetadataStore(File file, Executor maintenanceExecutor, EntryChecker entryChecker) {
+		this.file = file;
+		this.maintenanceExecutor = maintenanceExecutor;
+		this.entryChecker = entryChecker;
+	}
+
+	/** Returns metadata for key or <b>null</b> */
+	public synchronized EntryMetadata get(String key) {
+		ensureLoaded();
+		return entries.get(key);
+	}
+
+	/** Saves metadata for key. Metadata of keys which can't be persisted (e.g. containing line breaks) is ignored. */
+	public synchronized void put(String key, EntryMetadata metadata) {
+		if (!EntryMetadata.isEncodable(key)) return;
+
+		ensureLoaded();
+		entries.put(key, metadata);
+		append(key + KEY_SEPARATOR + metadata.encode());
+	}
+
+	/** Appends record to file (it's flushed in background) and schedules compaction if need. Must be called under lock */
+	private void append(String record) {
+		if (writer == null) {
+			writer = openWriter();
+		}
+		if (writer != null) {
+			try {
+				writer.write(record + '\n');
+			} catch (IOException e) {
+				L.e(e);
+				L.w(LOG_WRITE_FAILED, file.getName());
+				closeWriter();
+			}
+			if (!flushScheduled) {
+				flushScheduled = true;
+				maintenanceExecutor.execute(flushTask);
+			}
+		}
+		if (pendingRecords != null) {
+			pendingRecords.add(record);
+		}
+		appendedRecordCount++;
+		if (!compactionScheduled && appendedRecordCount >= Math.max(COMPACTION_THRESHOLD, compactedEntryCount)) {
+			compactionScheduled = true;
+			maintenanceExecutor.execute(compactionTask);
+		}
+	}
+
+	/** Writes appended records to file */
+	private synchronized void flush() {
+		flushScheduled = false;
+		if (writer == null) return;
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			L.e(e);
+			L.w(LOG_WRITE_FAILED, file.getName());
+			closeWriter();
+		}
+	}
+
+	/** Remembers key of cached image which has no metadata yet, so image can be found among {@linkplain #keys() keys} */
+	public synchronized void addKey(String key) {
+		ensureLoaded();
+		if (!entries.containsKey(key)) {
+			put(key, EMPTY_METADATA);
+		}
+	}
+
+	/** Returns keys of all images which have metadata */
+	public synchronized List<String> keys() {
+		ensureLoaded();
+		return new ArrayList<String>(entries.keySet());
+	}
+
+	/** Removes metadata for key. Removal is persisted by tombstone record. */
+	public synchronized void remove(String key) {
+		ensureLoaded();
+		if (entries.remove(key) != null) {
+			append(REMOVAL_PREFIX + key);
+		}
+	}
+
+	/** Removes all metadata (file is deleted) */
+	public synchronized void clear() {
+		entries.clear();
+		closeWriter();
+		file.delete();
+		generation++;
+		pendingRecords = null;
+		loaded = true;
+		appendedRecordCount = 0;
+		compactedEntryCount = 0;
+	}
+
+	/** Must be called under lock */
+	private void ensureLoaded() {
+		if (loaded) return;
+		loaded = true;
+		if (!file.exists()) return;
+
+		int recordCount = 0;
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+			if (!HEADER.equals(reader.readLine())) {
+				file.delete();
+				return;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 1 && line.charAt(0) == REMOVAL_PREFIX) {
+					entries.remove(line.substring(1));
+					recordCount++;
+					continue;
+				}
+				int separator = line.indexOf(KEY_SEPARATOR);
+				if (separator <= 0) continue; // torn record
+				entries.put(line.substring(0, separator), EntryMetadata.decode(line.substring(separator + 1)));
+				recordCount++;
+			}
+		} catch (IOException e) {
+			L.e(e);
+		} finally {
+			IoUtils.closeSilently(reader);
+		}
+		appendedRecordCount = recordCount - entries.size();
+		compactedEntryCount = entries.size();
+	}
+
+	/**
+	 * Drops redundant records and metadata of images which aren't cached anymore. File is rewritten without lock, so
+	 * store isn't blocked: records which are appended meanwhile are kept and are appended to new file before it
+	 * replaces old one.
+	 */
+	private void compact() {
+		Map<String, EntryMetadata> snapshot;
+		synchronized (this) {
+			ensureLoaded();
+			snapshot = new HashMap<String, EntryMetadata>(entries);
+		}
+
+		List<String> removedKeys = new ArrayList<String>();
+		for (String key : snapshot.keySet()) { // checking doesn't block store
+			if (!entryChecker.isCached(key)) {
+				removedKeys.add(key);
+			}
+		}
+
+		Map<String, EntryMetadata> liveEntries;
+		int compactionGeneration;
+		synchronized (this) {
+			for (String key : removedKeys) {
+				if (entries.get(key) == snapshot.get(key)) { // metadata wasn't updated while checking
+					entries.remove(key);
+				}
+			}
+			liveEntries = new HashMap<String, EntryMetadata>(entries);
+			pendingRecords = new ArrayList<String>();
+			compactionGeneration = generation;
+		}
+
+		File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+		boolean written = writeEntries(tempFile, liveEntries);
+
+		synchronized (this) {
+			compactionScheduled = false;
+			List<String> records = pendingRecords;
+			pendingRecords = null;
+			if (compactionGeneration != generation) { // store was cleared
+				tempFile.delete();
+				return;
+			}
+			if (written && appendRecords(tempFile, records)) {
+				closeWriter(); // following records are appended to new file
+				if (tempFile.renameTo(file)) {
+					appendedRecordCount = records.size();
+					compactedEntryCount = liveEntries.size();
+					return;
+				}
+			}
+			tempFile.delete();
+		}
+	}
+
+	private boolean writeEntries(File targetFile, Map<String, EntryMetadata> fileEntries) {
+		Writer tempWriter = null;
+		try {
+			tempWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(targetFile), CHARSET));
+			tempWriter.write(HEADER + '\n');
+			for (Map.Entry<String, EntryMetadata> entry : fileEntries.entrySet()) {
+				tempWriter.write(entry.getKey() + KEY_SEPARATOR + entry.getValue().encode() + '\n');
+			}
+			return true;
+		} catch (IOException e) {
+			L.e(e);
+			L.w(LOG_WRITE_FAILED, file.getName());
+			return false;
+		} finally {
+			IoUtils.closeSilently(tempWriter);
+		}
+	}
+
+	private boolean appendRecords(File targetFile, List<String> records) {
+		if (records.isEmpty()) return true;
+		Writer tempWriter = null;
+		try {
+			tempWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(targetFile, true), CHARSET));
+			for (String record : records) {
+				tempWriter.write(record + '\n');
+			}
+			return true;
+		} catch (IOException e) {
+			L.e(e);
+			L.w(LOG_WRITE_FAILED, file.getName());
+			return false;
+		} finally {
+			IoUtils.closeSilently(tempWriter);
+		}
+	}
+
+	/** Must be called under lock */
+	private Writer openWriter() {
+		boolean writeHeader = !file.exists();
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		try {
+			Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), CHARSET));
+			if (writeHeader) {
+				w.write(HEADER + '\n');
+			}
+			return w;
+		} catch (IOException e) {
+			L.e(e);
+			L.w(LOG_WRITE_FAILED, file.getName());
+			return null;
+		}
+	}
+
+	/** Must be called under lock */
+	private void closeWriter() {
+		IoUtils.closeSilently(writer);
+		writer = null;
+	}
+
+	/** Checks whether image is still cached */
+	public interface EntryChecker {
+		boolean isCached(String key);
+	}
+}
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * Disc cache which knows (without file system calls) which images are definitely not cached. It lets image loader
+ * send tasks for not cached images to network executor at once.
+ *
+ * @since 1.9.2
+ */
+public interface PresenceDiscCacheAware extends DiscCacheAware {
+
+	/**
+	 * Returns <b>false</b> if image for key is definitely not cached; <b>true</b> - if image may be cached (then
+	 * {@linkplain #get(String) cached file} must be checked). Method doesn't touch file system.
+	 */
+	boolean mightContain(String key);
+}
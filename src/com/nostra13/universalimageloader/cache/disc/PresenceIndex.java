@@ -0,0 +1,415 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import com.nostra13.universalimageloader.utils.IoUtils;
+import com.nostra13.universalimageloader.utils.L;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Bloom filter of names of cached files. It answers whether file is definitely not cached without file system calls
+ * (false positive rate is ~1%). Filter is kept in file in cache directory; it's loaded in background and until then
+ * every file is considered as possibly cached. If filter file is missing or broken, or if filter is saturated (too many
+ * files were added since it was built, e.g. evicted files are never removed from it), filter is rebuilt in background
+ * from list of cached files.<br />
+ * <br />
+ * Filter is saved in background after batch of additions or after first addition since some time passed from previous
+ * saving, so every cached image doesn't cost rewriting of whole filter. Saved file is marked clean; it's marked dirty
+ * (in background too) when it's loaded and on the first addition after saving, so file which misses added names (e.g.
+ * app crashed before next saving) is never loaded: dirty filter is rebuilt from list of cached files. Names which are
+ * added right before crash, before file is marked dirty, can be lost; such images are just downloaded again.
+ *
+ * @see PresenceDiscCacheAware
+ * @since 1.9.2
+ */
+public final class PresenceIndex {
+
+	private static final int MAGIC = 0x55494c50; // "UILP"
+	private static final int VERSION = 2;
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+	/** Offset of state ({@link #STATE_CLEAN} or {@link #STATE_DIRTY}) in file, after magic and version */
+	private static final int STATE_OFFSET = 8;
+	private static final int STATE_CLEAN = 1;
+	private static final int STATE_DIRTY = 0;
+
+	/** Filter is saved when this count of names is added since last saving */
+	private static final int SAVE_BATCH_SIZE = 64;
+	/** Filter is saved on addition if this time passed since last saving */
+	private static final long SAVE_INTERVAL = 10 * 1000; // 10 seconds
+
+	private static final int DEFAULT_CAPACITY = 4096;
+	/** 10 bits per name and 7 hash functions give ~1% of false positives */
+	private static final int BITS_PER_NAME = 10;
+	private static final int HASH_COUNT = 7;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final String LOG_WRITE_FAILED = "Can't write presence index of disc cache [%s]";
+
+	private final File file;
+	private final Executor maintenanceExecutor;
+	private final NameLister nameLister;
+	private final int saveBatchSize;
+	private final long saveInterval;
+
+	/** Guarded by this */
+	private long[] bits;
+	/** Count of names which filter was sized for. Guarded by this. */
+	private int capacity;
+	/** Guarded by this */
+	private int addedCount;
+	/** Whether filter is loaded or built. Guarded by this. */
+	private boolean ready;
+	/** Names which were added while filter is loaded or rebuilt; null otherwise. Guarded by this. */
+	private List<String> pendingNames = new ArrayList<String>();
+	/** Is incremented on clearing, so filter which was built before clearing is dropped. Guarded by this. */
+	private int generation;
+	/** Guarded by this */
+	private boolean saveScheduled;
+	/** Count of names which were added since saving was scheduled last time. Guarded by this. */
+	private int unsavedCount;
+	/** Guarded by this */
+	private long lastSaveTime;
+	/** Is incremented on every addition to ready filter. Guarded by this. */
+	private int modCount;
+	/** Whether file is marked clean (it contains all added names). Guarded by this. */
+	private boolean fileClean;
+	/** Serializes writing of file */
+	private final Object fileLock = new Object();
+
+	private final Runnable loadTask = new Runnable() {
+		@Override
+		public void run() {
+			if (!load()) {
+				rebuild();
+			}
+		}
+	};
+
+	private final Runnable rebuildTask = new Runnable() {
+		@Override
+		public void run() {
+			rebuild();
+		}
+	};
+
+	private final Runnable markDirtyTask = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (fileLock) {
+				synchronized (PresenceIndex.this) {
+					if (fileClean) return; // saved since addition
+				}
+				writeState(STATE_DIRTY);
+			}
+		}
+	};
+
+	private final Runnable saveTask = new Runnable() {
+		@Override
+		public void run() {
+			save();
+		}
+	};
+
+	/**
+	 * @param file                File of filter
+	 * @param maintenanceExecutor Executor for background loading, rebuilding and saving
+	 * @param nameLister          Lists names of cached files (for rebuilding)
+	 */
+	public PresenceIndex(File file, Executor maintenanceExecutor, NameLister nameLister) {
+		this(file, maintenanceExecutor, nameLister, SAVE_BATCH_SIZE, SAVE_INTERVAL);
+	}
+
+	/**
+	 * @param saveBatchSize Filter is saved when this count of names is added since last saving
+	 * @param saveInterval  Filter is saved on addition if this time (in milliseconds) passed since last saving
+	 */
+	PresenceIndex(File file, Executor maintenanceExecutor, NameLister nameLister, int saveBatchSize, long saveInterval) {
+		this.file = file;
+		this.maintenanceExecutor = maintenanceExecutor;
+		this.nameLister = nameLister;
+		this.saveBatchSize = saveBatchSize;
+		this.saveInterval = saveInterval;
+		allocate(DEFAULT_CAPACITY);
+		maintenanceExecutor.execute(loadTask);
+	}
+
+	/**
+	 * Returns <b>false</b> if file with passed name definitely wasn't added; <b>true</b> - if it may be added (or if
+	 * filter isn't loaded yet)
+	 */
+	public synchronized boolean mightContain(String name) {
+		if (!ready) return true;
+
+		long hash = hash(name);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		int bitCount = bits.length << 6;
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+		}
+		return true;
+	}
+
+	/** Adds name of cached file. Clean file is marked dirty in background, before filter is saved again. */
+	public synchronized void add(String name) {
+		if (pendingNames != null) {
+			pendingNames.add(name);
+		}
+		if (!ready) return;
+
+		set(name);
+		modCount++;
+		if (fileClean) {
+			fileClean = false;
+			maintenanceExecutor.execute(markDirtyTask);
+		}
+		if (addedCount > capacity && pendingNames == null) { // saturated
+			pendingNames = new ArrayList<String>();
+			maintenanceExecutor.execute(rebuildTask);
+		} else {
+			unsavedCount++;
+			long now = System.currentTimeMillis();
+			if (unsavedCount >= saveBatchSize || now - lastSaveTime >= saveInterval) {
+				scheduleSave();
+			}
+		}
+	}
+
+	/** Removes all names (file is deleted) */
+	public synchronized void clear() {
+		allocate(DEFAULT_CAPACITY);
+		generation++;
+		ready = true;
+		pendingNames = null;
+		fileClean = false;
+		file.delete();
+	}
+
+	/**
+	 * @return <b>true</b> - if filter was loaded from file; <b>false</b> - if it should be rebuilt (e.g. file wasn't
+	 * saved clean)
+	 */
+	private boolean load() {
+		synchronized (this) {
+			if (ready) return true; // cleared before loading
+		}
+		if (!file.exists()) return false;
+
+		int loadedCapacity;
+		int loadedCount;
+		long[] loadedBits;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != STATE_CLEAN) return false;
+			loadedCapacity = in.readInt();
+			loadedCount = in.readInt();
+			if (loadedCapacity <= 0 || loadedCount < 0) return false;
+			loadedBits = new long[getWordCount(loadedCapacity)];
+			for (int i = 0; i < loadedBits.length; i++) {
+				loadedBits[i] = in.readLong();
+			}
+		} catch (IOException e) {
+			L.e(e);
+			return false;
+		} finally {
+			IoUtils.closeSilently(in);
+		}
+		synchronized (fileLock) {
+			writeState(STATE_DIRTY); // until filter is saved again
+		}
+
+		synchronized (this) {
+			if (ready) return true;
+			bits = loadedBits;
+			capacity = loadedCapacity;
+			addedCount = loadedCount;
+			onReady(generation);
+		}
+		return true;
+	}
+
+	/** Builds filter from names of cached files */
+	private void rebuild() {
+		int startGeneration;
+		synchronized (this) {
+			startGeneration = generation;
+			if (pendingNames == null) {
+				pendingNames = new ArrayList<String>();
+			}
+		}
+
+		Collection<String> names = nameLister.listNames(); // listing doesn't block filter
+
+		synchronized (this) {
+			if (generation != startGeneration) return; // cleared while listing
+			allocate(Math.max(DEFAULT_CAPACITY, names.size() * 2));
+			for (String name : names) {
+				set(name);
+			}
+			onReady(startGeneration);
+		}
+	}
+
+	/** Must be called under lock */
+	private void onReady(int startGeneration) {
+		if (generation != startGeneration) return;
+		for (String name : pendingNames) {
+			set(name);
+		}
+		pendingNames = null;
+		ready = true;
+		scheduleSave();
+	}
+
+	private void save() {
+		synchronized (fileLock) {
+			long[] savedBits;
+			int savedCapacity;
+			int savedCount;
+			int savedModCount;
+			synchronized (this) {
+				saveScheduled = false;
+				if (!ready) return;
+				savedBits = bits.clone();
+				savedCapacity = capacity;
+				savedCount = addedCount;
+				savedModCount = modCount;
+			}
+
+			if (!write(savedBits, savedCapacity, savedCount)) return;
+			synchronized (this) {
+				if (modCount == savedModCount && ready) {
+					fileClean = true;
+					return;
+				}
+			}
+			writeState(STATE_DIRTY); // names were added while file was written
+		}
+	}
+
+	/** @return <b>true</b> - if file was written and marked clean */
+	private boolean write(long[] savedBits, int savedCapacity, int savedCount) {
+		File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+		DataOutputStream out = null;
+		boolean written = false;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(STATE_CLEAN);
+			out.writeInt(savedCapacity);
+			out.writeInt(savedCount);
+			for (long word : savedBits) {
+				out.writeLong(word);
+			}
+			written = true;
+		} catch (IOException e) {
+			L.e(e);
+			L.w(LOG_WRITE_FAILED, file.getName());
+		} finally {
+			IoUtils.closeSilently(out);
+		}
+		if (!written || !tempFile.renameTo(file)) {
+			tempFile.delete();
+			return false;
+		}
+		return true;
+	}
+
+	/** Must be called under file lock. Existing file only is changed. */
+	private void writeState(int state) {
+		if (!file.isFile()) return;
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			raf.seek(STATE_OFFSET);
+			raf.writeInt(state);
+		} catch (IOException e) {
+			L.e(e);
+			file.delete(); // state is unknown, so filter will be rebuilt
+		} finally {
+			IoUtils.closeSilently(raf);
+		}
+	}
+
+	/** Must be called under lock */
+	private void scheduleSave() {
+		unsavedCount = 0;
+		lastSaveTime = System.currentTimeMillis();
+		if (!saveScheduled) {
+			saveScheduled = true;
+			maintenanceExecutor.execute(saveTask);
+		}
+	}
+
+	/** Must be called under lock */
+	private void allocate(int newCapacity) {
+		capacity = newCapacity;
+		bits = new long[getWordCount(newCapacity)];
+		addedCount = 0;
+	}
+
+	/** Must be called under lock */
+	private void set(String name) {
+		long hash = hash(name);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		int bitCount = bits.length << 6;
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+		addedCount++;
+	}
+
+	private static int getWordCount(int capacity) {
+		return (int) (((long) capacity * BITS_PER_NAME + 63) >>> 6);
+	}
+
+	/** 64-bit FNV-1a hash of name chars */
+	private static long hash(String name) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/** Lists names of cached files */
+	public interface NameLister {
+		Collection<String> listNames();
+	}
+}
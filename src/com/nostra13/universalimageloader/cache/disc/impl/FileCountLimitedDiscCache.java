@@ -48,11 +48,39 @@ public class FileCountLimitedDiscCache extends LimitedDiscCache {
 	 *                          with the most oldest last usage date will be deleted.
 	 */
 	public FileCountLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int maxFileCount) {
-		super(cacheDir, fileNameGenerator, maxFileCount);
+		this(cacheDir, fileNameGenerator, maxFileCount, DEFAULT_LOW_WATERMARK);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *                          needed for right cache limit work.
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param maxFileCount      Maximum file count for cache. If file count in cache directory exceeds this limit then files
+	 *                          with the most oldest last usage dates will be deleted.
+	 * @param lowWatermark      Part of file count limit (0..1] which cache is reduced to when it exceeds its limit
+	 */
+	public FileCountLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int maxFileCount,
+			float lowWatermark) {
+		this(cacheDir, fileNameGenerator, maxFileCount, lowWatermark, false);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *                          needed for right cache limit work.
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param maxFileCount      Maximum file count for cache. If file count in cache directory exceeds this limit then files
+	 *                          with the most oldest last usage dates will be deleted.
+	 * @param lowWatermark      Part of file count limit (0..1] which cache is reduced to when it exceeds its limit
+	 * @param cacheDirDedicated <b>true</b> - nothing but files of this cache is kept in cache directory, so it's sharded
+	 *                          and is cleared as a whole
+	 */
+	public FileCountLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int maxFileCount,
+			float lowWatermark, boolean cacheDirDedicated) {
+		super(cacheDir, fileNameGenerator, maxFileCount, lowWatermark, false, cacheDirDedicated);
 	}
 
 	@Override
-	protected int getSize(File file) {
+	protected long getEntrySize(File file) {
 		return 1;
 	}
 }
@@ -0,0 +1,611 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.impl;
+
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+import com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.utils.IoUtils;
+import com.nostra13.universalimageloader.utils.L;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Disc cache limited by total size of files and/or count of files. The least recently used files are deleted when
+ * cache exceeds its limits.<br />
+ * <br />
+ * Unlike {@link com.nostra13.universalimageloader.cache.disc.LimitedDiscCache LimitedDiscCache} this cache doesn't scan
+ * cache directory on start. Index of cached files (names, sizes and usage order) is kept in append-only journal in cache
+ * directory: puts, reads and deletions are appended to journal, and journal is replayed in background right after
+ * cache is created (the first request waits for replay if it isn't finished). Journal is compacted in background when
+ * it contains too many redundant records: entries are copied under lock and journal is written without lock, records
+ * which are appended meanwhile are added to new journal before it replaces old one. Cache directory is scanned only
+ * if journal is missing or broken.<br />
+ * <br />
+ * <b>NOTE:</b> Files which are written into cache directory by someone else are unknown for this cache until its
+ * journal is rebuilt from directory scan.
+ *
+ * @see BaseDiscCache
+ * @since 1.9.2
+ */
+public class JournaledDiscCache extends BaseDiscCache {
+
+	/** Name of journal file in cache directory */
+	public static final String JOURNAL_FILE_NAME = ".journal";
+	private static final String JOURNAL_TEMP_FILE_NAME = ".journal.tmp";
+
+	private static final String JOURNAL_HEADER = "uil-journal 1";
+	private static final char PUT = 'P';
+	private static final char READ = 'R';
+	private static final char DELETE = 'D';
+	private static final String CHARSET = "US-ASCII";
+
+	/** Journal is compacted when it contains at least this count of redundant records (and more than entries count) */
+	private static final int COMPACTION_THRESHOLD = 2000;
+
+	private static final String LOG_JOURNAL_BROKEN = "Journal of disc cache is broken, cache directory will be scanned [%s]";
+	private static final String LOG_JOURNAL_WRITE_FAILED = "Can't write journal of disc cache [%s]";
+
+	private final long maxSize;
+	private final int maxFileCount;
+	private final File journalFile;
+
+	/** Sizes of cached files by file names in access order (the least recently used is first). Guarded by this. */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(0, 0.75f, true);
+	/** Guarded by this */
+	private long size;
+	/** Guarded by this */
+	private Writer journalWriter;
+	/** Count of journal records which don't describe current entries. Guarded by this. */
+	private int redundantRecordCount;
+	/** Guarded by this */
+	private boolean initialized;
+	/** Guarded by this */
+	private boolean compactionScheduled;
+	/** Whether replayed journal contained paths of other layout of cache directory. Guarded by this. */
+	private boolean layoutChanged;
+	/** Whether replayed journal ends with partially written or broken record. Guarded by this. */
+	private boolean journalTorn;
+	/** Whether journal must be rewritten regardless of count of redundant records. Guarded by this. */
+	private boolean rebuildRequired;
+	/** Records which are written while journal is rebuilt; <b>null</b> otherwise. Guarded by this. */
+	private List<String> pendingRecords;
+	/** Is incremented on clearing, so journal which was being rebuilt before clearing is dropped. Guarded by this. */
+	private int journalGeneration;
+
+	private final Runnable initTask = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (JournaledDiscCache.this) {
+				ensureInitialized();
+			}
+		}
+	};
+
+	private final Runnable compactionTask = new Runnable() {
+		@Override
+		public void run() {
+			compactJournal();
+		}
+	};
+
+	/**
+	 * @param cacheDir     Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *                     needed for right cache limit work.
+	 * @param maxSize      Maximum cache directory size (in bytes); <b>0</b> - size is unlimited
+	 * @param maxFileCount Maximum file count in cache directory; <b>0</b> - file count is unlimited
+	 */
+	public JournaledDiscCache(File cacheDir, long maxSize, int maxFileCount) {
+		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), maxSize, maxFileCount);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *                          needed for right cache limit work.
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param maxSize           Maximum cache directory size (in bytes); <b>0</b> - size is unlimited
+	 * @param maxFileCount      Maximum file count in cache directory; <b>0</b> - file count is unlimited
+	 */
+	public JournaledDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxSize, int maxFileCount) {
+		this(cacheDir, fileNameGenerator, maxSize, maxFileCount, false);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *                          needed for right cache limit work.
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param maxSize           Maximum cache directory size (in bytes); <b>0</b> - size is unlimited
+	 * @param maxFileCount      Maximum file count in cache directory; <b>0</b> - file count is unlimited
+	 * @param cacheDirDedicated <b>true</b> - nothing but files of this cache is kept in cache directory, so it's sharded
+	 *                          and is cleared as a whole
+	 */
+	public JournaledDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxSize, int maxFileCount,
+			boolean cacheDirDedicated) {
+		this(cacheDir, fileNameGenerator, maxSize, maxFileCount, DefaultConfigurationFactory.createMaintenanceExecutor(),
+				cacheDirDedicated);
+	}
+
+	/**
+	 * @param cacheDir            Directory for file caching. <b>Important:</b> Specify separate folder for cached files.
+	 *                            It's needed for right cache limit work.
+	 * @param fileNameGenerator   Name generator for cached files
+	 * @param maxSize             Maximum cache directory size (in bytes); <b>0</b> - size is unlimited
+	 * @param maxFileCount        Maximum file count in cache directory; <b>0</b> - file count is unlimited
+	 * @param maintenanceExecutor Executor for background work of cache: journal replay and compaction, migration, etc.
+	 */
+	public JournaledDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxSize, int maxFileCount,
+			Executor maintenanceExecutor) {
+		this(cacheDir, fileNameGenerator, maxSize, maxFileCount, maintenanceExecutor, false);
+	}
+
+	/**
+	 * @param cacheDir            Directory for file caching. <b>Important:</b> Specify separate folder for cached files.
+	 *                            It's needed for right cache limit work.
+	 * @param fileNameGenerator   Name generator for cached files
+	 * @param maxSize             Maximum cache directory size (in bytes); <b>0</b> - size is unlimited
+	 * @param maxFileCount        Maximum file count in cache directory; <b>0</b> - file count is unlimited
+	 * @param maintenanceExecutor Executor for background work of cache: journal replay and compaction, migration, etc.
+	 * @param cacheDirDedicated   <b>true</b> - nothing but files of this cache is kept in cache directory, so it's
+	 *                            sharded and is cleared as a whole
+	 */
+	public JournaledDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxSize, int maxFileCount,
+			Executor maintenanceExecutor, boolean cacheDirDedicated) {
+		super(cacheDir, fileNameGenerator, cacheDirDedicated, maintenanceExecutor);
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize < 0");
+		}
+		if (maxFileCount < 0) {
+			throw new IllegalArgumentException("maxFileCount < 0");
+		}
+		this.maxSize = maxSize;
+		this.maxFileCount = maxFileCount;
+		journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+		maintenanceExecutor.execute(initTask);
+	}
+
+	@Override
+	public void put(String key, File file) {
+		long fileSize = file.length();
+		String fileName = getRelativePath(file);
+		synchronized (this) {
+			ensureInitialized();
+			Long previousSize = entries.put(fileName, fileSize);
+			if (previousSize != null) {
+				size -= previousSize;
+				redundantRecordCount++;
+			}
+			size += fileSize;
+			writeRecord(PUT, fileName, fileSize);
+			flushJournal();
+
+			recordPut(key);
+			getStatsCounter().recordSize(size);
+			trimToLimits();
+			scheduleCompactionIfRequired();
+		}
+	}
+
+	@Override
+	protected boolean isPutRecorded() {
+		return true;
+	}
+
+	@Override
+	public File get(String key) {
+		File file = getFile(key);
+		String fileName = getRelativePath(file);
+		boolean cached;
+		synchronized (this) {
+			ensureInitialized();
+			cached = entries.get(fileName) != null;
+			if (cached) {
+				writeRecord(READ, fileName, -1); // isn't flushed, losing of some reads on crash is fine
+				redundantRecordCount++;
+				scheduleCompactionIfRequired();
+			}
+		}
+
+		if (cached) {
+			getStatsCounter().recordHit();
+		} else {
+			getStatsCounter().recordMiss();
+		}
+		return file;
+	}
+
+	@Override
+	public boolean remove(String key) {
+		String fileName = getRelativePath(getFile(key));
+		synchronized (this) {
+			ensureInitialized();
+			Long fileSize = entries.remove(fileName);
+			if (fileSize != null) {
+				size -= fileSize;
+				writeRecord(DELETE, fileName, -1);
+				flushJournal();
+				redundantRecordCount += 2;
+				scheduleCompactionIfRequired();
+			}
+		}
+		return super.remove(key);
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+		closeJournal();
+		super.clear();
+		journalGeneration++;
+		pendingRecords = null;
+		rebuildRequired = false;
+		initialized = true;
+
+		// Temp file may be written by compaction at this moment, so empty journal is written in place. Journal with
+		// broken header just makes cache directory be scanned on next start.
+		if (writeJournal(journalFile, entries)) {
+			redundantRecordCount = 0;
+			openJournal();
+		} else {
+			journalFile.delete();
+		}
+	}
+
+	@Override
+	protected synchronized long getCacheSize() {
+		return size;
+	}
+
+	/**
+	 * Replays journal or scans cache directory if journal can't be read. Must be called under lock. It's run in
+	 * background right after creation of cache, so caller usually finds cache initialized.
+	 */
+	private void ensureInitialized() {
+		if (initialized) return;
+		initialized = true;
+
+		migrateToShardedLayout(); // waits for background migration, so files are in place after it
+		if (!readJournal()) {
+			L.w(LOG_JOURNAL_BROKEN, cacheDir);
+			scanCacheDir();
+			journalFile.delete();
+			rebuildRequired = true;
+		} else if (journalTorn) {
+			// new records mustn't be appended to partially written record; until journal is rebuilt cache directory is
+			// scanned on start
+			journalFile.delete();
+			rebuildRequired = true;
+		} else {
+			openJournal();
+			rebuildRequired = layoutChanged; // records are converted on replay, so old paths can be rewritten later
+		}
+		trimToLimits();
+		scheduleCompactionIfRequired();
+	}
+
+	/** @return <b>true</b> - if journal was read; <b>false</b> - if it's missing or broken */
+	private boolean readJournal() {
+		if (!journalFile.exists()) return false;
+
+		int recordCount = 0;
+		BufferedReader reader = null;
+		try {
+			boolean terminated = endsWithLineBreak(journalFile);
+			journalTorn = !terminated; // the last line was written partially (e.g. size of file is cut), it's skipped
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), CHARSET));
+			if (!JOURNAL_HEADER.equals(reader.readLine())) return false;
+
+			String line = reader.readLine();
+			while (line != null) {
+				String nextLine = reader.readLine();
+				if (nextLine == null && !terminated) break;
+				if (!replayRecord(line)) {
+					journalTorn = true;
+					break;
+				}
+				recordCount++;
+				line = nextLine;
+			}
+		} catch (IOException e) {
+			L.e(e);
+			return false;
+		} finally {
+			IoUtils.closeSilently(reader);
+		}
+		redundantRecordCount = recordCount - entries.size();
+		return true;
+	}
+
+	private static boolean endsWithLineBreak(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length == 0) return false;
+			raf.seek(length - 1);
+			return raf.read() == '\n';
+		} finally {
+			IoUtils.closeSilently(raf);
+		}
+	}
+
+	private boolean replayRecord(String line) {
+		if (line.length() < 3 || line.charAt(1) != ' ') return false;
+
+		switch (line.charAt(0)) {
+			case PUT:
+				int separator = line.lastIndexOf(' ');
+				if (separator <= 2) return false;
+				long fileSize;
+				try {
+					fileSize = Long.parseLong(line.substring(separator + 1));
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				Long previousSize = entries.put(toLayoutPath(line.substring(2, separator)), fileSize);
+				if (previousSize != null) {
+					size -= previousSize;
+				}
+				size += fileSize;
+				return true;
+			case READ:
+				entries.get(toLayoutPath(line.substring(2)));
+				return true;
+			case DELETE:
+				Long removedSize = entries.remove(toLayoutPath(line.substring(2)));
+				if (removedSize != null) {
+					size -= removedSize;
+				}
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/** Converts path of journal record to current layout of cache directory (flat or sharded) */
+	private String toLayoutPath(String journalPath) {
+		String path = toCurrentLayout(journalPath);
+		if (!path.equals(journalPath)) {
+			layoutChanged = true;
+		}
+		return path;
+	}
+
+	/** Fills index by cached files in order of their modification dates */
+	private void scanCacheDir() {
+		entries.clear();
+		size = 0;
+		File[] cachedFiles = listCachedFiles().toArray(new File[0]);
+
+		final long[] dates = new long[cachedFiles.length];
+		Integer[] order = new Integer[cachedFiles.length];
+		for (int i = 0; i < cachedFiles.length; i++) {
+			dates[i] = cachedFiles[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer lhs, Integer rhs) {
+				long l = dates[lhs];
+				long r = dates[rhs];
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		for (Integer i : order) {
+			File cachedFile = cachedFiles[i];
+			long fileSize = cachedFile.length();
+			entries.put(getRelativePath(cachedFile), fileSize);
+			size += fileSize;
+		}
+	}
+
+	/** Deletes the least recently used files while cache exceeds its limits. Must be called under lock. */
+	private void trimToLimits() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while (isOverLimits() && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			String fileName = eldest.getKey();
+			long fileSize = eldest.getValue();
+			it.remove();
+			size -= fileSize;
+
+			new File(cacheDir, fileName).delete();
+			writeRecord(DELETE, fileName, -1);
+			redundantRecordCount += 2;
+			getStatsCounter().recordEviction(EvictionCause.SIZE, fileSize);
+		}
+		flushJournal();
+	}
+
+	private boolean isOverLimits() {
+		return (maxSize > 0 && size > maxSize) || (maxFileCount > 0 && entries.size() > maxFileCount);
+	}
+
+	private boolean isCompactionRequired() {
+		return rebuildRequired
+				|| (redundantRecordCount >= COMPACTION_THRESHOLD && redundantRecordCount >= entries.size());
+	}
+
+	private void scheduleCompactionIfRequired() {
+		if (!compactionScheduled && isCompactionRequired()) {
+			compactionScheduled = true;
+			maintenanceExecutor.execute(compactionTask);
+		}
+	}
+
+	/**
+	 * Writes journal which contains only current entries and replaces old journal by it. Entries are copied under lock,
+	 * journal is written without lock; records which are written meanwhile are appended to new journal under lock.
+	 */
+	private void compactJournal() {
+		Map<String, Long> snapshot;
+		int generation;
+		int snapshotRedundantRecordCount;
+		synchronized (this) {
+			if (!isCompactionRequired()) {
+				compactionScheduled = false;
+				return;
+			}
+			snapshot = new LinkedHashMap<String, Long>(entries); // keeps usage order
+			generation = journalGeneration;
+			snapshotRedundantRecordCount = redundantRecordCount;
+			pendingRecords = new ArrayList<String>();
+		}
+
+		File tempFile = new File(cacheDir, JOURNAL_TEMP_FILE_NAME);
+		boolean written = writeJournal(tempFile, snapshot);
+
+		synchronized (this) {
+			compactionScheduled = false;
+			if (generation != journalGeneration) { // cleared, journal is rebuilt already
+				tempFile.delete();
+				return;
+			}
+			List<String> records = pendingRecords;
+			pendingRecords = null;
+			if (written && appendRecords(tempFile, records) && tempFile.renameTo(journalFile)) {
+				closeJournal();
+				openJournal();
+				redundantRecordCount -= snapshotRedundantRecordCount; // new journal has only records since copying
+				rebuildRequired = false;
+			} else {
+				tempFile.delete();
+				if (journalWriter == null) {
+					journalFile.delete(); // journal doesn't describe cache, so it's rebuilt from directory on next start
+				}
+				rebuildRequired = false; // isn't retried until next start
+			}
+		}
+	}
+
+	/** @return <b>true</b> - if journal of passed entries was written into <b>file</b> */
+	private boolean writeJournal(File file, Map<String, Long> journalEntries) {
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET));
+			writer.write(JOURNAL_HEADER);
+			writer.write('\n');
+			for (Map.Entry<String, Long> entry : journalEntries.entrySet()) {
+				writer.write(formatRecord(PUT, entry.getKey(), entry.getValue()));
+			}
+			writer.flush();
+			return true;
+		} catch (IOException e) {
+			L.e(e, LOG_JOURNAL_WRITE_FAILED, cacheDir);
+			return false;
+		} finally {
+			IoUtils.closeSilently(writer);
+		}
+	}
+
+	/** @return <b>true</b> - if records were appended to <b>file</b> */
+	private boolean appendRecords(File file, List<String> records) {
+		if (records.isEmpty()) return true;
+
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), CHARSET));
+			for (String record : records) {
+				writer.write(record);
+			}
+			writer.flush();
+			return true;
+		} catch (IOException e) {
+			L.e(e, LOG_JOURNAL_WRITE_FAILED, cacheDir);
+			return false;
+		} finally {
+			IoUtils.closeSilently(writer);
+		}
+	}
+
+	private void openJournal() {
+		try {
+			journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), CHARSET));
+		} catch (IOException e) {
+			L.e(e, LOG_JOURNAL_WRITE_FAILED, cacheDir);
+			journalWriter = null;
+		}
+	}
+
+	private void closeJournal() {
+		if (journalWriter != null) {
+			IoUtils.closeSilently(journalWriter);
+			journalWriter = null;
+		}
+	}
+
+	/**
+	 * Appends record to journal and to records of journal which is rebuilt at this moment. Must be called under lock.
+	 *
+	 * @param fileSize Size of file for {@link #PUT} record, ignored for other records
+	 */
+	private void writeRecord(char type, String fileName, long fileSize) {
+		if (journalWriter == null && pendingRecords == null) return;
+
+		String record = formatRecord(type, fileName, fileSize);
+		if (pendingRecords != null) {
+			pendingRecords.add(record);
+		}
+		if (journalWriter == null) return;
+		try {
+			journalWriter.write(record);
+		} catch (IOException e) {
+			onJournalWriteFailed(e);
+		}
+	}
+
+	private static String formatRecord(char type, String fileName, long fileSize) {
+		StringBuilder sb = new StringBuilder(fileName.length() + 24);
+		sb.append(type).append(' ').append(fileName);
+		if (type == PUT) {
+			sb.append(' ').append(fileSize);
+		}
+		return sb.append('\n').toString();
+	}
+
+	private void flushJournal() {
+		if (journalWriter == null) return;
+		try {
+			journalWriter.flush();
+		} catch (IOException e) {
+			onJournalWriteFailed(e);
+		}
+	}
+
+	/** Journal which lost records is deleted, so cache directory is scanned on next start */
+	private void onJournalWriteFailed(IOException e) {
+		L.e(e, LOG_JOURNAL_WRITE_FAILED, cacheDir);
+		closeJournal();
+		journalFile.delete();
+	}
+}
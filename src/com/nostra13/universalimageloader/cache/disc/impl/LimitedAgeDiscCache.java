@@ -15,32 +15,53 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.cache.disc.impl;
 
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
 import com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.core.assist.TimerWheel;
+import com.nostra13.universalimageloader.core.assist.TimerWheel.Timer;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Cache which deletes files which were loaded more than defined time. Cache size is unlimited.
+ * Cache which deletes files which were loaded more than defined time. Cache size is unlimited.<br />
+ * Expired files are deleted proactively (in batches, by {@link TimerWheel} thread), so loading threads don't check file
+ * ages and don't delete files. Files which were cached before cache creation are scheduled for expiration by their
+ * modification dates in background.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseDiscCache
+ * @see TimerWheel
  * @since 1.3.1
  */
 public class LimitedAgeDiscCache extends BaseDiscCache {
 
 	private final long maxFileAge;
 
-	private final Map<File, Long> loadingDates = Collections.synchronizedMap(new HashMap<File, Long>());
+	private final TimerWheel timerWheel;
+	private final ConcurrentHashMap<File, Timer<File>> timers = new ConcurrentHashMap<File, Timer<File>>();
+	/** Whether existing files were scheduled for expiration */
+	private volatile boolean scanned;
+
+	private final TimerWheel.ExpirationListener<File> expirationListener = new TimerWheel.ExpirationListener<File>() {
+		@Override
+		public void onExpired(List<Timer<File>> expired) {
+			for (Timer<File> timer : expired) {
+				File file = timer.getKey();
+				if (timers.remove(file, timer) && file.delete()) {
+					getStatsCounter().recordEviction(EvictionCause.EXPIRED, 0);
+				}
+			}
+		}
+	};
 
 	/**
 	 * @param cacheDir Directory for file caching
-	 * @param maxAge   Max file age (in seconds). If file age will exceed this value then it'll be removed on next
-	 *                 treatment (and therefore be reloaded).
+	 * @param maxAge   Max file age (in seconds). If file age will exceed this value then it'll be removed (and
+	 *                 therefore be reloaded).
 	 */
 	public LimitedAgeDiscCache(File cacheDir, long maxAge) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), maxAge);
@@ -49,41 +70,120 @@ public class LimitedAgeDiscCache extends BaseDiscCache {
 	/**
 	 * @param cacheDir          Directory for file caching
 	 * @param fileNameGenerator Name generator for cached files
-	 * @param maxAge            Max file age (in seconds). If file age will exceed this value then it'll be removed on next
-	 *                          treatment (and therefore be reloaded).
+	 * @param maxAge            Max file age (in seconds). If file age will exceed this value then it'll be removed (and
+	 *                          therefore be reloaded).
 	 */
 	public LimitedAgeDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxAge) {
+		this(cacheDir, fileNameGenerator, maxAge, TimerWheel.getDefault());
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param maxAge            Max file age (in seconds). If file age will exceed this value then it'll be removed (and
+	 *                          therefore be reloaded).
+	 * @param timerWheel        Timer wheel which expires cached files
+	 */
+	public LimitedAgeDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxAge, TimerWheel timerWheel) {
 		super(cacheDir, fileNameGenerator);
 		this.maxFileAge = maxAge * 1000; // to milliseconds
+		this.timerWheel = timerWheel;
+		timerWheel.execute(new Runnable() {
+			@Override
+			public void run() {
+				scheduleCachedFiles();
+			}
+		});
+	}
+
+	/** Schedules expiration of files which are in cache directory already. Runs on timer wheel thread. */
+	private void scheduleCachedFiles() {
+		for (File file : listCachedFiles()) {
+			if (!timers.containsKey(file)) {
+				schedule(file, file.lastModified(), true);
+			}
+		}
+		scanned = true;
+	}
+
+	private void schedule(File file, long loadingDate, boolean onlyIfAbsent) {
+		Timer<File> timer = timerWheel.schedule(file, loadingDate + maxFileAge, expirationListener);
+		if (onlyIfAbsent) {
+			if (timers.putIfAbsent(file, timer) != null) { // file was put concurrently
+				timerWheel.cancel(timer);
+			}
+		} else {
+			timerWheel.cancel(timers.put(file, timer));
+		}
 	}
 
 	@Override
 	public void put(String key, File file) {
 		long currentTime = System.currentTimeMillis();
 		file.setLastModified(currentTime);
-		loadingDates.put(file, currentTime);
+		schedule(file, currentTime, false);
+		recordPut(key);
+		getStatsCounter().recordSize(timers.size());
+	}
+
+	@Override
+	protected boolean isPutRecorded() {
+		return true;
 	}
 
 	@Override
 	public File get(String key) {
-		File file = super.get(key);
-		if (file.exists()) {
-			boolean cached;
-			Long loadingDate = loadingDates.get(file);
-			if (loadingDate == null) {
-				cached = false;
-				loadingDate = file.lastModified();
+		File file = getFile(key);
+		boolean cached = false;
+		Timer<File> timer = timers.get(file);
+		if (timer != null) {
+			// Timer wheel deletes files with up to 1 second delay
+			if (System.currentTimeMillis() > timer.getExpirationTime() && timers.remove(file, timer)) {
+				timerWheel.cancel(timer);
+				file.delete();
+				getStatsCounter().recordEviction(EvictionCause.EXPIRED, 0);
 			} else {
-				cached = true;
+				cached = true; // scheduled file is cached, deleted files are unscheduled
 			}
-
+		} else if (!scanned && mightContain(key) && file.exists()) { // cached files aren't scheduled yet
+			long loadingDate = file.lastModified();
 			if (System.currentTimeMillis() - loadingDate > maxFileAge) {
 				file.delete();
-				loadingDates.remove(file);
-			} else if (!cached) {
-				loadingDates.put(file, loadingDate);
+				getStatsCounter().recordEviction(EvictionCause.EXPIRED, 0);
+			} else {
+				schedule(file, loadingDate, true);
+				cached = true;
 			}
 		}
+
+		if (cached) {
+			getStatsCounter().recordHit();
+		} else {
+			getStatsCounter().recordMiss();
+		}
 		return file;
 	}
-}
\ No newline at end of file
+
+	/** Returns count of files which are scheduled for expiration */
+	@Override
+	protected long getCacheSize() {
+		return timers.size();
+	}
+
+	@Override
+	public boolean remove(String key) {
+		Timer<File> timer = timers.remove(getFile(key));
+		if (timer != null) {
+			timerWheel.cancel(timer);
+		}
+		return super.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		for (File file : timers.keySet()) {
+			timerWheel.cancel(timers.remove(file));
+		}
+		super.clear();
+	}
+}
@@ -0,0 +1,736 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.impl;
+
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
+import com.nostra13.universalimageloader.cache.disc.BlobDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.CountingDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+import com.nostra13.universalimageloader.cache.disc.InvalidatableDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.MetadataDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.MetadataStore;
+import com.nostra13.universalimageloader.cache.disc.PresenceDiscCacheAware;
+import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.utils.DiscCacheUtils;
+import com.nostra13.universalimageloader.utils.IoUtils;
+import com.nostra13.universalimageloader.utils.L;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Decorator. Packs small images (e.g. thumbnails) into large segment files instead of keeping every image in separate
+ * file, so cached thumbnails don't cost an inode and an open/close each. Images which are larger than
+ * {@code maxBlobSize} are put into wrapped disc cache as usual.<br />
+ * <br />
+ * Segments are memory-mapped. Images are appended into the newest segment and are read from slices of its mapping
+ * without any system calls. Offsets of packed images are kept in memory; they are restored from segment headers on
+ * start (in background). Evicted and replaced images are only marked dead in place, their space is reclaimed by
+ * background compaction which moves live images out of mostly dead segments and deletes these segments.<br />
+ * <br />
+ * Packed images are evicted in LRU order when their total size exceeds {@code maxPackedSize}. Usage order isn't
+ * persisted, after restart images are evicted in order of packing.<br />
+ * <br />
+ * {@linkplain EntryMetadata Metadata} of packed images is kept in pack directory, metadata of other images is kept by
+ * wrapped cache (if it's {@link MetadataDiscCacheAware}).<br />
+ * <br />
+ * <b>NOTE:</b> {@link #get(String)} returns non-existing file for packed image, use {@link #containsBlob(String)} and
+ * {@link #openBlob(String)} for such images (image loader does it itself).
+ *
+ * @see BlobDiscCacheAware
+ * @since 1.9.2
+ */
+public class PackFileDiscCache implements BlobDiscCacheAware, MetadataDiscCacheAware, PresenceDiscCacheAware,
+		InvalidatableDiscCacheAware, CountingDiscCacheAware, CacheStatsAware {
+
+	/** Name of directory for segment files (in cache directory) */
+	public static final String PACK_DIR_NAME = ".packs";
+	public static final int DEFAULT_MAX_BLOB_SIZE = 64 * 1024; // 64 Kb
+
+	private static final int SEGMENT_SIZE = 4 * 1024 * 1024; // 4 Mb
+	private static final String SEGMENT_FILE_PREFIX = "segment-";
+	private static final String SEGMENT_FILE_SUFFIX = ".pack";
+	private static final String METADATA_FILE_NAME = "metadata";
+	/** Record header: key length (negative if record is dead, 0 marks end of records) and data length */
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final String KEY_CHARSET = "UTF-8";
+	/** Segment is compacted when at least this part of its records is dead */
+	private static final float COMPACTION_DEAD_RATIO = 0.5f;
+
+	private static final String LOG_SEGMENT_OPEN_FAILED = "Can't open segment of pack file disc cache [%s]";
+	private static final String LOG_SEGMENT_BROKEN = "Segment of pack file disc cache is broken at %d, the rest of it is ignored [%s]";
+
+	private final DiscCacheAware fileCache;
+	private final File packDir;
+	private final int maxBlobSize;
+	private final long maxPackedSize;
+	private final Executor maintenanceExecutor;
+	private final StatsCounter statsCounter = new StatsCounter();
+	private final MetadataStore metadataStore;
+
+	/** Packed images by keys in access order (the least recently used is first). Guarded by this. */
+	private final LinkedHashMap<String, Blob> blobs = new LinkedHashMap<String, Blob>(0, 0.75f, true);
+	/** Segments by ids, the last one is active (appended). Guarded by this. */
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	/** Guarded by this */
+	private long packedSize;
+	/** Guarded by this */
+	private boolean initialized;
+	/** Guarded by this */
+	private boolean compactionScheduled;
+
+	private final Runnable initializationTask = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (PackFileDiscCache.this) {
+				ensureInitialized();
+			}
+		}
+	};
+
+	private final Runnable compactionTask = new Runnable() {
+		@Override
+		public void run() {
+			compact();
+		}
+	};
+
+	/**
+	 * Background work is run by maintenance executor of wrapped cache if it has one.
+	 *
+	 * @param fileCache     Disc cache for images which aren't packed (large images)
+	 * @param cacheDir      Cache directory; segment files are kept in its {@value #PACK_DIR_NAME} subdirectory
+	 * @param maxPackedSize Maximum total size of packed images (in bytes); <b>0</b> - size is unlimited
+	 */
+	public PackFileDiscCache(DiscCacheAware fileCache, File cacheDir, long maxPackedSize) {
+		this(fileCache, new File(cacheDir, PACK_DIR_NAME), DEFAULT_MAX_BLOB_SIZE, maxPackedSize,
+				DefaultConfigurationFactory.getMaintenanceExecutor(fileCache));
+	}
+
+	/**
+	 * @param fileCache           Disc cache for images which aren't packed (large images)
+	 * @param packDir             Directory for segment files. If it's in directory of wrapped cache then its name
+	 *                            should start with "." so wrapped cache doesn't count segments as cached images.
+	 * @param maxBlobSize         Maximum size of packed image (in bytes); larger images are put into wrapped cache
+	 * @param maxPackedSize       Maximum total size of packed images (in bytes); <b>0</b> - size is unlimited
+	 * @param maintenanceExecutor Executor for loading of segments and for background compaction
+	 */
+	public PackFileDiscCache(DiscCacheAware fileCache, File packDir, int maxBlobSize, long maxPackedSize,
+			Executor maintenanceExecutor) {
+		if (maxBlobSize <= 0 || maxBlobSize > SEGMENT_SIZE / 4) {
+			throw new IllegalArgumentException("maxBlobSize must be in range (0, " + SEGMENT_SIZE / 4 + "]");
+		}
+		if (maxPackedSize < 0) {
+			throw new IllegalArgumentException("maxPackedSize < 0");
+		}
+		this.fileCache = fileCache;
+		this.packDir = packDir;
+		this.maxBlobSize = maxBlobSize;
+		this.maxPackedSize = maxPackedSize;
+		this.maintenanceExecutor = maintenanceExecutor;
+		metadataStore = new MetadataStore(new File(packDir, METADATA_FILE_NAME), maintenanceExecutor,
+				new MetadataStore.EntryChecker() {
+					@Override
+					public boolean isCached(String key) {
+						return isPacked(key);
+					}
+				});
+		maintenanceExecutor.execute(initializationTask);
+	}
+
+	@Override
+	public void put(String key, File file) {
+		long fileSize = file.length();
+		boolean packed = false;
+		if (fileSize > 0 && fileSize <= maxBlobSize) {
+			try {
+				byte[] data = readFile(file, (int) fileSize);
+				synchronized (this) {
+					ensureInitialized();
+					packed = append(key, data, 0, data.length);
+					if (packed) {
+						statsCounter.recordPut();
+						trimToSize();
+						statsCounter.recordSize(packedSize);
+						scheduleCompactionIfRequired(); // replaced and evicted records are dead
+					}
+				}
+			} catch (IOException e) {
+				L.e(e);
+			}
+		}
+
+		if (packed) {
+			file.delete();
+		} else {
+			removeBlob(key); // previous version could be small
+			fileCache.put(key, file);
+		}
+	}
+
+	/**
+	 * Returns file of image in wrapped cache. File doesn't exist if image is {@linkplain #containsBlob(String) packed}.
+	 * Request of packed image is counted as hit here, other requests are counted by wrapped cache.
+	 */
+	@Override
+	public File get(String key) {
+		boolean packed;
+		synchronized (this) {
+			ensureInitialized();
+			packed = blobs.containsKey(key); // usage order is changed on reading
+		}
+		if (packed) {
+			statsCounter.recordHit();
+			return getFile(key);
+		}
+		return fileCache.get(key);
+	}
+
+	@Override
+	public File getFile(String key) {
+		return DiscCacheUtils.getFile(key, fileCache);
+	}
+
+	@Override
+	public boolean containsBlob(String key) {
+		synchronized (this) {
+			ensureInitialized();
+			return blobs.containsKey(key);
+		}
+	}
+
+	/** Until segments are loaded every image is considered as possibly cached */
+	@Override
+	public boolean mightContain(String key) {
+		synchronized (this) {
+			if (!initialized || blobs.containsKey(key)) return true;
+		}
+		return !(fileCache instanceof PresenceDiscCacheAware) || ((PresenceDiscCacheAware) fileCache).mightContain(key);
+	}
+
+	@Override
+	public InputStream openBlob(String key) {
+		ByteBuffer data;
+		synchronized (this) {
+			ensureInitialized();
+			Blob blob = blobs.get(key);
+			if (blob == null) return null;
+			data = blob.slice();
+		}
+		return new ByteBufferInputStream(data);
+	}
+
+	@Override
+	public boolean removeBlob(String key) {
+		synchronized (this) {
+			ensureInitialized();
+			Blob blob = blobs.remove(key);
+			if (blob == null) return false;
+			kill(blob);
+			scheduleCompactionIfRequired();
+		}
+		return true;
+	}
+
+	@Override
+	public EntryMetadata getMetadata(String key) {
+		if (isPacked(key)) {
+			return metadataStore.get(key);
+		} else if (fileCache instanceof MetadataDiscCacheAware) {
+			return ((MetadataDiscCacheAware) fileCache).getMetadata(key);
+		}
+		return null;
+	}
+
+	@Override
+	public void putMetadata(String key, EntryMetadata metadata) {
+		if (isPacked(key)) {
+			metadataStore.put(key, metadata);
+		} else if (fileCache instanceof MetadataDiscCacheAware) {
+			((MetadataDiscCacheAware) fileCache).putMetadata(key, metadata);
+		}
+	}
+
+	/** Returns <b>true</b> if image is packed (without recording of cache hit) */
+	private synchronized boolean isPacked(String key) {
+		ensureInitialized();
+		return blobs.containsKey(key);
+	}
+
+	@Override
+	public void invalidateByPrefix(final String keyPrefix) {
+		invalidate(new KeyFilter() {
+			@Override
+			public boolean accept(String key) {
+				return key.startsWith(keyPrefix);
+			}
+		});
+	}
+
+	/** Packed images are invalidated in background, wrapped cache invalidates its images itself (if it can) */
+	@Override
+	public void invalidate(final KeyFilter filter) {
+		maintenanceExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				List<String> keys;
+				synchronized (PackFileDiscCache.this) {
+					ensureInitialized();
+					keys = new ArrayList<String>(blobs.keySet());
+				}
+				for (String key : keys) {
+					if (filter.accept(key)) {
+						removeBlob(key);
+						metadataStore.remove(key);
+					}
+				}
+			}
+		});
+		if (fileCache instanceof InvalidatableDiscCacheAware) {
+			((InvalidatableDiscCacheAware) fileCache).invalidate(filter);
+		}
+	}
+
+	/** Returns executor of background work of cache, so helpers of cache needn't start their own threads */
+	public Executor getMaintenanceExecutor() {
+		return maintenanceExecutor;
+	}
+
+	@Override
+	public boolean remove(String key) {
+		boolean removed = removeBlob(key);
+		metadataStore.remove(key);
+		if (fileCache instanceof InvalidatableDiscCacheAware) {
+			return ((InvalidatableDiscCacheAware) fileCache).remove(key) || removed;
+		}
+		return getFile(key).delete() || removed;
+	}
+
+	@Override
+	public void clear() {
+		metadataStore.clear();
+		synchronized (this) {
+			blobs.clear();
+			for (Segment segment : segments.values()) {
+				segment.file.delete();
+			}
+			segments.clear();
+			packedSize = 0;
+			initialized = true; // nothing to load anymore
+		}
+		fileCache.clear();
+	}
+
+	@Override
+	public CacheStats getStats() {
+		long size;
+		synchronized (this) {
+			size = packedSize;
+		}
+		CacheStats stats = statsCounter.snapshot(size);
+		if (fileCache instanceof CacheStatsAware) {
+			stats = stats.plus(((CacheStatsAware) fileCache).getStats());
+		}
+		return stats;
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		statsCounter.recordLoad(loadTime);
+	}
+
+	/** Loads segments and restores offsets of packed images. Must be called under lock. */
+	private void ensureInitialized() {
+		if (initialized) return;
+		initialized = true;
+
+		String[] fileNames = packDir.list();
+		if (fileNames != null) {
+			for (String fileName : fileNames) {
+				if (fileName.startsWith(SEGMENT_FILE_PREFIX) && fileName.endsWith(SEGMENT_FILE_SUFFIX)) {
+					try {
+						int id = Integer.parseInt(fileName.substring(SEGMENT_FILE_PREFIX.length(),
+								fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+						Segment segment = openSegment(id, false);
+						if (segment != null) {
+							segments.put(id, segment);
+						}
+					} catch (NumberFormatException e) {
+						new File(packDir, fileName).delete();
+					}
+				}
+			}
+		}
+		for (Segment segment : segments.values()) { // in order of ids, later records override earlier
+			replay(segment);
+		}
+		trimToSize();
+		statsCounter.recordSize(packedSize);
+		scheduleCompactionIfRequired();
+	}
+
+	/** Restores packed images from segment headers. Must be called under lock. */
+	private void replay(Segment segment) {
+		ByteBuffer buffer = segment.buffer;
+		int position = 0;
+		while (position + RECORD_HEADER_SIZE <= SEGMENT_SIZE) {
+			int keyLength = buffer.getInt(position);
+			if (keyLength == 0) break; // end of records
+
+			int dataLength = buffer.getInt(position + 4);
+			int absKeyLength = Math.abs(keyLength);
+			int dataOffset = position + RECORD_HEADER_SIZE + absKeyLength;
+			if (keyLength == Integer.MIN_VALUE || dataLength <= 0 || dataLength > SEGMENT_SIZE - dataOffset
+					|| absKeyLength > SEGMENT_SIZE - position - RECORD_HEADER_SIZE) {
+				L.w(LOG_SEGMENT_BROKEN, position, segment.file.getName());
+				break; // torn write, the rest of segment is never appended
+			}
+
+			if (keyLength > 0) {
+				String key = readKey(buffer, position + RECORD_HEADER_SIZE, keyLength);
+				Blob blob = new Blob(segment, position, dataOffset, dataLength);
+				Blob previous = blobs.put(key, blob);
+				if (previous != null) {
+					kill(previous);
+				}
+				segment.liveBytes += blob.getRecordSize();
+				packedSize += dataLength;
+			}
+			position = dataOffset + dataLength;
+		}
+		segment.writePosition = position;
+	}
+
+	/**
+	 * Appends image into active segment (new segment is created if active one is full). Must be called under lock.
+	 *
+	 * @return <b>true</b> - if image was packed; <b>false</b> - if segment couldn't be created
+	 */
+	private boolean append(String key, byte[] data, int offset, int length) {
+		byte[] keyBytes = getKeyBytes(key);
+		int recordSize = RECORD_HEADER_SIZE + keyBytes.length + length;
+		if (recordSize > SEGMENT_SIZE) return false;
+
+		Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+		if (segment == null || segment.writePosition + recordSize > SEGMENT_SIZE) {
+			int id = segment == null ? 0 : segment.id + 1;
+			segment = openSegment(id, true);
+			if (segment == null) return false;
+			segments.put(id, segment);
+		}
+
+		int position = segment.writePosition;
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(position + RECORD_HEADER_SIZE);
+		buffer.put(keyBytes);
+		buffer.put(data, offset, length);
+		buffer.putInt(position + 4, length);
+		buffer.putInt(position, keyBytes.length); // record becomes valid when key length is written
+		segment.writePosition = position + recordSize;
+		segment.liveBytes += recordSize;
+
+		Blob blob = new Blob(segment, position, position + RECORD_HEADER_SIZE + keyBytes.length, length);
+		Blob previous = blobs.put(key, blob);
+		if (previous != null) {
+			kill(previous);
+		}
+		packedSize += length;
+		return true;
+	}
+
+	/** Marks record of removed blob as dead. Must be called under lock. */
+	private void kill(Blob blob) {
+		blob.dead = true;
+		Segment segment = blob.segment;
+		int keyLength = segment.buffer.getInt(blob.recordOffset);
+		if (keyLength > 0) {
+			segment.buffer.putInt(blob.recordOffset, -keyLength);
+		}
+		segment.liveBytes -= blob.getRecordSize();
+		packedSize -= blob.length;
+	}
+
+	/** Evicts the least recently used images while packed size exceeds limit. Must be called under lock. */
+	private void trimToSize() {
+		if (maxPackedSize == 0) return;
+
+		Iterator<Map.Entry<String, Blob>> it = blobs.entrySet().iterator();
+		while (packedSize > maxPackedSize && it.hasNext()) {
+			Blob blob = it.next().getValue();
+			it.remove();
+			kill(blob);
+			statsCounter.recordEviction(EvictionCause.SIZE, blob.length);
+		}
+	}
+
+	/** Must be called under lock */
+	private void scheduleCompactionIfRequired() {
+		if (!compactionScheduled && findSegmentForCompaction() != null) {
+			compactionScheduled = true;
+			maintenanceExecutor.execute(compactionTask);
+		}
+	}
+
+	/** Returns sealed segment which has enough dead records or <b>null</b>. Must be called under lock. */
+	private Segment findSegmentForCompaction() {
+		Segment active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+		for (Segment segment : segments.values()) {
+			if (segment != active && segment.liveBytes <= segment.writePosition * (1 - COMPACTION_DEAD_RATIO)) {
+				return segment;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Moves live images out of mostly dead segments and deletes these segments. Images are read from segment without
+	 * lock (written records are never changed), only appending of read images and replacing of their index entries are
+	 * done under lock. Images which were removed or replaced meanwhile aren't moved. Streams which read moved images
+	 * stay valid because mapping of deleted segment lives while it's referenced.
+	 */
+	private void compact() {
+		while (true) {
+			Segment segment;
+			List<String> keys = new ArrayList<String>();
+			List<Blob> liveBlobs = new ArrayList<Blob>();
+			synchronized (this) {
+				segment = findSegmentForCompaction();
+				if (segment == null) {
+					compactionScheduled = false;
+					return;
+				}
+				for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+					if (entry.getValue().segment == segment) {
+						keys.add(entry.getKey());
+						liveBlobs.add(entry.getValue());
+					}
+				}
+			}
+
+			List<byte[]> liveData = new ArrayList<byte[]>(liveBlobs.size());
+			for (Blob blob : liveBlobs) {
+				byte[] data = new byte[blob.length];
+				blob.slice().get(data);
+				liveData.add(data);
+			}
+
+			synchronized (this) {
+				if (segments.get(segment.id) != segment) continue; // cache was cleared
+
+				for (int i = 0; i < liveBlobs.size(); i++) {
+					if (liveBlobs.get(i).dead) continue; // removed or replaced during copying
+					byte[] data = liveData.get(i);
+					if (!append(keys.get(i), data, 0, data.length)) { // replaces blob and kills old record
+						compactionScheduled = false;
+						return;
+					}
+				}
+				segments.remove(segment.id);
+				segment.file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Opens and maps segment file
+	 *
+	 * @param create Whether new segment should be created
+	 * @return Segment or <b>null</b> if segment can't be opened
+	 */
+	private Segment openSegment(int id, boolean create) {
+		File file = new File(packDir, SEGMENT_FILE_PREFIX + id + SEGMENT_FILE_SUFFIX);
+		if (create) {
+			if (!packDir.exists() && !packDir.mkdirs()) {
+				L.w(LOG_SEGMENT_OPEN_FAILED, file.getName());
+				return null;
+			}
+			file.delete();
+		} else if (file.length() != SEGMENT_SIZE) {
+			file.delete(); // wasn't created completely
+			return null;
+		}
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			if (create) {
+				raf.setLength(SEGMENT_SIZE); // filled by zeros, i.e. "end of records"
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+			return new Segment(id, file, buffer); // mapping stays valid after file is closed
+		} catch (IOException e) {
+			L.e(e);
+			L.w(LOG_SEGMENT_OPEN_FAILED, file.getName());
+			file.delete();
+			return null;
+		} finally {
+			IoUtils.closeSilently(raf);
+		}
+	}
+
+	private static byte[] readFile(File file, int length) throws IOException {
+		byte[] data = new byte[length];
+		InputStream is = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < length) {
+				int count = is.read(data, read, length - read);
+				if (count == -1) {
+					throw new IOException("File was truncated while reading: " + file);
+				}
+				read += count;
+			}
+		} finally {
+			IoUtils.closeSilently(is);
+		}
+		return data;
+	}
+
+	private static byte[] getKeyBytes(String key) {
+		try {
+			return key.getBytes(KEY_CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e); // UTF-8 is always supported
+		}
+	}
+
+	private static String readKey(ByteBuffer buffer, int offset, int length) {
+		byte[] keyBytes = new byte[length];
+		ByteBuffer source = buffer.duplicate();
+		source.position(offset);
+		source.get(keyBytes);
+		try {
+			return new String(keyBytes, KEY_CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/** Memory-mapped segment file */
+	private static final class Segment {
+		final int id;
+		final File file;
+		final MappedByteBuffer buffer;
+		/** End of written records */
+		int writePosition;
+		/** Total size of live records */
+		int liveBytes;
+
+		Segment(int id, File file, MappedByteBuffer buffer) {
+			this.id = id;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	/** Location of packed image */
+	private static final class Blob {
+		final Segment segment;
+		final int recordOffset;
+		final int dataOffset;
+		final int length;
+		/** Whether record was killed (blob was removed or replaced). Guarded by cache lock. */
+		boolean dead;
+
+		Blob(Segment segment, int recordOffset, int dataOffset, int length) {
+			this.segment = segment;
+			this.recordOffset = recordOffset;
+			this.dataOffset = dataOffset;
+			this.length = length;
+		}
+
+		int getRecordSize() {
+			return dataOffset - recordOffset + length;
+		}
+
+		/** Returns read-only view of image data; data of written record is never changed */
+		ByteBuffer slice() {
+			ByteBuffer data = segment.buffer.asReadOnlyBuffer();
+			data.position(dataOffset);
+			data.limit(dataOffset + length);
+			return data.slice();
+		}
+	}
+
+	/** Reads buffer (slice of mapped segment). Supports mark and reset. */
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+			buffer.mark(); // reset() without mark() returns to start
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) return 0;
+			if (!buffer.hasRemaining()) return -1;
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readLimit) {
+			buffer.mark();
+		}
+
+		@Override
+		public synchronized void reset() {
+			buffer.reset();
+		}
+	}
+}
@@ -41,10 +41,15 @@ public class TotalSizeLimitedDiscCache extends LimitedDiscCache {
 	 * @param maxCacheSize Maximum cache directory size (in bytes). If cache size exceeds this limit then file with the
 	 *                     most oldest last usage date will be deleted.
 	 */
-	public TotalSizeLimitedDiscCache(File cacheDir, int maxCacheSize) {
+	public TotalSizeLimitedDiscCache(File cacheDir, long maxCacheSize) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), maxCacheSize);
 	}
 
+	/** Kept for binary compatibility, see {@link #TotalSizeLimitedDiscCache(File, long)} */
+	public TotalSizeLimitedDiscCache(File cacheDir, int maxCacheSize) {
+		this(cacheDir, (long) maxCacheSize);
+	}
+
 	/**
 	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
 	 *                          needed for right cache limit work.
@@ -52,15 +57,65 @@ public class TotalSizeLimitedDiscCache extends LimitedDiscCache {
 	 * @param maxCacheSize      Maximum cache directory size (in bytes). If cache size exceeds this limit then file with the
 	 *                          most oldest last usage date will be deleted.
 	 */
+	public TotalSizeLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxCacheSize) {
+		this(cacheDir, fileNameGenerator, maxCacheSize, DEFAULT_LOW_WATERMARK);
+	}
+
+	/** Kept for binary compatibility, see {@link #TotalSizeLimitedDiscCache(File, FileNameGenerator, long)} */
 	public TotalSizeLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int maxCacheSize) {
-		super(cacheDir, fileNameGenerator, maxCacheSize);
+		this(cacheDir, fileNameGenerator, (long) maxCacheSize);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's
+	 *                          needed for right cache limit work.
+	 * @param fileNameGenerator Name generator for cached files
+	 * @param maxCacheSize      Maximum cache directory size (in bytes). If cache size exceeds this limit then files with
+	 *                          the most oldest last usage dates will be deleted.
+	 * @param lowWatermark      Part of size limit (0..1] which cache is reduced to when it exceeds its limit
+	 */
+	public TotalSizeLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxCacheSize,
+			float lowWatermark) {
+		this(cacheDir, fileNameGenerator, maxCacheSize, lowWatermark, false);
+	}
+
+	/**
+	 * @param cacheDir             Directory for file caching. <b>Important:</b> Specify separate folder for cached
+	 *                             files. It's needed for right cache limit work.
+	 * @param fileNameGenerator    Name generator for cached files
+	 * @param maxCacheSize         Maximum cache directory size (in bytes). If cache size exceeds this limit then files
+	 *                             with the most oldest last usage dates will be deleted.
+	 * @param lowWatermark         Part of size limit (0..1] which cache is reduced to when it exceeds its limit
+	 * @param countAllocatedBlocks <b>true</b> - size of file is counted as size of file system blocks which it
+	 *                             occupies, so limit matches real disc usage; <b>false</b> - file length is counted
+	 */
+	public TotalSizeLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxCacheSize,
+			float lowWatermark, boolean countAllocatedBlocks) {
+		this(cacheDir, fileNameGenerator, maxCacheSize, lowWatermark, countAllocatedBlocks, false);
+	}
+
+	/**
+	 * @param cacheDir             Directory for file caching. <b>Important:</b> Specify separate folder for cached
+	 *                             files. It's needed for right cache limit work.
+	 * @param fileNameGenerator    Name generator for cached files
+	 * @param maxCacheSize         Maximum cache directory size (in bytes). If cache size exceeds this limit then files
+	 *                             with the most oldest last usage dates will be deleted.
+	 * @param lowWatermark         Part of size limit (0..1] which cache is reduced to when it exceeds its limit
+	 * @param countAllocatedBlocks <b>true</b> - size of file is counted as size of file system blocks which it
+	 *                             occupies, so limit matches real disc usage; <b>false</b> - file length is counted
+	 * @param cacheDirDedicated    <b>true</b> - nothing but files of this cache is kept in cache directory, so it's
+	 *                             sharded and is cleared as a whole
+	 */
+	public TotalSizeLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxCacheSize,
+			float lowWatermark, boolean countAllocatedBlocks, boolean cacheDirDedicated) {
+		super(cacheDir, fileNameGenerator, maxCacheSize, lowWatermark, countAllocatedBlocks, cacheDirDedicated);
 		if (maxCacheSize < MIN_NORMAL_CACHE_SIZE) {
 			L.w("You set too small disc cache size (less than %1$d Mb)", MIN_NORMAL_CACHE_SIZE_IN_MB);
 		}
 	}
 
 	@Override
-	protected int getSize(File file) {
-		return (int) file.length();
+	protected long getEntrySize(File file) {
+		return getAllocatedSize(file);
 	}
 }
@@ -37,5 +37,13 @@ public class UnlimitedDiscCache extends BaseDiscCache
 
 	@Override
 	public void put(String key, File file)
-	{}
+	{
+		recordPut(key);
+	}
+
+	@Override
+	protected boolean isPutRecorded()
+	{
+		return true;
+	}
 }
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.naming;
+
+import java.io.File;
+
+/**
+ * Decorator for {@link FileNameGenerator}. Spreads cached files over two levels of subdirectories (16 x 16) which are
+ * derived from hash of generated file name, e.g. <b>3/a/1234567</b>. So cache directory and its subdirectories stay
+ * small, and file lookup doesn't slow down when cache contains hundreds of thousands of files.<br />
+ * Files of existing flat cache directory are moved into subdirectories by
+ * {@link com.nostra13.universalimageloader.cache.disc.BaseDiscCache BaseDiscCache} in background. Cache directory
+ * which is shared with other components isn't sharded: its files can't be told apart from foreign ones.
+ *
+ * @since 1.9.2
+ */
+public class ShardedFileNameGenerator implements FileNameGenerator {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final FileNameGenerator wrappedGenerator;
+
+	public ShardedFileNameGenerator(FileNameGenerator wrappedGenerator) {
+		this.wrappedGenerator = wrappedGenerator;
+	}
+
+	@Override
+	public String generate(String imageUri) {
+		return getShardedPath(wrappedGenerator.generate(imageUri));
+	}
+
+	/** Returns generator of file names which are spread over subdirectories */
+	public FileNameGenerator getWrappedGenerator() {
+		return wrappedGenerator;
+	}
+
+	/** Returns <b>true</b> if name can be name of subdirectory of sharded layout */
+	public static boolean isShardName(String name) {
+		return name.length() == 1 && Character.digit(name.charAt(0), 16) >= 0;
+	}
+
+	/** Returns path of file (relative to cache directory) in sharded layout */
+	public static String getShardedPath(String fileName) {
+		int h = fileName.hashCode();
+		h ^= h >>> 16;
+		return new StringBuilder(fileName.length() + 4).append(HEX_DIGITS[(h >>> 4) & 0xf]).append(File.separatorChar)
+				.append(HEX_DIGITS[h & 0xf]).append(File.separatorChar).append(fileName).toString();
+	}
+}
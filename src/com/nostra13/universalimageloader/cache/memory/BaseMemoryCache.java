@@ -15,23 +15,50 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.cache.memory;
 
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
+
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Base memory cache. Implements common functionality for memory cache. Provides object references (
- * {@linkplain Reference not strong}) storing.
+ * {@linkplain Reference not strong}) storing. References are registered in {@link ReferenceQueue} so entries which
+ * were cleared by GC are purged during cache operations.<br />
+ * Collects {@linkplain CacheStats statistics}; size of cache is count of entries unless subclass
+ * {@linkplain #getCacheSize() defines} other measure.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.0.0
  */
-public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V> {
+public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V>, CacheStatsAware {
 
 	/** Stores not strong references to objects */
 	private final Map<K, Reference<V>> softMap = Collections.synchronizedMap(new HashMap<K, Reference<V>>());
+	/** Keys of stored references, used to purge cleared references. Guarded by {@link #softMap}. */
+	private final Map<Reference<V>, K> referenceKeys = new HashMap<Reference<V>, K>();
+	private final ReferenceQueue<V> referenceQueue = new ReferenceQueue<V>();
+	private final AtomicLong purgedCount = new AtomicLong();
+	private final StatsCounter statsCounter = new StatsCounter();
 
 	@Override
 	public V get(K key) {
+		V result = peek(key);
+		if (result == null) {
+			statsCounter.recordMiss();
+		} else {
+			statsCounter.recordHit();
+		}
+		return result;
+	}
+
+	/** Returns cached value without recording of cache hit or miss */
+	protected final V peek(K key) {
+		purgeClearedReferences();
 		V result = null;
 		Reference<V> reference = softMap.get(key);
 		if (reference != null) {
@@ -42,17 +69,34 @@ public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 
 	@Override
 	public boolean put(K key, V value) {
-		softMap.put(key, createReference(value));
+		purgeClearedReferences();
+		Reference<V> reference = createReference(value, referenceQueue);
+		synchronized (softMap) {
+			Reference<V> previous = softMap.put(key, reference);
+			if (previous != null) {
+				referenceKeys.remove(previous);
+			}
+			referenceKeys.put(reference, key);
+		}
+		statsCounter.recordPut();
+		statsCounter.recordSize(getCacheSize());
 		return true;
 	}
 
 	@Override
 	public void remove(K key) {
-		softMap.remove(key);
+		synchronized (softMap) {
+			Reference<V> previous = softMap.remove(key);
+			if (previous != null) {
+				referenceKeys.remove(previous);
+			}
+		}
+		purgeClearedReferences();
 	}
 
 	@Override
 	public Collection<K> keys() {
+		purgeClearedReferences();
 		synchronized (softMap) {
 			return new HashSet<K>(softMap.keySet());
 		}
@@ -60,9 +104,62 @@ public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 
 	@Override
 	public void clear() {
-		softMap.clear();
+		synchronized (softMap) {
+			softMap.clear();
+			referenceKeys.clear();
+		}
+		purgeClearedReferences();
+	}
+
+	@Override
+	public CacheStats getStats() {
+		return statsCounter.snapshot(getCacheSize());
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		statsCounter.recordLoad(loadTime);
+	}
+
+	/** Returns counter of cache statistics for subclasses which record own events (e.g. evictions) */
+	protected final StatsCounter getStatsCounter() {
+		return statsCounter;
+	}
+
+	/** Returns current size of cache for {@linkplain #getStats() statistics}. Default size is count of entries. */
+	protected long getCacheSize() {
+		return softMap.size();
+	}
+
+	/** Returns count of entries which were removed from cache because their values were collected by GC */
+	public long getPurgedCount() {
+		return purgedCount.get();
+	}
+
+	/** Removes entries which values were collected by GC */
+	private void purgeClearedReferences() {
+		Reference<? extends V> reference;
+		while ((reference = referenceQueue.poll()) != null) {
+			synchronized (softMap) {
+				K key = referenceKeys.remove(reference);
+				if (key != null && softMap.get(key) == reference) {
+					softMap.remove(key);
+					purgedCount.incrementAndGet();
+					statsCounter.recordEviction(EvictionCause.COLLECTED, 0);
+				}
+			}
+		}
 	}
 
 	/** Creates {@linkplain Reference not strong} reference of value */
 	protected abstract Reference<V> createReference(V value);
+
+	/**
+	 * Creates {@linkplain Reference not strong} reference of value which is registered in incoming queue. Override this
+	 * method so entries cleared by GC are purged from cache. Default implementation returns
+	 * {@link #createReference(Object)} result (not registered reference).
+	 */
+	protected Reference<V> createReference(V value, ReferenceQueue<? super V> queue) {
+		return createReference(value);
+	}
 }
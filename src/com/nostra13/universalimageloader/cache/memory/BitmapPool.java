@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Limited pool of mutable {@link Bitmap bitmaps} which can be reused for decoding of new images (
+ * {@link android.graphics.BitmapFactory.Options#inBitmap BitmapFactory.Options.inBitmap}). Bitmaps are evicted from
+ * memory cache into this pool; bitmap which is displayed at the moment gets into pool only after it's released by all
+ * its displays.<br />
+ * <br />
+ * On KitKat and later any pooled bitmap which is big enough can be reused. On Honeycomb - Jelly Bean pooled bitmap must
+ * have the same width, height and config as decoded image and image must not be subsampled.<br />
+ * <br />
+ * Hit rate and count of bytes which weren't allocated thanks to reuse are collected.<br />
+ * <br />
+ * <b>NOTE:</b> Bitmaps which are got from memory cache or from listener callbacks (
+ * {@link com.nostra13.universalimageloader.core.listener.ImageLoadingListener#onLoadingComplete(String,
+ * android.view.View, Bitmap) onLoadingComplete(...)}) mustn't be kept after they're replaced in view if bitmap pool is
+ * used. Bitmaps which are loaded not into views (
+ * {@link com.nostra13.universalimageloader.core.ImageLoader#loadImage(String,
+ * com.nostra13.universalimageloader.core.listener.ImageLoadingListener) ImageLoader.loadImage(...)}) are never pooled.
+ *
+ * @since 1.9.2
+ */
+public class BitmapPool {
+
+	/** Pooled bitmap can be reused for image which is at least 1/{@value} of bitmap size (KitKat and later) */
+	private static final int MAX_SIZE_MULTIPLE = 4;
+
+	/** Pooled bitmaps by their sizes in bytes */
+	private final TreeMap<Integer, LinkedList<Bitmap>> bitmapsBySize = new TreeMap<Integer, LinkedList<Bitmap>>();
+	/** Pooled bitmaps in order of addition (the eldest is first) */
+	private final LinkedHashSet<Bitmap> pooled = new LinkedHashSet<Bitmap>();
+	/** Count of references (displays, in-flight tasks) of used bitmaps */
+	private final Map<Bitmap, Integer> referenceCounts = new IdentityHashMap<Bitmap, Integer>();
+	/** Bitmaps which were evicted from memory cache but still are referenced */
+	private final Map<Bitmap, Boolean> evictedReferenced = new IdentityHashMap<Bitmap, Boolean>();
+	/** Bitmaps which were given to user and mustn't be reused */
+	private final Map<Bitmap, Boolean> retained = new WeakHashMap<Bitmap, Boolean>();
+
+	private final int maxSize;
+	/** Size of pooled bitmaps in bytes */
+	private int size;
+
+	private long hitCount;
+	private long missCount;
+	private long reusedBytes;
+
+	/** @param maxSize Maximum sum of the sizes of the pooled Bitmaps */
+	public BitmapPool(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/** Returns <b>true</b> if bitmaps can be reused on this Android version */
+	public static boolean isReuseSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+	}
+
+	/**
+	 * Offers bitmap which was removed from memory cache. Bitmap is pooled at once if nobody references it, otherwise
+	 * it's pooled after the last reference is {@linkplain #release(Bitmap) released}.
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (!canBePooled(bitmap)) return;
+
+		if (referenceCounts.containsKey(bitmap)) {
+			evictedReferenced.put(bitmap, Boolean.TRUE);
+		} else {
+			addToPool(bitmap);
+		}
+	}
+
+	/**
+	 * Returns pooled bitmap which can be used as {@link android.graphics.BitmapFactory.Options#inBitmap inBitmap} for
+	 * decoding of image with passed parameters or <b>null</b> if there is no suitable bitmap. Returned bitmap is
+	 * removed from pool.
+	 *
+	 * @param width      Width of decoded image (after subsampling)
+	 * @param height     Height of decoded image (after subsampling)
+	 * @param config     Config of decoded image
+	 * @param sampleSize Sample size which is used for decoding
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config, int sampleSize) {
+		if (width <= 0 || height <= 0) return null;
+		if (config == null) {
+			config = Bitmap.Config.ARGB_8888;
+		}
+		int requiredSize = width * height * getBytesPerPixel(config);
+
+		Bitmap bitmap = null;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			Map.Entry<Integer, LinkedList<Bitmap>> entry = bitmapsBySize.ceilingEntry(requiredSize);
+			if (entry != null && entry.getKey() <= requiredSize * MAX_SIZE_MULTIPLE) {
+				bitmap = entry.getValue().getFirst();
+			}
+		} else if (sampleSize == 1) {
+			LinkedList<Bitmap> bitmaps = bitmapsBySize.get(requiredSize);
+			if (bitmaps != null) {
+				for (Bitmap candidate : bitmaps) {
+					if (candidate.getWidth() == width && candidate.getHeight() == height
+							&& candidate.getConfig() == config) {
+						bitmap = candidate;
+						break;
+					}
+				}
+			}
+		}
+
+		if (bitmap == null) {
+			missCount++;
+		} else {
+			removeFromPool(bitmap);
+			hitCount++;
+			reusedBytes += requiredSize;
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Marks bitmap as referenced (displayed or going to be displayed). Referenced bitmap isn't pooled until it's
+	 * {@linkplain #release(Bitmap) released}.
+	 */
+	public synchronized void acquire(Bitmap bitmap) {
+		Integer count = referenceCounts.get(bitmap);
+		referenceCounts.put(bitmap, count == null ? 1 : count + 1);
+		if (pooled.contains(bitmap)) { // bitmap was got from cache right before its eviction
+			removeFromPool(bitmap);
+			evictedReferenced.put(bitmap, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Returns bitmap from memory cache and {@linkplain #acquire(Bitmap) acquires} it in one atomic step. Bitmap which
+	 * is evicted from cache concurrently can't be given out for reuse between lookup and acquiring (evicted bitmaps are
+	 * {@linkplain #put(Bitmap) put} into pool under the same lock).
+	 *
+	 * @return Acquired bitmap or <b>null</b> if there is no bitmap for key in memory cache
+	 * @see MemoryCacheUtils#get(MemoryCacheKey, MemoryCacheAware)
+	 */
+	public synchronized Bitmap getAndAcquire(MemoryCacheAware<String, Bitmap> memoryCache, MemoryCacheKey key) {
+		Bitmap bitmap = MemoryCacheUtils.get(key, memoryCache);
+		if (bitmap != null) {
+			acquire(bitmap);
+		}
+		return bitmap;
+	}
+
+	/** Releases reference of bitmap. Bitmap which was evicted from memory cache is pooled after last release. */
+	public synchronized void release(Bitmap bitmap) {
+		Integer count = referenceCounts.get(bitmap);
+		if (count == null) return;
+		if (count > 1) {
+			referenceCounts.put(bitmap, count - 1);
+		} else {
+			referenceCounts.remove(bitmap);
+			if (evictedReferenced.remove(bitmap) != null && canBePooled(bitmap)) {
+				addToPool(bitmap);
+			}
+		}
+	}
+
+	/** Excludes bitmap from pooling forever (e.g. if bitmap was given to user code) */
+	public synchronized void retain(Bitmap bitmap) {
+		retained.put(bitmap, Boolean.TRUE);
+		evictedReferenced.remove(bitmap);
+		if (pooled.contains(bitmap)) {
+			removeFromPool(bitmap);
+		}
+	}
+
+	public synchronized void clear() {
+		bitmapsBySize.clear();
+		pooled.clear();
+		size = 0;
+	}
+
+	/** Returns count of {@link #get(int, int, Bitmap.Config, int)} calls which returned pooled bitmap */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/** Returns count of {@link #get(int, int, Bitmap.Config, int)} calls which returned <b>null</b> */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/** Returns count of bytes which weren't allocated because pooled bitmaps were reused */
+	public synchronized long getReusedBytes() {
+		return reusedBytes;
+	}
+
+	/** Returns sum of sizes of pooled bitmaps in bytes */
+	public synchronized int size() {
+		return size;
+	}
+
+	private boolean canBePooled(Bitmap bitmap) {
+		return isReuseSupported() && bitmap.isMutable() && !bitmap.isRecycled() && !retained.containsKey(bitmap)
+				&& getSize(bitmap) <= maxSize;
+	}
+
+	private void addToPool(Bitmap bitmap) {
+		if (!pooled.add(bitmap)) return;
+
+		int bitmapSize = getSize(bitmap);
+		LinkedList<Bitmap> bitmaps = bitmapsBySize.get(bitmapSize);
+		if (bitmaps == null) {
+			bitmaps = new LinkedList<Bitmap>();
+			bitmapsBySize.put(bitmapSize, bitmaps);
+		}
+		bitmaps.addFirst(bitmap);
+		size += bitmapSize;
+
+		Iterator<Bitmap> it = pooled.iterator();
+		while (size > maxSize && it.hasNext()) {
+			Bitmap eldest = it.next();
+			it.remove();
+			removeFromBucket(eldest);
+		}
+	}
+
+	private void removeFromPool(Bitmap bitmap) {
+		pooled.remove(bitmap);
+		removeFromBucket(bitmap);
+	}
+
+	private void removeFromBucket(Bitmap bitmap) {
+		int bitmapSize = getSize(bitmap);
+		LinkedList<Bitmap> bitmaps = bitmapsBySize.get(bitmapSize);
+		if (bitmaps != null && bitmaps.remove(bitmap)) {
+			size -= bitmapSize;
+			if (bitmaps.isEmpty()) {
+				bitmapsBySize.remove(bitmapSize);
+			}
+		}
+	}
+
+	/**
+	 * Returns count of bytes which bitmap occupies in memory: allocation size on KitKat and later (image can be decoded
+	 * into {@linkplain #get(int, int, Bitmap.Config, int) reused bitmap} which is up to {@value #MAX_SIZE_MULTIPLE}
+	 * times larger than image). Memory caches size their entries by this method, so they keep their limits if bitmaps
+	 * are reused.
+	 */
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	public static int getSize(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount();
+		}
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+			case ARGB_8888:
+			default:
+				return 4;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		long requests = hitCount + missCount;
+		int hitPercent = requests == 0 ? 0 : (int) (100 * hitCount / requests);
+		return String.format("BitmapPool[maxSize=%d,size=%d,hits=%d,misses=%d,hitRate=%d%%,reusedBytes=%d]", maxSize,
+				size, hitCount, missCount, hitPercent, reusedBytes);
+	}
+}
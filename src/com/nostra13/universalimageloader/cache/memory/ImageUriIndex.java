@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory;
+
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of memory cache keys by image URI. Used by {@link UriIndexedMemoryCacheAware} implementations.<br />
+ * <b>NOTE:</b> This class isn't thread-safe. It must be guarded by the owner.
+ *
+ * @since 1.9.2
+ */
+public final class ImageUriIndex {
+
+	/** Usually there are one or two sizes of image in cache */
+	private static final int INITIAL_VARIANT_CAPACITY = 2;
+
+	private final Map<String, List<String>> keysByUri = new HashMap<String, List<String>>();
+
+	/** Adds key into index. Key mustn't be already added. */
+	public void add(String key) {
+		String imageUri = MemoryCacheUtils.getImageUri(key);
+		List<String> keys = keysByUri.get(imageUri);
+		if (keys == null) {
+			keys = new ArrayList<String>(INITIAL_VARIANT_CAPACITY);
+			keysByUri.put(imageUri, keys);
+		}
+		keys.add(key);
+	}
+
+	public void remove(String key) {
+		String imageUri = MemoryCacheUtils.getImageUri(key);
+		List<String> keys = keysByUri.get(imageUri);
+		if (keys != null && keys.remove(key) && keys.isEmpty()) {
+			keysByUri.remove(imageUri);
+		}
+	}
+
+	/**
+	 * Returns added key which is equal to {@linkplain MemoryCacheKey#toString() string form} of incoming key or
+	 * <b>null</b> if there is no such key. String form of key isn't built.
+	 */
+	public String find(MemoryCacheKey key) {
+		List<String> keys = keysByUri.get(key.getImageUri());
+		if (keys == null) return null;
+		for (int i = 0; i < keys.size(); i++) {
+			String cacheKey = keys.get(i);
+			if (MemoryCacheUtils.isKeyOf(cacheKey, key.getImageUri(), key.getTargetSize())) {
+				return cacheKey;
+			}
+		}
+		return null;
+	}
+
+	/** Returns copy of keys for image URI */
+	public List<String> get(String imageUri) {
+		List<String> keys = keysByUri.get(imageUri);
+		return keys == null ? Collections.<String>emptyList() : new ArrayList<String>(keys);
+	}
+
+	public void clear() {
+		keysByUri.clear();
+	}
+}
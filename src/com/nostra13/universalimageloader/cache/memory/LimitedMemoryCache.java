@@ -15,11 +15,11 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.cache.memory;
 
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
 import com.nostra13.universalimageloader.utils.L;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -43,11 +43,12 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 	private final AtomicInteger cacheSize;
 
 	/**
-	 * Contains strong references to stored objects. Each next object is added last. If hard cache size will exceed
-	 * limit then first object is deleted (but it continue exist at {@link #softMap} and can be collected by GC at any
-	 * time)
+	 * Contains strong references to stored objects (and count of keys which refer to each object). If hard cache size
+	 * will exceed limit then object returned by {@link #removeNext()} is deleted (but it continue exist at
+	 * {@link #softMap} and can be collected by GC at any time). Objects are compared by identity so deletion doesn't
+	 * search through the whole cache.
 	 */
-	private final List<V> hardCache = Collections.synchronizedList(new LinkedList<V>());
+	private final Map<V, Integer> hardCache = new IdentityHashMap<V, Integer>();
 
 	/** @param sizeLimit Maximum size for cache (in bytes) */
 	public LimitedMemoryCache(int sizeLimit) {
@@ -60,6 +61,11 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 
 	@Override
 	public boolean put(K key, V value) {
+		// Previous value of the key must leave hard cache and eviction structures of subclass
+		if (peek(key) != null) {
+			remove(key);
+		}
+
 		boolean putSuccessfully = false;
 		// Try to add value to hard cache
 		int valueSize = getSize(value);
@@ -68,11 +74,14 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 		if (valueSize < sizeLimit) {
 			while (curCacheSize + valueSize > sizeLimit) {
 				V removedValue = removeNext();
-				if (hardCache.remove(removedValue)) {
-					curCacheSize = cacheSize.addAndGet(-getSize(removedValue));
+				if (removedValue == null) break; // hard cache is empty (have nothing to delete)
+				if (removeFromHardCache(removedValue)) {
+					int removedSize = getSize(removedValue);
+					curCacheSize = cacheSize.addAndGet(-removedSize);
+					getStatsCounter().recordEviction(EvictionCause.SIZE, removedSize);
 				}
 			}
-			hardCache.add(value);
+			addToHardCache(value);
 			cacheSize.addAndGet(valueSize);
 
 			putSuccessfully = true;
@@ -84,9 +93,9 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 
 	@Override
 	public void remove(K key) {
-		V value = super.get(key);
+		V value = peek(key);
 		if (value != null) {
-			if (hardCache.remove(value)) {
+			if (removeFromHardCache(value)) {
 				cacheSize.addAndGet(-getSize(value));
 			}
 		}
@@ -95,16 +104,51 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 
 	@Override
 	public void clear() {
-		hardCache.clear();
+		synchronized (hardCache) {
+			hardCache.clear();
+		}
 		cacheSize.set(0);
 		super.clear();
 	}
 
+	private void addToHardCache(V value) {
+		synchronized (hardCache) {
+			Integer count = hardCache.get(value);
+			hardCache.put(value, count == null ? 1 : count + 1);
+		}
+	}
+
+	/** @return <b>true</b> - if value was contained in hard cache; <b>false</b> - otherwise */
+	private boolean removeFromHardCache(V value) {
+		synchronized (hardCache) {
+			Integer count = hardCache.get(value);
+			if (count == null) return false;
+			if (count > 1) {
+				hardCache.put(value, count - 1);
+			} else {
+				hardCache.remove(value);
+			}
+			return true;
+		}
+	}
+
+	/** Returns size of strongly referenced values in bytes */
+	@Override
+	protected long getCacheSize() {
+		return cacheSize.get();
+	}
+
 	protected int getSizeLimit() {
 		return sizeLimit;
 	}
 
 	protected abstract int getSize(V value);
 
+	/**
+	 * Removes next object from eviction structures of cache and returns it. Should work in constant or logarithmic
+	 * time.
+	 *
+	 * @return Removed object or <b>null</b> if there are no objects to remove
+	 */
 	protected abstract V removeNext();
 }
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory;
+
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.process.BitmapProcessor;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+/**
+ * Immutable key of image in memory cache: image URI, target size and identity of
+ * {@linkplain com.nostra13.universalimageloader.core.DisplayImageOptions.Builder#preProcessor(BitmapProcessor)
+ * pre-processor} which processes image before caching. Hash code is computed once, so keys are cheap to compare and to
+ * use in hash maps.<br />
+ * String form of the key ({@link #toString()}) is the same as
+ * {@link MemoryCacheUtils#generateKey(String, ImageSize)} result, it's built lazily and is used for
+ * {@link MemoryCacheAware memory caches} with string keys. {@link MemoryCacheKeyAware} caches find images by key
+ * object without building of string form.
+ *
+ * @since 1.9.2
+ */
+public final class MemoryCacheKey {
+
+	private final String imageUri;
+	private final ImageSize targetSize;
+	private final BitmapProcessor processor;
+	private final int hash;
+
+	/** Lazily built string form; racy single-check is fine because built strings are equal */
+	private String stringForm;
+
+	/**
+	 * @param imageUri   Image URI
+	 * @param targetSize Target size of image
+	 * @param processor  Processor which processes image before caching; can be null
+	 */
+	public MemoryCacheKey(String imageUri, ImageSize targetSize, BitmapProcessor processor) {
+		this.imageUri = imageUri;
+		this.targetSize = targetSize;
+		this.processor = processor;
+
+		int h = imageUri.hashCode();
+		h = 31 * h + targetSize.getWidth();
+		h = 31 * h + targetSize.getHeight();
+		h = 31 * h + System.identityHashCode(processor);
+		hash = h;
+	}
+
+	public String getImageUri() {
+		return imageUri;
+	}
+
+	public ImageSize getTargetSize() {
+		return targetSize;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof MemoryCacheKey)) return false;
+
+		MemoryCacheKey other = (MemoryCacheKey) o;
+		return hash == other.hash && processor == other.processor
+				&& targetSize.getWidth() == other.targetSize.getWidth()
+				&& targetSize.getHeight() == other.targetSize.getHeight() && imageUri.equals(other.imageUri);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/** Returns string key for memory cache (<b>[imageUri]_[width]x[height]</b>) */
+	@Override
+	public String toString() {
+		String s = stringForm;
+		if (s == null) {
+			s = MemoryCacheUtils.generateKey(imageUri, targetSize);
+			stringForm = s;
+		}
+		return s;
+	}
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory;
+
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+/**
+ * Memory cache with string keys which can find value by {@link MemoryCacheKey} without building of
+ * {@linkplain MemoryCacheKey#toString() string form} of key: cached key is found among keys of image URI in
+ * {@linkplain ImageUriIndex URI index}. So image lookup on UI thread doesn't allocate strings. Built-in caches with URI
+ * index and memory cache decorators implement this interface.
+ *
+ * @see MemoryCacheUtils#get(MemoryCacheKey, MemoryCacheAware)
+ * @since 1.9.2
+ */
+public interface MemoryCacheKeyAware<V> {
+	/**
+	 * Returns value by key object. If there is no value for key then null will be returned. Request is counted in
+	 * cache statistics the same way as request by string key.
+	 */
+	V get(MemoryCacheKey key);
+}
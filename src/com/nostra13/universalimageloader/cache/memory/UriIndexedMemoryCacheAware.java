@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory;
+
+import java.util.Collection;
+
+/**
+ * Memory cache which keeps index of its keys by image URI (keys are generated by
+ * {@link com.nostra13.universalimageloader.utils.MemoryCacheUtils#generateKey(String,
+ * com.nostra13.universalimageloader.core.assist.ImageSize) MemoryCacheUtils.generateKey(...)}). So all cached sizes
+ * of an image can be found without scanning of all cache keys. Memory cache decorators implement this interface too and
+ * delegate to wrapped cache.
+ *
+ * @see ImageUriIndex
+ * @see MemoryCacheAware
+ * @since 1.9.2
+ */
+public interface UriIndexedMemoryCacheAware {
+	/** Returns keys of all cached sizes of image with incoming URI. Returns empty collection if there are no ones. */
+	Collection<String> keysForImageUri(String imageUri);
+}
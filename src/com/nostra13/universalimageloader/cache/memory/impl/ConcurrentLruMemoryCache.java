@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.ImageUriIndex;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKeyAware;
+import com.nostra13.universalimageloader.cache.memory.UriIndexedMemoryCacheAware;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-striped variant of {@link LruMemoryCache}. Keys are spread over several segments, each segment is a small
+ * access-ordered map guarded by its own lock, so lookups from UI thread don't compete with worker threads which put
+ * other bitmaps into cache. Total size of all segments is limited by one global byte budget. Segment is chosen by image
+ * URI of key, so all sizes of an image are in the same segment and are found by segment's URI index.<br />
+ * <br />
+ * Eviction order is approximate LRU: every access stamps entry with global access clock and the eldest entries of
+ * all segments are compared when cache exceeds its limit, so the least recently used entry among segment heads is
+ * evicted first.<br />
+ * <br />
+ * <b>NOTE:</b> This cache uses only strong references for stored Bitmaps.
+ *
+ * @see LruMemoryCache
+ * @since 1.9.2
+ */
+public class ConcurrentLruMemoryCache implements MemoryCacheAware<String, Bitmap>, MemoryCacheKeyAware<Bitmap>,
+		UriIndexedMemoryCacheAware, CacheStatsAware {
+
+	/** {@value} */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+	private static final int MAX_SEGMENTS = 1 << 6;
+
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	private final int maxSize;
+	/** Size of this cache in bytes */
+	private final AtomicInteger size = new AtomicInteger();
+	/** Global access clock, gives comparable "last access" stamps to entries of different segments */
+	private final AtomicLong clock = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	/** Receives evicted bitmaps for reuse, can be null */
+	private final BitmapPool bitmapPool;
+	private final StatsCounter statsCounter = new StatsCounter();
+
+	/** @param maxSize Maximum sum of the sizes of the Bitmaps in this cache */
+	public ConcurrentLruMemoryCache(int maxSize) {
+		this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * @param maxSize          Maximum sum of the sizes of the Bitmaps in this cache
+	 * @param concurrencyLevel Estimated number of concurrently accessing threads. Defines number of segments (rounded up
+	 *                         to power of two).
+	 */
+	public ConcurrentLruMemoryCache(int maxSize, int concurrencyLevel) {
+		this(maxSize, concurrencyLevel, null);
+	}
+
+	/**
+	 * @param maxSize          Maximum sum of the sizes of the Bitmaps in this cache
+	 * @param concurrencyLevel Estimated number of concurrently accessing threads. Defines number of segments (rounded up
+	 *                         to power of two).
+	 * @param bitmapPool       Pool which receives evicted Bitmaps for reuse; can be null
+	 */
+	public ConcurrentLruMemoryCache(int maxSize, int concurrencyLevel, BitmapPool bitmapPool) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("concurrencyLevel <= 0");
+		}
+		this.maxSize = maxSize;
+
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS) {
+			segmentCount <<= 1;
+		}
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment();
+		}
+		segmentMask = segmentCount - 1;
+		this.bitmapPool = bitmapPool;
+	}
+
+	/**
+	 * Returns the Bitmap for {@code key} if it exists in the cache. If a Bitmap was returned, it is moved to the head
+	 * of its segment queue. This returns null if a Bitmap is not cached.
+	 */
+	@Override
+	public final Bitmap get(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		Segment segment = segmentFor(key);
+		Bitmap value = null;
+		segment.lock.lock();
+		try {
+			Entry entry = segment.map.get(key);
+			if (entry != null) {
+				entry.lastAccess = clock.incrementAndGet();
+				value = entry.value;
+			}
+		} finally {
+			segment.lock.unlock();
+		}
+		if (value == null) {
+			statsCounter.recordMiss();
+		} else {
+			statsCounter.recordHit();
+		}
+		return value;
+	}
+
+	/** Finds cached key by URI index of segment, so string form of key isn't built */
+	@Override
+	public final Bitmap get(MemoryCacheKey key) {
+		String imageUri = key.getImageUri();
+		Segment segment = segments[spread(imageUri.hashCode()) & segmentMask]; // hash is equal to hashOf(...) of URI
+		Bitmap value = null;
+		segment.lock.lock();
+		try {
+			String cacheKey = segment.uriIndex.find(key);
+			Entry entry = cacheKey == null ? null : segment.map.get(cacheKey);
+			if (entry != null) {
+				entry.lastAccess = clock.incrementAndGet();
+				value = entry.value;
+			}
+		} finally {
+			segment.lock.unlock();
+		}
+		if (value == null) {
+			statsCounter.recordMiss();
+		} else {
+			statsCounter.recordHit();
+		}
+		return value;
+	}
+
+	/** Caches {@code Bitmap} for {@code key}. The Bitmap is moved to the head of its segment queue. */
+	@Override
+	public final boolean put(String key, Bitmap value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("key == null || value == null");
+		}
+
+		Entry entry = new Entry(value, sizeOf(key, value));
+		Segment segment = segmentFor(key);
+		Entry previous;
+		segment.lock.lock();
+		try {
+			entry.lastAccess = clock.incrementAndGet();
+			previous = segment.map.put(key, entry);
+			if (previous == null) {
+				segment.uriIndex.add(key);
+			}
+			size.addAndGet(previous == null ? entry.size : entry.size - previous.size);
+		} finally {
+			segment.lock.unlock();
+		}
+		if (previous != null && previous.value != value) {
+			entryRemoved(previous.value);
+		}
+
+		statsCounter.recordPut();
+
+		if (size.get() > maxSize) {
+			trimToSize(maxSize, true);
+		}
+		statsCounter.recordSize(Math.min(size.get(), maxSize));
+		return true;
+	}
+
+	/**
+	 * Remove the eldest entries until the total of remaining entries is at or below the requested size.
+	 *
+	 * @param maxSize         the maximum size of the cache before returning. May be -1 to evict even 0-sized elements.
+	 * @param recordEvictions whether removed entries are recorded in statistics as evictions
+	 */
+	private void trimToSize(int maxSize, boolean recordEvictions) {
+		evictionLock.lock();
+		try {
+			while (size.get() > maxSize) {
+				if (!evictEldest(recordEvictions)) break; // cache is empty
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/** @return <b>true</b> - if some entry was evicted; <b>false</b> - if all segments are empty */
+	private boolean evictEldest(boolean recordEviction) {
+		Segment victimSegment = null;
+		long victimAccess = Long.MAX_VALUE;
+		for (Segment segment : segments) {
+			segment.lock.lock();
+			try {
+				Entry eldest = segment.peekEldest();
+				if (eldest != null && eldest.lastAccess < victimAccess) {
+					victimAccess = eldest.lastAccess;
+					victimSegment = segment;
+				}
+			} finally {
+				segment.lock.unlock();
+			}
+		}
+		if (victimSegment == null) return false;
+
+		Entry evicted = null;
+		victimSegment.lock.lock();
+		try {
+			Iterator<Map.Entry<String, Entry>> it = victimSegment.map.entrySet().iterator();
+			if (it.hasNext()) { // eldest entry could be changed since peek but it's still a good candidate
+				Map.Entry<String, Entry> eldest = it.next();
+				evicted = eldest.getValue();
+				it.remove();
+				victimSegment.uriIndex.remove(eldest.getKey());
+				size.addAndGet(-evicted.size);
+			}
+		} finally {
+			victimSegment.lock.unlock();
+		}
+		if (evicted != null) {
+			if (recordEviction) {
+				statsCounter.recordEviction(EvictionCause.SIZE, evicted.size);
+			}
+			entryRemoved(evicted.value);
+		}
+		return true;
+	}
+
+	/** Removes the entry for {@code key} if it exists. */
+	@Override
+	public final void remove(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		Segment segment = segmentFor(key);
+		Entry previous;
+		segment.lock.lock();
+		try {
+			previous = segment.map.remove(key);
+			if (previous != null) {
+				segment.uriIndex.remove(key);
+				size.addAndGet(-previous.size);
+			}
+		} finally {
+			segment.lock.unlock();
+		}
+		if (previous != null) {
+			entryRemoved(previous.value);
+		}
+	}
+
+	@Override
+	public Collection<String> keys() {
+		Collection<String> keys = new HashSet<String>();
+		for (Segment segment : segments) {
+			segment.lock.lock();
+			try {
+				keys.addAll(segment.map.keySet());
+			} finally {
+				segment.lock.unlock();
+			}
+		}
+		return keys;
+	}
+
+	@Override
+	public Collection<String> keysForImageUri(String imageUri) {
+		Segment segment = segments[spread(hashOf(imageUri, imageUri.length())) & segmentMask];
+		segment.lock.lock();
+		try {
+			return segment.uriIndex.get(imageUri);
+		} finally {
+			segment.lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		trimToSize(-1, false); // -1 will evict 0-sized elements
+	}
+
+	@Override
+	public CacheStats getStats() {
+		return statsCounter.snapshot(size.get());
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		statsCounter.recordLoad(loadTime);
+	}
+
+	/** Passes removed Bitmap to bitmap pool (if it's set). Called without segment lock. */
+	private void entryRemoved(Bitmap value) {
+		if (bitmapPool != null) {
+			bitmapPool.put(value);
+		}
+	}
+
+	/** Returns segment for image URI of key */
+	private Segment segmentFor(String key) {
+		int h = hashOf(key, MemoryCacheUtils.getImageUriLength(key));
+		return segments[spread(h) & segmentMask];
+	}
+
+	/** Computes hash of first {@code length} chars of string (the same way as {@link String#hashCode()}) */
+	private static int hashOf(String s, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + s.charAt(i);
+		}
+		return h;
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the size {@code Bitmap} in bytes.
+	 * <p/>
+	 * An entry's size must not change while it is in the cache.
+	 */
+	private int sizeOf(String key, Bitmap value) {
+		return BitmapPool.getSize(value);
+	}
+
+	@Override
+	public final String toString() {
+		return String.format("ConcurrentLruCache[maxSize=%d,segments=%d]", maxSize, segments.length);
+	}
+
+	private static final class Segment {
+		final ReentrantLock lock = new ReentrantLock();
+		final LinkedHashMap<String, Entry> map = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+		final ImageUriIndex uriIndex = new ImageUriIndex();
+
+		Entry peekEldest() {
+			Iterator<Entry> it = map.values().iterator();
+			return it.hasNext() ? it.next() : null;
+		}
+	}
+
+	private static final class Entry {
+		final Bitmap value;
+		final int size;
+		long lastAccess; // guarded by segment lock
+
+		Entry(Bitmap value, int size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of equally sized direct {@link ByteBuffer} chunks for {@link EncodedMemoryCache}. Chunks are sliced from larger
+ * direct slabs, so allocation happens rarely. Total number of chunks never exceeds pool capacity, released chunks are
+ * reused until pool is {@linkplain #trim() trimmed}. On Android direct buffers are backed by Java arrays, so slabs count
+ * against heap limit of application.<br />
+ * <b>NOTE:</b> This class isn't thread-safe. It must be guarded by the owner.
+ *
+ * @since 1.9.2
+ */
+final class DirectByteBufferPool {
+
+	private static final int CHUNKS_PER_SLAB = 64;
+
+	private final int chunkSize;
+	private final int maxChunks;
+	private final List<ByteBuffer> freeChunks = new ArrayList<ByteBuffer>();
+	/** Count of chunks which were sliced from slabs (free and used) */
+	private int allocatedChunks;
+
+	/**
+	 * @param chunkSize Size of one chunk in bytes
+	 * @param maxChunks Maximum count of chunks which can be allocated by pool
+	 */
+	DirectByteBufferPool(int chunkSize, int maxChunks) {
+		this.chunkSize = chunkSize;
+		this.maxChunks = maxChunks;
+	}
+
+	int getChunkSize() {
+		return chunkSize;
+	}
+
+	/** @return Cleared chunk or <b>null</b> if all chunks are in use */
+	ByteBuffer acquire() {
+		if (freeChunks.isEmpty()) {
+			if (allocatedChunks >= maxChunks) return null;
+			allocateSlab();
+		}
+		ByteBuffer chunk = freeChunks.remove(freeChunks.size() - 1);
+		chunk.clear();
+		return chunk;
+	}
+
+	void release(ByteBuffer chunk) {
+		freeChunks.add(chunk);
+	}
+
+	/**
+	 * Drops free chunks, so slab is garbage collected when its used chunks are {@linkplain #drop(int) dropped} too.
+	 * Pool allocates new slabs when chunks are needed again.
+	 */
+	void trim() {
+		allocatedChunks -= freeChunks.size();
+		freeChunks.clear();
+	}
+
+	/** Forgets used chunks instead of their releasing into pool */
+	void drop(int chunkCount) {
+		allocatedChunks -= chunkCount;
+	}
+
+	private void allocateSlab() {
+		int chunkCount = Math.min(CHUNKS_PER_SLAB, maxChunks - allocatedChunks);
+		ByteBuffer slab = ByteBuffer.allocateDirect(chunkCount * chunkSize);
+		for (int i = 0; i < chunkCount; i++) {
+			slab.limit((i + 1) * chunkSize);
+			slab.position(i * chunkSize);
+			freeChunks.add(slab.slice());
+		}
+		allocatedChunks += chunkCount;
+	}
+}
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import com.nostra13.universalimageloader.utils.IoUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Limited LRU cache of encoded (compressed) image bytes. It's the tier between bitmap memory cache and
+ * disc cache: image which was evicted from bitmap cache can be decoded again without opening and reading cached file.
+ * Encoded images are several times smaller than decoded bitmaps so this cache keeps much more images "warm".<br />
+ * <br />
+ * Bytes are stored in pooled direct {@link ByteBuffer} chunks. On Android direct buffers are backed by Java arrays and
+ * count against heap limit like bitmaps do, so size of this cache should be taken from memory cache budget. Pooled
+ * memory is released on {@link #clear()}. Stored bytes are read by {@linkplain #get(String) streams}; entry evicted
+ * while it's read keeps its chunks until the stream is closed.<br />
+ * <br />
+ * <b>NOTE:</b> Streams returned by {@link #get(String)} must be closed.
+ *
+ * @see com.nostra13.universalimageloader.core.download.EncodedMemoryCacheImageDownloader
+ * @since 1.9.2
+ */
+public class EncodedMemoryCache {
+
+	/** {@value} */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024; // 16 Kb
+	private static final int MAX_ENTRY_PERCENTAGE = 25;
+
+	private final LinkedHashMap<String, Entry> map = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+	private final DirectByteBufferPool pool;
+
+	private final int maxSize;
+	private final int maxEntrySize;
+	/** Size of stored and reserved chunks in bytes */
+	private int size;
+
+	/** @param maxSize Maximum sum of the sizes of the stored images (rounded up to chunk size) */
+	public EncodedMemoryCache(int maxSize) {
+		this(maxSize, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param maxSize   Maximum sum of the sizes of the stored images (rounded up to chunk size)
+	 * @param chunkSize Size of pooled buffer chunk. Every image occupies integer number of chunks.
+	 */
+	public EncodedMemoryCache(int maxSize, int chunkSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize <= 0");
+		}
+		int maxChunks = Math.max(1, maxSize / chunkSize);
+		this.maxSize = maxChunks * chunkSize;
+		maxEntrySize = Math.max(chunkSize, this.maxSize / 100 * MAX_ENTRY_PERCENTAGE);
+		pool = new DirectByteBufferPool(chunkSize, maxChunks);
+	}
+
+	/**
+	 * Returns stream of cached bytes for {@code key} or <b>null</b> if there are no cached bytes. Returned stream
+	 * supports {@linkplain InputStream#mark(int) mark/reset}, it must be closed after reading.
+	 */
+	public InputStream get(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		synchronized (this) {
+			Entry entry = map.get(key);
+			if (entry == null) return null;
+			entry.refCount++;
+			return new ChunkedInputStream(entry);
+		}
+	}
+
+	/**
+	 * Caches bytes of {@code file} for {@code key}.
+	 *
+	 * @return <b>true</b> - if file bytes were cached; <b>false</b> - if file is too large for this cache or it can't be
+	 * read
+	 */
+	public boolean put(String key, File file) {
+		if (key == null || file == null) {
+			throw new NullPointerException("key == null || file == null");
+		}
+
+		long length = file.length();
+		if (length <= 0 || length > maxEntrySize) return false;
+
+		int chunkSize = pool.getChunkSize();
+		ByteBuffer[] chunks = reserve((int) ((length + chunkSize - 1) / chunkSize));
+		if (chunks == null) return false;
+
+		Entry entry = new Entry(chunks, (int) length);
+		boolean read = false;
+		try {
+			read = readFile(file, entry);
+		} catch (IOException e) {
+			// Bytes aren't cached, chunks are released below
+		} finally {
+			synchronized (this) {
+				if (read) {
+					Entry previous = map.put(key, entry);
+					if (previous != null) {
+						discard(previous);
+					}
+				} else {
+					size -= chunks.length * chunkSize;
+					releaseChunks(chunks);
+				}
+			}
+		}
+		return read;
+	}
+
+	/** Reserves chunks for new entry, evicts least recently used entries if needed */
+	private synchronized ByteBuffer[] reserve(int chunkCount) {
+		int chunkSize = pool.getChunkSize();
+		int required = chunkCount * chunkSize;
+		Iterator<Entry> it = map.values().iterator();
+		while (size + required > maxSize && it.hasNext()) {
+			Entry eldest = it.next();
+			it.remove();
+			discard(eldest);
+		}
+		if (size + required > maxSize) return null;
+
+		ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+		for (int i = 0; i < chunkCount; i++) {
+			ByteBuffer chunk = pool.acquire();
+			if (chunk == null) { // evicted entries are still read
+				for (int j = 0; j < i; j++) {
+					pool.release(chunks[j]);
+				}
+				return null;
+			}
+			chunks[i] = chunk;
+		}
+		size += required;
+		return chunks;
+	}
+
+	private boolean readFile(File file, Entry entry) throws IOException {
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[pool.getChunkSize()];
+			int total = 0;
+			for (ByteBuffer chunk : entry.chunks) {
+				int count = fill(is, buffer, Math.min(buffer.length, entry.length - total));
+				if (count <= 0) return false;
+				chunk.put(buffer, 0, count);
+				total += count;
+			}
+			return total == entry.length && is.read() == -1; // file wasn't changed while it was read
+		} finally {
+			IoUtils.closeSilently(is);
+		}
+	}
+
+	private static int fill(InputStream is, byte[] buffer, int length) throws IOException {
+		int total = 0;
+		while (total < length) {
+			int count = is.read(buffer, total, length - total);
+			if (count == -1) break;
+			total += count;
+		}
+		return total;
+	}
+
+	/** Removes the entry for {@code key} if it exists. */
+	public void remove(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		synchronized (this) {
+			Entry entry = map.remove(key);
+			if (entry != null) {
+				discard(entry);
+			}
+		}
+	}
+
+	public synchronized Collection<String> keys() {
+		return new HashSet<String>(map.keySet());
+	}
+
+	/** Removes all entries and releases pooled memory. Chunks of entries which are read now are freed on stream closing. */
+	public synchronized void clear() {
+		for (Entry entry : map.values()) {
+			entry.dropped = true;
+			discard(entry);
+		}
+		map.clear();
+		pool.trim();
+	}
+
+	/** Returns sum of sizes of stored images in bytes (rounded up to chunk size) */
+	public synchronized int size() {
+		return size;
+	}
+
+	public final int maxSize() {
+		return maxSize;
+	}
+
+	/** Accounts removal of entry from map. Chunks return into pool when nobody reads them. Must be called under lock. */
+	private void discard(Entry entry) {
+		size -= entry.chunks.length * pool.getChunkSize();
+		entry.removed = true;
+		if (entry.refCount == 0) {
+			releaseChunks(entry.chunks);
+		}
+	}
+
+	private synchronized void releaseReference(Entry entry) {
+		entry.refCount--;
+		if (entry.refCount == 0 && entry.removed) {
+			if (entry.dropped) {
+				pool.drop(entry.chunks.length);
+			} else {
+				releaseChunks(entry.chunks);
+			}
+		}
+	}
+
+	private void releaseChunks(ByteBuffer[] chunks) {
+		for (ByteBuffer chunk : chunks) {
+			pool.release(chunk);
+		}
+	}
+
+	@Override
+	public synchronized final String toString() {
+		return String.format("EncodedMemoryCache[maxSize=%d,size=%d,entries=%d]", maxSize, size, map.size());
+	}
+
+	private static final class Entry {
+		final ByteBuffer[] chunks;
+		final int length;
+		int refCount; // guarded by cache lock
+		boolean removed; // guarded by cache lock
+		boolean dropped; // guarded by cache lock, chunks don't return into pool
+
+		Entry(ByteBuffer[] chunks, int length) {
+			this.chunks = chunks;
+			this.length = length;
+		}
+	}
+
+	/** Reads bytes of cached entry. Every stream has own views of entry chunks so streams don't affect each other. */
+	private final class ChunkedInputStream extends InputStream {
+
+		private final Entry entry;
+		private final ByteBuffer[] views;
+		private final int chunkSize;
+		private int position;
+		private int mark;
+		private boolean closed;
+
+		ChunkedInputStream(Entry entry) {
+			this.entry = entry;
+			chunkSize = pool.getChunkSize();
+			views = new ByteBuffer[entry.chunks.length];
+			for (int i = 0; i < views.length; i++) {
+				views[i] = entry.chunks[i].duplicate();
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkNotClosed();
+			if (position >= entry.length) return -1;
+			int b = views[position / chunkSize].get(position % chunkSize) & 0xff;
+			position++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			checkNotClosed();
+			if (length == 0) return 0;
+			if (position >= entry.length) return -1;
+
+			int total = 0;
+			int remaining = Math.min(length, entry.length - position);
+			while (remaining > 0) {
+				ByteBuffer view = views[position / chunkSize];
+				int chunkOffset = position % chunkSize;
+				int count = Math.min(remaining, chunkSize - chunkOffset);
+				view.position(chunkOffset);
+				view.get(buffer, offset + total, count);
+				position += count;
+				total += count;
+				remaining -= count;
+			}
+			return total;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			checkNotClosed();
+			if (n <= 0) return 0;
+			int skipped = (int) Math.min(n, entry.length - position);
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			checkNotClosed();
+			return entry.length - position;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public void mark(int readLimit) {
+			mark = position;
+		}
+
+		@Override
+		public void reset() throws IOException {
+			checkNotClosed();
+			position = mark;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				releaseReference(entry);
+			}
+		}
+
+		private void checkNotClosed() throws IOException {
+			if (closed) throw new IOException("Stream is closed");
+		}
+	}
+}
@@ -16,13 +16,16 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
@@ -36,7 +39,8 @@ import java.util.List;
  */
 public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
-	private final List<Bitmap> queue = Collections.synchronizedList(new LinkedList<Bitmap>());
+	/** Keys in insertion order. Indexed by key so removal of any entry doesn't scan the queue. */
+	private final Map<String, Bitmap> queue = Collections.synchronizedMap(new LinkedHashMap<String, Bitmap>());
 
 	public FIFOLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
@@ -45,7 +49,7 @@ public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 	@Override
 	public boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			queue.add(value);
+			queue.put(key, value);
 			return true;
 		} else {
 			return false;
@@ -54,10 +58,7 @@ public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
 	@Override
 	public void remove(String key) {
-		Bitmap value = super.get(key);
-		if (value != null) {
-			queue.remove(value);
-		}
+		queue.remove(key);
 		super.remove(key);
 	}
 
@@ -69,16 +70,29 @@ public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
 	@Override
 	protected int getSize(Bitmap value) {
-		return value.getRowBytes() * value.getHeight();
+		return BitmapPool.getSize(value);
 	}
 
 	@Override
 	protected Bitmap removeNext() {
-		return queue.remove(0);
+		Bitmap firstValue = null;
+		synchronized (queue) {
+			Iterator<Bitmap> it = queue.values().iterator();
+			if (it.hasNext()) {
+				firstValue = it.next();
+				it.remove();
+			}
+		}
+		return firstValue;
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
-		return new WeakReference<Bitmap>(value);
+		return createReference(value, null);
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<? super Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
 	}
 }
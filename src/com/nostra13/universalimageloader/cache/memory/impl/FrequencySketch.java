@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+/**
+ * Count-min sketch with 4-bit counters. Estimates access frequency of keys for {@link TinyLfuMemoryCache}. All counters
+ * are halved after defined number of increments (aging) so the sketch reflects recent popularity of keys.<br />
+ * <b>NOTE:</b> This class isn't thread-safe. It must be guarded by the owner.<br />
+ * Ported from {@code com.github.benmanes.caffeine.cache.FrequencySketch} of
+ * <a href="https://github.com/ben-manes/caffeine">Caffeine</a> (Apache License 2.0).
+ *
+ * @since 1.9.2
+ */
+final class FrequencySketch {
+
+	private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int MAX_TABLE_SIZE = 1 << 24;
+	private static final int SAMPLE_FACTOR = 10;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int size;
+
+	/** @param expectedEntries Expected maximum number of entries in cache, defines sketch width */
+	FrequencySketch(int expectedEntries) {
+		int tableSize = 1;
+		while (tableSize < expectedEntries && tableSize < MAX_TABLE_SIZE) {
+			tableSize <<= 1;
+		}
+		table = new long[tableSize];
+		tableMask = tableSize - 1;
+		sampleSize = SAMPLE_FACTOR * tableSize;
+	}
+
+	/** Returns estimated number of occurrences of the key (maximum 15) */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/** Increments popularity of the key. Counters are aged if sample size is reached. */
+	void increment(Object key) {
+		incrementHash(key.hashCode());
+	}
+
+	/** Increments popularity of the key by its hash code */
+	void incrementHash(int keyHash) {
+		int hash = spread(keyHash);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if ((table[i] & mask) != mask) {
+			table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/** Halves all counters */
+	private void reset() {
+		int oddCount = 0;
+		for (int i = 0; i < table.length; i++) {
+			oddCount += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (oddCount >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEED[i]) * SEED[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
@@ -15,7 +15,14 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.cache.memory.impl;
 
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKeyAware;
+import com.nostra13.universalimageloader.cache.memory.UriIndexedMemoryCacheAware;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
 
 import java.util.Collection;
 import java.util.Comparator;
@@ -24,12 +31,15 @@ import java.util.Comparator;
  * Decorator for {@link MemoryCacheAware}. Provides special feature for cache: some different keys are considered as
  * equals (using {@link Comparator comparator}). And when you try to put some value into cache by key so entries with
  * "equals" keys will be removed from cache before.<br />
+ * If comparator is {@linkplain MemoryCacheUtils#createFuzzyKeyComparator() image URI comparator} and wrapped cache is
+ * {@link UriIndexedMemoryCacheAware} then "equal" keys are found by URI index instead of scanning of all keys.<br />
  * <b>NOTE:</b> Used for internal needs. Normally you don't need to use this class.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.0.0
  */
-public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
+public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V>, MemoryCacheKeyAware<V>,
+		UriIndexedMemoryCacheAware, CacheStatsAware {
 
 	private final MemoryCacheAware<K, V> cache;
 	private final Comparator<K> keyComparator;
@@ -43,25 +53,51 @@ public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 	public boolean put(K key, V value) {
 		// Search equal key and remove this entry
 		synchronized (cache) {
-			K keyToRemove = null;
-			for (K cacheKey : cache.keys()) {
-				if (keyComparator.compare(key, cacheKey) == 0) {
-					keyToRemove = cacheKey;
-					break;
+			if (isUriIndexUsable()) {
+				String imageUri = MemoryCacheUtils.getImageUri((String) key);
+				for (String cacheKey : ((UriIndexedMemoryCacheAware) cache).keysForImageUri(imageUri)) {
+					if (!cacheKey.equals(key)) {
+						removeKey(cacheKey);
+					}
+				}
+			} else {
+				K keyToRemove = null;
+				for (K cacheKey : cache.keys()) {
+					if (keyComparator.compare(key, cacheKey) == 0) {
+						keyToRemove = cacheKey;
+						break;
+					}
+				}
+				if (keyToRemove != null) {
+					cache.remove(keyToRemove);
 				}
-			}
-			if (keyToRemove != null) {
-				cache.remove(keyToRemove);
 			}
 		}
 		return cache.put(key, value);
 	}
 
+	@SuppressWarnings("unchecked")
+	private void removeKey(String key) {
+		cache.remove((K) key);
+	}
+
+	/** Index can be used if keys are compared by image URI only */
+	private boolean isUriIndexUsable() {
+		return cache instanceof UriIndexedMemoryCacheAware
+				&& (Object) keyComparator == MemoryCacheUtils.createFuzzyKeyComparator();
+	}
+
 	@Override
 	public V get(K key) {
 		return cache.get(key);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(MemoryCacheKey key) {
+		return MemoryCacheUtils.get(key, (MemoryCacheAware<String, V>) cache);
+	}
+
 	@Override
 	public void remove(K key) {
 		cache.remove(key);
@@ -76,4 +112,26 @@ public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 	public Collection<K> keys() {
 		return cache.keys();
 	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Collection<String> keysForImageUri(String imageUri) {
+		return MemoryCacheUtils.findCacheKeysForImageUri(imageUri, (MemoryCacheAware<String, ?>) cache);
+	}
+
+	/** Returns statistics of wrapped cache (empty statistics if wrapped cache doesn't collect them) */
+	@Override
+	public CacheStats getStats() {
+		if (cache instanceof CacheStatsAware) {
+			return ((CacheStatsAware) cache).getStats();
+		}
+		return new StatsCounter().snapshot(CacheStats.UNKNOWN_SIZE);
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		if (cache instanceof CacheStatsAware) {
+			((CacheStatsAware) cache).recordLoad(loadTime);
+		}
+	}
 }
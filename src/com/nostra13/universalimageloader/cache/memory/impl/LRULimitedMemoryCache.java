@@ -16,9 +16,11 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.Iterator;
@@ -79,7 +81,7 @@ public class LRULimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
 	@Override
 	protected int getSize(Bitmap value) {
-		return value.getRowBytes() * value.getHeight();
+		return BitmapPool.getSize(value);
 	}
 
 	@Override
@@ -98,6 +100,11 @@ public class LRULimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
-		return new WeakReference<Bitmap>(value);
+		return createReference(value, null);
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<? super Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
 	}
 }
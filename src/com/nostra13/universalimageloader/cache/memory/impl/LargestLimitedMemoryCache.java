@@ -16,15 +16,15 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
@@ -39,11 +39,15 @@ import java.util.Set;
  */
 public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 	/**
-	 * Contains strong references to stored objects (keys) and sizes of the objects. If hard cache
-	 * size will exceed limit then object with the largest size is deleted (but it continue exist at
-	 * {@link #softMap} and can be collected by GC at any time)
+	 * Contains strong references to stored objects ordered by their sizes (the largest is first). If hard cache size
+	 * will exceed limit then the first object is deleted (but it continue exist at {@link #softMap} and can be
+	 * collected by GC at any time)
 	 */
-	private final Map<Bitmap, Integer> valueSizes = Collections.synchronizedMap(new HashMap<Bitmap, Integer>());
+	private final TreeSet<SizedEntry> sizeOrder = new TreeSet<SizedEntry>();
+	/** Index of {@link #sizeOrder} entries by key */
+	private final Map<String, SizedEntry> entries = new HashMap<String, SizedEntry>();
+	/** Keeps insertion order for entries of equal size */
+	private long sequence;
 
 	public LargestLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
@@ -52,7 +56,14 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap
 	@Override
 	public boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			valueSizes.put(value, getSize(value));
+			synchronized (sizeOrder) {
+				SizedEntry entry = new SizedEntry(key, value, getSize(value), sequence++);
+				SizedEntry previous = entries.put(key, entry);
+				if (previous != null) {
+					sizeOrder.remove(previous);
+				}
+				sizeOrder.add(entry);
+			}
 			return true;
 		} else {
 			return false;
@@ -61,49 +72,67 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap
 
 	@Override
 	public void remove(String key) {
-		Bitmap value = super.get(key);
-		if (value != null) {
-			valueSizes.remove(value);
+		synchronized (sizeOrder) {
+			SizedEntry entry = entries.remove(key);
+			if (entry != null) {
+				sizeOrder.remove(entry);
+			}
 		}
 		super.remove(key);
 	}
 
 	@Override
 	public void clear() {
-		valueSizes.clear();
+		synchronized (sizeOrder) {
+			entries.clear();
+			sizeOrder.clear();
+		}
 		super.clear();
 	}
 
 	@Override
 	protected int getSize(Bitmap value) {
-		return value.getRowBytes() * value.getHeight();
+		return BitmapPool.getSize(value);
 	}
 
 	@Override
 	protected Bitmap removeNext() {
-		Integer maxSize = null;
-		Bitmap largestValue = null;
-		Set<Entry<Bitmap, Integer>> entries = valueSizes.entrySet();
-		synchronized (valueSizes) {
-			for (Entry<Bitmap, Integer> entry : entries) {
-				if (largestValue == null) {
-					largestValue = entry.getKey();
-					maxSize = entry.getValue();
-				} else {
-					Integer size = entry.getValue();
-					if (size > maxSize) {
-						maxSize = size;
-						largestValue = entry.getKey();
-					}
-				}
-			}
+		synchronized (sizeOrder) {
+			SizedEntry largest = sizeOrder.pollFirst();
+			if (largest == null) return null;
+			entries.remove(largest.key);
+			return largest.value;
 		}
-		valueSizes.remove(largestValue);
-		return largestValue;
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
-		return new WeakReference<Bitmap>(value);
+		return createReference(value, null);
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<? super Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
+	}
+
+	private static final class SizedEntry implements Comparable<SizedEntry> {
+		final String key;
+		final Bitmap value;
+		final int size;
+		final long sequence;
+
+		SizedEntry(String key, Bitmap value, int size, long sequence) {
+			this.key = key;
+			this.value = value;
+			this.size = size;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(SizedEntry another) {
+			if (size != another.size) return size > another.size ? -1 : 1;
+			if (sequence != another.sequence) return sequence < another.sequence ? -1 : 1;
+			return 0;
+		}
 	}
 }
@@ -15,62 +15,117 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.cache.memory.impl;
 
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKeyAware;
+import com.nostra13.universalimageloader.cache.memory.UriIndexedMemoryCacheAware;
+import com.nostra13.universalimageloader.core.assist.TimerWheel;
+import com.nostra13.universalimageloader.core.assist.TimerWheel.Timer;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Decorator for {@link MemoryCacheAware}. Provides special feature for cache: if some cached object age exceeds defined
- * value then this object will be removed from cache.
+ * value then this object will be removed from cache.<br />
+ * Expired objects are removed proactively (in batches, by {@link TimerWheel} thread), so they don't hold memory and
+ * aren't returned by {@link #keys()}.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see MemoryCacheAware
+ * @see TimerWheel
  * @since 1.3.1
  */
-public class LimitedAgeMemoryCache<K, V> implements MemoryCacheAware<K, V> {
+public class LimitedAgeMemoryCache<K, V> implements MemoryCacheAware<K, V>, MemoryCacheKeyAware<V>,
+		UriIndexedMemoryCacheAware, CacheStatsAware {
 
 	private final MemoryCacheAware<K, V> cache;
 
 	private final long maxAge;
-	private final Map<K, Long> loadingDates = Collections.synchronizedMap(new HashMap<K, Long>());
+	private final TimerWheel timerWheel;
+	private final ConcurrentHashMap<K, Timer<K>> timers = new ConcurrentHashMap<K, Timer<K>>();
+	/** Counts expirations; other statistics are collected by wrapped cache */
+	private final StatsCounter statsCounter = new StatsCounter();
+	private final TimerWheel.ExpirationListener<K> expirationListener = new TimerWheel.ExpirationListener<K>() {
+		@Override
+		public void onExpired(List<Timer<K>> expired) {
+			for (Timer<K> timer : expired) {
+				K key = timer.getKey();
+				if (timers.remove(key, timer)) {
+					cache.remove(key);
+					statsCounter.recordEviction(EvictionCause.EXPIRED, 0);
+				}
+			}
+		}
+	};
 
 	/**
 	 * @param cache  Wrapped memory cache
 	 * @param maxAge Max object age <b>(in seconds)</b>. If object age will exceed this value then it'll be removed from
-	 *               cache on next treatment (and therefore be reloaded).
+	 *               cache (and therefore be reloaded).
 	 */
 	public LimitedAgeMemoryCache(MemoryCacheAware<K, V> cache, long maxAge) {
+		this(cache, maxAge, TimerWheel.getDefault());
+	}
+
+	/**
+	 * @param cache      Wrapped memory cache
+	 * @param maxAge     Max object age <b>(in seconds)</b>. If object age will exceed this value then it'll be removed
+	 *                   from cache (and therefore be reloaded).
+	 * @param timerWheel Timer wheel which expires cached objects
+	 */
+	public LimitedAgeMemoryCache(MemoryCacheAware<K, V> cache, long maxAge, TimerWheel timerWheel) {
 		this.cache = cache;
 		this.maxAge = maxAge * 1000; // to milliseconds
+		this.timerWheel = timerWheel;
 	}
 
 	@Override
 	public boolean put(K key, V value) {
 		boolean putSuccesfully = cache.put(key, value);
 		if (putSuccesfully) {
-			loadingDates.put(key, System.currentTimeMillis());
+			Timer<K> timer = timerWheel.schedule(key, System.currentTimeMillis() + maxAge, expirationListener);
+			timerWheel.cancel(timers.put(key, timer));
 		}
 		return putSuccesfully;
 	}
 
 	@Override
 	public V get(K key) {
-		Long loadingDate = loadingDates.get(key);
-		if (loadingDate != null && System.currentTimeMillis() - loadingDate > maxAge) {
+		Timer<K> timer = timers.get(key);
+		// Timer wheel expires objects with up to 1 second delay
+		if (timer != null && System.currentTimeMillis() > timer.getExpirationTime() && timers.remove(key, timer)) {
+			timerWheel.cancel(timer);
 			cache.remove(key);
-			loadingDates.remove(key);
+			statsCounter.recordEviction(EvictionCause.EXPIRED, 0);
 		}
 
 		return cache.get(key);
 	}
 
+	/**
+	 * String form of key isn't built if wrapped cache is {@link MemoryCacheKeyAware}. Then expired object can be
+	 * returned until timer wheel removes it (up to 1 second).
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(MemoryCacheKey key) {
+		if (cache instanceof MemoryCacheKeyAware) {
+			return ((MemoryCacheKeyAware<V>) cache).get(key);
+		}
+		return get((K) key.toString());
+	}
+
 	@Override
 	public void remove(K key) {
 		cache.remove(key);
-		loadingDates.remove(key);
+		timerWheel.cancel(timers.remove(key));
 	}
 
 	@Override
@@ -81,6 +136,33 @@ public class LimitedAgeMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 	@Override
 	public void clear() {
 		cache.clear();
-		loadingDates.clear();
+		for (K key : timers.keySet()) {
+			timerWheel.cancel(timers.remove(key));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Collection<String> keysForImageUri(String imageUri) {
+		return MemoryCacheUtils.findCacheKeysForImageUri(imageUri, (MemoryCacheAware<String, ?>) cache);
+	}
+
+	/** Returns statistics of wrapped cache plus count of expirations */
+	@Override
+	public CacheStats getStats() {
+		CacheStats stats = statsCounter.snapshot(CacheStats.UNKNOWN_SIZE);
+		if (cache instanceof CacheStatsAware) {
+			stats = ((CacheStatsAware) cache).getStats().plus(stats);
+		}
+		return stats;
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		if (cache instanceof CacheStatsAware) {
+			((CacheStatsAware) cache).recordLoad(loadTime);
+		} else {
+			statsCounter.recordLoad(loadTime);
+		}
 	}
 }
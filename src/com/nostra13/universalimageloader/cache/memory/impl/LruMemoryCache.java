@@ -1,7 +1,16 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.ImageUriIndex;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKeyAware;
+import com.nostra13.universalimageloader.cache.memory.UriIndexedMemoryCacheAware;
 
 import java.util.Collection;
 import java.util.HashSet;
@@ -18,9 +27,15 @@ import java.util.Map;
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.8.1
  */
-public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
+public class LruMemoryCache implements MemoryCacheAware<String, Bitmap>, MemoryCacheKeyAware<Bitmap>,
+		UriIndexedMemoryCacheAware, CacheStatsAware {
 
 	private final LinkedHashMap<String, Bitmap> map;
+	/** Keys of {@link #map} by image URI */
+	private final ImageUriIndex uriIndex = new ImageUriIndex();
+	/** Receives evicted bitmaps for reuse, can be null */
+	private final BitmapPool bitmapPool;
+	private final StatsCounter statsCounter = new StatsCounter();
 
 	private final int maxSize;
 	/** Size of this cache in bytes */
@@ -28,11 +43,20 @@ public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
 
 	/** @param maxSize Maximum sum of the sizes of the Bitmaps in this cache */
 	public LruMemoryCache(int maxSize) {
+		this(maxSize, null);
+	}
+
+	/**
+	 * @param maxSize    Maximum sum of the sizes of the Bitmaps in this cache
+	 * @param bitmapPool Pool which receives evicted Bitmaps for reuse; can be null
+	 */
+	public LruMemoryCache(int maxSize, BitmapPool bitmapPool) {
 		if (maxSize <= 0) {
 			throw new IllegalArgumentException("maxSize <= 0");
 		}
 		this.maxSize = maxSize;
 		this.map = new LinkedHashMap<String, Bitmap>(0, 0.75f, true);
+		this.bitmapPool = bitmapPool;
 	}
 
 	/**
@@ -45,9 +69,34 @@ public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
 			throw new NullPointerException("key == null");
 		}
 
+		Bitmap value;
+		synchronized (this) {
+			value = map.get(key);
+		}
+		if (value == null) {
+			statsCounter.recordMiss();
+		} else {
+			statsCounter.recordHit();
+		}
+		return value;
+	}
+
+	/** Finds cached key by URI index, so string form of key isn't built */
+	@Override
+	public final Bitmap get(MemoryCacheKey key) {
+		Bitmap value = null;
 		synchronized (this) {
-			return map.get(key);
+			String cacheKey = uriIndex.find(key);
+			if (cacheKey != null) {
+				value = map.get(cacheKey);
+			}
+		}
+		if (value == null) {
+			statsCounter.recordMiss();
+		} else {
+			statsCounter.recordHit();
 		}
+		return value;
 	}
 
 	/** Caches {@code Bitmap} for {@code key}. The Bitmap is moved to the head of the queue. */
@@ -57,27 +106,39 @@ public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
 			throw new NullPointerException("key == null || value == null");
 		}
 
+		Bitmap previous;
+		int currentSize;
 		synchronized (this) {
 			size += sizeOf(key, value);
-			Bitmap previous = map.put(key, value);
+			previous = map.put(key, value);
 			if (previous != null) {
 				size -= sizeOf(key, previous);
+			} else {
+				uriIndex.add(key);
 			}
+			currentSize = size;
+		}
+		statsCounter.recordPut();
+		if (previous != null && previous != value) {
+			entryRemoved(previous);
 		}
 
-		trimToSize(maxSize);
+		trimToSize(maxSize, true);
+		statsCounter.recordSize(Math.min(currentSize, maxSize));
 		return true;
 	}
 
 	/**
 	 * Remove the eldest entries until the total of remaining entries is at or below the requested size.
 	 *
-	 * @param maxSize the maximum size of the cache before returning. May be -1 to evict even 0-sized elements.
+	 * @param maxSize          the maximum size of the cache before returning. May be -1 to evict even 0-sized elements.
+	 * @param recordEvictions whether removed entries are recorded in statistics as evictions
 	 */
-	private void trimToSize(int maxSize) {
+	private void trimToSize(int maxSize, boolean recordEvictions) {
 		while (true) {
 			String key;
 			Bitmap value;
+			int valueSize;
 			synchronized (this) {
 				if (size < 0 || (map.isEmpty() && size != 0)) {
 					throw new IllegalStateException(getClass().getName() + ".sizeOf() is reporting inconsistent results!");
@@ -94,8 +155,14 @@ public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
 				key = toEvict.getKey();
 				value = toEvict.getValue();
 				map.remove(key);
-				size -= sizeOf(key, value);
+				uriIndex.remove(key);
+				valueSize = sizeOf(key, value);
+				size -= valueSize;
+			}
+			if (recordEvictions) {
+				statsCounter.recordEviction(EvictionCause.SIZE, valueSize);
 			}
+			entryRemoved(value);
 		}
 	}
 
@@ -106,12 +173,17 @@ public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
 			throw new NullPointerException("key == null");
 		}
 
+		Bitmap previous;
 		synchronized (this) {
-			Bitmap previous = map.remove(key);
+			previous = map.remove(key);
 			if (previous != null) {
+				uriIndex.remove(key);
 				size -= sizeOf(key, previous);
 			}
 		}
+		if (previous != null) {
+			entryRemoved(previous);
+		}
 	}
 
 	@Override
@@ -121,9 +193,37 @@ public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
 		}
 	}
 
+	@Override
+	public Collection<String> keysForImageUri(String imageUri) {
+		synchronized (this) {
+			return uriIndex.get(imageUri);
+		}
+	}
+
 	@Override
 	public void clear() {
-		trimToSize(-1); // -1 will evict 0-sized elements
+		trimToSize(-1, false); // -1 will evict 0-sized elements
+	}
+
+	@Override
+	public CacheStats getStats() {
+		int currentSize;
+		synchronized (this) {
+			currentSize = size;
+		}
+		return statsCounter.snapshot(currentSize);
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		statsCounter.recordLoad(loadTime);
+	}
+
+	/** Passes removed Bitmap to bitmap pool (if it's set). Called without lock. */
+	private void entryRemoved(Bitmap value) {
+		if (bitmapPool != null) {
+			bitmapPool.put(value);
+		}
 	}
 
 	/**
@@ -132,7 +232,7 @@ public class LruMemoryCache implements MemoryCacheAware<String, Bitmap> {
 	 * An entry's size must not change while it is in the cache.
 	 */
 	private int sizeOf(String key, Bitmap value) {
-		return value.getRowBytes() * value.getHeight();
+		return BitmapPool.getSize(value);
 	}
 
 	@Override
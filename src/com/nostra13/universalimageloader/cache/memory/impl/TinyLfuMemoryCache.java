@@ -0,0 +1,413 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.CacheStats.EvictionCause;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.StatsCounter;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.ImageUriIndex;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKeyAware;
+import com.nostra13.universalimageloader.cache.memory.UriIndexedMemoryCacheAware;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Scan-resistant {@link Bitmap bitmap} cache (W-TinyLFU). New bitmaps are put into small LRU "window". Bitmaps which
+ * leave the window compete for place in main region with the least recently used bitmap of main region: the one
+ * which was requested more frequently (according to {@linkplain FrequencySketch frequency sketch}) stays in cache.
+ * Main region is segmented LRU: bitmaps requested at least twice are moved to "protected" segment. So one-off images
+ * of long list fling don't wash out images which are shown on every screen (avatars, icons).<br />
+ * <br />
+ * {@linkplain CacheStats Statistics} are collected so hit rate can be compared with {@link LruMemoryCache} on the same access
+ * trace.<br />
+ * <br />
+ * <b>NOTE:</b> This cache uses only strong references for stored Bitmaps.
+ *
+ * @see LruMemoryCache
+ * @since 1.9.2
+ */
+public class TinyLfuMemoryCache implements MemoryCacheAware<String, Bitmap>, MemoryCacheKeyAware<Bitmap>,
+		UriIndexedMemoryCacheAware, CacheStatsAware {
+
+	private static final int WINDOW_PERCENTAGE = 1;
+	private static final int PROTECTED_PERCENTAGE = 80;
+	/** Average bitmap size which is used to estimate entry count if it isn't defined explicitly */
+	private static final int AVERAGE_ENTRY_SIZE = 64 * 1024; // 64 Kb
+	private static final int MIN_EXPECTED_ENTRIES = 64;
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final Map<String, Node> data = new HashMap<String, Node>();
+	/** Keys of {@link #data} by image URI */
+	private final ImageUriIndex uriIndex = new ImageUriIndex();
+	private final Queue window = new Queue();
+	private final Queue probation = new Queue();
+	private final Queue protectedQueue = new Queue();
+	private final FrequencySketch sketch;
+
+	private final int maxSize;
+	private final int maxWindowSize;
+	private final int maxProtectedSize;
+	/** Size of this cache in bytes */
+	private int size;
+
+	private final StatsCounter statsCounter = new StatsCounter();
+
+	/** @param maxSize Maximum sum of the sizes of the Bitmaps in this cache */
+	public TinyLfuMemoryCache(int maxSize) {
+		this(maxSize, Math.max(MIN_EXPECTED_ENTRIES, maxSize / AVERAGE_ENTRY_SIZE));
+	}
+
+	/**
+	 * @param maxSize         Maximum sum of the sizes of the Bitmaps in this cache
+	 * @param expectedEntries Expected maximum count of Bitmaps in this cache. Defines width of frequency sketch.
+	 */
+	public TinyLfuMemoryCache(int maxSize, int expectedEntries) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		if (expectedEntries <= 0) {
+			throw new IllegalArgumentException("expectedEntries <= 0");
+		}
+		this.maxSize = maxSize;
+		maxWindowSize = Math.max(1, (int) ((long) maxSize * WINDOW_PERCENTAGE / 100));
+		maxProtectedSize = (int) ((long) (maxSize - maxWindowSize) * PROTECTED_PERCENTAGE / 100);
+		sketch = new FrequencySketch(expectedEntries);
+	}
+
+	@Override
+	public final Bitmap get(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		synchronized (this) {
+			sketch.increment(key);
+			Node node = data.get(key);
+			if (node == null) {
+				statsCounter.recordMiss();
+				return null;
+			}
+			onHit(node);
+			statsCounter.recordHit();
+			return node.value;
+		}
+	}
+
+	/** Finds cached key by URI index, so string form of key isn't built */
+	@Override
+	public final Bitmap get(MemoryCacheKey key) {
+		String cacheKey;
+		synchronized (this) {
+			cacheKey = uriIndex.find(key);
+			if (cacheKey == null) {
+				sketch.incrementHash(MemoryCacheUtils.hashCodeOfKey(key.getImageUri(), key.getTargetSize()));
+				statsCounter.recordMiss();
+				return null;
+			}
+		}
+		return get(cacheKey);
+	}
+
+	/**
+	 * Caches {@code Bitmap} for {@code key}. New Bitmap is put into window, it can be rejected later by admission
+	 * policy if main region contains more popular Bitmaps.
+	 *
+	 * @return <b>false</b> - if Bitmap is larger than cache itself; <b>true</b> - otherwise
+	 */
+	@Override
+	public final boolean put(String key, Bitmap value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("key == null || value == null");
+		}
+
+		int valueSize = sizeOf(key, value);
+		if (valueSize > maxSize) return false;
+
+		synchronized (this) {
+			sketch.increment(key);
+			Node node = data.get(key);
+			if (node != null) {
+				size += valueSize - node.size;
+				queueOf(node).size += valueSize - node.size;
+				node.value = value;
+				node.size = valueSize;
+				onHit(node);
+			} else {
+				node = new Node(key, value, valueSize);
+				data.put(key, node);
+				uriIndex.add(key);
+				size += valueSize;
+				window.addLast(node);
+			}
+			evict();
+			statsCounter.recordSize(size);
+		}
+		statsCounter.recordPut();
+		return true;
+	}
+
+	/** Moves accessed node according to segmented LRU rules. Must be called under lock. */
+	private void onHit(Node node) {
+		switch (node.queueType) {
+			case WINDOW:
+				window.moveToLast(node);
+				break;
+			case PROBATION:
+				probation.remove(node);
+				node.queueType = PROTECTED;
+				protectedQueue.addLast(node);
+				// Demote least recently used protected nodes if protected segment is overflowed
+				while (protectedQueue.size > maxProtectedSize && protectedQueue.first() != node) {
+					Node demoted = protectedQueue.removeFirst();
+					demoted.queueType = PROBATION;
+					probation.addLast(demoted);
+				}
+				break;
+			case PROTECTED:
+				protectedQueue.moveToLast(node);
+				break;
+		}
+	}
+
+	/** Evicts nodes until cache size is within limit. Must be called under lock. */
+	private void evict() {
+		// Nodes which overflow window leave it one by one, each competes with victims of main region
+		while (window.size > maxWindowSize && window.first() != null) {
+			Node candidate = window.first();
+			if (admit(candidate)) {
+				window.remove(candidate);
+				candidate.queueType = PROBATION;
+				probation.addLast(candidate);
+			} else {
+				evictNode(candidate);
+			}
+		}
+
+		// Cache can be still overflowed if size of cached Bitmap was changed
+		while (size > maxSize) {
+			Node victim = mainVictim();
+			if (victim == null) victim = window.first();
+			if (victim == null) break;
+			evictNode(victim);
+		}
+	}
+
+	/**
+	 * Admission: candidate which leaves window replaces victims of main region (while cache is overflowed) only if it's
+	 * requested more frequently than each of them. Must be called under lock.
+	 *
+	 * @return <b>true</b> - if candidate should be moved into main region; <b>false</b> - if it should be evicted
+	 */
+	private boolean admit(Node candidate) {
+		int candidateFrequency = sketch.frequency(candidate.key);
+		while (size > maxSize) {
+			Node victim = mainVictim();
+			if (victim == null || sketch.frequency(victim.key) >= candidateFrequency) return false;
+			evictNode(victim);
+		}
+		return true;
+	}
+
+	/** Returns the least recently used node of main region (probation segment goes first) */
+	private Node mainVictim() {
+		Node victim = probation.first();
+		return victim != null ? victim : protectedQueue.first();
+	}
+
+	private void evictNode(Node node) {
+		removeNode(node);
+		statsCounter.recordEviction(EvictionCause.SIZE, node.size);
+	}
+
+	private void removeNode(Node node) {
+		queueOf(node).remove(node);
+		data.remove(node.key);
+		uriIndex.remove(node.key);
+		size -= node.size;
+	}
+
+	private Queue queueOf(Node node) {
+		switch (node.queueType) {
+			case WINDOW:
+				return window;
+			case PROBATION:
+				return probation;
+			default:
+				return protectedQueue;
+		}
+	}
+
+	/** Removes the entry for {@code key} if it exists. */
+	@Override
+	public final void remove(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		synchronized (this) {
+			Node node = data.get(key);
+			if (node != null) {
+				removeNode(node);
+			}
+		}
+	}
+
+	@Override
+	public Collection<String> keys() {
+		synchronized (this) {
+			return new HashSet<String>(data.keySet());
+		}
+	}
+
+	@Override
+	public Collection<String> keysForImageUri(String imageUri) {
+		synchronized (this) {
+			return uriIndex.get(imageUri);
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (this) {
+			data.clear();
+			uriIndex.clear();
+			window.clear();
+			probation.clear();
+			protectedQueue.clear();
+			size = 0;
+		}
+	}
+
+	@Override
+	public CacheStats getStats() {
+		int currentSize;
+		synchronized (this) {
+			currentSize = size;
+		}
+		return statsCounter.snapshot(currentSize);
+	}
+
+	@Override
+	public void recordLoad(long loadTime) {
+		statsCounter.recordLoad(loadTime);
+	}
+
+	/** Returns count of {@link #get(String)} calls which returned cached Bitmap */
+	public long getHitCount() {
+		return getStats().getHitCount();
+	}
+
+	/** Returns count of {@link #get(String)} calls which returned <b>null</b> */
+	public long getMissCount() {
+		return getStats().getMissCount();
+	}
+
+	/**
+	 * Returns the size {@code Bitmap} in bytes.
+	 * <p/>
+	 * An entry's size must not change while it is in the cache.
+	 */
+	private int sizeOf(String key, Bitmap value) {
+		return BitmapPool.getSize(value);
+	}
+
+	@Override
+	public final String toString() {
+		CacheStats stats = getStats();
+		return String.format("TinyLfuCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]", maxSize, stats.getHitCount(),
+				stats.getMissCount(), (int) (stats.getHitRate() * 100));
+	}
+
+	private static final class Node {
+		final String key;
+		Bitmap value;
+		int size;
+		int queueType = WINDOW;
+
+		Node prev;
+		Node next;
+
+		Node(String key, Bitmap value, int size) {
+			this.key = key;
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	/** Intrusive doubly-linked access queue. Head is the least recently used node. */
+	private static final class Queue {
+		private final Node head = new Node(null, null, 0);
+		int size;
+
+		Queue() {
+			head.prev = head;
+			head.next = head;
+		}
+
+		Node first() {
+			return head.next == head ? null : head.next;
+		}
+
+		Node last() {
+			return head.prev == head ? null : head.prev;
+		}
+
+		void addLast(Node node) {
+			node.prev = head.prev;
+			node.next = head;
+			head.prev.next = node;
+			head.prev = node;
+			size += node.size;
+		}
+
+		void remove(Node node) {
+			node.prev.next = node.next;
+			node.next.prev = node.prev;
+			node.prev = null;
+			node.next = null;
+			size -= node.size;
+		}
+
+		Node removeFirst() {
+			Node node = first();
+			if (node != null) remove(node);
+			return node;
+		}
+
+		void moveToLast(Node node) {
+			remove(node);
+			addLast(node);
+		}
+
+		void clear() {
+			head.prev = head;
+			head.next = head;
+			size = 0;
+		}
+	}
+}
@@ -16,15 +16,16 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
@@ -39,20 +40,39 @@ import java.util.Set;
  */
 public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 	/**
-	 * Contains strong references to stored objects (keys) and last object usage date (in milliseconds). If hard cache
-	 * size will exceed limit then object with the least frequently usage is deleted (but it continue exist at
-	 * {@link #softMap} and can be collected by GC at any time)
+	 * Contains strong references to stored objects and their usage counts. If hard cache size will exceed limit then
+	 * object with the least frequently usage is deleted (but it continue exist at {@link #softMap} and can be collected
+	 * by GC at any time)
 	 */
-	private final Map<Bitmap, Integer> usingCounts = Collections.synchronizedMap(new HashMap<Bitmap, Integer>());
+	private final Map<String, UsageEntry> usingCounts = new HashMap<String, UsageEntry>();
+	/**
+	 * Head of ascending list of usage count buckets. Each bucket keeps entries with the same usage count in insertion
+	 * order so both usage increment and eviction work in constant time.
+	 */
+	private final CountBucket buckets = new CountBucket(-1);
 
 	public UsingFreqLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
+		buckets.prev = buckets;
+		buckets.next = buckets;
 	}
 
 	@Override
 	public boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			usingCounts.put(value, 0);
+			synchronized (usingCounts) {
+				UsageEntry previous = usingCounts.remove(key);
+				if (previous != null) {
+					unlink(previous);
+				}
+				UsageEntry entry = new UsageEntry(key, value);
+				usingCounts.put(key, entry);
+				CountBucket first = buckets.next;
+				if (first == buckets || first.count != 0) {
+					first = insertBucketAfter(buckets, 0);
+				}
+				link(entry, first);
+			}
 			return true;
 		} else {
 			return false;
@@ -64,9 +84,17 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache<String, Bitm
 		Bitmap value = super.get(key);
 		// Increment usage count for value if value is contained in hardCahe
 		if (value != null) {
-			Integer usageCount = usingCounts.get(value);
-			if (usageCount != null) {
-				usingCounts.put(value, usageCount + 1);
+			synchronized (usingCounts) {
+				UsageEntry entry = usingCounts.get(key);
+				if (entry != null) {
+					CountBucket bucket = entry.bucket;
+					CountBucket next = bucket.next;
+					if (next == buckets || next.count != bucket.count + 1) {
+						next = insertBucketAfter(bucket, bucket.count + 1);
+					}
+					unlink(entry);
+					link(entry, next);
+				}
 			}
 		}
 		return value;
@@ -74,49 +102,97 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache<String, Bitm
 
 	@Override
 	public void remove(String key) {
-		Bitmap value = super.get(key);
-		if (value != null) {
-			usingCounts.remove(value);
+		synchronized (usingCounts) {
+			UsageEntry entry = usingCounts.remove(key);
+			if (entry != null) {
+				unlink(entry);
+			}
 		}
 		super.remove(key);
 	}
 
 	@Override
 	public void clear() {
-		usingCounts.clear();
+		synchronized (usingCounts) {
+			usingCounts.clear();
+			buckets.prev = buckets;
+			buckets.next = buckets;
+		}
 		super.clear();
 	}
 
 	@Override
 	protected int getSize(Bitmap value) {
-		return value.getRowBytes() * value.getHeight();
+		return BitmapPool.getSize(value);
 	}
 
 	@Override
 	protected Bitmap removeNext() {
-		Integer minUsageCount = null;
-		Bitmap leastUsedValue = null;
-		Set<Entry<Bitmap, Integer>> entries = usingCounts.entrySet();
 		synchronized (usingCounts) {
-			for (Entry<Bitmap, Integer> entry : entries) {
-				if (leastUsedValue == null) {
-					leastUsedValue = entry.getKey();
-					minUsageCount = entry.getValue();
-				} else {
-					Integer lastValueUsage = entry.getValue();
-					if (lastValueUsage < minUsageCount) {
-						minUsageCount = lastValueUsage;
-						leastUsedValue = entry.getKey();
-					}
-				}
-			}
+			CountBucket leastUsed = buckets.next;
+			if (leastUsed == buckets) return null;
+			Iterator<UsageEntry> it = leastUsed.entries.iterator();
+			UsageEntry entry = it.next();
+			unlink(entry);
+			usingCounts.remove(entry.key);
+			return entry.value;
+		}
+	}
+
+	private CountBucket insertBucketAfter(CountBucket bucket, int count) {
+		CountBucket newBucket = new CountBucket(count);
+		newBucket.prev = bucket;
+		newBucket.next = bucket.next;
+		bucket.next.prev = newBucket;
+		bucket.next = newBucket;
+		return newBucket;
+	}
+
+	private void link(UsageEntry entry, CountBucket bucket) {
+		bucket.entries.add(entry);
+		entry.bucket = bucket;
+	}
+
+	/** Removes entry from its bucket, empty bucket is removed from list */
+	private void unlink(UsageEntry entry) {
+		CountBucket bucket = entry.bucket;
+		bucket.entries.remove(entry);
+		entry.bucket = null;
+		if (bucket.entries.isEmpty()) {
+			bucket.prev.next = bucket.next;
+			bucket.next.prev = bucket.prev;
 		}
-		usingCounts.remove(leastUsedValue);
-		return leastUsedValue;
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
-		return new WeakReference<Bitmap>(value);
+		return createReference(value, null);
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<? super Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
+	}
+
+	private static final class UsageEntry {
+		final String key;
+		final Bitmap value;
+		CountBucket bucket;
+
+		UsageEntry(String key, Bitmap value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private static final class CountBucket {
+		final int count;
+		final LinkedHashSet<UsageEntry> entries = new LinkedHashSet<UsageEntry>();
+		CountBucket prev;
+		CountBucket next;
+
+		CountBucket(int count) {
+			this.count = count;
+		}
 	}
 }
@@ -19,6 +19,7 @@ import android.graphics.Bitmap;
 import com.nostra13.universalimageloader.cache.memory.BaseMemoryCache;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 
 /**
@@ -32,6 +33,11 @@ import java.lang.ref.WeakReference;
 public class WeakMemoryCache extends BaseMemoryCache<String, Bitmap> {
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
-		return new WeakReference<Bitmap>(value);
+		return createReference(value, null);
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<? super Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
 	}
 }
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.core.imageaware.ImageAware;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tracks which {@link Bitmap bitmaps} are displayed in {@link ImageAware image awares} and holds references to them in
+ * {@link BitmapPool}. So bitmap evicted from memory cache gets into pool only when no view displays it.
+ *
+ * @since 1.9.2
+ */
+final class BitmapDisplayTracker {
+
+	/** Collected image awares are purged after every {@value} displays */
+	private static final int PURGE_INTERVAL = 32;
+
+	private final BitmapPool bitmapPool;
+	private final Map<Integer, DisplayRecord> displayedBitmaps = new HashMap<Integer, DisplayRecord>();
+	private int displaysSincePurge;
+
+	BitmapDisplayTracker(BitmapPool bitmapPool) {
+		this.bitmapPool = bitmapPool;
+	}
+
+	/** Holds reference to bitmap until it's {@linkplain #release(Bitmap) released} (e.g. while it's being displayed) */
+	void acquire(Bitmap bitmap) {
+		bitmapPool.acquire(bitmap);
+	}
+
+	/** Returns bitmap from memory cache which is {@linkplain #acquire(Bitmap) acquired} atomically with lookup */
+	Bitmap getAndAcquire(MemoryCacheAware<String, Bitmap> memoryCache, MemoryCacheKey key) {
+		return bitmapPool.getAndAcquire(memoryCache, key);
+	}
+
+	void release(Bitmap bitmap) {
+		bitmapPool.release(bitmap);
+	}
+
+	/**
+	 * Must be called when bitmap is set into image aware. Previous bitmap of image aware is released. Bitmap which is
+	 * set not into view is given to user code and is excluded from pooling forever.
+	 */
+	synchronized void onDisplayed(ImageAware imageAware, Bitmap bitmap) {
+		if (bitmap == null) {
+			onCleared(imageAware);
+			return;
+		}
+		if (imageAware.getWrappedView() == null) {
+			bitmapPool.retain(bitmap);
+			return;
+		}
+
+		bitmapPool.acquire(bitmap);
+		DisplayRecord previous = displayedBitmaps.put(imageAware.getId(), new DisplayRecord(imageAware, bitmap));
+		if (previous != null) {
+			bitmapPool.release(previous.bitmap);
+		}
+
+		if (++displaysSincePurge >= PURGE_INTERVAL) {
+			displaysSincePurge = 0;
+			purgeCollected();
+		}
+	}
+
+	/** Must be called when image aware's bitmap is replaced by other drawable (stub, fail image, etc.) */
+	synchronized void onCleared(ImageAware imageAware) {
+		DisplayRecord previous = displayedBitmaps.remove(imageAware.getId());
+		if (previous != null) {
+			bitmapPool.release(previous.bitmap);
+		}
+	}
+
+	/** Releases bitmaps of views which were collected by GC */
+	private void purgeCollected() {
+		Iterator<DisplayRecord> it = displayedBitmaps.values().iterator();
+		while (it.hasNext()) {
+			DisplayRecord record = it.next();
+			if (record.imageAware.isCollected()) {
+				it.remove();
+				bitmapPool.release(record.bitmap);
+			}
+		}
+	}
+
+	private static final class DisplayRecord {
+		final ImageAware imageAware;
+		final Bitmap bitmap;
+
+		DisplayRecord(ImageAware imageAware, Bitmap bitmap) {
+			this.imageAware = imageAware;
+			this.bitmap = bitmap;
+		}
+	}
+}
@@ -2,13 +2,20 @@ package com.nostra13.universalimageloader.core;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.LimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.impl.FileCountLimitedDiscCache;
+import com.nostra13.universalimageloader.cache.disc.impl.JournaledDiscCache;
+import com.nostra13.universalimageloader.cache.disc.impl.PackFileDiscCache;
 import com.nostra13.universalimageloader.cache.disc.impl.TotalSizeLimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.cache.disc.naming.HashCodeFileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.impl.ConcurrentLruMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.EncodedMemoryCache;
 import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
 import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
 import com.nostra13.universalimageloader.core.assist.deque.LIFOLinkedBlockingDeque;
@@ -24,6 +31,7 @@ import java.io.File;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -35,11 +43,34 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class DefaultConfigurationFactory
 {
 
+	/** Initial capacity of priority task queue */
+	private static final int TASK_QUEUE_INITIAL_CAPACITY = 16;
+	/** Idle maintenance (and callback) thread dies after this time (in seconds) */
+	private static final long MAINTENANCE_THREAD_KEEP_ALIVE = 60;
+	/** Count of rendition generations which can wait in queue; others are skipped */
+	private static final int RENDITION_QUEUE_CAPACITY = 8;
+	/** Directory of reserve disc cache in internal cache directory */
+	private static final String RESERVE_DIR_NAME = "uil-images-reserve";
+	/** Directory which reserve disc cache used before {@link #RESERVE_DIR_NAME} */
+	private static final String LEGACY_RESERVE_DIR_NAME = "uil-images";
+
 	/** 创建默认的任务执行者 */
 	public static Executor createExecutor(int threadPoolSize, int threadPriority, QueueProcessingType tasksProcessingType)
 	{
-		boolean lifo = tasksProcessingType == QueueProcessingType.LIFO;
-		BlockingQueue<Runnable> taskQueue = lifo ? new LIFOLinkedBlockingDeque<Runnable>() : new LinkedBlockingQueue<Runnable>();
+		BlockingQueue<Runnable> taskQueue;
+		switch (tasksProcessingType)
+		{
+			case LIFO:
+				taskQueue = new LIFOLinkedBlockingDeque<Runnable>();
+				break;
+			case PRIORITY:
+				taskQueue = new PriorityBlockingQueue<Runnable>(TASK_QUEUE_INITIAL_CAPACITY, new TaskPriorityComparator());
+				break;
+			case FIFO:
+			default:
+				taskQueue = new LinkedBlockingQueue<Runnable>();
+				break;
+		}
 		return new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L, TimeUnit.MILLISECONDS, taskQueue, createThreadFactory(threadPriority));
 	}
 
@@ -55,17 +86,46 @@ public class DefaultConfigurationFactory
 	/**
 	 * 根据参数创建默认的本地缓存策略{@link DiscCacheAware}
 	 */
-	public static DiscCacheAware createDiscCache(Context context, FileNameGenerator discCacheFileNameGenerator, int discCacheSize, int discCacheFileCount)
+	public static DiscCacheAware createDiscCache(Context context, FileNameGenerator discCacheFileNameGenerator, long discCacheSize, int discCacheFileCount)
+	{
+		return createDiscCache(context, discCacheFileNameGenerator, discCacheSize, discCacheFileCount, false);
+	}
+
+	/**
+	 * 根据参数创建默认的本地缓存策略{@link DiscCacheAware}. If
+	 * {@code journaled} is true then limited cache is
+	 * {@link JournaledDiscCache} which doesn't scan cache directory on start.
+	 */
+	public static DiscCacheAware createDiscCache(Context context, FileNameGenerator discCacheFileNameGenerator, long discCacheSize, int discCacheFileCount, boolean journaled)
+	{
+		return createDiscCache(context, discCacheFileNameGenerator, discCacheSize, discCacheFileCount, journaled, false);
+	}
+
+	/**
+	 * 根据参数创建默认的本地缓存策略{@link DiscCacheAware}. If
+	 * {@code countAllocatedBlocks} is true then size limited cache counts
+	 * sizes of files in allocated blocks of file system (journaled cache
+	 * counts file lengths).
+	 */
+	public static DiscCacheAware createDiscCache(Context context, FileNameGenerator discCacheFileNameGenerator, long discCacheSize, int discCacheFileCount, boolean journaled, boolean countAllocatedBlocks)
 	{
-		if (discCacheSize > 0) //初始值默认的本地缓存大小为0
+		if (journaled && (discCacheSize > 0 || discCacheFileCount > 0))
+		{
+			File individualCacheDir = StorageUtils.getIndividualCacheDirectory(context);
+			boolean dedicated = StorageUtils.isIndividualCacheDirectory(individualCacheDir);
+			return new JournaledDiscCache(individualCacheDir, discCacheFileNameGenerator, discCacheSize, discCacheFileCount, dedicated);
+		}
+		else if (discCacheSize > 0) //初始值默认的本地缓存大小为0
 		{
 			File individualCacheDir = StorageUtils.getIndividualCacheDirectory(context);
-			return new TotalSizeLimitedDiscCache(individualCacheDir, discCacheFileNameGenerator, discCacheSize);
+			boolean dedicated = StorageUtils.isIndividualCacheDirectory(individualCacheDir);
+			return new TotalSizeLimitedDiscCache(individualCacheDir, discCacheFileNameGenerator, discCacheSize, LimitedDiscCache.DEFAULT_LOW_WATERMARK, countAllocatedBlocks, dedicated);
 		}
 		else if (discCacheFileCount > 0) //初始值默认的本地缓存文件个数为0
 		{
 			File individualCacheDir = StorageUtils.getIndividualCacheDirectory(context);
-			return new FileCountLimitedDiscCache(individualCacheDir, discCacheFileNameGenerator, discCacheFileCount);
+			boolean dedicated = StorageUtils.isIndividualCacheDirectory(individualCacheDir);
+			return new FileCountLimitedDiscCache(individualCacheDir, discCacheFileNameGenerator, discCacheFileCount, LimitedDiscCache.DEFAULT_LOW_WATERMARK, dedicated);
 		}
 		else
 		{
@@ -76,11 +136,13 @@ public class DefaultConfigurationFactory
 
 	/**
 	 * Creates reserve disc cache which will be used if primary disc cache
-	 * becomes unavailable
+	 * becomes unavailable. Reserve cache has its own directory (individual
+	 * cache directory is on internal storage too if SD card isn't mounted),
+	 * and it never takes its directory as dedicated one.
 	 */
 	public static DiscCacheAware createReserveDiscCache(File cacheDir)
 	{
-		File individualDir = new File(cacheDir, "uil-images");
+		File individualDir = new File(cacheDir, RESERVE_DIR_NAME);
 		if (individualDir.exists() || individualDir.mkdir())
 		{
 			cacheDir = individualDir;
@@ -91,18 +153,104 @@ public class DefaultConfigurationFactory
 																			// Mb
 	}
 
+	/**
+	 * Reserve disc cache was kept in "uil-images" directory of internal cache
+	 * directory before, so its images stay there after update. Deletes this
+	 * directory in background once (it doesn't exist afterwards), unless
+	 * it's directory of primary disc cache: individual cache directory is
+	 * on internal storage too if SD card isn't mounted.
+	 *
+	 * @param reserveCacheDir Internal cache directory which contains
+	 *            directory of reserve disc cache
+	 */
+	public static void deleteLegacyReserveCacheDir(final Context context, File reserveCacheDir, final DiscCacheAware discCache, Executor executor)
+	{
+		final File legacyDir = new File(reserveCacheDir, LEGACY_RESERVE_DIR_NAME);
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				File primaryDir = discCache instanceof BaseDiscCache ? ((BaseDiscCache) discCache).getCacheDir() : null;
+				File defaultPrimaryDir = new File(StorageUtils.getCacheDirectory(context), LEGACY_RESERVE_DIR_NAME);
+				if (!legacyDir.isDirectory() || legacyDir.equals(primaryDir) || legacyDir.equals(defaultPrimaryDir))
+				{
+					return;
+				}
+
+				File[] files = legacyDir.listFiles();
+				if (files != null)
+				{
+					for (File file : files)
+					{
+						file.delete(); // cache wasn't sharded, so there are no subdirectories
+					}
+				}
+				legacyDir.delete();
+			}
+		});
+	}
+
 	/**
 	 * Creates default implementation of {@link MemoryCacheAware} -
 	 * {@link LruMemoryCache}<br />
 	 * Default cache size = 1/8 of available app memory.
 	 */
 	public static MemoryCacheAware<String, Bitmap> createMemoryCache(int memoryCacheSize)
+	{
+		return createMemoryCache(memoryCacheSize, 0);
+	}
+
+	/**
+	 * Creates default implementation of {@link MemoryCacheAware} -
+	 * {@link LruMemoryCache} or {@link ConcurrentLruMemoryCache} if
+	 * concurrency level is greater than 1<br />
+	 * Default cache size = 1/8 of available app memory.
+	 */
+	public static MemoryCacheAware<String, Bitmap> createMemoryCache(int memoryCacheSize, int concurrencyLevel)
+	{
+		return createMemoryCache(memoryCacheSize, concurrencyLevel, null);
+	}
+
+	/**
+	 * Creates default implementation of {@link MemoryCacheAware} -
+	 * {@link LruMemoryCache} or {@link ConcurrentLruMemoryCache} if
+	 * concurrency level is greater than 1. Evicted bitmaps are passed to
+	 * <b>bitmapPool</b> (if it isn't null).<br />
+	 * Default cache size = 1/8 of available app memory.
+	 */
+	public static MemoryCacheAware<String, Bitmap> createMemoryCache(int memoryCacheSize, int concurrencyLevel, BitmapPool bitmapPool)
 	{
 		if (memoryCacheSize == 0)
 		{
-			memoryCacheSize = (int) (Runtime.getRuntime().maxMemory() / 8);
+			memoryCacheSize = getDefaultMemoryCacheSize();
 		}
-		return new LruMemoryCache(memoryCacheSize);
+		if (concurrencyLevel > 1)
+		{
+			return new ConcurrentLruMemoryCache(memoryCacheSize, concurrencyLevel, bitmapPool);
+		}
+		return new LruMemoryCache(memoryCacheSize, bitmapPool);
+	}
+
+	/** Returns default size of memory cache - 1/8 of available app memory */
+	static int getDefaultMemoryCacheSize()
+	{
+		return (int) (Runtime.getRuntime().maxMemory() / 8);
+	}
+
+	/** Creates pool of bitmaps which are reused for decoding - {@link BitmapPool} */
+	public static BitmapPool createBitmapPool(int bitmapPoolSize)
+	{
+		return new BitmapPool(bitmapPoolSize);
+	}
+
+	/**
+	 * Creates memory cache for encoded image bytes -
+	 * {@link EncodedMemoryCache}
+	 */
+	public static EncodedMemoryCache createEncodedMemoryCache(int encodedMemoryCacheSize)
+	{
+		return new EncodedMemoryCache(encodedMemoryCacheSize);
 	}
 
 	/**
@@ -123,6 +271,16 @@ public class DefaultConfigurationFactory
 		return new BaseImageDecoder(loggingEnabled);
 	}
 
+	/**
+	 * Creates default implementation of {@link ImageDecoder} -
+	 * {@link BaseImageDecoder} which reuses bitmaps of <b>bitmapPool</b> (if
+	 * it isn't null)
+	 */
+	public static ImageDecoder createImageDecoder(boolean loggingEnabled, BitmapPool bitmapPool)
+	{
+		return new BaseImageDecoder(loggingEnabled, bitmapPool);
+	}
+
 	/**
 	 * Creates default implementation of {@link BitmapDisplayer} -
 	 * {@link SimpleBitmapDisplayer}
@@ -132,13 +290,66 @@ public class DefaultConfigurationFactory
 		return new SimpleBitmapDisplayer();
 	}
 
+	/**
+	 * Creates executor for background maintenance of caches (journal
+	 * compaction, eviction, etc.). Executor has one low-priority thread which
+	 * lives only while there are tasks.
+	 */
+	public static Executor createMaintenanceExecutor()
+	{
+		return new ThreadPoolExecutor(0, 1, MAINTENANCE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory(Thread.MIN_PRIORITY, "uil-maintenance-"));
+	}
+
+	/**
+	 * Creates executor for generation of disc cache renditions. Executor has
+	 * one low-priority thread which lives only while there are tasks, and
+	 * bounded queue: task is rejected (with
+	 * {@link java.util.concurrent.RejectedExecutionException}) if queue is
+	 * full, so during fling generations are skipped instead of piling up.
+	 * Renditions aren't generated by maintenance executor of disc cache,
+	 * so evictions and compactions aren't delayed by decoding of images.
+	 */
+	public static Executor createRenditionExecutor()
+	{
+		return new ThreadPoolExecutor(0, 1, MAINTENANCE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(RENDITION_QUEUE_CAPACITY), new DefaultThreadFactory(Thread.MIN_PRIORITY, "uil-rendition-"));
+	}
+
+	/**
+	 * Returns maintenance executor of disc cache if cache has one, so
+	 * wrappers and helpers of cache don't start threads of their own.
+	 * Otherwise creates new {@linkplain #createMaintenanceExecutor()
+	 * maintenance executor}.
+	 */
+	public static Executor getMaintenanceExecutor(DiscCacheAware discCache)
+	{
+		if (discCache instanceof BaseDiscCache)
+		{
+			return ((BaseDiscCache) discCache).getMaintenanceExecutor();
+		}
+		else if (discCache instanceof PackFileDiscCache)
+		{
+			return ((PackFileDiscCache) discCache).getMaintenanceExecutor();
+		}
+		return createMaintenanceExecutor();
+	}
+
+	/**
+	 * Creates executor for listener callbacks which have no handler.
+	 * Executor has one thread (so callbacks of task keep their order) which
+	 * lives only while there are callbacks.
+	 */
+	public static Executor createCallbackExecutor()
+	{
+		return new ThreadPoolExecutor(0, 1, MAINTENANCE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory(Thread.NORM_PRIORITY, "uil-callback-"));
+	}
+
 	/**
 	 * Creates default implementation of {@linkplain ThreadFactory thread
 	 * factory} for task executor
 	 */
 	private static ThreadFactory createThreadFactory(int threadPriority)
 	{
-		return new DefaultThreadFactory(threadPriority);
+		return new DefaultThreadFactory(threadPriority, "uil-pool-");
 	}
 
 	private static class DefaultThreadFactory implements ThreadFactory
@@ -151,12 +362,12 @@ public class DefaultConfigurationFactory
 		private final String namePrefix;
 		private final int threadPriority;
 
-		DefaultThreadFactory(int threadPriority)
+		DefaultThreadFactory(int threadPriority, String poolNamePrefix)
 		{
 			this.threadPriority = threadPriority;
 			SecurityManager s = System.getSecurityManager();
 			group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-			namePrefix = "uil-pool-" + poolNumber.getAndIncrement() + "-thread-";
+			namePrefix = poolNamePrefix + poolNumber.getAndIncrement() + "-thread-";
 		}
 
 		@Override
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import com.nostra13.universalimageloader.cache.disc.BlobDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+import com.nostra13.universalimageloader.core.assist.ImageScaleType;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import com.nostra13.universalimageloader.core.decode.ImageDecodingInfo;
+import com.nostra13.universalimageloader.core.download.BlobDiscCacheImageDownloader;
+import com.nostra13.universalimageloader.core.download.ImageDownloader;
+import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
+import com.nostra13.universalimageloader.utils.DiscCacheUtils;
+import com.nostra13.universalimageloader.utils.IoUtils;
+import com.nostra13.universalimageloader.utils.L;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps downscaled renditions of images in disc cache (see
+ * {@link ImageLoaderConfiguration.Builder#discCacheRenditions(int...)}). Rendition of size bucket is cached in the same
+ * disc cache as original but under its own key; it has shorter side equal to bucket size and is already rotated
+ * according EXIF if EXIF params were considered. Renditions are generated in background by one low-priority thread;
+ * generation is skipped if too many renditions wait for it (it's tried again on next loading of image).
+ *
+ * @since 1.9.2
+ */
+final class DiscCacheRenditions {
+
+	private static final String LOG_GENERATE_RENDITION = "Generate rendition %d of image in disc cache [%s]";
+	private static final String KEY_SEPARATOR = "#r";
+	private static final String KEY_EXIF_SUFFIX = "e";
+
+	/** Rendition is generated only for images which are at least {@value} times larger than bucket */
+	private static final int MIN_SOURCE_SCALE = 2;
+	private static final int DEFAULT_COMPRESS_QUALITY = 90;
+	private static final int BUFFER_SIZE = 32 * 1024; // 32 Kb
+
+	private final ImageLoaderConfiguration configuration;
+	private final int[] sizes;
+	private final Executor executor;
+	/** Keys of renditions which are generating at the moment */
+	private final Set<String> generatingKeys = new HashSet<String>();
+
+	DiscCacheRenditions(ImageLoaderConfiguration configuration) {
+		this.configuration = configuration;
+		this.sizes = configuration.discCacheRenditionSizes;
+		this.executor = DefaultConfigurationFactory.createRenditionExecutor();
+	}
+
+	/** Returns the smallest bucket which is enough for target size or 0 if there is no such bucket */
+	int selectSize(ImageSize targetSize) {
+		int maxSide = Math.max(targetSize.getWidth(), targetSize.getHeight());
+		for (int size : sizes) {
+			if (size >= maxSide) return size;
+		}
+		return 0;
+	}
+
+	/** Returns disc cache key of image rendition */
+	static String generateKey(String imageUri, int size, boolean considerExifParams) {
+		String key = imageUri + KEY_SEPARATOR + size;
+		return considerExifParams ? key + KEY_EXIF_SUFFIX : key;
+	}
+
+	/**
+	 * Schedules generation of rendition if source image is large enough.
+	 *
+	 * @param sourceMetadata Metadata of cached original; rendition isn't generated if image size is unknown
+	 * @param sourcePacked   Whether original is packed as blob in disc cache
+	 */
+	void generateLater(String imageUri, int size, DisplayImageOptions options, EntryMetadata sourceMetadata,
+			File sourceFile, boolean sourcePacked) {
+		if (sourceMetadata == null || !sourceMetadata.hasImageInfo()) return;
+		int minSide = Math.min(sourceMetadata.getImageWidth(), sourceMetadata.getImageHeight());
+		if (minSide < size * MIN_SOURCE_SCALE) return;
+
+		String key = generateKey(imageUri, size, options.isConsiderExifParams());
+		synchronized (generatingKeys) {
+			if (!generatingKeys.add(key)) return;
+		}
+		String sourceUri = sourcePacked ? imageUri : Scheme.FILE.wrap(sourceFile.getAbsolutePath());
+		try {
+			executor.execute(new GenerateTask(key, imageUri, sourceUri, sourcePacked, size, options, sourceMetadata));
+		} catch (RejectedExecutionException e) {
+			synchronized (generatingKeys) {
+				generatingKeys.remove(key);
+			}
+		}
+	}
+
+	/** Removes all renditions of image from disc cache */
+	void removeAll(String imageUri) {
+		DiscCacheAware discCache = configuration.discCache;
+		for (int size : sizes) {
+			DiscCacheUtils.removeFromCache(generateKey(imageUri, size, false), discCache);
+			DiscCacheUtils.removeFromCache(generateKey(imageUri, size, true), discCache);
+		}
+	}
+
+	private void generate(String key, String sourceUri, boolean sourcePacked, int size, DisplayImageOptions options,
+			EntryMetadata sourceMetadata) throws IOException {
+		DiscCacheAware discCache = configuration.discCache;
+		ImageDownloader downloader = configuration.downloader;
+		if (sourcePacked) {
+			downloader = new BlobDiscCacheImageDownloader(downloader, (BlobDiscCacheAware) discCache);
+		}
+		DisplayImageOptions renditionOptions = new DisplayImageOptions.Builder().cloneFrom(options)
+				.imageScaleType(ImageScaleType.EXACTLY).build();
+		ImageDecodingInfo decodingInfo = new ImageDecodingInfo(key, sourceUri, new ImageSize(size, size),
+				ViewScaleType.CROP, downloader, renditionOptions, sourceMetadata, null);
+		Bitmap bmp = configuration.decoder.decode(decodingInfo);
+		if (bmp == null) return;
+
+		File file = DiscCacheUtils.getFile(key, discCache);
+		File dir = file.getParentFile();
+		if (!dir.exists()) { // shard directory is created by first file of shard
+			dir.mkdirs();
+		}
+		File tempFile = new File(dir, "." + file.getName() + ".tmp"); // skipped by cache scans
+		boolean saved = false;
+		try {
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+			try {
+				saved = bmp.compress(getCompressFormat(bmp), getCompressQuality(), os);
+			} finally {
+				IoUtils.closeSilently(os);
+			}
+		} finally {
+			if (configuration.bitmapPool != null) {
+				configuration.bitmapPool.put(bmp);
+			} else {
+				bmp.recycle();
+			}
+		}
+		if (saved && tempFile.renameTo(file)) {
+			discCache.put(key, file);
+		} else {
+			tempFile.delete();
+		}
+	}
+
+	private CompressFormat getCompressFormat(Bitmap bmp) {
+		CompressFormat format = configuration.imageCompressFormatForDiscCache;
+		if (format == null) {
+			format = bmp.hasAlpha() ? CompressFormat.PNG : CompressFormat.JPEG;
+		}
+		return format;
+	}
+
+	private int getCompressQuality() {
+		int quality = configuration.imageQualityForDiscCache;
+		return quality > 0 ? quality : DEFAULT_COMPRESS_QUALITY;
+	}
+
+	private final class GenerateTask implements Runnable {
+		private final String key;
+		private final String imageUri;
+		private final String sourceUri;
+		private final boolean sourcePacked;
+		private final int size;
+		private final DisplayImageOptions options;
+		private final EntryMetadata sourceMetadata;
+
+		GenerateTask(String key, String imageUri, String sourceUri, boolean sourcePacked, int size,
+				DisplayImageOptions options, EntryMetadata sourceMetadata) {
+			this.key = key;
+			this.imageUri = imageUri;
+			this.sourceUri = sourceUri;
+			this.sourcePacked = sourcePacked;
+			this.size = size;
+			this.options = options;
+			this.sourceMetadata = sourceMetadata;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (DiscCacheUtils.isCached(key, configuration.discCache)) return;
+				if (configuration.writeLogs) L.d(LOG_GENERATE_RENDITION, size, imageUri);
+				generate(key, sourceUri, sourcePacked, size, options, sourceMetadata);
+			} catch (IOException e) {
+				L.e(e);
+			} catch (OutOfMemoryError e) {
+				L.e(e);
+			} finally {
+				synchronized (generatingKeys) {
+					generatingKeys.remove(key);
+				}
+			}
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package com.nostra13.universalimageloader.core;
 
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.assist.LoadedFrom;
 import com.nostra13.universalimageloader.core.display.BitmapDisplayer;
@@ -39,13 +40,15 @@ final class DisplayBitmapTask implements Runnable {
 	private final Bitmap bitmap;
 	private final String imageUri;
 	private final ImageAware imageAware;
-	private final String memoryCacheKey;
+	private final MemoryCacheKey memoryCacheKey;
 	private final BitmapDisplayer displayer;
 	private final ImageLoadingListener listener;
 	private final ImageLoaderEngine engine;
 	private final LoadedFrom loadedFrom;
 
 	private boolean loggingEnabled;
+	/** Bitmap which is referenced until this task is done, can be null */
+	private Bitmap referencedBitmap;
 
 	public DisplayBitmapTask(Bitmap bitmap, ImageLoadingInfo imageLoadingInfo, ImageLoaderEngine engine,
 							 LoadedFrom loadedFrom) {
@@ -69,19 +72,31 @@ final class DisplayBitmapTask implements Runnable {
 			listener.onLoadingCancelled(imageUri, imageAware.getWrappedView());
 		} else {
 			if (loggingEnabled) L.d(LOG_DISPLAY_IMAGE_IN_IMAGEAWARE, loadedFrom, memoryCacheKey);
+			engine.onBitmapDisplayed(imageAware, bitmap);
 			displayer.display(bitmap, imageAware, loadedFrom);
 			engine.cancelDisplayTaskFor(imageAware);
 			listener.onLoadingComplete(imageUri, imageAware.getWrappedView(), bitmap);
 		}
+		if (referencedBitmap != null) {
+			engine.releaseBitmap(referencedBitmap);
+		}
 	}
 
 	/** Checks whether memory cache key (image URI) for current ImageAware is actual */
 	private boolean isViewWasReused() {
-		String currentCacheKey = engine.getLoadingUriForView(imageAware);
+		MemoryCacheKey currentCacheKey = engine.getLoadingKeyForView(imageAware);
 		return !memoryCacheKey.equals(currentCacheKey);
 	}
 
 	void setLoggingEnabled(boolean loggingEnabled) {
 		this.loggingEnabled = loggingEnabled;
 	}
+
+	/**
+	 * Sets bitmap which was {@linkplain ImageLoaderEngine#acquireBitmap(Bitmap) acquired} by caller. It's released
+	 * when display is done so it can't be reused by bitmap pool before displaying.
+	 */
+	void releaseAfterDisplay(Bitmap bitmap) {
+		referencedBitmap = bitmap;
+	}
 }
@@ -1,9 +1,11 @@
 package com.nostra13.universalimageloader.core;
 
+import android.annotation.TargetApi;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory.Options;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Handler;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
@@ -78,6 +80,7 @@ public final class DisplayImageOptions {
 	private final BitmapDisplayer displayer;
 	private final Handler handler;
 	private final boolean isSyncLoading;
+	private final int priority;
 
 	private DisplayImageOptions(Builder builder) {
 		imageResOnLoading = builder.imageResOnLoading;
@@ -99,6 +102,7 @@ public final class DisplayImageOptions {
 		displayer = builder.displayer;
 		handler = builder.handler;
 		isSyncLoading = builder.isSyncLoading;
+		priority = builder.priority;
 	}
 
 	public boolean shouldShowImageOnLoading() {
@@ -189,6 +193,40 @@ public final class DisplayImageOptions {
 		return isSyncLoading;
 	}
 
+	/**
+	 * Returns <b>true</b> if image is loaded the same way with incoming options: options which affect downloading and
+	 * decoding of image are equal. Options of displaying (stub images, post-processor, displayer) aren't compared.
+	 */
+	boolean isLoadedLike(DisplayImageOptions other) {
+		return imageScaleType == other.imageScaleType && considerExifParams == other.considerExifParams
+				&& preProcessor == other.preProcessor && extraForDownloader == other.extraForDownloader
+				&& isDecodedLike(decodingOptions, other.decodingOptions);
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static boolean isDecodedLike(Options options1, Options options2) {
+		if (options1 == options2) return true;
+
+		boolean equal = options1.inPreferredConfig == options2.inPreferredConfig
+				&& options1.inDither == options2.inDither
+				&& options1.inPurgeable == options2.inPurgeable
+				&& options1.inInputShareable == options2.inInputShareable
+				&& options1.inScaled == options2.inScaled
+				&& options1.inDensity == options2.inDensity
+				&& options1.inTargetDensity == options2.inTargetDensity;
+		if (equal && Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1) {
+			equal = options1.inPreferQualityOverSpeed == options2.inPreferQualityOverSpeed;
+		}
+		if (equal && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			equal = options1.inMutable == options2.inMutable;
+		}
+		return equal;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
 	/**
 	 * Builder for {@link DisplayImageOptions}
 	 *
@@ -214,6 +252,7 @@ public final class DisplayImageOptions {
 		private BitmapDisplayer displayer = DefaultConfigurationFactory.createBitmapDisplayer();
 		private Handler handler = null;
 		private boolean isSyncLoading = false;
+		private int priority = 0;
 
 		public Builder() {
 			decodingOptions.inPurgeable = true;
@@ -388,6 +427,16 @@ public final class DisplayImageOptions {
 			return this;
 		}
 
+		/**
+		 * Sets priority of loading task. Tasks with higher priority are executed earlier if
+		 * {@link com.nostra13.universalimageloader.core.assist.QueueProcessingType#PRIORITY PRIORITY} queue processing
+		 * type is used, otherwise priority is ignored. Default - 0.
+		 */
+		public Builder priority(int priority) {
+			this.priority = priority;
+			return this;
+		}
+
 		/** Sets auxiliary object which will be passed to {@link ImageDownloader#getStream(String, Object)} */
 		public Builder extraForDownloader(Object extra) {
 			this.extraForDownloader = extra;
@@ -437,7 +486,8 @@ public final class DisplayImageOptions {
 
 		/**
 		 * Sets custom {@linkplain Handler handler} for displaying images and firing {@linkplain ImageLoadingListener
-		 * listener} events.
+		 * listener} events. If there is no handler (and image is requested not from main thread) then events are fired
+		 * on one background thread which is shared by all tasks, so listener mustn't block.
 		 */
 		public Builder handler(Handler handler) {
 			this.handler = handler;
@@ -465,6 +515,7 @@ public final class DisplayImageOptions {
 			displayer = options.displayer;
 			handler = options.handler;
 			isSyncLoading = options.isSyncLoading;
+			priority = options.priority;
 			return this;
 		}
 
@@ -7,7 +7,9 @@ import android.text.TextUtils;
 import android.view.View;
 import android.widget.ImageView;
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
 import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
@@ -22,7 +24,6 @@ import com.nostra13.universalimageloader.core.listener.SimpleImageLoadingListene
 import com.nostra13.universalimageloader.core.listener.SyncImageLoadingListener;
 import com.nostra13.universalimageloader.utils.ImageSizeUtils;
 import com.nostra13.universalimageloader.utils.L;
-import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
 
 /**
  * 用于 Android ImageView 显示和加载图片的工具类，单例的， 注意：该类中的
@@ -283,25 +284,31 @@ public class ImageLoader
 			{
 				imageAware.setImageDrawable(null);
 			}
+			engine.onImageAwareCleared(imageAware);
 			listener.onLoadingComplete(uri, imageAware.getWrappedView(), null);
 			return;
 		}
 
 		ImageSize targetSize = ImageSizeUtils.defineTargetSizeForView(imageAware, configuration.getMaxImageSize());
-		String memoryCacheKey = MemoryCacheUtils.generateKey(uri, targetSize);
-		engine.prepareDisplayTaskFor(imageAware, memoryCacheKey);
+		MemoryCacheKey memoryCacheKey = engine.prepareDisplayTaskFor(imageAware, new MemoryCacheKey(uri, targetSize, options.getPreProcessor()));
 
 		listener.onLoadingStarted(uri, imageAware.getWrappedView());
 
-		Bitmap bmp = configuration.memoryCache.get(memoryCacheKey);
-		if (bmp != null && !bmp.isRecycled())
+		Bitmap bmp = engine.getCachedBitmap(memoryCacheKey); // acquired, isn't reused by bitmap pool until it's released
+		if (bmp != null && bmp.isRecycled())
+		{
+			engine.releaseBitmap(bmp);
+			bmp = null;
+		}
+		if (bmp != null)
 		{
 			if (configuration.writeLogs)
 				L.d(LOG_LOAD_IMAGE_FROM_MEMORY_CACHE, memoryCacheKey);
 
 			if (options.shouldPostProcess())
 			{
-				ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageAware, targetSize, memoryCacheKey, options, listener, progressListener, engine.getLockForUri(uri));
+				// acquired bitmap is released after post-processing
+				ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageAware, targetSize, memoryCacheKey, options, listener, progressListener);
 				ProcessAndDisplayImageTask displayTask = new ProcessAndDisplayImageTask(engine, bmp, imageLoadingInfo, defineHandler(options));
 				if (options.isSyncLoading())
 				{
@@ -314,7 +321,9 @@ public class ImageLoader
 			}
 			else
 			{
+				engine.onBitmapDisplayed(imageAware, bmp);
 				options.getDisplayer().display(bmp, imageAware, LoadedFrom.MEMORY_CACHE);
+				engine.releaseBitmap(bmp); // displayed bitmap is referenced by its view
 				listener.onLoadingComplete(uri, imageAware.getWrappedView(), bmp);
 			}
 		}
@@ -323,13 +332,15 @@ public class ImageLoader
 			if (options.shouldShowImageOnLoading())
 			{
 				imageAware.setImageDrawable(options.getImageOnLoading(configuration.resources));
+				engine.onImageAwareCleared(imageAware);
 			}
 			else if (options.isResetViewBeforeLoading())
 			{
 				imageAware.setImageDrawable(null);
+				engine.onImageAwareCleared(imageAware);
 			}
 
-			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageAware, targetSize, memoryCacheKey, options, listener, progressListener, engine.getLockForUri(uri));
+			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageAware, targetSize, memoryCacheKey, options, listener, progressListener);
 			LoadAndDisplayImageTask displayTask = new LoadAndDisplayImageTask(engine, imageLoadingInfo, defineHandler(options));
 			if (options.isSyncLoading())
 			{
@@ -801,6 +812,20 @@ public class ImageLoader
 		return configuration.memoryCache;
 	}
 
+	/**
+	 * Returns pool of bitmaps which are reused for decoding or <b>null</b> if
+	 * bitmaps aren't reused. Pool provides statistics of reuse.
+	 * 
+	 * @throws IllegalStateException
+	 *             if {@link #init(ImageLoaderConfiguration)} method wasn't
+	 *             called before
+	 */
+	public BitmapPool getBitmapPool()
+	{
+		checkConfiguration();
+		return configuration.bitmapPool;
+	}
+
 	/**
 	 * Clears memory cache
 	 * 
@@ -812,6 +837,14 @@ public class ImageLoader
 	{
 		checkConfiguration();
 		configuration.memoryCache.clear();
+		if (configuration.bitmapPool != null)
+		{
+			configuration.bitmapPool.clear();
+		}
+		if (configuration.encodedMemoryCache != null)
+		{
+			configuration.encodedMemoryCache.clear();
+		}
 	}
 
 	/**
@@ -828,7 +861,9 @@ public class ImageLoader
 	}
 
 	/**
-	 * Clears disc cache.
+	 * Clears disc cache. Built-in disc caches don't block caller: individual
+	 * cache directory is renamed and deleted in background; in shared cache
+	 * directory only cached images are deleted in background.
 	 * 
 	 * @throws IllegalStateException
 	 *             if {@link #init(ImageLoaderConfiguration)} method wasn't
@@ -838,6 +873,10 @@ public class ImageLoader
 	{
 		checkConfiguration();
 		configuration.discCache.clear();
+		if (configuration.encodedMemoryCache != null)
+		{
+			configuration.encodedMemoryCache.clear();
+		}
 	}
 
 	/**
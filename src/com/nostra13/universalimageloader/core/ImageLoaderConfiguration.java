@@ -23,7 +23,10 @@ import android.util.DisplayMetrics;
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
 import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import com.nostra13.universalimageloader.cache.disc.naming.ShardedFileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.impl.EncodedMemoryCache;
 import com.nostra13.universalimageloader.cache.memory.impl.FuzzyKeyMemoryCache;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
 import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
@@ -37,6 +40,7 @@ import com.nostra13.universalimageloader.utils.L;
 import com.nostra13.universalimageloader.utils.StorageUtils;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.concurrent.Executor;
 
 /**
@@ -63,6 +67,8 @@ public final class ImageLoaderConfiguration
 	final CompressFormat imageCompressFormatForDiscCache;
 	final int imageQualityForDiscCache;
 	final BitmapProcessor processorForDiscCache;
+	/** 缩略图副本的尺寸档位 (升序), 不使用缩略图副本时为 null */
+	final int[] discCacheRenditionSizes;
 
 	final Executor taskExecutor;
 	final Executor taskExecutorForCachedImages;
@@ -74,6 +80,8 @@ public final class ImageLoaderConfiguration
 	final QueueProcessingType tasksProcessingType;
 
 	final MemoryCacheAware<String, Bitmap> memoryCache;
+	final EncodedMemoryCache encodedMemoryCache;
+	final BitmapPool bitmapPool;
 	final DiscCacheAware discCache;
 	final ImageDownloader downloader;
 	final ImageDecoder decoder;
@@ -94,6 +102,7 @@ public final class ImageLoaderConfiguration
 		imageCompressFormatForDiscCache = builder.imageCompressFormatForDiscCache;
 		imageQualityForDiscCache = builder.imageQualityForDiscCache;
 		processorForDiscCache = builder.processorForDiscCache;
+		discCacheRenditionSizes = builder.discCacheRenditionSizes;
 		taskExecutor = builder.mTaskExecutor;
 		taskExecutorForCachedImages = builder.mTaskExecutorForCachedImages;
 		threadPoolSize = builder.mThreadPoolSize;
@@ -101,6 +110,8 @@ public final class ImageLoaderConfiguration
 		tasksProcessingType = builder.mTasksProcessingType;
 		discCache = builder.mDiscCache;
 		memoryCache = builder.memoryCache;
+		encodedMemoryCache = builder.encodedMemoryCache;
+		bitmapPool = builder.bitmapPool;
 		defaultDisplayImageOptions = builder.mDefaultDisplayImageOptions;
 		writeLogs = builder.writeLogs;
 		downloader = builder.mDownloader;
@@ -114,6 +125,8 @@ public final class ImageLoaderConfiguration
 
 		File reserveCacheDir = StorageUtils.getCacheDirectory(builder.context, false);
 		reserveDiscCache = DefaultConfigurationFactory.createReserveDiscCache(reserveCacheDir);
+		DefaultConfigurationFactory.deleteLegacyReserveCacheDir(builder.context, reserveCacheDir, discCache,
+				DefaultConfigurationFactory.getMaintenanceExecutor(reserveDiscCache));
 	}
 
 	/**
@@ -174,7 +187,8 @@ public final class ImageLoaderConfiguration
 
 		private static final String WARNING_OVERLAP_DISC_CACHE_PARAMS = "discCache(), discCacheSize() and discCacheFileCount calls overlap each other";
 		private static final String WARNING_OVERLAP_DISC_CACHE_NAME_GENERATOR = "discCache() and discCacheFileNameGenerator() calls overlap each other";
-		private static final String WARNING_OVERLAP_MEMORY_CACHE = "memoryCache() and memoryCacheSize() calls overlap each other";
+		private static final String WARNING_OVERLAP_MEMORY_CACHE = "memoryCache(), memoryCacheSize() and memoryCacheConcurrencyLevel() calls overlap each other";
+		private static final String WARNING_ENCODED_MEMORY_CACHE_SIZE = "encodedMemoryCacheSize() is reduced to half of memory cache size";
 		private static final String WARNING_OVERLAP_EXECUTOR = "threadPoolSize(), threadPriority() and tasksProcessingOrder() calls " + "can overlap taskExecutor() and taskExecutorForCachedImages() calls.";
 
 		/** {@value} */
@@ -193,6 +207,7 @@ public final class ImageLoaderConfiguration
 		private CompressFormat imageCompressFormatForDiscCache = null;
 		private int imageQualityForDiscCache = 0;
 		private BitmapProcessor processorForDiscCache = null;
+		private int[] discCacheRenditionSizes = null;
 
 		/**任务执行者*/
 		private Executor mTaskExecutor = null;
@@ -211,12 +226,20 @@ public final class ImageLoaderConfiguration
 		private QueueProcessingType mTasksProcessingType = DEFAULT_TASK_PROCESSING_TYPE;
 		/**默认给定的内存缓存大小*/
 		private int mMemoryCacheSize = 0;
+		private int memoryCacheConcurrencyLevel = 0;
 		/**默认给定的本地缓存大小*/
-		private int mDiscCacheSize = 0;
+		private long mDiscCacheSize = 0;
 		/**本地缓存文件个数*/
 		private int mDiscCacheFileCount = 0;
+		private boolean discCacheJournal = false;
+		private boolean discCacheAllocatedBlocks = false;
+		private boolean shardedDiscCacheLayout = false;
 
 		private MemoryCacheAware<String, Bitmap> memoryCache = null;
+		private int encodedMemoryCacheSize = 0;
+		private EncodedMemoryCache encodedMemoryCache = null;
+		private int bitmapPoolSize = 0;
+		private BitmapPool bitmapPool = null;
 		/**本地缓存*/
 		private DiscCacheAware mDiscCache = null;
 		/**本地文件名生成器*/
@@ -409,7 +432,9 @@ public final class ImageLoaderConfiguration
 
 		/**
 		 * Sets type of queue processing for tasks for loading and displaying
-		 * images.<br />
+		 * images. {@link QueueProcessingType#PRIORITY} orders tasks by
+		 * {@linkplain DisplayImageOptions.Builder#priority(int) priority} and
+		 * reprioritizes queued tasks when views are rebound.<br />
 		 * Default value - {@link QueueProcessingType#FIFO}
 		 */
 		public Builder tasksProcessingOrder(QueueProcessingType tasksProcessingType)
@@ -474,6 +499,33 @@ public final class ImageLoaderConfiguration
 			return this;
 		}
 
+		/**
+		 * Sets estimated number of threads which access memory cache
+		 * concurrently.<br />
+		 * Default value - 0 (memory cache isn't striped).<br />
+		 * <b>NOTE:</b> If you set value greater than 1 then
+		 * {@link com.nostra13.universalimageloader.cache.memory.impl.ConcurrentLruMemoryCache
+		 * ConcurrentLruMemoryCache} will be used as memory cache instead of
+		 * {@link com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache
+		 * LruMemoryCache}. It splits cache into independently locked
+		 * segments so UI thread lookups don't wait for worker threads which
+		 * put decoded bitmaps into cache. This option isn't considered if you
+		 * set custom memory cache by {@link #memoryCache(MemoryCacheAware)}.
+		 */
+		public Builder memoryCacheConcurrencyLevel(int concurrencyLevel)
+		{
+			if (concurrencyLevel < 0)
+				throw new IllegalArgumentException("concurrencyLevel must not be negative");
+
+			if (memoryCache != null)
+			{
+				L.w(WARNING_OVERLAP_MEMORY_CACHE);
+			}
+
+			this.memoryCacheConcurrencyLevel = concurrencyLevel;
+			return this;
+		}
+
 		/**
 		 * Sets memory cache for {@link android.graphics.Bitmap bitmaps}.<br />
 		 * Default value -
@@ -489,7 +541,7 @@ public final class ImageLoaderConfiguration
 		 */
 		public Builder memoryCache(MemoryCacheAware<String, Bitmap> memoryCache)
 		{
-			if (mMemoryCacheSize != 0)
+			if (mMemoryCacheSize != 0 || memoryCacheConcurrencyLevel != 0)
 			{
 				L.w(WARNING_OVERLAP_MEMORY_CACHE);
 			}
@@ -498,6 +550,55 @@ public final class ImageLoaderConfiguration
 			return this;
 		}
 
+		/**
+		 * Sets maximum size of memory cache for encoded (compressed) image
+		 * bytes (in bytes).<br />
+		 * Default value - 0 (encoded images aren't cached in memory).<br />
+		 * <b>NOTE:</b> If you set positive value then
+		 * {@link EncodedMemoryCache} will keep bytes of recently used disc
+		 * cache files in direct buffers. Image which was evicted from bitmap
+		 * memory cache is decoded again from these bytes without reading the
+		 * file. Encoded images are much smaller than decoded bitmaps so this
+		 * cache keeps several times more images for quick back navigation.
+		 * Direct buffers are allocated in Java heap on Android, so this size
+		 * is taken from memory cache size (default one or set by
+		 * {@link #memoryCacheSize(int)}) and it can't exceed half of it. If
+		 * you set custom memory cache by {@link #memoryCache(MemoryCacheAware)}
+		 * then this size can't exceed 1/16 of available app memory.
+		 */
+		public Builder encodedMemoryCacheSize(int encodedMemoryCacheSize)
+		{
+			if (encodedMemoryCacheSize < 0)
+				throw new IllegalArgumentException("encodedMemoryCacheSize must not be negative");
+
+			this.encodedMemoryCacheSize = encodedMemoryCacheSize;
+			return this;
+		}
+
+		/**
+		 * Sets maximum size of pool of bitmaps which are reused for decoding
+		 * (in bytes).<br />
+		 * Default value - 0 (bitmaps aren't reused).<br />
+		 * <b>NOTE:</b> If you set positive value then bitmaps evicted from
+		 * memory cache are put into {@link BitmapPool} (when they aren't
+		 * displayed anymore) and decoder reuses them for new images instead of
+		 * allocating new bitmaps. It reduces GC pauses during list scrolling.
+		 * Pool is fed only by default memory cache and used only by default
+		 * decoder, so this option isn't considered if you set custom memory
+		 * cache by {@link #memoryCache(MemoryCacheAware)} or custom decoder by
+		 * {@link #imageDecoder(ImageDecoder)}. Bitmaps got from memory cache
+		 * or from listener callbacks mustn't be kept by your code after view
+		 * shows another image. Bitmaps are reused on Android 3.0+ only.
+		 */
+		public Builder bitmapPoolSize(int bitmapPoolSize)
+		{
+			if (bitmapPoolSize < 0)
+				throw new IllegalArgumentException("bitmapPoolSize must not be negative");
+
+			this.bitmapPoolSize = bitmapPoolSize;
+			return this;
+		}
+
 		/**
 		 * Sets maximum disc cache size for images (in bytes).<br />
 		 * By default: disc cache is unlimited.<br />
@@ -507,7 +608,7 @@ public final class ImageLoaderConfiguration
 		 * {@link #discCache(DiscCacheAware)} method for introduction your own
 		 * implementation of {@link DiscCacheAware}
 		 */
-		public Builder discCacheSize(int maxCacheSize)
+		public Builder discCacheSize(long maxCacheSize)
 		{
 			if (maxCacheSize <= 0)
 				throw new IllegalArgumentException("maxCacheSize must be a positive number");
@@ -545,6 +646,105 @@ public final class ImageLoaderConfiguration
 			return this;
 		}
 
+		/**
+		 * Limited disc cache ({@link #discCacheSize(long)},
+		 * {@link #discCacheFileCount(int)}) will keep journal of cached files
+		 * instead of scanning of cache directory on every app start.<br />
+		 * By default: journal isn't used.<br />
+		 * <b>NOTE:</b> If you use this method then
+		 * {@link com.nostra13.universalimageloader.cache.disc.impl.JournaledDiscCache
+		 * JournaledDiscCache} will be used as limited disc cache.
+		 */
+		public Builder useDiscCacheJournal()
+		{
+			if (mDiscCache != null)
+			{
+				L.w(WARNING_OVERLAP_DISC_CACHE_PARAMS);
+			}
+
+			this.discCacheJournal = true;
+			return this;
+		}
+
+		/**
+		 * Size limited disc cache ({@link #discCacheSize(long)}) will count
+		 * sizes of cached files in allocated blocks of file system (file
+		 * length rounded up to block size) instead of file lengths, so cache
+		 * limit matches real disc usage when there are many small files.<br />
+		 * By default: file lengths are counted.<br />
+		 * <b>NOTE:</b> It's ignored by journaled cache (
+		 * {@link #useDiscCacheJournal()}) and if custom disc cache is set by
+		 * {@link #discCache(DiscCacheAware)}.
+		 */
+		public Builder countDiscCacheAllocatedBlocks()
+		{
+			if (mDiscCache != null)
+			{
+				L.w(WARNING_OVERLAP_DISC_CACHE_PARAMS);
+			}
+
+			this.discCacheAllocatedBlocks = true;
+			return this;
+		}
+
+		/**
+		 * Cached files will be spread over subdirectories of disc cache
+		 * directory (see
+		 * {@link com.nostra13.universalimageloader.cache.disc.naming.ShardedFileNameGenerator
+		 * ShardedFileNameGenerator}), so file lookups stay fast in very large
+		 * caches. Files of existing cache are moved into subdirectories in
+		 * background. Cache directory which is shared with other components
+		 * (e.g. app cache directory of unlimited cache) isn't sharded.<br />
+		 * By default: all files are in cache directory.<br />
+		 * <b>NOTE:</b> It's ignored if custom disc cache is set by
+		 * {@link #discCache(DiscCacheAware)}.
+		 */
+		public Builder useShardedDiscCacheLayout()
+		{
+			if (mDiscCache != null)
+			{
+				L.w(WARNING_OVERLAP_DISC_CACHE_NAME_GENERATOR);
+			}
+
+			this.shardedDiscCacheLayout = true;
+			return this;
+		}
+
+		/**
+		 * Disc cache will keep downscaled renditions of cached images besides
+		 * originals. Rendition of size bucket <b>B</b> has shorter side equal
+		 * to <b>B</b>; it's used for target sizes which aren't larger than
+		 * <b>B</b> so smaller files are decoded on repeat loads. Renditions
+		 * are generated in background after image is decoded from original,
+		 * only for images which are at least twice larger than bucket.
+		 * Renditions are removed when original is downloaded again.<br />
+		 * Renditions are compressed in format and quality set by
+		 * {@link #discCacheExtraOptions(int, int, CompressFormat, int, BitmapProcessor)}
+		 * (JPEG, or PNG for images with alpha, by default).<br />
+		 * By default: renditions aren't stored.<br />
+		 * <b>NOTE:</b> Renditions are cached under keys
+		 * <b>[imageUri]#r[bucket]</b> (with <b>e</b> suffix for images
+		 * rotated according EXIF), so
+		 * {@link com.nostra13.universalimageloader.utils.DiscCacheUtils#removeFromCache(String, DiscCacheAware)
+		 * DiscCacheUtils.removeFromCache(...)} doesn't remove them (use
+		 * {@link com.nostra13.universalimageloader.utils.DiscCacheUtils#removeFromCacheByPrefix(String, DiscCacheAware)
+		 * DiscCacheUtils.removeFromCacheByPrefix(...)}).
+		 * 
+		 * @param bucketSizes
+		 *            Size buckets (in pixels) of stored renditions
+		 */
+		public Builder discCacheRenditions(int... bucketSizes)
+		{
+			int[] sizes = bucketSizes.clone();
+			Arrays.sort(sizes);
+			if (sizes.length > 0 && sizes[0] <= 0)
+			{
+				throw new IllegalArgumentException("bucketSizes must be positive");
+			}
+			this.discCacheRenditionSizes = sizes.length > 0 ? sizes : null;
+			return this;
+		}
+
 		/**
 		 * Sets name generator for files cached in disc cache.<br />
 		 * Default value -
@@ -597,7 +797,7 @@ public final class ImageLoaderConfiguration
 		 * <b>NOTE:</b> If you set custom disc cache then following
 		 * configuration option will not be considered:
 		 * <ul>
-		 * <li>{@link #discCacheSize(int)}</li>
+		 * <li>{@link #discCacheSize(long)}</li>
 		 * <li>{@link #discCacheFileCount(int)}</li>
 		 * <li>{@link #discCacheFileNameGenerator(FileNameGenerator)}</li>
 		 * </ul>
@@ -680,11 +880,34 @@ public final class ImageLoaderConfiguration
 				{
 					mDiscCacheFileNameGenerator = DefaultConfigurationFactory.createFileNameGenerator();
 				}
-				mDiscCache = DefaultConfigurationFactory.createDiscCache(context, mDiscCacheFileNameGenerator, mDiscCacheSize, mDiscCacheFileCount);
+				if (shardedDiscCacheLayout)
+				{
+					mDiscCacheFileNameGenerator = new ShardedFileNameGenerator(mDiscCacheFileNameGenerator);
+				}
+				mDiscCache = DefaultConfigurationFactory.createDiscCache(context, mDiscCacheFileNameGenerator, mDiscCacheSize, mDiscCacheFileCount, discCacheJournal, discCacheAllocatedBlocks);
+			}
+			if (bitmapPoolSize > 0 && BitmapPool.isReuseSupported() && memoryCache == null && mDecoder == null)
+			{
+				bitmapPool = DefaultConfigurationFactory.createBitmapPool(bitmapPoolSize);
+			}
+			if (encodedMemoryCacheSize > 0)
+			{
+				// Encoded bytes share heap budget of bitmaps
+				int memoryCacheSize = mMemoryCacheSize > 0 && memoryCache == null ? mMemoryCacheSize : DefaultConfigurationFactory.getDefaultMemoryCacheSize();
+				if (encodedMemoryCacheSize > memoryCacheSize / 2)
+				{
+					L.w(WARNING_ENCODED_MEMORY_CACHE_SIZE);
+					encodedMemoryCacheSize = memoryCacheSize / 2;
+				}
+				if (memoryCache == null)
+				{
+					mMemoryCacheSize = memoryCacheSize - encodedMemoryCacheSize;
+				}
+				encodedMemoryCache = DefaultConfigurationFactory.createEncodedMemoryCache(encodedMemoryCacheSize);
 			}
 			if (memoryCache == null)
 			{
-				memoryCache = DefaultConfigurationFactory.createMemoryCache(mMemoryCacheSize);
+				memoryCache = DefaultConfigurationFactory.createMemoryCache(mMemoryCacheSize, memoryCacheConcurrencyLevel, bitmapPool);
 			}
 			if (denyCacheImageMultipleSizesInMemory)
 			{
@@ -696,7 +919,7 @@ public final class ImageLoaderConfiguration
 			}
 			if (mDecoder == null)
 			{
-				mDecoder = DefaultConfigurationFactory.createImageDecoder(writeLogs);
+				mDecoder = DefaultConfigurationFactory.createImageDecoder(writeLogs, bitmapPool);
 			}
 			if (mDefaultDisplayImageOptions == null)
 			{
@@ -1,20 +1,29 @@
 package com.nostra13.universalimageloader.core;
 
+import android.graphics.Bitmap;
 import android.view.View;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
 import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
+import com.nostra13.universalimageloader.core.assist.KeyedLocks;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.imageaware.ImageAware;
+import com.nostra13.universalimageloader.utils.DiscCacheUtils;
+import com.nostra13.universalimageloader.utils.L;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 负责加载和显示图片任务
@@ -28,16 +37,31 @@ class ImageLoaderEngine
 
 	private Executor taskExecutor;
 	private Executor taskExecutorForCachedImages;
-	private Executor taskDistributor;
+	/** 分发加载任务 (按是否已缓存到本地) 并调整排队任务的优先级, 只用一个线程 */
+	private final TaskDispatcher taskDispatcher;
+	/** 执行没有 Handler 的回调, 只用一个线程 (保证同一任务的回调按顺序执行), 空闲时线程退出 */
+	private final Executor callbackExecutor;
 
-	private final Map<Integer, String> cacheKeysForImageAwares = Collections.synchronizedMap(new HashMap<Integer, String>());
-	private final Map<String, ReentrantLock> uriLocks = new WeakHashMap<String, ReentrantLock>();
+	private final Map<Integer, MemoryCacheKey> cacheKeysForImageAwares = Collections.synchronizedMap(new HashMap<Integer, MemoryCacheKey>());
+	/** View 上一次的缓存键, 同一个 View 重新绑定同一张图片时复用键对象 (和它的字符串形式) */
+	private final Map<View, MemoryCacheKey> lastKeysForViews = new WeakHashMap<View, MemoryCacheKey>();
+	/** 同一个 URI 的图片同一时间只由一个任务下载和解码; 每个 URI 有自己的锁, 不同 URI 互不阻塞 */
+	private final KeyedLocks<String> uriLocks = new KeyedLocks<String>();
+	/** 正在加载的图片 (URI 和尺寸): 第一个任务负责加载, 加载选项相同的其余任务等待它的结果, 不占用线程 */
+	private final Map<MemoryCacheKey, List<LoadAndDisplayImageTask>> inFlightTasks = new HashMap<MemoryCacheKey, List<LoadAndDisplayImageTask>>();
 
 	private final AtomicBoolean paused = new AtomicBoolean(false);
 	private final AtomicBoolean networkDenied = new AtomicBoolean(false);
 	private final AtomicBoolean slowNetwork = new AtomicBoolean(false);
 
 	private final Object pauseLock = new Object();
+	/** 任务放入执行队列和调整优先级时持有, 保证任务在优先级队列中时优先级不变 */
+	private final Object schedulingLock = new Object();
+
+	/** 跟踪正在显示的图片, 没有配置 BitmapPool 时为 null */
+	private final BitmapDisplayTracker bitmapDisplayTracker;
+	/** 本地缓存中的缩略图副本, 没有配置副本尺寸时为 null */
+	final DiscCacheRenditions discCacheRenditions;
 
 	ImageLoaderEngine(ImageLoaderConfiguration configuration)
 	{
@@ -46,31 +70,182 @@ class ImageLoaderEngine
 		taskExecutor = configuration.taskExecutor;
 		taskExecutorForCachedImages = configuration.taskExecutorForCachedImages;
 
-		taskDistributor = Executors.newCachedThreadPool();
+		taskDispatcher = new TaskDispatcher(this);
+		callbackExecutor = DefaultConfigurationFactory.createCallbackExecutor();
+
+		bitmapDisplayTracker = configuration.bitmapPool == null ? null : new BitmapDisplayTracker(configuration.bitmapPool);
+		discCacheRenditions = configuration.discCacheRenditionSizes == null ? null : new DiscCacheRenditions(configuration);
 	}
 
-	/** Submits task to execution pool */
-	void submit(final LoadAndDisplayImageTask task)
+	/**
+	 * Submits task to execution pool. If the same image (URI and size) is
+	 * loading by other task at this moment then task is attached to that
+	 * loading and gets its result without taking a thread.
+	 */
+	void submit(LoadAndDisplayImageTask task)
 	{
-		taskDistributor.execute(new Runnable()
+		if (attachToInFlightLoading(task))
 		{
-			@Override
-			public void run()
+			return;
+		}
+		taskDispatcher.dispatch(task);
+	}
+
+	/**
+	 * Forwards batch of tasks to executors: tasks of images which are cached
+	 * on disc go to executor for cached images. Is called on dispatcher
+	 * thread. Task which can't be forwarded (e.g. executor rejects it) fails
+	 * together with tasks which are attached to its loading; other tasks of
+	 * batch are forwarded as usual.
+	 */
+	void distribute(List<LoadAndDisplayImageTask> tasks)
+	{
+		for (LoadAndDisplayImageTask task : tasks)
+		{
+			try
 			{
-				boolean isImageCachedOnDisc = configuration.discCache.get(task.getLoadingUri()).exists();
 				initExecutorsIfNeed();
-				if (isImageCachedOnDisc)
-				{
-					taskExecutorForCachedImages.execute(task);
-				}
-				else
+				boolean isImageCachedOnDisc = DiscCacheUtils.isCached(task.getLoadingUri(), configuration.discCache);
+				synchronized (schedulingLock)
 				{
-					taskExecutor.execute(task);
+					if (isImageCachedOnDisc)
+					{
+						taskExecutorForCachedImages.execute(task);
+					}
+					else
+					{
+						taskExecutor.execute(task);
+					}
 				}
 			}
+			catch (RuntimeException e)
+			{
+				// 任务不会执行, 等待它的加载结果的任务也不能一直等下去
+				L.e(e);
+				task.failNotExecuted(e);
+			}
+		}
+	}
+
+	/**
+	 * Changes priority of task on dispatcher thread: removal of task from
+	 * priority queue takes linear time, so it isn't done on UI thread.
+	 * 
+	 * @param promotingTask
+	 *            Task which is attached to loading of <b>task</b>; loading
+	 *            gets priority of promoting task if it's higher. <b>null</b> -
+	 *            if task is demoted.
+	 */
+	private void postReprioritize(final LoadAndDisplayImageTask task, final LoadAndDisplayImageTask promotingTask)
+	{
+		taskDispatcher.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				reprioritize(task, getNewPriority(task, promotingTask));
+			}
 		});
 	}
 
+	/**
+	 * Returns priority which loading of <b>task</b> gets: priority of
+	 * promoting task if it's higher, the lowest one if task is demoted
+	 * 
+	 * @param promotingTask
+	 *            Task which is attached to loading; <b>null</b> - if task is
+	 *            demoted
+	 */
+	static int getNewPriority(PrioritizedTask task, PrioritizedTask promotingTask)
+	{
+		return promotingTask == null ? PrioritizedTask.PRIORITY_DEMOTED : Math.max(task.getPriority(), promotingTask.getPriority());
+	}
+
+	/**
+	 * Changes priority of task. If task waits in priority queue of executor
+	 * then it's moved to new place in queue. Is called on dispatcher thread.
+	 */
+	private void reprioritize(LoadAndDisplayImageTask task, int priority)
+	{
+		synchronized (schedulingLock)
+		{
+			BlockingQueue<Runnable> queue = getPriorityQueue(taskExecutor);
+			if (queue != null && requeue(queue, task, priority))
+			{
+				return;
+			}
+			queue = getPriorityQueue(taskExecutorForCachedImages);
+			if (queue != null && requeue(queue, task, priority))
+			{
+				return;
+			}
+			task.reschedule(priority); // task is running or isn't forwarded yet
+		}
+	}
+
+	/**
+	 * Reschedules task with new priority and moves it to new place in
+	 * <b>queue</b> if it waits there
+	 * 
+	 * @return <b>false</b> - if task isn't in queue (it isn't rescheduled then)
+	 */
+	static boolean requeue(BlockingQueue<Runnable> queue, PrioritizedTask task, int priority)
+	{
+		if (!queue.remove(task))
+		{
+			return false;
+		}
+		task.reschedule(priority);
+		queue.offer(task);
+		return true;
+	}
+
+	/** Returns queue of executor if it orders tasks by priority, <b>null</b> otherwise */
+	private static BlockingQueue<Runnable> getPriorityQueue(Executor executor)
+	{
+		if (executor instanceof ThreadPoolExecutor)
+		{
+			BlockingQueue<Runnable> queue = ((ThreadPoolExecutor) executor).getQueue();
+			if (queue instanceof PriorityBlockingQueue)
+			{
+				return queue;
+			}
+		}
+		return null;
+	}
+
+	private boolean isPriorityScheduling()
+	{
+		return getPriorityQueue(taskExecutor) != null || getPriorityQueue(taskExecutorForCachedImages) != null;
+	}
+
+	/**
+	 * Demotes queued loading for <b>imageAware</b> which doesn't need
+	 * <b>memoryCacheKey</b> image anymore. Loading which other tasks wait for
+	 * isn't demoted.
+	 */
+	private void demoteLoading(MemoryCacheKey memoryCacheKey, ImageAware imageAware)
+	{
+		if (!isPriorityScheduling())
+		{
+			return;
+		}
+		LoadAndDisplayImageTask owner;
+		synchronized (inFlightTasks)
+		{
+			List<LoadAndDisplayImageTask> tasks = inFlightTasks.get(memoryCacheKey);
+			if (tasks == null || tasks.size() > 1)
+			{
+				return;
+			}
+			owner = tasks.get(0);
+		}
+		if (owner.getImageAware().getId() == imageAware.getId())
+		{
+			postReprioritize(owner, null);
+		}
+	}
+
 	/** Submits task to execution pool */
 	void submit(ProcessAndDisplayImageTask task)
 	{
@@ -95,11 +270,89 @@ class ImageLoaderEngine
 		return DefaultConfigurationFactory.createExecutor(configuration.threadPoolSize, configuration.threadPriority, configuration.tasksProcessingType);
 	}
 
+	/**
+	 * Attaches task to loading of the same image which is in progress or
+	 * registers task as owner of new loading. Task is attached only if image
+	 * is loaded with the same options (decoding options, scale type, EXIF
+	 * consideration), otherwise it's loaded by itself.
+	 * 
+	 * @return <b>true</b> - if task was attached to loading of other task;
+	 *         <b>false</b> - if task should be executed
+	 */
+	private boolean attachToInFlightLoading(LoadAndDisplayImageTask task)
+	{
+		LoadAndDisplayImageTask owner;
+		synchronized (inFlightTasks)
+		{
+			List<LoadAndDisplayImageTask> tasks = inFlightTasks.get(task.getMemoryCacheKey());
+			if (tasks == null)
+			{
+				tasks = new ArrayList<LoadAndDisplayImageTask>();
+				tasks.add(task);
+				inFlightTasks.put(task.getMemoryCacheKey(), tasks);
+				return false;
+			}
+			owner = tasks.get(0);
+			if (!owner.options.isLoadedLike(task.options))
+			{
+				return false; // loaded image wouldn't suit task
+			}
+			tasks.add(task);
+		}
+		if (isPriorityScheduling())
+		{
+			// image is bound to view again, so loading becomes the latest one
+			postReprioritize(owner, task);
+		}
+		return true;
+	}
+
+	/** Returns <b>true</b> if other tasks wait for result of loading which is owned by <b>task</b> */
+	boolean hasAttachedTasks(LoadAndDisplayImageTask task)
+	{
+		synchronized (inFlightTasks)
+		{
+			List<LoadAndDisplayImageTask> tasks = inFlightTasks.get(task.getMemoryCacheKey());
+			return tasks != null && tasks.get(0) == task && tasks.size() > 1;
+		}
+	}
+
+	/**
+	 * Finishes loading which is owned by <b>task</b>. New tasks for the same
+	 * image won't be attached to it anymore.
+	 * 
+	 * @return Tasks which were attached to loading and wait for its result
+	 *         (empty list if <b>task</b> doesn't own loading)
+	 */
+	List<LoadAndDisplayImageTask> finishInFlightLoading(LoadAndDisplayImageTask task)
+	{
+		synchronized (inFlightTasks)
+		{
+			List<LoadAndDisplayImageTask> tasks = inFlightTasks.get(task.getMemoryCacheKey());
+			if (tasks == null || tasks.get(0) != task)
+			{
+				return Collections.emptyList();
+			}
+			inFlightTasks.remove(task.getMemoryCacheKey());
+			return tasks.subList(1, tasks.size());
+		}
+	}
+
 	/**
 	 * Returns URI of image which is loading at this moment into passed
 	 * {@link com.nostra13.universalimageloader.core.imageaware.ImageAware}
 	 */
 	String getLoadingUriForView(ImageAware imageAware)
+	{
+		MemoryCacheKey memoryCacheKey = cacheKeysForImageAwares.get(imageAware.getId());
+		return memoryCacheKey == null ? null : memoryCacheKey.toString();
+	}
+
+	/**
+	 * Returns memory cache key of image which is loading at this moment into
+	 * passed {@link com.nostra13.universalimageloader.core.imageaware.ImageAware}
+	 */
+	MemoryCacheKey getLoadingKeyForView(ImageAware imageAware)
 	{
 		return cacheKeysForImageAwares.get(imageAware.getId());
 	}
@@ -107,10 +360,35 @@ class ImageLoaderEngine
 	/**
 	 * Associates <b>memoryCacheKey</b> with <b>imageAware</b>. Then it helps to
 	 * define image URI is loaded into View at exact moment.
+	 * 
+	 * @return Key which should be used for display task: previous key of the
+	 *         view if it's equal to incoming one, <b>memoryCacheKey</b>
+	 *         otherwise
 	 */
-	void prepareDisplayTaskFor(ImageAware imageAware, String memoryCacheKey)
+	MemoryCacheKey prepareDisplayTaskFor(ImageAware imageAware, MemoryCacheKey memoryCacheKey)
 	{
-		cacheKeysForImageAwares.put(imageAware.getId(), memoryCacheKey);
+		View view = imageAware.getWrappedView();
+		if (view != null)
+		{
+			synchronized (lastKeysForViews)
+			{
+				MemoryCacheKey lastKey = lastKeysForViews.get(view);
+				if (memoryCacheKey.equals(lastKey))
+				{
+					memoryCacheKey = lastKey;
+				}
+				else
+				{
+					lastKeysForViews.put(view, memoryCacheKey);
+				}
+			}
+		}
+		MemoryCacheKey previousKey = cacheKeysForImageAwares.put(imageAware.getId(), memoryCacheKey);
+		if (previousKey != null && !previousKey.equals(memoryCacheKey))
+		{
+			demoteLoading(previousKey, imageAware);
+		}
+		return memoryCacheKey;
 	}
 
 	/**
@@ -123,7 +401,73 @@ class ImageLoaderEngine
 	 */
 	void cancelDisplayTaskFor(ImageAware imageAware)
 	{
-		cacheKeysForImageAwares.remove(imageAware.getId());
+		MemoryCacheKey previousKey = cacheKeysForImageAwares.remove(imageAware.getId());
+		if (previousKey != null)
+		{
+			demoteLoading(previousKey, imageAware);
+		}
+	}
+
+	/**
+	 * Returns bitmap from memory cache. Returned bitmap is acquired (see
+	 * {@link #acquireBitmap(Bitmap)}) atomically with lookup, so it can't be
+	 * evicted and reused by bitmap pool in between. Caller must
+	 * {@linkplain #releaseBitmap(Bitmap) release} it. String form of key
+	 * isn't built for built-in memory caches, so lookup on UI thread doesn't
+	 * allocate strings.
+	 */
+	Bitmap getCachedBitmap(MemoryCacheKey memoryCacheKey)
+	{
+		if (bitmapDisplayTracker != null)
+		{
+			return bitmapDisplayTracker.getAndAcquire(configuration.memoryCache, memoryCacheKey);
+		}
+		return MemoryCacheUtils.get(memoryCacheKey, configuration.memoryCache);
+	}
+
+	/**
+	 * Holds reference to bitmap so it won't be reused by bitmap pool until
+	 * it's {@linkplain #releaseBitmap(Bitmap) released}
+	 */
+	void acquireBitmap(Bitmap bitmap)
+	{
+		if (bitmapDisplayTracker != null)
+		{
+			bitmapDisplayTracker.acquire(bitmap);
+		}
+	}
+
+	/** Releases reference which was held by {@link #acquireBitmap(Bitmap)} */
+	void releaseBitmap(Bitmap bitmap)
+	{
+		if (bitmapDisplayTracker != null)
+		{
+			bitmapDisplayTracker.release(bitmap);
+		}
+	}
+
+	/**
+	 * Must be called when <b>bitmap</b> is set into <b>imageAware</b>.
+	 * Previous bitmap of <b>imageAware</b> can be reused after that.
+	 */
+	void onBitmapDisplayed(ImageAware imageAware, Bitmap bitmap)
+	{
+		if (bitmapDisplayTracker != null)
+		{
+			bitmapDisplayTracker.onDisplayed(imageAware, bitmap);
+		}
+	}
+
+	/**
+	 * Must be called when bitmap of <b>imageAware</b> is replaced by other
+	 * drawable (stub, fail image or nothing)
+	 */
+	void onImageAwareCleared(ImageAware imageAware)
+	{
+		if (bitmapDisplayTracker != null)
+		{
+			bitmapDisplayTracker.onCleared(imageAware);
+		}
 	}
 
 	/**
@@ -181,10 +525,12 @@ class ImageLoaderEngine
 
 	/**
 	 * Stops engine, cancels all running and scheduled display image tasks.
-	 * Clears internal data.
+	 * Tasks which weren't dispatched yet fail, tasks which wait for result
+	 * of other task's loading are cancelled. Clears internal data.
 	 */
 	void stop()
 	{
+		taskDispatcher.stop(); // before keys are cleared, so not dispatched tasks are actual and get fail event
 		if (!configuration.customExecutor)
 		{
 			((ExecutorService) taskExecutor).shutdownNow();
@@ -195,23 +541,55 @@ class ImageLoaderEngine
 		}
 
 		cacheKeysForImageAwares.clear();
-		uriLocks.clear();
+		synchronized (lastKeysForViews)
+		{
+			lastKeysForViews.clear();
+		}
+		List<LoadAndDisplayImageTask> attachedTasks = new ArrayList<LoadAndDisplayImageTask>();
+		synchronized (inFlightTasks)
+		{
+			for (List<LoadAndDisplayImageTask> tasks : inFlightTasks.values())
+			{
+				attachedTasks.addAll(tasks.subList(1, tasks.size()));
+			}
+			inFlightTasks.clear();
+		}
+		// 负责加载的任务被中断后已找不到等待它的任务, 所以在这里通知它们
+		for (LoadAndDisplayImageTask task : attachedTasks)
+		{
+			task.cancelAttached();
+		}
 	}
 
+	/**
+	 * Runs listener callback which has no handler. Callbacks of all tasks are
+	 * run one by one on single callback thread, so listener which blocks
+	 * (e.g. waits for I/O) delays callbacks of all other tasks.
+	 */
 	void fireCallback(Runnable r)
 	{
-		taskDistributor.execute(r);
+		callbackExecutor.execute(r);
 	}
 
-	ReentrantLock getLockForUri(String uri)
+	/**
+	 * Acquires lock which guards writing of image by <b>uri</b> into disc
+	 * cache (tasks for different sizes of image write the same cached file).
+	 * Must be followed by {@link #unlockUri(String)} in the same thread.
+	 */
+	void lockUri(String uri)
 	{
-		ReentrantLock lock = uriLocks.get(uri);
-		if (lock == null)
-		{
-			lock = new ReentrantLock();
-			uriLocks.put(uri, lock);
-		}
-		return lock;
+		uriLocks.lock(uri);
+	}
+
+	void unlockUri(String uri)
+	{
+		uriLocks.unlock(uri);
+	}
+
+	/** Returns <b>true</b> if image by <b>uri</b> is being written into disc cache by other task */
+	boolean isUriLocked(String uri)
+	{
+		return uriLocks.isLocked(uri);
 	}
 
 	AtomicBoolean getPause()
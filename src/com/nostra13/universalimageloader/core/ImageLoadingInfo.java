@@ -15,18 +15,17 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.core;
 
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingProgressListener;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
 import com.nostra13.universalimageloader.core.imageaware.ImageAware;
 
-import java.util.concurrent.locks.ReentrantLock;
-
 /**
  * Information for load'n'display image task
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
- * @see com.nostra13.universalimageloader.utils.MemoryCacheUtils
+ * @see MemoryCacheKey
  * @see DisplayImageOptions
  * @see ImageLoadingListener
  * @see com.nostra13.universalimageloader.core.listener.ImageLoadingProgressListener
@@ -35,24 +34,22 @@ import java.util.concurrent.locks.ReentrantLock;
 final class ImageLoadingInfo {
 
 	final String uri;
-	final String memoryCacheKey;
+	final MemoryCacheKey memoryCacheKey;
 	final ImageAware imageAware;
 	final ImageSize targetSize;
 	final DisplayImageOptions options;
 	final ImageLoadingListener listener;
 	final ImageLoadingProgressListener progressListener;
-	final ReentrantLock loadFromUriLock;
 
-	public ImageLoadingInfo(String uri, ImageAware imageAware, ImageSize targetSize, String memoryCacheKey,
+	public ImageLoadingInfo(String uri, ImageAware imageAware, ImageSize targetSize, MemoryCacheKey memoryCacheKey,
 			DisplayImageOptions options, ImageLoadingListener listener,
-			ImageLoadingProgressListener progressListener, ReentrantLock loadFromUriLock) {
+			ImageLoadingProgressListener progressListener) {
 		this.uri = uri;
 		this.imageAware = imageAware;
 		this.targetSize = targetSize;
 		this.options = options;
 		this.listener = listener;
 		this.progressListener = progressListener;
-		this.loadFromUriLock = loadFromUriLock;
 		this.memoryCacheKey = memoryCacheKey;
 	}
 }
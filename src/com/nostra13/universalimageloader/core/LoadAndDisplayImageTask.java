@@ -17,7 +17,14 @@ package com.nostra13.universalimageloader.core;
 
 import android.graphics.Bitmap;
 import android.os.Handler;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.disc.BlobDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+import com.nostra13.universalimageloader.cache.disc.MetadataDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.PresenceDiscCacheAware;
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.cache.memory.impl.EncodedMemoryCache;
 import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.FailReason.FailType;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
@@ -28,9 +35,13 @@ import com.nostra13.universalimageloader.core.assist.LoadedFrom;
 import com.nostra13.universalimageloader.core.assist.ViewScaleType;
 import com.nostra13.universalimageloader.core.decode.ImageDecoder;
 import com.nostra13.universalimageloader.core.decode.ImageDecodingInfo;
+import com.nostra13.universalimageloader.core.download.BlobDiscCacheImageDownloader;
+import com.nostra13.universalimageloader.core.download.ConditionalImageDownloader;
+import com.nostra13.universalimageloader.core.download.EncodedMemoryCacheImageDownloader;
 import com.nostra13.universalimageloader.core.download.ImageDownloader;
 import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
 import com.nostra13.universalimageloader.core.imageaware.ImageAware;
+import com.nostra13.universalimageloader.utils.DiscCacheUtils;
 import com.nostra13.universalimageloader.utils.IoUtils;
 import com.nostra13.universalimageloader.utils.L;
 
@@ -40,8 +51,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Presents load'n'display image task. Used to load image from Internet or file system, decode it to {@link Bitmap}, and
@@ -52,7 +63,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * @see ImageLoadingInfo
  * @since 1.3.1
  */
-final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
+final class LoadAndDisplayImageTask extends PrioritizedTask implements IoUtils.CopyListener {
 
 	private static final String LOG_WAITING_FOR_RESUME = "ImageLoader is paused. Waiting...  [%s]";
 	private static final String LOG_RESUME_AFTER_PAUSE = ".. Resume loading [%s]";
@@ -60,21 +71,29 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	private static final String LOG_START_DISPLAY_IMAGE_TASK = "Start display image task [%s]";
 	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Waiting... [%s]";
 	private static final String LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING = "...Get cached bitmap from memory after waiting. [%s]";
+	private static final String LOG_GET_IMAGE_FROM_DISC_CACHE_AFTER_WAITING = "...Image was cached on disc by other task while waiting. [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_NETWORK = "Load image from network [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_DISC_CACHE = "Load image from disc cache [%s]";
+	private static final String LOG_LOAD_IMAGE_RENDITION_FROM_DISC_CACHE = "Load image rendition %d from disc cache [%s]";
+	private static final String LOG_REVALIDATE_CACHED_IMAGE = "Revalidate stale image in disc cache [%s]";
+	private static final String LOG_CACHED_IMAGE_NOT_MODIFIED = "Image in disc cache wasn't modified [%s]";
 	private static final String LOG_RESIZE_CACHED_IMAGE_FILE = "Resize image in disc cache [%s]";
 	private static final String LOG_PREPROCESS_IMAGE = "PreProcess image before caching in memory [%s]";
 	private static final String LOG_POSTPROCESS_IMAGE = "PostProcess image before displaying [%s]";
 	private static final String LOG_CACHE_IMAGE_IN_MEMORY = "Cache image in memory [%s]";
 	private static final String LOG_CACHE_IMAGE_ON_DISC = "Cache image on disc [%s]";
+	private static final String LOG_CACHE_CLEARED_DURING_DOWNLOAD = "Disc cache was cleared during downloading, image isn't cached [%s]";
 	private static final String LOG_PROCESS_IMAGE_BEFORE_CACHE_ON_DISC = "Process image before cache on disc [%s]";
 	private static final String LOG_TASK_CANCELLED_IMAGEAWARE_REUSED = "ImageAware is reused for another image. Task is cancelled. [%s]";
 	private static final String LOG_TASK_CANCELLED_IMAGEAWARE_COLLECTED = "ImageAware was collected by GC. Task is cancelled. [%s]";
 	private static final String LOG_TASK_INTERRUPTED = "Task was interrupted [%s]";
+	private static final String LOG_DELIVER_TO_ATTACHED_TASKS = "Deliver loaded image to %d waiting task(s) [%s]";
+	private static final String LOG_RESUBMIT_ATTACHED_TASKS = "Loading is cancelled, resubmit %d waiting task(s) [%s]";
 
 	private static final String ERROR_PRE_PROCESSOR_NULL = "Pre-processor returned null [%s]";
 	private static final String ERROR_POST_PROCESSOR_NULL = "Post-processor returned null [%s]";
 	private static final String ERROR_PROCESSOR_FOR_DISC_CACHE_NULL = "Bitmap processor for disc cache returned null [%s]";
+	private static final String ERROR_CANT_REPLACE_CACHED_FILE = "Can't replace cached image file [%s]";
 
 	private static final int BUFFER_SIZE = 32 * 1024; // 32 Kb
 
@@ -88,9 +107,10 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	private final ImageDownloader networkDeniedDownloader;
 	private final ImageDownloader slowNetworkDownloader;
 	private final ImageDecoder decoder;
+	private final EncodedMemoryCache encodedMemoryCache;
 	private final boolean writeLogs;
 	final String uri;
-	private final String memoryCacheKey;
+	private final MemoryCacheKey memoryCacheKey;
 	final ImageAware imageAware;
 	private final ImageSize targetSize;
 	final DisplayImageOptions options;
@@ -99,8 +119,12 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 
 	// State vars
 	private LoadedFrom loadedFrom = LoadedFrom.NETWORK;
+	/** Reason of the last loading failure; it's delivered to attached tasks */
+	private FailType failType;
+	private Throwable failCause;
 
 	public LoadAndDisplayImageTask(ImageLoaderEngine engine, ImageLoadingInfo imageLoadingInfo, Handler handler) {
+		super(imageLoadingInfo.options.getPriority());
 		this.engine = engine;
 		this.imageLoadingInfo = imageLoadingInfo;
 		this.handler = handler;
@@ -110,6 +134,7 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		networkDeniedDownloader = configuration.networkDeniedDownloader;
 		slowNetworkDownloader = configuration.slowNetworkDownloader;
 		decoder = configuration.decoder;
+		encodedMemoryCache = configuration.encodedMemoryCache;
 		writeLogs = configuration.writeLogs;
 		uri = imageLoadingInfo.uri;
 		memoryCacheKey = imageLoadingInfo.memoryCacheKey;
@@ -122,24 +147,35 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 
 	@Override
 	public void run() {
-		if (waitIfPaused()) return;
-		if (delayIfNeed()) return;
+		try {
+			loadAndDisplayImage();
+		} finally {
+			failAttachedTasks(); // attached tasks mustn't wait forever if loading crashed
+		}
+	}
 
-		ReentrantLock loadFromUriLock = imageLoadingInfo.loadFromUriLock;
-		log(LOG_START_DISPLAY_IMAGE_TASK);
-		if (loadFromUriLock.isLocked()) {
-			log(LOG_WAITING_FOR_IMAGE_LOADED);
+	private void loadAndDisplayImage() {
+		if (waitIfPaused() || delayIfNeed()) {
+			resubmitAttachedTasks();
+			return;
 		}
 
-		loadFromUriLock.lock();
+		log(LOG_START_DISPLAY_IMAGE_TASK);
 		Bitmap bmp;
+		Bitmap loadedBmp; // before post-processing; it's delivered to attached tasks
+		Bitmap acquiredBmp = null; // isn't reused by bitmap pool until it's displayed
 		try {
 			checkTaskNotActual();
 
-			bmp = configuration.memoryCache.get(memoryCacheKey);
+			bmp = engine.getCachedBitmap(memoryCacheKey);
 			if (bmp == null) {
+				long loadStartTime = System.nanoTime();
 				bmp = tryLoadBitmap();
-				if (bmp == null) return; // listener callback already was fired
+				if (bmp == null) { // listener callback already was fired
+					failAttachedTasks();
+					return;
+				}
+				recordLoad(configuration.memoryCache, loadStartTime);
 
 				checkTaskNotActual();
 				checkTaskInterrupted();
@@ -153,13 +189,17 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 				}
 
 				if (bmp != null && options.isCacheInMemory()) {
+					engine.acquireBitmap(bmp);
+					acquiredBmp = bmp;
 					log(LOG_CACHE_IMAGE_IN_MEMORY);
-					configuration.memoryCache.put(memoryCacheKey, bmp);
+					configuration.memoryCache.put(memoryCacheKey.toString(), bmp);
 				}
 			} else {
+				acquiredBmp = bmp; // was acquired atomically with lookup
 				loadedFrom = LoadedFrom.MEMORY_CACHE;
 				log(LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING);
 			}
+			loadedBmp = bmp;
 
 			if (bmp != null && options.shouldPostProcess()) {
 				log(LOG_POSTPROCESS_IMAGE);
@@ -171,14 +211,20 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 			checkTaskNotActual();
 			checkTaskInterrupted();
 		} catch (TaskCancelledException e) {
+			if (acquiredBmp != null) {
+				engine.releaseBitmap(acquiredBmp);
+			}
 			fireCancelEvent();
+			resubmitAttachedTasks();
 			return;
-		} finally {
-			loadFromUriLock.unlock();
 		}
 
+		deliverToAttachedTasks(loadedBmp); // before own display which can release bitmap for reuse
 		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, imageLoadingInfo, engine, loadedFrom);
 		displayBitmapTask.setLoggingEnabled(writeLogs);
+		if (acquiredBmp != null) {
+			displayBitmapTask.releaseAfterDisplay(acquiredBmp);
+		}
 		runTask(displayBitmapTask, options.isSyncLoading(), handler, engine);
 	}
 
@@ -199,7 +245,7 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 				}
 			}
 		}
-		return isTaskNotActual();
+		return isLoadingNotNeeded();
 	}
 
 	/** @return <b>true</b> - if task should be interrupted; <b>false</b> - otherwise */
@@ -212,33 +258,139 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 				L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
 				return true;
 			}
-			return isTaskNotActual();
+			return isLoadingNotNeeded();
 		}
 		return false;
 	}
 
+	/**
+	 * Displays image which was loaded by other task for the same URI and size. It's called on thread of that task
+	 * after it finished loading.
+	 *
+	 * @param loadedBmp Loaded bitmap before post-processing (can be <b>null</b> if pre-processor returned null)
+	 * @param from      Source of loaded image
+	 */
+	private void displayLoadedImage(Bitmap loadedBmp, LoadedFrom from) {
+		if (isTaskNotActual()) {
+			fireCancelEvent();
+			return;
+		}
+
+		Bitmap bmp = loadedBmp;
+		if (bmp != null) {
+			engine.acquireBitmap(bmp);
+			if (options.shouldPostProcess()) {
+				log(LOG_POSTPROCESS_IMAGE);
+				bmp = options.getPostProcessor().process(bmp);
+				if (bmp == null) {
+					L.e(ERROR_POST_PROCESSOR_NULL, memoryCacheKey);
+				}
+			}
+		}
+
+		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, imageLoadingInfo, engine, from);
+		displayBitmapTask.setLoggingEnabled(writeLogs);
+		if (loadedBmp != null) {
+			displayBitmapTask.releaseAfterDisplay(loadedBmp);
+		}
+		runTask(displayBitmapTask, false, handler, engine);
+	}
+
+	/** Delivers loaded image to tasks which were attached to loading of this task */
+	private void deliverToAttachedTasks(Bitmap loadedBmp) {
+		List<LoadAndDisplayImageTask> attachedTasks = engine.finishInFlightLoading(this);
+		if (attachedTasks.isEmpty()) return;
+
+		log(LOG_DELIVER_TO_ATTACHED_TASKS, attachedTasks.size(), memoryCacheKey);
+		for (LoadAndDisplayImageTask task : attachedTasks) {
+			task.displayLoadedImage(loadedBmp, loadedFrom);
+		}
+	}
+
+	/**
+	 * Is called if task can't be forwarded to executor, so it will never run: task and tasks which were attached to
+	 * its loading fail with <b>cause</b>.
+	 */
+	void failNotExecuted(Throwable cause) {
+		fireFailEvent(FailType.UNKNOWN, cause);
+		failAttachedTasks();
+	}
+
+	/** Is called if engine was stopped while task waited for result of other task's loading */
+	void cancelAttached() {
+		fireCancelEvent();
+	}
+
+	/** Fires fail event for tasks which were attached to loading of this task */
+	private void failAttachedTasks() {
+		FailType type = failType == null ? FailType.UNKNOWN : failType;
+		for (LoadAndDisplayImageTask task : engine.finishInFlightLoading(this)) {
+			task.fireFailEvent(type, failCause);
+		}
+	}
+
+	/**
+	 * Loading of this task was cancelled so attached tasks are submitted again: the first actual one becomes owner of
+	 * new loading.
+	 */
+	private void resubmitAttachedTasks() {
+		List<LoadAndDisplayImageTask> attachedTasks = engine.finishInFlightLoading(this);
+		if (attachedTasks.isEmpty()) return;
+
+		log(LOG_RESUBMIT_ATTACHED_TASKS, attachedTasks.size(), memoryCacheKey);
+		for (LoadAndDisplayImageTask task : attachedTasks) {
+			if (task.isTaskNotActual()) {
+				task.fireCancelEvent();
+			} else {
+				engine.submit(task);
+			}
+		}
+	}
+
 	private Bitmap tryLoadBitmap() throws TaskCancelledException {
 		File imageFile = getImageFileInDiscCache();
 
 		Bitmap bitmap = null;
 		try {
+			bitmap = tryDecodeRendition();
+			if (bitmap != null && bitmap.getWidth() > 0 && bitmap.getHeight() > 0) return bitmap;
+
 			String cacheFileUri = Scheme.FILE.wrap(imageFile.getAbsolutePath());
-			if (imageFile.exists()) {
+			boolean packed = isImagePackedInDiscCache(uri);
+			boolean cachedOnDisc = packed || isFileInDiscCache(uri, imageFile);
+			if (cachedOnDisc && getStaleMetadata() != null) {
+				revalidateCachedImage(imageFile); // stale image is used if server is unreachable
+				packed = isImagePackedInDiscCache(uri);
+				cachedOnDisc = packed || isFileInDiscCache(uri, imageFile);
+			}
+			if (cachedOnDisc) {
 				log(LOG_LOAD_IMAGE_FROM_DISC_CACHE);
 				loadedFrom = LoadedFrom.DISC_CACHE;
 
 				checkTaskNotActual();
-				bitmap = decodeImage(cacheFileUri);
+				bitmap = decodeCachedImage(uri, imageFile, packed);
+				generateRenditionIfNeed(bitmap, imageFile, packed);
 			}
 			if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
 				log(LOG_LOAD_IMAGE_FROM_NETWORK);
 				loadedFrom = LoadedFrom.NETWORK;
 
-				String imageUriForDecoding =
-						options.isCacheOnDisc() && tryCacheImageOnDisc(imageFile) ? cacheFileUri : uri;
-
+				if (encodedMemoryCache != null) {
+					encodedMemoryCache.remove(cacheFileUri); // cached file will be rewritten
+				}
+				long downloadStartTime = System.nanoTime();
+				cachedOnDisc = options.isCacheOnDisc() && downloadImageToDiscCache(imageFile, cachedOnDisc);
+				if (cachedOnDisc) {
+					recordLoad(configuration.discCache, downloadStartTime);
+				}
 				checkTaskNotActual();
-				bitmap = decodeImage(imageUriForDecoding);
+				if (cachedOnDisc) {
+					packed = isImagePackedInDiscCache(uri); // file could be packed
+					bitmap = decodeCachedImage(uri, imageFile, packed);
+					generateRenditionIfNeed(bitmap, imageFile, packed);
+				} else {
+					bitmap = decodeImage(uri, null);
+				}
 
 				if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
 					fireFailEvent(FailType.DECODING_ERROR, null);
@@ -251,9 +403,10 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		} catch (IOException e) {
 			L.e(e);
 			fireFailEvent(FailType.IO_ERROR, e);
-			if (imageFile.exists()) {
-				imageFile.delete();
+			if (encodedMemoryCache != null) {
+				encodedMemoryCache.remove(Scheme.FILE.wrap(imageFile.getAbsolutePath()));
 			}
+			removeCachedImage(imageFile);
 		} catch (OutOfMemoryError e) {
 			L.e(e);
 			fireFailEvent(FailType.OUT_OF_MEMORY, e);
@@ -264,6 +417,136 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		return bitmap;
 	}
 
+	/**
+	 * Revalidates stale image in disc cache. Tasks for other sizes of the same URI write the same cached file, so they
+	 * do it one by one under URI lock; image which was revalidated by other task while this task waited isn't
+	 * requested again.
+	 */
+	private void revalidateCachedImage(File imageFile) throws TaskCancelledException {
+		lockUri();
+		try {
+			EntryMetadata staleMetadata = getStaleMetadata();
+			if (staleMetadata == null) return;
+
+			log(LOG_REVALIDATE_CACHED_IMAGE);
+			if (encodedMemoryCache != null) {
+				String cacheFileUri = Scheme.FILE.wrap(imageFile.getAbsolutePath());
+				encodedMemoryCache.remove(cacheFileUri); // cached file can be rewritten
+			}
+			checkTaskNotActual();
+			tryCacheImageOnDisc(imageFile, staleMetadata);
+		} finally {
+			engine.unlockUri(uri);
+		}
+	}
+
+	/**
+	 * Downloads image into disc cache under URI lock (see {@link #revalidateCachedImage(File)}). Only writing of cached
+	 * file is serialized, tasks for other sizes of the same URI decode image concurrently.
+	 *
+	 * @param cachedBefore Whether image was in disc cache before (and is downloaded again because it can't be
+	 *                     decoded). If it wasn't then image which was cached by other task while this task waited for
+	 *                     lock isn't downloaded again.
+	 * @return <b>true</b> - if image is cached on disc; <b>false</b> - otherwise
+	 */
+	private boolean downloadImageToDiscCache(File imageFile, boolean cachedBefore) throws TaskCancelledException {
+		lockUri();
+		try {
+			if (!cachedBefore && (isImagePackedInDiscCache(uri) || isFileInDiscCache(uri, imageFile))) {
+				log(LOG_GET_IMAGE_FROM_DISC_CACHE_AFTER_WAITING);
+				return true;
+			}
+			checkTaskNotActual();
+			return tryCacheImageOnDisc(imageFile, null);
+		} finally {
+			engine.unlockUri(uri);
+		}
+	}
+
+	/**
+	 * Removes image which can't be loaded from disc cache (so cache indexes, metadata and packed blob are updated too).
+	 * It's done under URI lock, so image which task for other size of the same URI has just cached isn't removed.
+	 */
+	private void removeCachedImage(File imageFile) {
+		lockUri();
+		try {
+			DiscCacheUtils.removeFromCache(uri, configuration.discCache);
+			if (imageFile.exists()) { // image is in reserve disc cache
+				DiscCacheUtils.removeFromCache(uri, configuration.reserveDiscCache);
+			}
+		} finally {
+			engine.unlockUri(uri);
+		}
+	}
+
+	private void lockUri() {
+		if (engine.isUriLocked(uri)) {
+			log(LOG_WAITING_FOR_IMAGE_LOADED);
+		}
+		engine.lockUri(uri);
+	}
+
+	/** Checks whether cached file exists. File isn't touched if disc cache knows that image isn't cached. */
+	private boolean isFileInDiscCache(String key, File file) {
+		DiscCacheAware discCache = configuration.discCache;
+		if (discCache instanceof PresenceDiscCacheAware && !((PresenceDiscCacheAware) discCache).mightContain(key)) {
+			return false;
+		}
+		return file.exists();
+	}
+
+	/** Records load penalty into cache statistics (if cache collects them) */
+	private static void recordLoad(Object cache, long loadStartTime) {
+		if (cache instanceof CacheStatsAware) {
+			((CacheStatsAware) cache).recordLoad(System.nanoTime() - loadStartTime);
+		}
+	}
+
+	/**
+	 * Decodes the smallest rendition of cached image which is enough for target size.
+	 *
+	 * @return Decoded rendition or <b>null</b> if there is no suitable rendition in disc cache
+	 */
+	private Bitmap tryDecodeRendition() throws TaskCancelledException {
+		int size = getRenditionSize();
+		if (size == 0) return null;
+
+		String key = DiscCacheRenditions.generateKey(uri, size, options.isConsiderExifParams());
+		File renditionFile = DiscCacheUtils.getFile(key, configuration.discCache); // loading is counted by original
+		boolean packed = isImagePackedInDiscCache(key);
+		if (!packed && !isFileInDiscCache(key, renditionFile)) return null;
+		if (getStaleMetadata() != null) return null; // original must be revalidated first
+
+		log(LOG_LOAD_IMAGE_RENDITION_FROM_DISC_CACHE, size, memoryCacheKey);
+		loadedFrom = LoadedFrom.DISC_CACHE;
+
+		checkTaskNotActual();
+		try {
+			return decodeCachedImage(key, renditionFile, packed);
+		} catch (IOException e) {
+			L.e(e);
+			DiscCacheUtils.removeFromCache(key, configuration.discCache); // original is used instead
+			return null;
+		}
+	}
+
+	/** Schedules generation of rendition for target size if image was decoded from its original in disc cache */
+	private void generateRenditionIfNeed(Bitmap bitmap, File imageFile, boolean packed) {
+		if (bitmap == null) return;
+
+		int size = getRenditionSize();
+		if (size > 0) {
+			engine.discCacheRenditions.generateLater(uri, size, options, getCachedMetadata(uri), imageFile, packed);
+		}
+	}
+
+	/** Returns size bucket of rendition which is suitable for target size or 0 if renditions aren't used */
+	private int getRenditionSize() {
+		if (engine.discCacheRenditions == null || !options.isCacheOnDisc()) return 0;
+		return engine.discCacheRenditions.selectSize(targetSize);
+	}
+
+	/** Looks up image in disc cache; it's the only lookup which is counted in statistics of disc cache */
 	private File getImageFileInDiscCache() {
 		DiscCacheAware discCache = configuration.discCache;
 		File imageFile = discCache.get(uri);
@@ -278,41 +561,159 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		return imageFile;
 	}
 
-	private Bitmap decodeImage(String imageUri) throws IOException {
+	/**
+	 * @param discCacheKey Key of image in disc cache if image is decoded from disc cache file (so encoded bytes can be
+	 *                     kept in memory); <b>null</b> - otherwise
+	 */
+	private Bitmap decodeImage(String imageUri, String discCacheKey) throws IOException {
 		ViewScaleType viewScaleType = imageAware.getScaleType();
-		ImageDecodingInfo decodingInfo = new ImageDecodingInfo(memoryCacheKey, imageUri, targetSize, viewScaleType,
-				getDownloader(), options);
+		ImageDownloader imageDownloader = getDownloader();
+		if (discCacheKey != null && encodedMemoryCache != null) {
+			imageDownloader = new EncodedMemoryCacheImageDownloader(imageDownloader, encodedMemoryCache);
+		}
+		ImageDecodingInfo decodingInfo;
+		if (discCacheKey != null) {
+			decodingInfo = new ImageDecodingInfo(memoryCacheKey.toString(), imageUri, targetSize, viewScaleType,
+					imageDownloader, options, getCachedMetadata(discCacheKey), new ImageInfoSaver(discCacheKey));
+		} else {
+			decodingInfo = new ImageDecodingInfo(memoryCacheKey.toString(), imageUri, targetSize, viewScaleType,
+					imageDownloader, options);
+		}
 		return decoder.decode(decodingInfo);
 	}
 
-	/** @return <b>true</b> - if image was downloaded successfully; <b>false</b> - otherwise */
-	private boolean tryCacheImageOnDisc(File targetFile) throws TaskCancelledException {
+	private boolean isImagePackedInDiscCache(String key) {
+		return configuration.discCache instanceof BlobDiscCacheAware
+				&& ((BlobDiscCacheAware) configuration.discCache).containsBlob(key);
+	}
+
+	/**
+	 * Returns metadata of cached image if image is stale and should be revalidated, <b>null</b> - if image is fresh
+	 * (or its freshness is unknown), if image has no validators or if network is denied. Image without validators
+	 * isn't refetched: it can't be revalidated, so it would be downloaded in full on every load (e.g. images which
+	 * are served with "no-cache" are always stale).
+	 */
+	private EntryMetadata getStaleMetadata() {
+		if (engine.isNetworkDenied()) return null;
+
+		EntryMetadata metadata = getCachedMetadata(uri);
+		if (metadata == null || !metadata.hasValidators()) return null;
+		return metadata.isStale(System.currentTimeMillis()) ? metadata : null;
+	}
+
+	/** Returns metadata of image (or rendition) in disc cache or <b>null</b> */
+	private EntryMetadata getCachedMetadata(String key) {
+		if (configuration.discCache instanceof MetadataDiscCacheAware) {
+			return ((MetadataDiscCacheAware) configuration.discCache).getMetadata(key);
+		}
+		return null;
+	}
+
+	/**
+	 * @param key    Key of image (or rendition) in disc cache
+	 * @param packed Whether image is packed as blob in disc cache
+	 */
+	private Bitmap decodeCachedImage(String key, File imageFile, boolean packed) throws IOException {
+		if (packed) {
+			return decodePackedImage(key);
+		} else {
+			return decodeImage(Scheme.FILE.wrap(imageFile.getAbsolutePath()), key);
+		}
+	}
+
+	/** Decodes image (or rendition) which is packed as blob in disc cache */
+	private Bitmap decodePackedImage(String key) throws IOException {
+		ImageDownloader imageDownloader = new BlobDiscCacheImageDownloader(getDownloader(),
+				(BlobDiscCacheAware) configuration.discCache);
+		ImageDecodingInfo decodingInfo = new ImageDecodingInfo(memoryCacheKey.toString(), key, targetSize,
+				imageAware.getScaleType(), imageDownloader, options, getCachedMetadata(key), new ImageInfoSaver(key));
+		return decoder.decode(decodingInfo);
+	}
+
+	/**
+	 * Downloads image into disc cache. If metadata of cached image is passed then request is conditional and cached
+	 * image isn't rewritten if it wasn't modified. Image is downloaded into temporary file which replaces cached image
+	 * only if downloading succeeds, so cached image is kept if image can't be requested or loaded.
+	 *
+	 * @param cachedMetadata Metadata of stale cached image; <b>null</b> - image isn't cached
+	 * @return <b>true</b> - if image was downloaded successfully or cached image wasn't modified; <b>false</b> -
+	 * otherwise
+	 */
+	private boolean tryCacheImageOnDisc(File targetFile, EntryMetadata cachedMetadata) throws TaskCancelledException {
 		log(LOG_CACHE_IMAGE_ON_DISC);
 
+		ImageDownloader imageDownloader = getDownloader();
+		boolean conditional = imageDownloader instanceof ConditionalImageDownloader;
+		EntryMetadata.Builder responseMetadata = new EntryMetadata.Builder();
+		if (cachedMetadata != null) {
+			responseMetadata.cloneFrom(cachedMetadata);
+		}
+
+		InputStream is;
+		try {
+			if (conditional) {
+				is = ((ConditionalImageDownloader) imageDownloader).getStreamIfModified(uri,
+						options.getExtraForDownloader(), cachedMetadata, responseMetadata);
+			} else {
+				is = imageDownloader.getStream(uri, options.getExtraForDownloader());
+			}
+		} catch (IOException e) {
+			L.e(e);
+			return false;
+		}
+		if (is == null) {
+			log(LOG_CACHED_IMAGE_NOT_MODIFIED);
+			saveMetadata(uri, responseMetadata.build());
+			return true;
+		}
+
+		// Temporary file is skipped by cache scans
+		File tempFile = new File(targetFile.getParentFile(), "." + targetFile.getName() + ".tmp");
 		boolean loaded = false;
 		try {
-			loaded = downloadImage(targetFile);
+			loaded = downloadImage(is, tempFile);
 			if (loaded) {
 				int width = configuration.maxImageWidthForDiscCache;
 				int height = configuration.maxImageHeightForDiscCache;
 				if (width > 0 || height > 0) {
 					log(LOG_RESIZE_CACHED_IMAGE_FILE);
-					loaded = resizeAndSaveImage(targetFile, width, height); // TODO : process boolean result
+					loaded = resizeAndSaveImage(tempFile, width, height); // TODO : process boolean result
+				}
+				if (!tempFile.exists()) { // disc cache was cleared during downloading
+					log(LOG_CACHE_CLEARED_DURING_DOWNLOAD);
+					return false;
+				}
+				if (!tempFile.renameTo(targetFile)) {
+					throw new IOException(String.format(ERROR_CANT_REPLACE_CACHED_FILE, targetFile));
 				}
 
 				configuration.discCache.put(uri, targetFile);
+				if (engine.discCacheRenditions != null) {
+					engine.discCacheRenditions.removeAll(uri); // renditions of previous image aren't actual
+				}
+				if (!conditional) {
+					responseMetadata = new EntryMetadata.Builder(); // validators of response are unknown
+				}
+				saveMetadata(uri, responseMetadata.clearImageInfo().build()); // info of previous image isn't actual
 			}
 		} catch (IOException e) {
 			L.e(e);
-			if (targetFile.exists()) {
-				targetFile.delete();
+			loaded = false;
+		} finally {
+			if (tempFile.exists()) {
+				tempFile.delete();
 			}
 		}
 		return loaded;
 	}
 
-	private boolean downloadImage(File targetFile) throws IOException {
-		InputStream is = getDownloader().getStream(uri, options.getExtraForDownloader());
+	private void saveMetadata(String key, EntryMetadata metadata) {
+		if (configuration.discCache instanceof MetadataDiscCacheAware) {
+			((MetadataDiscCacheAware) configuration.discCache).putMetadata(key, metadata);
+		}
+	}
+
+	private boolean downloadImage(InputStream is, File targetFile) throws IOException {
 		boolean loaded;
 		try {
 			OutputStream os = new BufferedOutputStream(new FileOutputStream(targetFile), BUFFER_SIZE);
@@ -334,7 +735,7 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		ImageSize targetImageSize = new ImageSize(maxWidth, maxHeight);
 		DisplayImageOptions specialOptions = new DisplayImageOptions.Builder().cloneFrom(options)
 				.imageScaleType(ImageScaleType.IN_SAMPLE_INT).build();
-		ImageDecodingInfo decodingInfo = new ImageDecodingInfo(memoryCacheKey,
+		ImageDecodingInfo decodingInfo = new ImageDecodingInfo(memoryCacheKey.toString(),
 				Scheme.FILE.wrap(targetFile.getAbsolutePath()), targetImageSize, ViewScaleType.FIT_INSIDE,
 				getDownloader(), specialOptions);
 		Bitmap bmp = decoder.decode(decodingInfo);
@@ -376,12 +777,15 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	}
 
 	private void fireFailEvent(final FailType failType, final Throwable failCause) {
+		this.failType = failType;
+		this.failCause = failCause;
 		if (options.isSyncLoading() || isTaskInterrupted() || isTaskNotActual()) return;
 		Runnable r = new Runnable() {
 			@Override
 			public void run() {
 				if (options.shouldShowImageOnFail()) {
 					imageAware.setImageDrawable(options.getImageOnFail(configuration.resources));
+					engine.onImageAwareCleared(imageAware);
 				}
 				listener.onLoadingFailed(uri, imageAware.getWrappedView(), new FailReason(failType, failCause));
 			}
@@ -418,8 +822,17 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	 *                                this moment)
 	 */
 	private void checkTaskNotActual() throws TaskCancelledException {
-		checkViewCollected();
-		checkViewReused();
+		if (isLoadingNotNeeded()) {
+			throw new TaskCancelledException();
+		}
+	}
+
+	/**
+	 * @return <b>true</b> - if task is not actual and no other tasks wait for its result; <b>false</b> - if image
+	 * should be loaded
+	 */
+	private boolean isLoadingNotNeeded() {
+		return isTaskNotActual() && !engine.hasAttachedTasks(this);
 	}
 
 	/**
@@ -430,13 +843,6 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		return isViewCollected() || isViewReused();
 	}
 
-	/** @throws TaskCancelledException if target ImageAware is collected */
-	private void checkViewCollected() throws TaskCancelledException {
-		if (isViewCollected()) {
-			throw new TaskCancelledException();
-		}
-	}
-
 	/** @return <b>true</b> - if target ImageAware is collected by GC; <b>false</b> - otherwise */
 	private boolean isViewCollected() {
 		if (imageAware.isCollected()) {
@@ -446,16 +852,9 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		return false;
 	}
 
-	/** @throws TaskCancelledException if target ImageAware is collected by GC */
-	private void checkViewReused() throws TaskCancelledException {
-		if (isViewReused()) {
-			throw new TaskCancelledException();
-		}
-	}
-
 	/** @return <b>true</b> - if current ImageAware is reused for displaying another image; <b>false</b> - otherwise */
 	private boolean isViewReused() {
-		String currentCacheKey = engine.getLoadingUriForView(imageAware);
+		MemoryCacheKey currentCacheKey = engine.getLoadingKeyForView(imageAware);
 		// Check whether memory cache key (image URI) for current ImageAware is actual.
 		// If ImageAware is reused for another task then current task should be cancelled.
 		boolean imageAwareWasReused = !memoryCacheKey.equals(currentCacheKey);
@@ -486,6 +885,14 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		return uri;
 	}
 
+	MemoryCacheKey getMemoryCacheKey() {
+		return memoryCacheKey;
+	}
+
+	ImageAware getImageAware() {
+		return imageAware;
+	}
+
 	private void log(String message) {
 		if (writeLogs) L.d(message, memoryCacheKey);
 	}
@@ -504,6 +911,29 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		}
 	}
 
+	/** Keeps image info which was defined at decoding of cached image, so next decodings skip bounds decoding */
+	private class ImageInfoSaver implements ImageDecodingInfo.ImageInfoListener {
+		private final String key;
+
+		ImageInfoSaver(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void onImageInfoDefined(EntryMetadata imageInfo) {
+			EntryMetadata.Builder builder = new EntryMetadata.Builder();
+			EntryMetadata cachedMetadata = getCachedMetadata(key);
+			if (cachedMetadata != null) {
+				builder.cloneFrom(cachedMetadata);
+			}
+			builder.imageInfo(imageInfo.getImageWidth(), imageInfo.getImageHeight(), imageInfo.getMimeType());
+			if (imageInfo.hasExifInfo()) {
+				builder.exifInfo(imageInfo.getExifRotation(), imageInfo.isExifFlipHorizontal());
+			}
+			saveMetadata(key, builder.build());
+		}
+	}
+
 	/**
 	 * Exceptions for case when task is cancelled (thread is interrupted, image view is reused for another task, view is
 	 * collected by GC).
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Task which can be ordered in priority queue by {@link TaskPriorityComparator}. Priority and sequence mustn't be
+ * changed while task is in queue: engine removes task from queue, {@linkplain #reschedule(int) reschedules} it and
+ * puts it back.
+ *
+ * @since 1.9.2
+ */
+abstract class PrioritizedTask implements Runnable {
+
+	/** Priority of tasks which aren't actual anymore */
+	static final int PRIORITY_DEMOTED = Integer.MIN_VALUE;
+
+	private static final AtomicLong SEQUENCE_GENERATOR = new AtomicLong();
+
+	private volatile int priority;
+	private volatile long sequence;
+
+	PrioritizedTask(int priority) {
+		this.priority = priority;
+		this.sequence = SEQUENCE_GENERATOR.incrementAndGet();
+	}
+
+	int getPriority() {
+		return priority;
+	}
+
+	/** Returns order of scheduling; the latest scheduled task has the biggest sequence */
+	long getSequence() {
+		return sequence;
+	}
+
+	/** Sets new priority and makes task the latest scheduled among tasks with the same priority */
+	void reschedule(int priority) {
+		this.priority = priority;
+		this.sequence = SEQUENCE_GENERATOR.incrementAndGet();
+	}
+}
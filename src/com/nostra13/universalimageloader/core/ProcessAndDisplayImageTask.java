@@ -29,7 +29,7 @@ import com.nostra13.universalimageloader.utils.L;
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.8.0
  */
-class ProcessAndDisplayImageTask implements Runnable {
+class ProcessAndDisplayImageTask extends PrioritizedTask {
 
 	private static final String LOG_POSTPROCESS_IMAGE = "PostProcess image before displaying [%s]";
 
@@ -40,6 +40,7 @@ class ProcessAndDisplayImageTask implements Runnable {
 
 	public ProcessAndDisplayImageTask(ImageLoaderEngine engine, Bitmap bitmap, ImageLoadingInfo imageLoadingInfo,
 			Handler handler) {
+		super(imageLoadingInfo.options.getPriority());
 		this.engine = engine;
 		this.bitmap = bitmap;
 		this.imageLoadingInfo = imageLoadingInfo;
@@ -55,6 +56,7 @@ class ProcessAndDisplayImageTask implements Runnable {
 		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(processedBitmap, imageLoadingInfo, engine,
 				LoadedFrom.MEMORY_CACHE);
 		displayBitmapTask.setLoggingEnabled(engine.configuration.writeLogs);
+		displayBitmapTask.releaseAfterDisplay(bitmap); // was acquired by ImageLoader
 		LoadAndDisplayImageTask.runTask(displayBitmapTask, imageLoadingInfo.options.isSyncLoading(), handler, engine);
 	}
 }
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.utils.L;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Dispatches {@link LoadAndDisplayImageTask load tasks} to executors of {@link ImageLoaderEngine} and runs scheduling
+ * actions (changes of priority of queued tasks), so UI thread doesn't search task queues. All work is done by one
+ * daemon thread, so count of threads doesn't depend on request rate. Submissions are taken in batches: tasks of a batch
+ * are classified (cached on disc or not) and forwarded in one pass, then actions of the batch are run. Listener
+ * callbacks are never run here, so slow listener doesn't delay dispatching.
+ *
+ * @since 1.9.2
+ */
+final class TaskDispatcher {
+
+	private static final String THREAD_NAME = "uil-dispatcher";
+	/** Max count of submissions which are processed in one pass */
+	private static final int MAX_BATCH_SIZE = 32;
+
+	private static final String ERROR_STOPPED = "ImageLoader was stopped before task was dispatched";
+
+	private final ImageLoaderEngine engine;
+	private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+	/** Guarded by this */
+	private Thread thread;
+
+	TaskDispatcher(ImageLoaderEngine engine) {
+		this.engine = engine;
+	}
+
+	/** Queues task for dispatching to executor */
+	void dispatch(LoadAndDisplayImageTask task) {
+		enqueue(task);
+	}
+
+	/**
+	 * Queues scheduling action. Action is run after tasks which were queued before it are dispatched, so it sees them in
+	 * executor queues. Action must be short.
+	 */
+	void schedule(Runnable action) {
+		enqueue(action);
+	}
+
+	/**
+	 * Stops dispatcher thread, so it doesn't hold engine anymore. Tasks which weren't dispatched yet fail, scheduling
+	 * actions are dropped. New thread is started on next submission.
+	 */
+	void stop() {
+		synchronized (this) {
+			if (thread != null) {
+				thread.interrupt();
+				thread = null;
+			}
+		}
+		List<Runnable> undispatched = new ArrayList<Runnable>();
+		queue.drainTo(undispatched);
+		failUndispatched(undispatched);
+	}
+
+	private static void failUndispatched(List<Runnable> undispatched) {
+		for (Runnable r : undispatched) {
+			if (r instanceof LoadAndDisplayImageTask) {
+				((LoadAndDisplayImageTask) r).failNotExecuted(new IllegalStateException(ERROR_STOPPED));
+			}
+		}
+	}
+
+	private void enqueue(Runnable r) {
+		queue.offer(r);
+		ensureThreadStarted();
+	}
+
+	private synchronized void ensureThreadStarted() {
+		if (thread == null) {
+			thread = new Thread(new Worker(), THREAD_NAME);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/** @return <b>false</b> - if dispatcher was stopped after current thread had been started */
+	private synchronized boolean isCurrentThread() {
+		return thread == Thread.currentThread();
+	}
+
+	private final class Worker implements Runnable {
+		@Override
+		public void run() {
+			List<Runnable> batch = new ArrayList<Runnable>(MAX_BATCH_SIZE);
+			List<LoadAndDisplayImageTask> tasks = new ArrayList<LoadAndDisplayImageTask>(MAX_BATCH_SIZE);
+			while (isCurrentThread()) {
+				try {
+					batch.add(queue.take());
+				} catch (InterruptedException e) {
+					return;
+				}
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+				if (!isCurrentThread()) { // stopped while batch was taken, don't re-create engine executors
+					failUndispatched(batch);
+					return;
+				}
+
+				for (Runnable r : batch) {
+					if (r instanceof LoadAndDisplayImageTask) {
+						tasks.add((LoadAndDisplayImageTask) r);
+					}
+				}
+				if (!tasks.isEmpty()) {
+					try {
+						engine.distribute(tasks);
+					} catch (RuntimeException e) {
+						L.e(e);
+					}
+				}
+				for (Runnable r : batch) {
+					if (!(r instanceof LoadAndDisplayImageTask)) {
+						try {
+							r.run();
+						} catch (RuntimeException e) {
+							L.e(e);
+						}
+					}
+				}
+				batch.clear();
+				tasks.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import java.util.Comparator;
+
+/**
+ * Orders tasks in {@link com.nostra13.universalimageloader.core.assist.QueueProcessingType#PRIORITY priority} queue:
+ * tasks with higher priority go first, the latest scheduled task goes first among tasks with equal priority. Tasks which
+ * aren't {@link PrioritizedTask prioritized} have priority 0 and go after prioritized tasks with equal priority.
+ *
+ * @since 1.9.2
+ */
+final class TaskPriorityComparator implements Comparator<Runnable> {
+
+	@Override
+	public int compare(Runnable lhs, Runnable rhs) {
+		int lhsPriority = lhs instanceof PrioritizedTask ? ((PrioritizedTask) lhs).getPriority() : 0;
+		int rhsPriority = rhs instanceof PrioritizedTask ? ((PrioritizedTask) rhs).getPriority() : 0;
+		if (lhsPriority != rhsPriority) {
+			return lhsPriority > rhsPriority ? -1 : 1;
+		}
+		long lhsSequence = lhs instanceof PrioritizedTask ? ((PrioritizedTask) lhs).getSequence() : 0;
+		long rhsSequence = rhs instanceof PrioritizedTask ? ((PrioritizedTask) rhs).getSequence() : 0;
+		return lhsSequence > rhsSequence ? -1 : (lhsSequence == rhsSequence ? 0 : 1);
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ReentrantLock Locks} for keys: every key has its own lock, so work for one key never blocks work for other
+ * keys. Lock of key exists only while some thread holds it or waits for it (lock is reference-counted), so count of
+ * locks doesn't grow with count of keys.<br />
+ * <br />
+ * Every {@link #lock(Object)} must be followed by {@link #unlock(Object)} in the same thread.
+ *
+ * @since 1.9.2
+ */
+public final class KeyedLocks<K> {
+
+	private final Map<K, CountedLock> locks = new HashMap<K, CountedLock>();
+
+	/** Acquires lock of key. Waits if other thread holds lock of equal key. */
+	public void lock(K key) {
+		CountedLock lock;
+		synchronized (locks) {
+			lock = locks.get(key);
+			if (lock == null) {
+				lock = new CountedLock();
+				locks.put(key, lock);
+			}
+			lock.users++;
+		}
+		lock.lock();
+	}
+
+	/** Releases lock of key which was acquired by current thread */
+	public void unlock(K key) {
+		synchronized (locks) {
+			CountedLock lock = locks.get(key);
+			if (lock == null || !lock.isHeldByCurrentThread()) {
+				throw new IllegalMonitorStateException("Lock of key isn't held by current thread: " + key);
+			}
+			lock.unlock();
+			if (--lock.users == 0) {
+				locks.remove(key);
+			}
+		}
+	}
+
+	/** Returns <b>true</b> if lock of key is held by some thread */
+	public boolean isLocked(K key) {
+		synchronized (locks) {
+			CountedLock lock = locks.get(key);
+			return lock != null && lock.isLocked();
+		}
+	}
+
+	/** Returns count of keys which locks are held or waited for */
+	public int size() {
+		synchronized (locks) {
+			return locks.size();
+		}
+	}
+
+	private static final class CountedLock extends ReentrantLock {
+		/** Count of lock acquisitions which aren't released yet (including waiting ones); guarded by map of locks */
+		int users;
+	}
+}
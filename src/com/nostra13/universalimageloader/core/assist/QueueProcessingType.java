@@ -1,12 +1,18 @@
 package com.nostra13.universalimageloader.core.assist;
 
 /**
- * 线程处理策略 FIFO(先进先出)、LIFO(后进先出)
+ * 线程处理策略 FIFO(先进先出)、LIFO(后进先出)、PRIORITY(按优先级)
  */
 public enum QueueProcessingType
 {
 	/** 先进先出 */
 	FIFO,
 	/** 后进先出 */
-	LIFO
+	LIFO,
+	/**
+	 * 按优先级: 优先级高的任务先执行, 同一优先级后进先出. 优先级由
+	 * {@link com.nostra13.universalimageloader.core.DisplayImageOptions.Builder#priority(int)} 设置; 排队中的任务在
+	 * View 重新绑定同一张图片时被提升, 在 View 绑定其他图片或取消显示时被降到最低
+	 */
+	PRIORITY
 }
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+import com.nostra13.universalimageloader.utils.L;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timer wheel which expires entries of age-limited caches. Scheduling and cancellation cost O(1), expired
+ * timers are collected by one background daemon thread and are passed to their {@link ExpirationListener listeners} in
+ * batches, so expired entries are removed proactively and off the loading threads.<br />
+ * <br />
+ * Wheel has {@value #LEVELS} levels of {@value #WHEEL_SIZE} buckets. Tick of the lowest level is 1 second, every next
+ * level's bucket spans the whole previous level. Timers of upper levels are cascaded down when time reaches their
+ * bucket. Timers which expire later than wheel span (~194 days) are parked in the last bucket and re-cascaded.<br />
+ * <br />
+ * Wheel uses wall clock time because expiration of cached files is based on their modification time.
+ *
+ * @since 1.9.2
+ */
+public final class TimerWheel {
+
+	private static final String THREAD_NAME = "uil-timer-wheel";
+	private static final String LOG_LISTENER_ERROR = "Expiration listener failed";
+
+	private static final long TICK_DURATION = 1000; // 1 second
+	private static final int LEVELS = 4;
+	private static final int WHEEL_BITS = 6;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS; // 64
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final long MAX_DELTA_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+	private static volatile TimerWheel defaultInstance;
+
+	/** Buckets are circular doubly-linked lists with sentinel heads */
+	private final Timer<?>[][] buckets = new Timer<?>[LEVELS][WHEEL_SIZE];
+	/** Tasks which should be executed by wheel thread (e.g. initial scanning of cached files) */
+	private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+	/** Last processed tick; guarded by this */
+	private long currentTick;
+	/** Count of scheduled timers; guarded by this */
+	private int timerCount;
+	private Thread thread;
+
+	/** Returns wheel which is shared by all age-limited caches */
+	public static TimerWheel getDefault() {
+		TimerWheel instance = defaultInstance;
+		if (instance == null) {
+			synchronized (TimerWheel.class) {
+				instance = defaultInstance;
+				if (instance == null) {
+					instance = new TimerWheel();
+					defaultInstance = instance;
+				}
+			}
+		}
+		return instance;
+	}
+
+	public TimerWheel() {
+		for (int level = 0; level < LEVELS; level++) {
+			for (int i = 0; i < WHEEL_SIZE; i++) {
+				Timer<?> head = new Timer<Object>(null, 0, null);
+				head.prev = head;
+				head.next = head;
+				buckets[level][i] = head;
+			}
+		}
+		currentTick = toTick(System.currentTimeMillis());
+	}
+
+	/**
+	 * Schedules expiration of {@code key}. Listener is notified (on wheel thread) not earlier than at
+	 * {@code expirationTime} and not later than 1 second after it (if the device doesn't sleep).
+	 *
+	 * @param key            Expiring key
+	 * @param expirationTime Wall clock time of expiration (in milliseconds)
+	 * @param listener       Listener which removes expired entries
+	 * @return Timer which can be {@linkplain #cancel(Timer) cancelled}
+	 */
+	public <K> Timer<K> schedule(K key, long expirationTime, ExpirationListener<K> listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener must not be null");
+		}
+		Timer<K> timer = new Timer<K>(key, expirationTime, listener);
+		synchronized (this) {
+			insert(timer);
+			timerCount++;
+			ensureThreadStarted();
+			if (timerCount == 1) {
+				notifyAll(); // wheel thread waits without timeout while wheel is empty
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * Cancels timer.
+	 *
+	 * @return <b>true</b> - if timer was cancelled; <b>false</b> - if timer already expired or was cancelled
+	 */
+	public synchronized boolean cancel(Timer<?> timer) {
+		if (timer == null || timer.next == null) return false;
+		unlink(timer);
+		timerCount--;
+		return true;
+	}
+
+	/** Executes task on wheel thread. Long tasks delay expiration so they should be rare (e.g. one per cache start). */
+	public synchronized void execute(Runnable task) {
+		tasks.add(task);
+		ensureThreadStarted();
+		notifyAll();
+	}
+
+	/** Returns count of scheduled timers */
+	public synchronized int size() {
+		return timerCount;
+	}
+
+	private void ensureThreadStarted() {
+		if (thread == null) {
+			thread = new Thread(new Worker(), THREAD_NAME);
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+	}
+
+	/** Must be called under lock */
+	private void insert(Timer<?> timer) {
+		long expirationTick = toTick(timer.expirationTime + TICK_DURATION - 1); // round up
+		long delta = expirationTick - currentTick;
+		if (delta <= 0) {
+			expirationTick = currentTick + 1; // expire on the next tick
+			delta = 1;
+		} else if (delta > MAX_DELTA_TICKS) {
+			expirationTick = currentTick + MAX_DELTA_TICKS; // parked, re-cascaded later
+			delta = MAX_DELTA_TICKS;
+		}
+
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+			level++;
+		}
+		int index = (int) ((expirationTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+		Timer<?> head = buckets[level][index];
+		timer.prev = head.prev;
+		timer.next = head;
+		head.prev.next = timer;
+		head.prev = timer;
+	}
+
+	private static void unlink(Timer<?> timer) {
+		timer.prev.next = timer.next;
+		timer.next.prev = timer.prev;
+		timer.prev = null;
+		timer.next = null;
+	}
+
+	/**
+	 * Advances wheel up to current time. Must be called under lock.
+	 *
+	 * @param expired Collects expired timers
+	 */
+	private void advance(long now, List<Timer<?>> expired) {
+		long targetTick = toTick(now);
+		while (currentTick < targetTick && timerCount > 0) {
+			currentTick++;
+			for (int level = LEVELS - 1; level > 0; level--) {
+				int shift = WHEEL_BITS * level;
+				if ((currentTick & ((1L << shift) - 1)) == 0) {
+					cascade(level, (int) ((currentTick >>> shift) & WHEEL_MASK));
+				}
+			}
+
+			Timer<?> head = buckets[0][(int) (currentTick & WHEEL_MASK)];
+			while (head.next != head) {
+				Timer<?> timer = head.next;
+				unlink(timer);
+				timerCount--;
+				expired.add(timer);
+			}
+		}
+		if (currentTick < targetTick) { // wheel is empty, just move it
+			currentTick = targetTick;
+		}
+	}
+
+	/** Re-inserts timers of upper level bucket into lower levels */
+	private void cascade(int level, int index) {
+		Timer<?> head = buckets[level][index];
+		if (head.next == head) return;
+
+		Timer<?> timer = head.next;
+		head.prev.next = null;
+		head.next = head;
+		head.prev = head;
+		while (timer != null) {
+			Timer<?> next = timer.next;
+			insert(timer);
+			timer = next;
+		}
+	}
+
+	private static long toTick(long time) {
+		return time / TICK_DURATION;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void notifyListeners(List<Timer<?>> expired) {
+		Map<ExpirationListener<?>, List<Timer<?>>> batches = new IdentityHashMap<ExpirationListener<?>, List<Timer<?>>>();
+		for (Timer<?> timer : expired) {
+			List<Timer<?>> batch = batches.get(timer.listener);
+			if (batch == null) {
+				batch = new ArrayList<Timer<?>>();
+				batches.put(timer.listener, batch);
+			}
+			batch.add(timer);
+		}
+		for (Map.Entry<ExpirationListener<?>, List<Timer<?>>> entry : batches.entrySet()) {
+			ExpirationListener<Object> listener = (ExpirationListener<Object>) entry.getKey();
+			try {
+				listener.onExpired((List<Timer<Object>>) (List<?>) entry.getValue());
+			} catch (RuntimeException e) {
+				L.e(e, LOG_LISTENER_ERROR);
+			}
+		}
+	}
+
+	private final class Worker implements Runnable {
+		@Override
+		public void run() {
+			List<Timer<?>> expired = new ArrayList<Timer<?>>();
+			while (true) {
+				Runnable task;
+				synchronized (TimerWheel.this) {
+					try {
+						while (tasks.isEmpty()) {
+							long now = System.currentTimeMillis();
+							advance(now, expired);
+							if (!expired.isEmpty()) break;
+
+							if (timerCount == 0) {
+								TimerWheel.this.wait();
+							} else {
+								TimerWheel.this.wait(TICK_DURATION - now % TICK_DURATION);
+							}
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+					task = tasks.poll();
+				}
+
+				if (!expired.isEmpty()) {
+					notifyListeners(expired);
+					expired.clear();
+				}
+				if (task != null) {
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						L.e(e);
+					}
+				}
+			}
+		}
+	}
+
+	/** Receives batches of expired timers on wheel thread */
+	public interface ExpirationListener<K> {
+		void onExpired(List<Timer<K>> timers);
+	}
+
+	/** Scheduled expiration of key */
+	public static final class Timer<K> {
+		private final K key;
+		private final long expirationTime;
+		private final ExpirationListener<K> listener;
+		/** Links in bucket list; null if timer isn't scheduled anymore. Guarded by wheel lock. */
+		private Timer<?> prev;
+		private Timer<?> next;
+
+		Timer(K key, long expirationTime, ExpirationListener<K> listener) {
+			this.key = key;
+			this.expirationTime = expirationTime;
+			this.listener = listener;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		/** Returns wall clock time of expiration (in milliseconds) */
+		public long getExpirationTime() {
+			return expirationTime;
+		}
+	}
+}
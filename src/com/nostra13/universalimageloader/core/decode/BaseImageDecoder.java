@@ -15,12 +15,15 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.core.decode;
 
+import android.annotation.TargetApi;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
 import android.graphics.Matrix;
 import android.media.ExifInterface;
 import android.os.Build;
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
 import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
@@ -32,7 +35,9 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Decodes images to {@link Bitmap}, scales them to needed size
+ * Decodes images to {@link Bitmap}, scales them to needed size.<br />
+ * If {@linkplain ImageDecodingInfo#getImageMetadata() metadata} of cached image contains image info then image bounds
+ * and EXIF tags aren't read, so image stream is opened and read only once.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see ImageDecodingInfo
@@ -46,7 +51,12 @@ public class BaseImageDecoder implements ImageDecoder {
 	protected static final String LOG_FLIP_IMAGE = "Flip image horizontally [%s]";
 	protected static final String ERROR_CANT_DECODE_IMAGE = "Image can't be decoded [%s]";
 
+	protected static final String LOG_REUSE_BITMAP = "Reuse pooled bitmap (%1$dx%2$d) for decoding [%3$s]";
+	protected static final String LOG_CANT_REUSE_BITMAP = "Pooled bitmap can't be reused for decoding [%s]";
+
 	protected final boolean loggingEnabled;
+	/** Pool of bitmaps which can be reused for decoding, can be null */
+	protected final BitmapPool bitmapPool;
 
 	/**
 	 * @param loggingEnabled Whether debug logs will be written to LogCat. Usually should match {@link
@@ -54,7 +64,18 @@ public class BaseImageDecoder implements ImageDecoder {
 	 *                       ImageLoaderConfiguration.writeDebugLogs()}
 	 */
 	public BaseImageDecoder(boolean loggingEnabled) {
+		this(loggingEnabled, null);
+	}
+
+	/**
+	 * @param loggingEnabled Whether debug logs will be written to LogCat. Usually should match {@link
+	 *                       com.nostra13.universalimageloader.core.ImageLoaderConfiguration.Builder#writeDebugLogs()
+	 *                       ImageLoaderConfiguration.writeDebugLogs()}
+	 * @param bitmapPool     Pool of bitmaps which are reused for decoding (if Android version supports it); can be null
+	 */
+	public BaseImageDecoder(boolean loggingEnabled, BitmapPool bitmapPool) {
 		this.loggingEnabled = loggingEnabled;
+		this.bitmapPool = bitmapPool;
 	}
 
 	/**
@@ -72,10 +93,27 @@ public class BaseImageDecoder implements ImageDecoder {
 
 		InputStream imageStream = getImageStream(decodingInfo);
 		try {
-			imageInfo = defineImageSizeAndRotation(imageStream, decodingInfo);
-			imageStream = resetStream(imageStream, decodingInfo);
+			EntryMetadata metadata = decodingInfo.getImageMetadata();
+			if (canUseImageInfo(metadata, decodingInfo)) {
+				imageInfo = defineImageSizeAndRotation(metadata, decodingInfo);
+			} else {
+				imageInfo = defineImageSizeAndRotation(imageStream, decodingInfo);
+				imageStream = resetStream(imageStream, decodingInfo);
+				notifyImageInfoDefined(imageInfo, decodingInfo);
+			}
 			Options decodingOptions = prepareDecodingOptions(imageInfo.imageSize, decodingInfo);
-			decodedBitmap = BitmapFactory.decodeStream(imageStream, null, decodingOptions);
+			boolean reuse = bitmapPool != null && BitmapPool.isReuseSupported()
+					&& prepareBitmapReuse(decodingOptions, imageInfo, decodingInfo);
+			try {
+				decodedBitmap = BitmapFactory.decodeStream(imageStream, null, decodingOptions);
+			} catch (IllegalArgumentException e) {
+				if (!reuse) throw e;
+				// Pooled bitmap isn't suitable for this image, decode into new bitmap
+				if (loggingEnabled) L.d(LOG_CANT_REUSE_BITMAP, decodingInfo.getImageKey());
+				cancelBitmapReuse(decodingOptions);
+				imageStream = resetStream(imageStream, decodingInfo);
+				decodedBitmap = BitmapFactory.decodeStream(imageStream, null, decodingOptions);
+			}
 		} finally {
 			IoUtils.closeSilently(imageStream);
 		}
@@ -106,7 +144,41 @@ public class BaseImageDecoder implements ImageDecoder {
 		} else {
 			exif = new ExifInfo();
 		}
-		return new ImageFileInfo(new ImageSize(options.outWidth, options.outHeight, exif.rotation), exif);
+		return new ImageFileInfo(new ImageSize(options.outWidth, options.outHeight, exif.rotation), exif,
+				options.outMimeType);
+	}
+
+	private static boolean canUseImageInfo(EntryMetadata metadata, ImageDecodingInfo decodingInfo) {
+		return metadata != null && metadata.hasImageInfo()
+				&& (!decodingInfo.shouldConsiderExifParams() || metadata.hasExifInfo());
+	}
+
+	/** Defines image size and orientation from image info which was saved at previous decoding */
+	protected ImageFileInfo defineImageSizeAndRotation(EntryMetadata metadata, ImageDecodingInfo decodingInfo) {
+		ExifInfo exif;
+		if (decodingInfo.shouldConsiderExifParams()) {
+			exif = new ExifInfo(metadata.getExifRotation(), metadata.isExifFlipHorizontal());
+		} else {
+			exif = new ExifInfo();
+		}
+		return new ImageFileInfo(new ImageSize(metadata.getImageWidth(), metadata.getImageHeight(), exif.rotation),
+				exif, metadata.getMimeType());
+	}
+
+	private static void notifyImageInfoDefined(ImageFileInfo imageInfo, ImageDecodingInfo decodingInfo) {
+		ImageDecodingInfo.ImageInfoListener listener = decodingInfo.getImageInfoListener();
+		ImageSize imageSize = imageInfo.imageSize;
+		if (listener == null || imageSize.getWidth() <= 0 || imageSize.getHeight() <= 0) return;
+
+		// Image size is rotated according EXIF, image info keeps original orientation
+		boolean rotated = imageInfo.exif.rotation % 180 != 0;
+		EntryMetadata.Builder builder = new EntryMetadata.Builder().imageInfo(
+				rotated ? imageSize.getHeight() : imageSize.getWidth(),
+				rotated ? imageSize.getWidth() : imageSize.getHeight(), imageInfo.mimeType);
+		if (decodingInfo.shouldConsiderExifParams()) {
+			builder.exifInfo(imageInfo.exif.rotation, imageInfo.exif.flipHorizontal);
+		}
+		listener.onImageInfoDefined(builder.build());
 	}
 
 	private boolean canDefineExifParams(String imageUri, String mimeType) {
@@ -167,6 +239,43 @@ public class BaseImageDecoder implements ImageDecoder {
 		return decodingOptions;
 	}
 
+	/**
+	 * Makes decoded bitmap mutable (so it can be pooled later) and sets pooled bitmap as
+	 * {@link Options#inBitmap inBitmap} if there is suitable one.
+	 *
+	 * @return <b>true</b> - if pooled bitmap is going to be reused; <b>false</b> - otherwise
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	protected boolean prepareBitmapReuse(Options decodingOptions, ImageFileInfo imageInfo,
+			ImageDecodingInfo decodingInfo) {
+		decodingOptions.inMutable = true;
+
+		// Image size is rotated according EXIF, decoder works with original orientation
+		ImageSize imageSize = imageInfo.imageSize;
+		boolean rotated = imageInfo.exif.rotation % 180 != 0;
+		int imageWidth = rotated ? imageSize.getHeight() : imageSize.getWidth();
+		int imageHeight = rotated ? imageSize.getWidth() : imageSize.getHeight();
+		int scale = Math.max(1, decodingOptions.inSampleSize);
+		int width = (imageWidth + scale - 1) / scale;
+		int height = (imageHeight + scale - 1) / scale;
+
+		Bitmap reusable = bitmapPool.get(width, height, decodingOptions.inPreferredConfig, scale);
+		if (reusable == null) return false;
+
+		if (loggingEnabled) L.d(LOG_REUSE_BITMAP, width, height, decodingInfo.getImageKey());
+		decodingOptions.inBitmap = reusable;
+		return true;
+	}
+
+	/** Returns unsuitable pooled bitmap back into pool, so it can be reused for other images */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private void cancelBitmapReuse(Options decodingOptions) {
+		if (decodingOptions.inBitmap != null) {
+			bitmapPool.put(decodingOptions.inBitmap);
+		}
+		decodingOptions.inBitmap = null;
+	}
+
 	protected InputStream resetStream(InputStream imageStream, ImageDecodingInfo decodingInfo) throws IOException {
 		try {
 			imageStream.reset();
@@ -207,10 +316,16 @@ public class BaseImageDecoder implements ImageDecoder {
 			if (loggingEnabled) L.d(LOG_ROTATE_IMAGE, rotation, decodingInfo.getImageKey());
 		}
 
+		if (m.isIdentity()) return subsampledBitmap; // mutable bitmap would be copied by createBitmap(...)
+
 		Bitmap finalBitmap = Bitmap.createBitmap(subsampledBitmap, 0, 0, subsampledBitmap.getWidth(), subsampledBitmap
 				.getHeight(), m, true);
 		if (finalBitmap != subsampledBitmap) {
-			subsampledBitmap.recycle();
+			if (bitmapPool != null) {
+				bitmapPool.put(subsampledBitmap);
+			} else {
+				subsampledBitmap.recycle();
+			}
 		}
 		return finalBitmap;
 	}
@@ -235,10 +350,17 @@ public class BaseImageDecoder implements ImageDecoder {
 
 		public final ImageSize imageSize;
 		public final ExifInfo exif;
+		/** MIME type of image, can be null */
+		public final String mimeType;
 
 		protected ImageFileInfo(ImageSize imageSize, ExifInfo exif) {
+			this(imageSize, exif, null);
+		}
+
+		protected ImageFileInfo(ImageSize imageSize, ExifInfo exif, String mimeType) {
 			this.imageSize = imageSize;
 			this.exif = exif;
+			this.mimeType = mimeType;
 		}
 	}
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ package com.nostra13.universalimageloader.core.decode;
 import android.annotation.TargetApi;
 import android.graphics.BitmapFactory.Options;
 import android.os.Build;
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
@@ -45,8 +46,22 @@ public class ImageDecodingInfo {
 	private final boolean considerExifParams;
 	private final Options decodingOptions;
 
+	private final EntryMetadata imageMetadata;
+	private final ImageInfoListener imageInfoListener;
+
 	public ImageDecodingInfo(String imageKey, String imageUri, ImageSize targetSize, ViewScaleType viewScaleType,
 							 ImageDownloader downloader, DisplayImageOptions displayOptions) {
+		this(imageKey, imageUri, targetSize, viewScaleType, downloader, displayOptions, null, null);
+	}
+
+	/**
+	 * @param imageMetadata     Metadata of cached image; if it contains image info then decoder doesn't read image
+	 *                          bounds and EXIF tags. Can be null.
+	 * @param imageInfoListener Listener which receives image info if decoder has to define it; can be null
+	 */
+	public ImageDecodingInfo(String imageKey, String imageUri, ImageSize targetSize, ViewScaleType viewScaleType,
+							 ImageDownloader downloader, DisplayImageOptions displayOptions, EntryMetadata imageMetadata,
+							 ImageInfoListener imageInfoListener) {
 		this.imageKey = imageKey;
 		this.imageUri = imageUri;
 		this.targetSize = targetSize;
@@ -60,6 +75,9 @@ public class ImageDecodingInfo {
 		considerExifParams = displayOptions.isConsiderExifParams();
 		decodingOptions = new Options();
 		copyOptions(displayOptions.getDecodingOptions(), decodingOptions);
+
+		this.imageMetadata = imageMetadata;
+		this.imageInfoListener = imageInfoListener;
 	}
 
 	private void copyOptions(Options srcOptions, Options destOptions) {
@@ -139,4 +157,23 @@ public class ImageDecodingInfo {
 	public Options getDecodingOptions() {
 		return decodingOptions;
 	}
+
+	/** @return Metadata of cached image (can contain image size and EXIF orientation) or <b>null</b> */
+	public EntryMetadata getImageMetadata() {
+		return imageMetadata;
+	}
+
+	/** @return Listener of image info which is defined by decoder or <b>null</b> */
+	public ImageInfoListener getImageInfoListener() {
+		return imageInfoListener;
+	}
+
+	/** Receives image info which decoder defined from image stream (e.g. to keep it in disc cache) */
+	public interface ImageInfoListener {
+		/**
+		 * @param imageInfo Metadata which contains only image info (size, MIME type and EXIF orientation if EXIF
+		 *                  params were considered)
+		 */
+		void onImageInfoDefined(EntryMetadata imageInfo);
+	}
 }
\ No newline at end of file
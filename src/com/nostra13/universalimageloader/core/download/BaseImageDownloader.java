@@ -22,6 +22,7 @@ import android.graphics.Bitmap.CompressFormat;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.provider.ContactsContract;
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.assist.ContentLengthInputStream;
 import com.nostra13.universalimageloader.utils.IoUtils;
@@ -37,16 +38,18 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Locale;
 
 /**
  * Provides retrieving of {@link InputStream} of image by URI from network or file system or app resources.<br />
- * {@link URLConnection} is used to retrieve image stream from network.
+ * {@link URLConnection} is used to retrieve image stream from network. Network requests can be
+ * {@linkplain ConditionalImageDownloader conditional}.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see HttpClientImageDownloader
  * @since 1.8.0
  */
-public class BaseImageDownloader implements ImageDownloader {
+public class BaseImageDownloader implements ConditionalImageDownloader {
 	/** {@value} */
 	public static final int DEFAULT_HTTP_CONNECT_TIMEOUT = 5 * 1000; // milliseconds
 	/** {@value} */
@@ -59,6 +62,16 @@ public class BaseImageDownloader implements ImageDownloader {
 
 	protected static final int MAX_REDIRECT_COUNT = 5;
 
+	protected static final String HEADER_ETAG = "ETag";
+	protected static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	protected static final String HEADER_CACHE_CONTROL = "Cache-Control";
+	protected static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	protected static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	private static final String CACHE_CONTROL_MAX_AGE = "max-age=";
+	private static final String CACHE_CONTROL_NO_CACHE = "no-cache";
+	private static final String CACHE_CONTROL_NO_STORE = "no-store";
+
 	protected  static final String CONTENT_CONTACTS_URI_PREFIX = "content://com.android.contacts/";
 
 	private static final String ERROR_UNSUPPORTED_SCHEME = "UIL doesn't support scheme(protocol) by default [%s]. "
@@ -68,6 +81,10 @@ public class BaseImageDownloader implements ImageDownloader {
 	protected final int connectTimeout;
 	protected final int readTimeout;
 
+	/** Receives metadata of unconditional response which is requested through {@link #getStream(String, Object)} */
+	private final ThreadLocal<EntryMetadata.Builder> unconditionalResponseMetadata =
+			new ThreadLocal<EntryMetadata.Builder>();
+
 	public BaseImageDownloader(Context context) {
 		this.context = context.getApplicationContext();
 		this.connectTimeout = DEFAULT_HTTP_CONNECT_TIMEOUT;
@@ -100,6 +117,25 @@ public class BaseImageDownloader implements ImageDownloader {
 		}
 	}
 
+	@Override
+	public InputStream getStreamIfModified(String imageUri, Object extra, EntryMetadata cachedMetadata,
+			EntryMetadata.Builder responseMetadata) throws IOException {
+		if (cachedMetadata != null && cachedMetadata.hasValidators()) {
+			switch (Scheme.ofUri(imageUri)) {
+				case HTTP:
+				case HTTPS:
+					return getStreamFromNetwork(imageUri, extra, cachedMetadata, responseMetadata);
+			}
+		}
+		// Request is unconditional so it goes through overridable getStream(...) and getStreamFromNetwork(...)
+		unconditionalResponseMetadata.set(responseMetadata);
+		try {
+			return getStream(imageUri, extra);
+		} finally {
+			unconditionalResponseMetadata.remove();
+		}
+	}
+
 	/**
 	 * Retrieves {@link InputStream} of image by URI (image is located in the network).
 	 *
@@ -111,14 +147,49 @@ public class BaseImageDownloader implements ImageDownloader {
 	 *                     URL.
 	 */
 	protected InputStream getStreamFromNetwork(String imageUri, Object extra) throws IOException {
+		return getStreamFromNetwork(imageUri, extra, null, unconditionalResponseMetadata.get());
+	}
+
+	/**
+	 * Retrieves {@link InputStream} of image by URI (image is located in the network) using conditional request.
+	 * It's used only if cached image has validators, other requests go through
+	 * {@link #getStreamFromNetwork(String, Object)}. Successors which override
+	 * {@link #getStreamFromNetwork(String, Object)} should override this method too to support revalidation.
+	 *
+	 * @param imageUri         Image URI
+	 * @param extra            Auxiliary object which was passed to
+	 *                         {@link DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                         DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @param cachedMetadata   Metadata of cached image; can be null
+	 * @param responseMetadata Builder which receives validators and freshness lifetime of response; can be null
+	 * @return {@link InputStream} of image or <b>null</b> if server responded "304 Not Modified"
+	 * @throws IOException if some I/O error occurs during network request or if no InputStream could be created for
+	 *                     URL.
+	 */
+	protected InputStream getStreamFromNetwork(String imageUri, Object extra, EntryMetadata cachedMetadata,
+			EntryMetadata.Builder responseMetadata) throws IOException {
 		HttpURLConnection conn = createConnection(imageUri, extra);
+		setValidators(conn, cachedMetadata);
 
 		int redirectCount = 0;
-		while (conn.getResponseCode() / 100 == 3 && redirectCount < MAX_REDIRECT_COUNT) {
+		while (isRedirect(conn.getResponseCode()) && redirectCount < MAX_REDIRECT_COUNT) {
 			conn = createConnection(conn.getHeaderField("Location"), extra);
+			setValidators(conn, cachedMetadata);
 			redirectCount++;
 		}
 
+		if (responseMetadata != null) {
+			readResponseMetadata(conn.getHeaderField(HEADER_ETAG), conn.getHeaderField(HEADER_LAST_MODIFIED),
+					conn.getHeaderField(HEADER_CACHE_CONTROL), responseMetadata);
+		}
+		if (cachedMetadata != null && conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			InputStream emptyStream = conn.getErrorStream();
+			if (emptyStream != null) {
+				IoUtils.readAndCloseStream(emptyStream); // allows reuse of connection
+			}
+			return null;
+		}
+
 		InputStream imageStream;
 		try {
 			imageStream = conn.getInputStream();
@@ -130,6 +201,61 @@ public class BaseImageDownloader implements ImageDownloader {
 		return new ContentLengthInputStream(new BufferedInputStream(imageStream, BUFFER_SIZE), conn.getContentLength());
 	}
 
+	private static boolean isRedirect(int responseCode) {
+		return responseCode / 100 == 3 && responseCode != HttpURLConnection.HTTP_NOT_MODIFIED;
+	}
+
+	/** Adds conditional headers to request (if cached image has validators) */
+	private static void setValidators(HttpURLConnection conn, EntryMetadata cachedMetadata) {
+		if (cachedMetadata == null) return;
+		if (cachedMetadata.getETag() != null) {
+			conn.setRequestProperty(HEADER_IF_NONE_MATCH, cachedMetadata.getETag());
+		}
+		if (cachedMetadata.getLastModified() != null) {
+			conn.setRequestProperty(HEADER_IF_MODIFIED_SINCE, cachedMetadata.getLastModified());
+		}
+	}
+
+	/**
+	 * Puts validators and freshness lifetime of response into metadata builder. Validators which are absent in response
+	 * (e.g. in "304 Not Modified" response) are kept.
+	 *
+	 * @param eTag             Value of {@code ETag} response header; can be null
+	 * @param lastModified     Value of {@code Last-Modified} response header; can be null
+	 * @param cacheControl     Value of {@code Cache-Control} response header; can be null
+	 * @param responseMetadata Builder of metadata
+	 */
+	protected static void readResponseMetadata(String eTag, String lastModified, String cacheControl,
+			EntryMetadata.Builder responseMetadata) {
+		responseMetadata.responseTime(System.currentTimeMillis());
+		if (eTag != null) {
+			responseMetadata.eTag(eTag);
+		}
+		if (lastModified != null) {
+			responseMetadata.lastModified(lastModified);
+		}
+		if (cacheControl != null) {
+			responseMetadata.maxAge(parseMaxAge(cacheControl));
+		}
+	}
+
+	/** Returns freshness lifetime (in seconds) from {@code Cache-Control} header value or -1 if it isn't specified */
+	private static long parseMaxAge(String cacheControl) {
+		long maxAge = -1;
+		for (String directive : cacheControl.split(",")) {
+			directive = directive.trim().toLowerCase(Locale.US);
+			if (directive.equals(CACHE_CONTROL_NO_CACHE) || directive.equals(CACHE_CONTROL_NO_STORE)) {
+				return 0; // image must be revalidated every time
+			} else if (directive.startsWith(CACHE_CONTROL_MAX_AGE)) {
+				try {
+					maxAge = Long.parseLong(directive.substring(CACHE_CONTROL_MAX_AGE.length()).replace("\"", ""));
+				} catch (NumberFormatException ignored) {
+				}
+			}
+		}
+		return maxAge;
+	}
+
 	/**
 	 * Create {@linkplain HttpURLConnection HTTP connection} for incoming URL
 	 *
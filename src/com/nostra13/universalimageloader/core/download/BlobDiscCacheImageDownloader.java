@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import com.nostra13.universalimageloader.cache.disc.BlobDiscCacheAware;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decorator. Serves images which are packed as blobs in {@link BlobDiscCacheAware disc cache} by their original URIs.
+ * Images which aren't packed are got from wrapped downloader.<br />
+ * In most cases this downloader shouldn't be used directly.
+ *
+ * @since 1.9.2
+ */
+public class BlobDiscCacheImageDownloader implements ImageDownloader {
+
+	private final ImageDownloader wrappedDownloader;
+	private final BlobDiscCacheAware discCache;
+
+	public BlobDiscCacheImageDownloader(ImageDownloader wrappedDownloader, BlobDiscCacheAware discCache) {
+		this.wrappedDownloader = wrappedDownloader;
+		this.discCache = discCache;
+	}
+
+	@Override
+	public InputStream getStream(String imageUri, Object extra) throws IOException {
+		InputStream blobStream = discCache.openBlob(imageUri);
+		if (blobStream != null) {
+			return blobStream;
+		}
+		return wrappedDownloader.getStream(imageUri, extra);
+	}
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+import com.nostra13.universalimageloader.core.DisplayImageOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Image downloader which can make conditional HTTP requests: validators of cached image ({@code ETag},
+ * {@code Last-Modified}) are sent as {@code If-None-Match} and {@code If-Modified-Since} headers, so unchanged image
+ * isn't transferred again. Validators and freshness lifetime of response are collected for caching.
+ *
+ * @see EntryMetadata
+ * @since 1.9.2
+ */
+public interface ConditionalImageDownloader extends ImageDownloader {
+
+	/**
+	 * Retrieves {@link InputStream} of image by URI if image was modified since it was cached.
+	 *
+	 * @param imageUri         Image URI
+	 * @param extra            Auxiliary object which was passed to
+	 *                         {@link DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                         DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @param cachedMetadata   Metadata of cached image; <b>null</b> - request is unconditional
+	 * @param responseMetadata Builder which receives validators and freshness lifetime of response
+	 * @return {@link InputStream} of image or <b>null</b> if image wasn't modified (cached image is still valid)
+	 * @throws IOException                   if some I/O error occurs during getting image stream
+	 * @throws UnsupportedOperationException if image URI has unsupported scheme(protocol)
+	 */
+	InputStream getStreamIfModified(String imageUri, Object extra, EntryMetadata cachedMetadata,
+			EntryMetadata.Builder responseMetadata) throws IOException;
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import com.nostra13.universalimageloader.cache.memory.impl.EncodedMemoryCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decorator. Serves local files (disc cache files) from {@link EncodedMemoryCache}. File which isn't in the cache yet is
+ * read into the cache and then served from it, so decoding needs only one file read.<br />
+ * In most cases this downloader shouldn't be used directly.
+ *
+ * @since 1.9.2
+ */
+public class EncodedMemoryCacheImageDownloader implements ImageDownloader {
+
+	private final ImageDownloader wrappedDownloader;
+	private final EncodedMemoryCache encodedMemoryCache;
+
+	public EncodedMemoryCacheImageDownloader(ImageDownloader wrappedDownloader, EncodedMemoryCache encodedMemoryCache) {
+		this.wrappedDownloader = wrappedDownloader;
+		this.encodedMemoryCache = encodedMemoryCache;
+	}
+
+	@Override
+	public InputStream getStream(String imageUri, Object extra) throws IOException {
+		if (Scheme.ofUri(imageUri) == Scheme.FILE) {
+			InputStream cachedStream = encodedMemoryCache.get(imageUri);
+			if (cachedStream == null && encodedMemoryCache.put(imageUri, new File(Scheme.FILE.crop(imageUri)))) {
+				cachedStream = encodedMemoryCache.get(imageUri);
+			}
+			if (cachedStream != null) {
+				return cachedStream;
+			}
+		}
+		return wrappedDownloader.getStream(imageUri, extra);
+	}
+}
@@ -18,14 +18,18 @@ package com.nostra13.universalimageloader.core.download;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.BufferedHttpEntity;
 
 import android.content.Context;
 
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+
 /**
  * Implementation of ImageDownloader which uses {@link HttpClient} for image stream retrieving.
  * 
@@ -42,11 +46,33 @@ public class HttpClientImageDownloader extends BaseImageDownloader {
 	}
 
 	@Override
-	protected InputStream getStreamFromNetwork(String imageUri, Object extra) throws IOException {
+	protected InputStream getStreamFromNetwork(String imageUri, Object extra, EntryMetadata cachedMetadata,
+			EntryMetadata.Builder responseMetadata) throws IOException {
 		HttpGet httpRequest = new HttpGet(imageUri);
+		if (cachedMetadata != null && cachedMetadata.getETag() != null) {
+			httpRequest.setHeader(HEADER_IF_NONE_MATCH, cachedMetadata.getETag());
+		}
+		if (cachedMetadata != null && cachedMetadata.getLastModified() != null) {
+			httpRequest.setHeader(HEADER_IF_MODIFIED_SINCE, cachedMetadata.getLastModified());
+		}
 		HttpResponse response = httpClient.execute(httpRequest);
+		if (responseMetadata != null) {
+			readResponseMetadata(getHeaderValue(response, HEADER_ETAG), getHeaderValue(response, HEADER_LAST_MODIFIED),
+					getHeaderValue(response, HEADER_CACHE_CONTROL), responseMetadata);
+		}
 		HttpEntity entity = response.getEntity();
+		if (cachedMetadata != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+			if (entity != null) {
+				entity.consumeContent();
+			}
+			return null;
+		}
 		BufferedHttpEntity bufHttpEntity = new BufferedHttpEntity(entity);
 		return bufHttpEntity.getContent();
 	}
+
+	private static String getHeaderValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
 }
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.core.download;
 
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -25,7 +27,7 @@ import java.io.InputStream;
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.8.0
  */
-public class NetworkDeniedImageDownloader implements ImageDownloader {
+public class NetworkDeniedImageDownloader implements ConditionalImageDownloader {
 
 	private final ImageDownloader wrappedDownloader;
 
@@ -43,4 +45,10 @@ public class NetworkDeniedImageDownloader implements ImageDownloader {
 				return wrappedDownloader.getStream(imageUri, extra);
 		}
 	}
+
+	@Override
+	public InputStream getStreamIfModified(String imageUri, Object extra, EntryMetadata cachedMetadata,
+			EntryMetadata.Builder responseMetadata) throws IOException {
+		return getStream(imageUri, extra); // network isn't touched, so nothing is validated
+	}
 }
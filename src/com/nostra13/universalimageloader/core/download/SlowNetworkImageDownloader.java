@@ -15,6 +15,7 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.core.download;
 
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
 import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
 
 import java.io.IOException;
@@ -27,7 +28,7 @@ import java.io.InputStream;
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.8.1
  */
-public class SlowNetworkImageDownloader implements ImageDownloader {
+public class SlowNetworkImageDownloader implements ConditionalImageDownloader {
 
 	private final ImageDownloader wrappedDownloader;
 
@@ -37,7 +38,21 @@ public class SlowNetworkImageDownloader implements ImageDownloader {
 
 	@Override
 	public InputStream getStream(String imageUri, Object extra) throws IOException {
-		InputStream imageStream = wrappedDownloader.getStream(imageUri, extra);
+		return wrapStream(imageUri, wrappedDownloader.getStream(imageUri, extra));
+	}
+
+	@Override
+	public InputStream getStreamIfModified(String imageUri, Object extra, EntryMetadata cachedMetadata,
+			EntryMetadata.Builder responseMetadata) throws IOException {
+		if (wrappedDownloader instanceof ConditionalImageDownloader) {
+			InputStream imageStream = ((ConditionalImageDownloader) wrappedDownloader).getStreamIfModified(imageUri,
+					extra, cachedMetadata, responseMetadata);
+			return imageStream == null ? null : wrapStream(imageUri, imageStream);
+		}
+		return getStream(imageUri, extra);
+	}
+
+	private static InputStream wrapStream(String imageUri, InputStream imageStream) {
 		switch (Scheme.ofUri(imageUri)) {
 			case HTTP:
 			case HTTPS:
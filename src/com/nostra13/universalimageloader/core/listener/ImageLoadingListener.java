@@ -21,7 +21,11 @@ import com.nostra13.universalimageloader.core.assist.FailReason;
 
 /**
  * Listener for image loading process.<br />
- * You can use {@link SimpleImageLoadingListener} for implementing only needed methods.
+ * You can use {@link SimpleImageLoadingListener} for implementing only needed methods.<br />
+ * <br />
+ * Callbacks of images which are loaded without {@link android.os.Handler} (e.g. request isn't made on UI thread) are
+ * run one by one on single callback thread of ImageLoader. Listener mustn't block this thread (wait for network, disc,
+ * locks): blocked callback delays callbacks of all other images. Long work should be passed to own executor.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see SimpleImageLoadingListener
@@ -15,7 +15,11 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.utils;
 
+import com.nostra13.universalimageloader.cache.disc.BlobDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.CountingDiscCacheAware;
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.InvalidatableDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.PresenceDiscCacheAware;
 
 import java.io.File;
 
@@ -31,19 +35,82 @@ public final class DiscCacheUtils {
 	private DiscCacheUtils() {
 	}
 
-	/** Returns {@link File} of cached image or <b>null</b> if image was not cached in disc cache */
+	/**
+	 * Returns {@link File} of cached image or <b>null</b> if image was not cached in disc cache. Images which are packed
+	 * as blobs ({@link BlobDiscCacheAware}) have no files, use {@link #isCached(String, DiscCacheAware)} for them.
+	 */
 	public static File findInCache(String imageUri, DiscCacheAware discCache) {
 		File image = discCache.get(imageUri);
 		return image.exists() ? image : null;
 	}
 
 	/**
-	 * Removed cached image file from disc cache (if image was cached in disc cache before)
+	 * Returns <b>true</b> if image is cached in disc cache (as file or as blob). Neither file system nor blobs are
+	 * touched if disc cache knows that image isn't cached ({@link PresenceDiscCacheAware}); this check doesn't block.
+	 */
+	public static boolean isCached(String imageUri, DiscCacheAware discCache) {
+		if (discCache instanceof PresenceDiscCacheAware && !((PresenceDiscCacheAware) discCache).mightContain(imageUri)) {
+			return false;
+		}
+		if (discCache instanceof BlobDiscCacheAware && ((BlobDiscCacheAware) discCache).containsBlob(imageUri)) {
+			return true;
+		}
+		return getFile(imageUri, discCache).exists();
+	}
+
+	/**
+	 * Returns {@link File} of image in disc cache (it may not exist). Unlike {@link DiscCacheAware#get(String)} request
+	 * isn't counted in cache statistics ({@link CountingDiscCacheAware}), so it should be used for checks which aren't
+	 * image loadings.
+	 */
+	public static File getFile(String imageUri, DiscCacheAware discCache) {
+		if (discCache instanceof CountingDiscCacheAware) {
+			return ((CountingDiscCacheAware) discCache).getFile(imageUri);
+		}
+		return discCache.get(imageUri);
+	}
+
+	/**
+	 * Removes all images which URIs start with passed prefix from disc cache (including
+	 * {@linkplain com.nostra13.universalimageloader.core.ImageLoaderConfiguration.Builder#discCacheRenditions(int...)
+	 * renditions}). Images are removed in background.
+	 *
+	 * @return <b>true</b> - if removal was started; <b>false</b> - if disc cache can't invalidate images by prefix
+	 */
+	public static boolean removeFromCacheByPrefix(String imageUriPrefix, DiscCacheAware discCache) {
+		if (discCache instanceof InvalidatableDiscCacheAware) {
+			((InvalidatableDiscCacheAware) discCache).invalidateByPrefix(imageUriPrefix);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all images which URIs are accepted by filter from disc cache. Filter is called and images are removed in
+	 * background.
+	 *
+	 * @return <b>true</b> - if removal was started; <b>false</b> - if disc cache can't invalidate images by filter
+	 */
+	public static boolean removeFromCache(InvalidatableDiscCacheAware.KeyFilter imageUriFilter, DiscCacheAware discCache) {
+		if (discCache instanceof InvalidatableDiscCacheAware) {
+			((InvalidatableDiscCacheAware) discCache).invalidate(imageUriFilter);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removed cached image file from disc cache (if image was cached in disc cache before). Caches which keep indexes
+	 * or metadata of images remove image themselves so their indexes don't keep removed image.
 	 *
 	 * @return <b>true</b> - if cached image file existed and was deleted; <b>false</b> - otherwise.
 	 */
 	public static boolean removeFromCache(String imageUri, DiscCacheAware discCache) {
-		File image = discCache.get(imageUri);
-		return image.delete();
+		if (discCache instanceof InvalidatableDiscCacheAware) {
+			return ((InvalidatableDiscCacheAware) discCache).remove(imageUri);
+		}
+		boolean removed = discCache instanceof BlobDiscCacheAware && ((BlobDiscCacheAware) discCache).removeBlob(imageUri);
+		File image = getFile(imageUri, discCache);
+		return image.delete() || removed;
 	}
 }
@@ -17,6 +17,9 @@ package com.nostra13.universalimageloader.utils;
 
 import android.graphics.Bitmap;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKey;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheKeyAware;
+import com.nostra13.universalimageloader.cache.memory.UriIndexedMemoryCacheAware;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
 
@@ -35,6 +38,24 @@ public final class MemoryCacheUtils {
 	private static final String URI_AND_SIZE_SEPARATOR = "_";
 	private static final String WIDTH_AND_HEIGHT_SEPARATOR = "x";
 
+	private static final Comparator<String> FUZZY_KEY_COMPARATOR = new Comparator<String>() {
+		@Override
+		public int compare(String key1, String key2) {
+			// Compares image URIs of keys without substring allocation
+			int length1 = getImageUriLength(key1);
+			int length2 = getImageUriLength(key2);
+			int minLength = Math.min(length1, length2);
+			for (int i = 0; i < minLength; i++) {
+				char c1 = key1.charAt(i);
+				char c2 = key2.charAt(i);
+				if (c1 != c2) {
+					return c1 - c2;
+				}
+			}
+			return length1 - length2;
+		}
+	};
+
 	private MemoryCacheUtils() {
 	}
 
@@ -46,15 +67,106 @@ public final class MemoryCacheUtils {
 		return new StringBuilder(imageUri).append(URI_AND_SIZE_SEPARATOR).append(targetSize.getWidth()).append(WIDTH_AND_HEIGHT_SEPARATOR).append(targetSize.getHeight()).toString();
 	}
 
+	/**
+	 * Returns <b>true</b> if memory cache key is equal to key {@linkplain #generateKey(String, ImageSize) generated}
+	 * for incoming image URI and size. Key isn't generated for comparison.
+	 */
+	public static boolean isKeyOf(String memoryCacheKey, String imageUri, ImageSize targetSize) {
+		int sizeStart = imageUri.length() + URI_AND_SIZE_SEPARATOR.length();
+		if (!memoryCacheKey.startsWith(imageUri)
+				|| !memoryCacheKey.startsWith(URI_AND_SIZE_SEPARATOR, imageUri.length())) return false;
+
+		int widthEnd = memoryCacheKey.indexOf(WIDTH_AND_HEIGHT_SEPARATOR, sizeStart);
+		if (widthEnd < 0) return false;
+		int heightStart = widthEnd + WIDTH_AND_HEIGHT_SEPARATOR.length();
+		return isNumber(memoryCacheKey, sizeStart, widthEnd, targetSize.getWidth())
+				&& isNumber(memoryCacheKey, heightStart, memoryCacheKey.length(), targetSize.getHeight());
+	}
+
+	/**
+	 * Returns hash code of key {@linkplain #generateKey(String, ImageSize) generated} for incoming image URI and size
+	 * (it's equal to {@link String#hashCode()} of key). Key isn't generated for it.
+	 */
+	public static int hashCodeOfKey(String imageUri, ImageSize targetSize) {
+		int h = imageUri.hashCode();
+		h = continueHash(h, URI_AND_SIZE_SEPARATOR);
+		h = continueHash(h, targetSize.getWidth());
+		h = continueHash(h, WIDTH_AND_HEIGHT_SEPARATOR);
+		return continueHash(h, targetSize.getHeight());
+	}
+
+	/** Continues computing of {@link String#hashCode()} by chars of incoming string */
+	private static int continueHash(int h, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			h = 31 * h + s.charAt(i);
+		}
+		return h;
+	}
+
+	/** Continues computing of {@link String#hashCode()} by chars of decimal form of number */
+	private static int continueHash(int h, int number) {
+		long value = number;
+		if (value < 0) {
+			h = 31 * h + '-';
+			value = -value;
+		}
+		long divisor = 1;
+		while (divisor * 10 <= value) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			h = 31 * h + (char) ('0' + value / divisor % 10);
+		}
+		return h;
+	}
+
+	/** Returns <b>true</b> if chars of string in range [start, end) are decimal form of number */
+	private static boolean isNumber(String s, int start, int end, int number) {
+		long value = 0;
+		boolean negative = start < end && s.charAt(start) == '-';
+		int i = negative ? start + 1 : start;
+		if (i == end || (s.charAt(i) == '0' && end - i > 1)) return false; // generated numbers have no leading zeros
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9' || value > Integer.MAX_VALUE) return false;
+			value = value * 10 + (c - '0');
+		}
+		return (negative ? -value : value) == number;
+	}
+
+	/**
+	 * Returns value from memory cache by key object. String form of key isn't built if memory cache is
+	 * {@link MemoryCacheKeyAware} (built-in caches with URI index are).
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> V get(MemoryCacheKey key, MemoryCacheAware<String, V> memoryCache) {
+		if (memoryCache instanceof MemoryCacheKeyAware) {
+			return ((MemoryCacheKeyAware<V>) memoryCache).get(key);
+		}
+		return memoryCache.get(key.toString());
+	}
+
+	/**
+	 * Returns image URI which incoming memory cache key was {@linkplain #generateKey(String, ImageSize) generated}
+	 * for.
+	 */
+	public static String getImageUri(String memoryCacheKey) {
+		int separatorIndex = memoryCacheKey.lastIndexOf(URI_AND_SIZE_SEPARATOR);
+		return separatorIndex < 0 ? memoryCacheKey : memoryCacheKey.substring(0, separatorIndex);
+	}
+
+	/**
+	 * Returns comparator which considers keys of the same image URI as equal. Comparator is stateless so the same
+	 * instance is returned every time.
+	 */
 	public static Comparator<String> createFuzzyKeyComparator() {
-		return new Comparator<String>() {
-			@Override
-			public int compare(String key1, String key2) {
-				String imageUri1 = key1.substring(0, key1.lastIndexOf(URI_AND_SIZE_SEPARATOR));
-				String imageUri2 = key2.substring(0, key2.lastIndexOf(URI_AND_SIZE_SEPARATOR));
-				return imageUri1.compareTo(imageUri2);
-			}
-		};
+		return FUZZY_KEY_COMPARATOR;
+	}
+
+	/** Returns length of image URI at the start of memory cache key. Allows to work with URI without its extraction. */
+	public static int getImageUriLength(String memoryCacheKey) {
+		int separatorIndex = memoryCacheKey.lastIndexOf(URI_AND_SIZE_SEPARATOR);
+		return separatorIndex < 0 ? memoryCacheKey.length() : separatorIndex;
 	}
 
 	/**
@@ -65,9 +177,10 @@ public final class MemoryCacheUtils {
 	 */
 	public static List<Bitmap> findCachedBitmapsForImageUri(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
 		List<Bitmap> values = new ArrayList<Bitmap>();
-		for (String key : memoryCache.keys()) {
-			if (key.startsWith(imageUri)) {
-				values.add(memoryCache.get(key));
+		for (String key : findCacheKeysForImageUri(imageUri, memoryCache)) {
+			Bitmap bitmap = memoryCache.get(key);
+			if (bitmap != null) {
+				values.add(bitmap);
 			}
 		}
 		return values;
@@ -77,12 +190,18 @@ public final class MemoryCacheUtils {
 	 * Searches all keys in memory cache which are corresponded to incoming URI.<br />
 	 * <b>Note:</b> Memory cache can contain multiple sizes of the same image if only you didn't set
 	 * {@link ImageLoaderConfiguration.Builder#denyCacheImageMultipleSizesInMemory()
-	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}
+	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}.<br />
+	 * Keys are got from URI index if memory cache is {@link UriIndexedMemoryCacheAware}, otherwise all cache keys are
+	 * scanned.
 	 */
-	public static List<String> findCacheKeysForImageUri(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
+	public static List<String> findCacheKeysForImageUri(String imageUri, MemoryCacheAware<String, ?> memoryCache) {
+		if (memoryCache instanceof UriIndexedMemoryCacheAware) {
+			return new ArrayList<String>(((UriIndexedMemoryCacheAware) memoryCache).keysForImageUri(imageUri));
+		}
+
 		List<String> values = new ArrayList<String>();
 		for (String key : memoryCache.keys()) {
-			if (key.startsWith(imageUri)) {
+			if (getImageUriLength(key) == imageUri.length() && key.startsWith(imageUri)) {
 				values.add(key);
 			}
 		}
@@ -96,13 +215,7 @@ public final class MemoryCacheUtils {
 	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}
 	 */
 	public static void removeFromCache(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
-		List<String> keysToRemove = new ArrayList<String>();
-		for (String key : memoryCache.keys()) {
-			if (key.startsWith(imageUri)) {
-				keysToRemove.add(key);
-			}
-		}
-		for (String keyToRemove : keysToRemove) {
+		for (String keyToRemove : findCacheKeysForImageUri(imageUri, memoryCache)) {
 			memoryCache.remove(keyToRemove);
 		}
 	}
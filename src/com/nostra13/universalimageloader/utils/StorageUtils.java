@@ -16,8 +16,11 @@
 package com.nostra13.universalimageloader.utils;
 
 import android.content.Context;
+import android.annotation.TargetApi;
 import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Environment;
+import android.os.StatFs;
 
 import java.io.File;
 import java.io.IOException;
@@ -99,6 +102,19 @@ public final class StorageUtils
 		return individualCacheDir;
 	}
 
+	/**
+	 * Returns <b>true</b> if directory returned by
+	 * {@link #getIndividualCacheDirectory(Context)} is really individual
+	 * cache directory of ImageLoader. Application cache directory (which is
+	 * returned if individual directory can't be created) is shared with other
+	 * components. Only name of directory is checked, so any other directory
+	 * with the same name is taken as individual one.
+	 */
+	public static boolean isIndividualCacheDirectory(File dir)
+	{
+		return INDIVIDUAL_DIR_NAME.equals(dir.getName());
+	}
+
 	/**
 	 * Returns specified application cache directory. Cache directory will be
 	 * created on SD card by defined path if card is mounted and app has
@@ -152,6 +168,29 @@ public final class StorageUtils
 		return appCacheDir;
 	}
 
+	/**
+	 * Returns size of block of file system which contains passed directory
+	 * (files occupy whole blocks on disc) or <b>0</b> if it can't be defined
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	@SuppressWarnings("deprecation")
+	public static long getBlockSize(File dir)
+	{
+		try
+		{
+			StatFs statFs = new StatFs(dir.getPath());
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+			{
+				return statFs.getBlockSizeLong();
+			}
+			return statFs.getBlockSize();
+		}
+		catch (IllegalArgumentException e)
+		{ // directory doesn't exist
+			return 0;
+		}
+	}
+
 	/** 检查是否拥有写外部SD卡的权限 */
 	private static boolean hasExternalStoragePermission(Context context)
 	{
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import android.content.Context;
+import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
+import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that cache directory is cleared as a whole only if cache was created as owner of directory: directory name
+ * proves nothing, and reserve cache doesn't share directory with primary cache.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CacheDirDedicationTest {
+
+	private static final String KEY = "http://example.com/image.jpg";
+
+	private final Context context = RuntimeEnvironment.application;
+
+	@Test
+	public void directoryIsNotDedicatedByName() throws IOException {
+		File dir = new File(context.getCacheDir(), "uil-images");
+		dir.mkdirs();
+		File foreignDir = new File(dir, "foreign");
+		assertTrue(foreignDir.mkdir());
+
+		new UnlimitedDiscCache(dir).clear();
+
+		assertTrue("Shared directory must not be moved to trash", foreignDir.exists());
+	}
+
+	@Test
+	public void reserveCacheHasItsOwnDirectory() {
+		BaseDiscCache discCache = (BaseDiscCache) DefaultConfigurationFactory.createDiscCache(context,
+				DefaultConfigurationFactory.createFileNameGenerator(), 10 * 1024 * 1024, 0);
+		BaseDiscCache reserveDiscCache = (BaseDiscCache) DefaultConfigurationFactory.createReserveDiscCache(
+				context.getCacheDir());
+
+		File dir = discCache.get(KEY).getParentFile();
+		File reserveDir = reserveDiscCache.get(KEY).getParentFile();
+		assertTrue(discCache.isCacheDirDedicated());
+		assertFalse(reserveDiscCache.isCacheDirDedicated());
+		assertNotEquals(dir, reserveDir);
+		assertFalse(reserveDir.getAbsolutePath().startsWith(dir.getAbsolutePath() + File.separator));
+	}
+}
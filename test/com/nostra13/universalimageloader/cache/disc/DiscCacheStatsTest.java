@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import com.nostra13.universalimageloader.cache.CacheStats;
+import com.nostra13.universalimageloader.cache.disc.impl.JournaledDiscCache;
+import com.nostra13.universalimageloader.cache.disc.naming.HashCodeFileNameGenerator;
+import com.nostra13.universalimageloader.utils.DiscCacheUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that disc cache which keeps index of cached files counts requests by this index and that checks which aren't
+ * image loadings aren't counted
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiscCacheStatsTest {
+
+	/** Runs maintenance at once, so journal is replayed on cache creation */
+	private static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Test
+	public void requestsAreCountedByIndexOfCachedFiles() throws IOException {
+		JournaledDiscCache discCache = new JournaledDiscCache(new File(RuntimeEnvironment.application.getCacheDir(),
+				"stats"), new HashCodeFileNameGenerator(), 0, 0, DIRECT_EXECUTOR);
+		File file = discCache.get("http://example.com/cached.png");
+		file.getParentFile().mkdirs();
+		assertTrue(file.createNewFile());
+		discCache.put("http://example.com/cached.png", file);
+
+		discCache.get("http://example.com/cached.png");
+		discCache.get("http://example.com/missing.png");
+
+		CacheStats stats = discCache.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(2, stats.getMissCount()); // the first request of cached image was made before it was cached
+	}
+
+	@Test
+	public void checksAreNotCounted() throws IOException {
+		JournaledDiscCache discCache = new JournaledDiscCache(new File(RuntimeEnvironment.application.getCacheDir(),
+				"checks"), new HashCodeFileNameGenerator(), 0, 0, DIRECT_EXECUTOR);
+		File file = discCache.getFile("http://example.com/cached.png");
+		file.getParentFile().mkdirs();
+		assertTrue(file.createNewFile());
+		discCache.put("http://example.com/cached.png", file);
+
+		assertTrue(DiscCacheUtils.isCached("http://example.com/cached.png", discCache));
+		DiscCacheUtils.isCached("http://example.com/missing.png", discCache);
+
+		CacheStats stats = discCache.getStats();
+		assertEquals(0, stats.getHitCount());
+		assertEquals(0, stats.getMissCount());
+	}
+
+	@Test
+	public void removedImageIsMissed() throws IOException {
+		JournaledDiscCache discCache = new JournaledDiscCache(new File(RuntimeEnvironment.application.getCacheDir(),
+				"removed"), new HashCodeFileNameGenerator(), 0, 0, DIRECT_EXECUTOR);
+		File file = discCache.getFile("http://example.com/cached.png");
+		file.getParentFile().mkdirs();
+		assertTrue(file.createNewFile());
+		discCache.put("http://example.com/cached.png", file);
+
+		assertTrue(DiscCacheUtils.removeFromCache("http://example.com/cached.png", discCache));
+		discCache.get("http://example.com/cached.png");
+
+		CacheStats stats = discCache.getStats();
+		assertEquals(0, stats.getHitCount());
+		assertEquals(1, stats.getMissCount()); // index doesn't keep removed image
+	}
+}
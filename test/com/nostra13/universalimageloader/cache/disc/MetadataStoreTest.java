@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link MetadataStore}: records are flushed in background (in batches), removals survive reopening of store.
+ */
+public class MetadataStoreTest {
+
+	private static final String KEY_1 = "http://example.com/image1.jpg";
+	private static final String KEY_2 = "http://example.com/image2.jpg";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private final QueuedExecutor maintenanceExecutor = new QueuedExecutor();
+	private final MetadataStore.EntryChecker allCached = new MetadataStore.EntryChecker() {
+		@Override
+		public boolean isCached(String key) {
+			return true;
+		}
+	};
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), BaseDiscCache.METADATA_FILE_NAME);
+	}
+
+	@Test
+	public void recordsAreFlushedInBackgroundTogether() {
+		MetadataStore store = new MetadataStore(file, maintenanceExecutor, allCached);
+		store.put(KEY_1, metadata("\"a\""));
+		store.put(KEY_2, metadata("\"b\""));
+
+		assertEquals("Nothing is written on loading thread", 0, file.length());
+		assertEquals("One flush for both records", 1, maintenanceExecutor.tasks.size());
+
+		maintenanceExecutor.runAll();
+		MetadataStore reopened = new MetadataStore(file, maintenanceExecutor, allCached);
+		assertEquals("\"a\"", reopened.get(KEY_1).getETag());
+		assertEquals("\"b\"", reopened.get(KEY_2).getETag());
+	}
+
+	@Test
+	public void removalSurvivesReopening() {
+		MetadataStore store = new MetadataStore(file, maintenanceExecutor, allCached);
+		store.put(KEY_1, metadata("\"a\""));
+		store.put(KEY_2, metadata("\"b\""));
+		store.remove(KEY_1);
+		maintenanceExecutor.runAll();
+
+		MetadataStore reopened = new MetadataStore(file, maintenanceExecutor, allCached);
+		assertNull(reopened.get(KEY_1));
+		assertNotNull(reopened.get(KEY_2));
+		assertEquals(1, reopened.keys().size());
+	}
+
+	@Test
+	public void keyCanBePutAgainAfterRemoval() {
+		MetadataStore store = new MetadataStore(file, maintenanceExecutor, allCached);
+		store.put(KEY_1, metadata("\"a\""));
+		store.remove(KEY_1);
+		store.put(KEY_1, metadata("\"c\""));
+		maintenanceExecutor.runAll();
+
+		MetadataStore reopened = new MetadataStore(file, maintenanceExecutor, allCached);
+		assertEquals("\"c\"", reopened.get(KEY_1).getETag());
+	}
+
+	@Test
+	public void compactionKeepsRecordsAppendedMeanwhile() {
+		final MetadataStore[] storeHolder = new MetadataStore[1];
+		MetadataStore store = new MetadataStore(file, maintenanceExecutor, new MetadataStore.EntryChecker() {
+			@Override
+			public boolean isCached(String key) {
+				storeHolder[0].put(KEY_2, metadata("\"b\"")); // store isn't locked by compaction
+				return true;
+			}
+		});
+		storeHolder[0] = store;
+		for (int i = 0; i < 1000; i++) { // enough redundant records for compaction
+			store.put(KEY_1, metadata("\"" + i + "\""));
+		}
+		maintenanceExecutor.runAll();
+
+		MetadataStore reopened = new MetadataStore(file, maintenanceExecutor, allCached);
+		assertEquals("\"999\"", reopened.get(KEY_1).getETag());
+		assertEquals("\"b\"", reopened.get(KEY_2).getETag());
+		assertTrue("File is compacted", file.length() < 1000);
+	}
+
+	private static EntryMetadata metadata(String eTag) {
+		return new EntryMetadata.Builder().eTag(eTag).build();
+	}
+
+	/** Keeps submitted tasks until they are run by test */
+	private static class QueuedExecutor implements Executor {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			while (!tasks.isEmpty()) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+}
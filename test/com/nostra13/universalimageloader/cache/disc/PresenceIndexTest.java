@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link PresenceIndex} persistence: clean saved filter is loaded as is, filter which misses added names (app
+ * was killed before saving) is rebuilt from list of cached files, additions are saved in batches.
+ */
+public class PresenceIndexTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/** Every addition is saved unless test creates index with batching */
+	private static final int NO_BATCHING = 1;
+	private static final long NO_INTERVAL = Long.MAX_VALUE;
+
+	private File file;
+	private final QueuedExecutor maintenanceExecutor = new QueuedExecutor();
+	private final CountingLister lister = new CountingLister();
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), BaseDiscCache.PRESENCE_FILE_NAME);
+	}
+
+	@Test
+	public void cleanFilterIsLoadedWithoutRebuilding() {
+		PresenceIndex index = newIndex(NO_BATCHING);
+		maintenanceExecutor.runAll();
+		index.add("a");
+		maintenanceExecutor.runAll();
+		lister.listCount = 0;
+
+		PresenceIndex reopened = newIndex(NO_BATCHING);
+		maintenanceExecutor.runAll();
+
+		assertEquals(0, lister.listCount);
+		assertTrue(reopened.mightContain("a"));
+		assertFalse(reopened.mightContain("b"));
+	}
+
+	@Test
+	public void filterIsRebuiltIfNamesWereAddedAfterSaving() {
+		PresenceIndex index = newIndex(NO_BATCHING);
+		maintenanceExecutor.runAll();
+		index.add("a");
+		maintenanceExecutor.runAll();
+		index.add("b");
+		maintenanceExecutor.runNext(); // file is marked dirty, app is killed before filter is saved
+		maintenanceExecutor.tasks.clear();
+		lister.names = Arrays.asList("a", "b");
+		lister.listCount = 0;
+
+		PresenceIndex reopened = newIndex(NO_BATCHING);
+		maintenanceExecutor.runAll();
+
+		assertEquals(1, lister.listCount);
+		assertTrue(reopened.mightContain("a"));
+		assertTrue(reopened.mightContain("b"));
+	}
+
+	@Test
+	public void loadedFilterIsRebuiltIfItWasNotSavedAgain() {
+		PresenceIndex index = newIndex(NO_BATCHING);
+		maintenanceExecutor.runAll();
+		index.add("a");
+		maintenanceExecutor.runAll();
+
+		newIndex(NO_BATCHING);
+		maintenanceExecutor.runNext(); // filter is loaded, app is killed before it's saved
+		maintenanceExecutor.tasks.clear();
+		lister.names = Collections.singletonList("a");
+		lister.listCount = 0;
+
+		PresenceIndex reopened = newIndex(NO_BATCHING);
+		maintenanceExecutor.runAll();
+
+		assertEquals(1, lister.listCount);
+		assertTrue(reopened.mightContain("a"));
+	}
+
+	@Test
+	public void additionsAreSavedInBatches() {
+		PresenceIndex index = newIndex(3);
+		maintenanceExecutor.runAll();
+		index.add("a");
+		index.add("b");
+		maintenanceExecutor.runAll(); // file is marked dirty only
+		lister.names = Arrays.asList("a", "b");
+		lister.listCount = 0;
+
+		newIndex(3);
+		maintenanceExecutor.runAll();
+		assertEquals("Filter which misses additions must be rebuilt", 1, lister.listCount);
+
+		PresenceIndex reopened = newIndex(3);
+		maintenanceExecutor.runAll(); // rebuilt filter is loaded
+		reopened.add("c");
+		reopened.add("d");
+		reopened.add("e");
+		maintenanceExecutor.runAll(); // batch is saved
+		lister.listCount = 0;
+
+		PresenceIndex saved = newIndex(3);
+		maintenanceExecutor.runAll();
+		assertEquals(0, lister.listCount);
+		assertTrue(saved.mightContain("e"));
+	}
+
+	private PresenceIndex newIndex(int saveBatchSize) {
+		return new PresenceIndex(file, maintenanceExecutor, lister, saveBatchSize, NO_INTERVAL);
+	}
+
+	private static class CountingLister implements PresenceIndex.NameLister {
+		Collection<String> names = Collections.emptyList();
+		int listCount;
+
+		@Override
+		public Collection<String> listNames() {
+			listCount++;
+			return names;
+		}
+	}
+
+	/** Keeps submitted tasks until they are run by test */
+	private static class QueuedExecutor implements Executor {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runNext() {
+			tasks.remove(0).run();
+		}
+
+		void runAll() {
+			while (!tasks.isEmpty()) {
+				runNext();
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.CacheStatsAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the same access traces on {@link TinyLfuMemoryCache} and {@link LruMemoryCache} and compares their hit
+ * rates. Every access is a {@code get()} followed by {@code put()} on miss, as image loading does. Traces are generated
+ * with fixed seed, so results are deterministic.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MemoryCacheTraceReplayTest {
+
+	private static final int BITMAP_SIDE = 10;
+	private static final int CACHE_ENTRIES = 50;
+	private static final int POPULAR_IMAGES = 100;
+	private static final int SCREENS = 2000;
+	private static final int MAX_SCROLL_STEP = 10;
+	private static final long SEED = 42;
+
+	/** Screens show a few popular images (avatars, icons) and many one-off images of fling */
+	@Test
+	public void tinyLfuResistsFling() {
+		List<String> trace = flingTrace(4, 6);
+		double lfuHitRate = replay(new TinyLfuMemoryCache(cacheSize()), trace);
+		double lruHitRate = replay(new LruMemoryCache(cacheSize()), trace);
+		String results = "Hit rate: TinyLFU " + lfuHitRate + ", LRU " + lruHitRate;
+
+		assertTrue(results, lfuHitRate > lruHitRate);
+	}
+
+	/** List is scrolled slowly back and forth, so recently shown images are shown again */
+	@Test
+	public void tinyLfuKeepsRecentImages() {
+		List<String> trace = scrollTrace();
+		double lfuHitRate = replay(new TinyLfuMemoryCache(cacheSize()), trace);
+		double lruHitRate = replay(new LruMemoryCache(cacheSize()), trace);
+		String results = "Hit rate: TinyLFU " + lfuHitRate + ", LRU " + lruHitRate;
+
+		assertTrue(results, lfuHitRate > lruHitRate * 0.9);
+	}
+
+	private static <C extends MemoryCacheAware<String, Bitmap> & CacheStatsAware> double replay(C cache,
+			List<String> trace) {
+		for (String key : trace) {
+			if (cache.get(key) == null) {
+				cache.put(key, Bitmap.createBitmap(BITMAP_SIDE, BITMAP_SIDE, Bitmap.Config.ARGB_8888));
+			}
+		}
+		return cache.getStats().getHitRate();
+	}
+
+	private static int cacheSize() {
+		Bitmap bitmap = Bitmap.createBitmap(BITMAP_SIDE, BITMAP_SIDE, Bitmap.Config.ARGB_8888);
+		return bitmap.getRowBytes() * bitmap.getHeight() * CACHE_ENTRIES;
+	}
+
+	/** Popular images are chosen by Zipf distribution, one-off images are never shown again */
+	private static List<String> flingTrace(int popularPerScreen, int oneOffPerScreen) {
+		double[] cumulativeWeights = new double[POPULAR_IMAGES];
+		double sum = 0;
+		for (int i = 0; i < POPULAR_IMAGES; i++) {
+			sum += 1.0 / (i + 1);
+			cumulativeWeights[i] = sum;
+		}
+
+		Random random = new Random(SEED);
+		List<String> trace = new ArrayList<String>();
+		for (int screen = 0; screen < SCREENS; screen++) {
+			for (int i = 0; i < popularPerScreen; i++) {
+				double point = random.nextDouble() * sum;
+				int rank = 0;
+				while (cumulativeWeights[rank] < point) rank++;
+				trace.add("http://example.com/popular/" + rank);
+			}
+			for (int i = 0; i < oneOffPerScreen; i++) {
+				trace.add("http://example.com/fling/" + screen + "/" + i);
+			}
+		}
+		return trace;
+	}
+
+	/** Visible rows are moved by up to {@value #MAX_SCROLL_STEP} rows in random direction */
+	private static List<String> scrollTrace() {
+		int rows = CACHE_ENTRIES * 4;
+		int visibleRows = CACHE_ENTRIES / 2;
+		Random random = new Random(SEED);
+		List<String> trace = new ArrayList<String>();
+		int firstRow = 0;
+		for (int screen = 0; screen < SCREENS; screen++) {
+			firstRow += random.nextInt(MAX_SCROLL_STEP * 2 + 1) - MAX_SCROLL_STEP;
+			firstRow = Math.max(0, Math.min(rows - visibleRows, firstRow));
+			for (int row = firstRow; row < firstRow + visibleRows; row++) {
+				trace.add("http://example.com/row/" + row);
+			}
+		}
+		return trace;
+	}
+}
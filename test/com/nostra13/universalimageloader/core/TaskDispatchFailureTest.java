@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import android.graphics.Bitmap;
+import android.view.View;
+import com.nostra13.universalimageloader.core.assist.FailReason;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import com.nostra13.universalimageloader.core.decode.ImageDecoder;
+import com.nostra13.universalimageloader.core.decode.ImageDecodingInfo;
+import com.nostra13.universalimageloader.core.download.ImageDownloader;
+import com.nostra13.universalimageloader.core.imageaware.ImageNonViewAware;
+import com.nostra13.universalimageloader.core.listener.SimpleImageLoadingListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that task which executor rejects fails together with tasks which wait for its loading, and that next request
+ * of the same image isn't attached to loading which never started. Also tests that stopping of engine notifies tasks
+ * which wait for other task's loading and stops dispatcher thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskDispatchFailureTest {
+
+	private static final String URI = "http://example.com/image.png";
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private final ImageLoader imageLoader = ImageLoader.getInstance();
+	private final RejectingExecutor executor = new RejectingExecutor();
+	private final DisplayImageOptions options = new DisplayImageOptions.Builder().build();
+
+	@Before
+	public void setUp() {
+		imageLoader.init(new ImageLoaderConfiguration.Builder(RuntimeEnvironment.application)
+				.taskExecutor(executor)
+				.taskExecutorForCachedImages(executor)
+				.imageDownloader(new ImageDownloader() {
+					@Override
+					public InputStream getStream(String imageUri, Object extra) {
+						return new ByteArrayInputStream(new byte[]{1});
+					}
+				})
+				.imageDecoder(new ImageDecoder() {
+					@Override
+					public Bitmap decode(ImageDecodingInfo imageDecodingInfo) {
+						return Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+					}
+				})
+				.build());
+	}
+
+	@After
+	public void tearDown() {
+		imageLoader.destroy();
+		executor.delegate.shutdownNow();
+	}
+
+	@Test
+	public void rejectedTaskFailsWithAttachedTasks() throws InterruptedException {
+		final RecordingListener listener = new RecordingListener(2);
+		runOnWorkerThread(new Runnable() {
+			@Override
+			public void run() {
+				imageLoader.displayImage(URI, newImageAware(), options, listener);
+				imageLoader.displayImage(URI, newImageAware(), options, listener);
+			}
+		});
+
+		assertTrue("Tasks must fail instead of waiting forever", listener.await());
+		assertEquals(2, listener.failReasons.size());
+		for (FailReason failReason : listener.failReasons) {
+			assertEquals(FailReason.FailType.UNKNOWN, failReason.getType());
+			assertTrue(failReason.getCause() instanceof RejectedExecutionException);
+		}
+
+		executor.rejecting = false;
+		final RecordingListener nextListener = new RecordingListener(1);
+		runOnWorkerThread(new Runnable() {
+			@Override
+			public void run() {
+				imageLoader.displayImage(URI, newImageAware(), options, nextListener);
+			}
+		});
+
+		assertTrue("Image must be loaded by new task", nextListener.await());
+		assertEquals(1, nextListener.completedCount);
+	}
+
+	@Test
+	public void stopCancelsAttachedTasksAndDispatcherThread() throws InterruptedException {
+		executor.rejecting = false;
+		executor.holding = true; // owner task stays queued, so the second task is attached to its loading
+		final RecordingListener listener = new RecordingListener(1);
+		runOnWorkerThread(new Runnable() {
+			@Override
+			public void run() {
+				imageLoader.displayImage(URI, newImageAware(), options, new SimpleImageLoadingListener());
+				imageLoader.displayImage(URI, newImageAware(), options, listener);
+			}
+		});
+		assertTrue("Owner task must be dispatched", executor.awaitHeld());
+
+		imageLoader.stop();
+
+		assertTrue("Attached task must be cancelled", listener.await());
+		assertEquals(1, listener.cancelledCount);
+		assertFalse("Dispatcher thread must stop", awaitDispatcherThreadStopped());
+	}
+
+	private static boolean awaitDispatcherThreadStopped() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+		while (System.currentTimeMillis() < deadline) {
+			if (!isDispatcherThreadAlive()) return false;
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	private static boolean isDispatcherThreadAlive() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("uil-dispatcher") && thread.isAlive()) return true;
+		}
+		return false;
+	}
+
+	private static ImageNonViewAware newImageAware() {
+		return new ImageNonViewAware(new ImageSize(1, 1), ViewScaleType.CROP);
+	}
+
+	/** Requests are made off main thread, so listener callbacks are run on callback thread of ImageLoader */
+	private static void runOnWorkerThread(Runnable r) throws InterruptedException {
+		Thread thread = new Thread(r);
+		thread.start();
+		thread.join();
+	}
+
+	/** Rejects all tasks while {@link #rejecting} is set, keeps them without running while {@link #holding} is set */
+	private static class RejectingExecutor implements Executor {
+		final ExecutorService delegate = Executors.newSingleThreadExecutor();
+		final CountDownLatch heldLatch = new CountDownLatch(1);
+		volatile boolean rejecting = true;
+		volatile boolean holding;
+
+		@Override
+		public void execute(Runnable command) {
+			if (rejecting) {
+				throw new RejectedExecutionException();
+			}
+			if (holding) {
+				heldLatch.countDown();
+				return;
+			}
+			delegate.execute(command);
+		}
+
+		boolean awaitHeld() throws InterruptedException {
+			return heldLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+
+	private static class RecordingListener extends SimpleImageLoadingListener {
+		final List<FailReason> failReasons = new CopyOnWriteArrayList<FailReason>();
+		volatile int completedCount;
+		volatile int cancelledCount;
+		private final CountDownLatch latch;
+
+		RecordingListener(int expectedCallbacks) {
+			latch = new CountDownLatch(expectedCallbacks);
+		}
+
+		@Override
+		public void onLoadingFailed(String imageUri, View view, FailReason failReason) {
+			failReasons.add(failReason);
+			latch.countDown();
+		}
+
+		@Override
+		public void onLoadingComplete(String imageUri, View view, Bitmap loadedImage) {
+			completedCount++;
+			latch.countDown();
+		}
+
+		@Override
+		public void onLoadingCancelled(String imageUri, View view) {
+			cancelledCount++;
+			latch.countDown();
+		}
+
+		boolean await() throws InterruptedException {
+			return latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+}
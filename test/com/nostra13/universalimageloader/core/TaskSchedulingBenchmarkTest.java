@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scroll benchmark of {@linkplain QueueProcessingType task processing types}. List is scrolled down, then back up
+ * and stopped; benchmark measures time from stop until the first (and the last) image of the screen is displayed.
+ * Times are summed over scenarios with different load time, scroll speed and length of scroll back.<br />
+ * <br />
+ * Time is simulated in ticks, so results are deterministic. Task queues are created by
+ * {@link DefaultConfigurationFactory#createExecutor(int, int, QueueProcessingType)}, new priorities of tasks are
+ * computed and tasks are moved in queue by the same code which {@link ImageLoaderEngine} uses
+ * ({@link ImageLoaderEngine#getNewPriority(PrioritizedTask, PrioritizedTask)},
+ * {@link ImageLoaderEngine#requeue(java.util.concurrent.BlockingQueue, PrioritizedTask, int)}).<br />
+ * <br />
+ * <b>NOTE:</b> Engine itself isn't run (it needs Android runtime and dispatches on its own thread), so rules of
+ * attaching, demotion and cancellation are a model of engine's rules which is kept in this test: view which binds
+ * image that is loading is attached to that loading (and promotes it in priority queue), view which is rebound demotes
+ * its loading if nobody else waits for it; task of reused view is cancelled at once if nobody waits for it, otherwise
+ * it loads image. Changes of these rules in engine must be repeated here.
+ */
+public class TaskSchedulingBenchmarkTest {
+
+	private static final int THREADS = ImageLoaderConfiguration.Builder.DEFAULT_THREAD_POOL_SIZE;
+	private static final int VISIBLE_ROWS = 8;
+	private static final int ROWS = 200;
+	private static final int ROWS_SCROLLED_DOWN = 80;
+	/** Ticks of image loading (download and decoding) */
+	private static final int[] LOAD_TICKS = {10, 20, 30};
+	/** List is scrolled by one row per this count of ticks */
+	private static final int[] SCROLL_TICKS = {1, 2};
+	private static final int[] ROWS_SCROLLED_UP = {16, 40};
+	private static final int MAX_TICKS = 10000;
+
+	@Test
+	public void priorityQueueShowsVisibleImagesSooner() {
+		Result fifo = runScenarios(QueueProcessingType.FIFO);
+		Result lifo = runScenarios(QueueProcessingType.LIFO);
+		Result priority = runScenarios(QueueProcessingType.PRIORITY);
+		String results = "Ticks from scroll stop to first / last visible image: FIFO " + fifo + ", LIFO " + lifo
+				+ ", PRIORITY " + priority;
+
+		assertTrue(results, priority.firstVisibleTicks < lifo.firstVisibleTicks);
+		assertTrue(results, priority.firstVisibleTicks < fifo.firstVisibleTicks);
+		assertTrue(results, priority.allVisibleTicks < lifo.allVisibleTicks);
+		assertTrue(results, priority.allVisibleTicks < fifo.allVisibleTicks);
+	}
+
+	private static Result runScenarios(QueueProcessingType type) {
+		Result total = new Result(0, 0);
+		for (int loadTicks : LOAD_TICKS) {
+			for (int scrollTicks : SCROLL_TICKS) {
+				for (int rowsScrolledUp : ROWS_SCROLLED_UP) {
+					total = total.plus(new Scroll(type, loadTicks, scrollTicks, rowsScrolledUp).run());
+				}
+			}
+		}
+		return total;
+	}
+
+	private static final class Result {
+		final int firstVisibleTicks;
+		final int allVisibleTicks;
+
+		Result(int firstVisibleTicks, int allVisibleTicks) {
+			this.firstVisibleTicks = firstVisibleTicks;
+			this.allVisibleTicks = allVisibleTicks;
+		}
+
+		Result plus(Result other) {
+			return new Result(firstVisibleTicks + other.firstVisibleTicks, allVisibleTicks + other.allVisibleTicks);
+		}
+
+		@Override
+		public String toString() {
+			return firstVisibleTicks + " / " + allVisibleTicks;
+		}
+	}
+
+	/** Loading of image of row. Is owned by task of the first view which bound the row. */
+	private static final class RowTask extends PrioritizedTask {
+		final int row;
+		final int view;
+		int attachedCount;
+
+		RowTask(int row, int view) {
+			super(0);
+			this.row = row;
+			this.view = view;
+		}
+
+		@Override
+		public void run() {
+		}
+	}
+
+	private static final class Scroll {
+		private final ThreadPoolExecutor executor;
+		private final BlockingQueue<Runnable> queue;
+		private final boolean priorityScheduling;
+		private final int loadTicks;
+		private final int scrollTicks;
+		private final int rowsScrolledUp;
+
+		/** Views are recycled like in list view: row is shown by view [row % VISIBLE_ROWS] */
+		private final int[] rowsOfViews = new int[VISIBLE_ROWS];
+		private final RowTask[] inFlightTasks = new RowTask[ROWS];
+		private final boolean[] loaded = new boolean[ROWS];
+		private final RowTask[] runningTasks = new RowTask[THREADS];
+		private final int[] ticksLeft = new int[THREADS];
+		private int firstRow;
+		private int tick;
+
+		Scroll(QueueProcessingType type, int loadTicks, int scrollTicks, int rowsScrolledUp) {
+			executor = (ThreadPoolExecutor) DefaultConfigurationFactory.createExecutor(THREADS, Thread.NORM_PRIORITY,
+					type);
+			queue = executor.getQueue(); // tasks are offered into queue directly, executor threads aren't started
+			priorityScheduling = type == QueueProcessingType.PRIORITY;
+			this.loadTicks = loadTicks;
+			this.scrollTicks = scrollTicks;
+			this.rowsScrolledUp = rowsScrolledUp;
+			Arrays.fill(rowsOfViews, -1);
+		}
+
+		Result run() {
+			try {
+				for (int row = 0; row < VISIBLE_ROWS; row++) {
+					bind(row);
+				}
+				for (int i = 0; i < ROWS_SCROLLED_DOWN; i++) {
+					runTicks(scrollTicks);
+					firstRow++;
+					bind(firstRow + VISIBLE_ROWS - 1);
+				}
+				for (int i = 0; i < rowsScrolledUp; i++) {
+					runTicks(scrollTicks);
+					firstRow--;
+					bind(firstRow);
+				}
+
+				int stopTick = tick;
+				int firstVisibleTick = -1;
+				while (tick < MAX_TICKS) {
+					int visibleLoaded = 0;
+					for (int row = firstRow; row < firstRow + VISIBLE_ROWS; row++) {
+						if (loaded[row]) visibleLoaded++;
+					}
+					if (visibleLoaded > 0 && firstVisibleTick < 0) firstVisibleTick = tick;
+					if (visibleLoaded == VISIBLE_ROWS) break;
+					runTicks(1);
+				}
+				return new Result(firstVisibleTick - stopTick, tick - stopTick);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		/** Binds row to its view like {@code ImageLoader.displayImage(...)} does */
+		private void bind(int row) {
+			int view = row % VISIBLE_ROWS;
+			int previousRow = rowsOfViews[view];
+			rowsOfViews[view] = row;
+			if (previousRow >= 0 && previousRow != row && priorityScheduling) {
+				RowTask previousTask = inFlightTasks[previousRow];
+				if (previousTask != null && previousTask.attachedCount == 0 && previousTask.view == view) {
+					ImageLoaderEngine.requeue(queue, previousTask, ImageLoaderEngine.getNewPriority(previousTask, null));
+				}
+			}
+
+			if (loaded[row]) return; // from memory cache
+			RowTask task = inFlightTasks[row];
+			if (task != null) {
+				task.attachedCount++;
+				if (priorityScheduling) {
+					RowTask bindingTask = new RowTask(row, view); // binding request has default priority
+					ImageLoaderEngine.requeue(queue, task, ImageLoaderEngine.getNewPriority(task, bindingTask));
+				}
+			} else {
+				task = new RowTask(row, view);
+				inFlightTasks[row] = task;
+				queue.offer(task);
+			}
+		}
+
+		/** Runs loading threads for passed count of ticks */
+		private void runTicks(int ticks) {
+			for (int i = 0; i < ticks; i++) {
+				tick++;
+				for (int t = 0; t < THREADS; t++) {
+					runThread(t);
+				}
+			}
+		}
+
+		private void runThread(int t) {
+			ticksLeft[t] = Math.max(ticksLeft[t] - 1, 0);
+			if (ticksLeft[t] == 0 && runningTasks[t] != null) {
+				loaded[runningTasks[t].row] = true;
+				inFlightTasks[runningTasks[t].row] = null;
+				runningTasks[t] = null;
+			}
+			while (runningTasks[t] == null) {
+				RowTask task = (RowTask) queue.poll();
+				if (task == null) break;
+				if (rowsOfViews[task.view] != task.row && task.attachedCount == 0) {
+					inFlightTasks[task.row] = null; // view is reused: task is cancelled without loading
+				} else {
+					runningTasks[t] = task;
+					ticksLeft[t] = loadTicks;
+				}
+			}
+		}
+	}
+}
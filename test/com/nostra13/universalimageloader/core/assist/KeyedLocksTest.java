@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link KeyedLocks}. Loading of image is simulated the way {@code LoadAndDisplayImageTask} does it: memory
+ * cache is checked under lock of URI and image is "downloaded" only if it isn't cached.
+ */
+public class KeyedLocksTest {
+
+	private static final int THREADS = 16;
+	private static final int BINDINGS_PER_URI = 50;
+	private static final int URIS = 8;
+	private static final long TIMEOUT_SECONDS = 10;
+
+	@Test
+	public void imageIsDownloadedOncePerUriUnderConcurrentBinding() throws Exception {
+		final KeyedLocks<String> locks = new KeyedLocks<String>();
+		final Set<String> memoryCache = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final ConcurrentHashMap<String, AtomicInteger> downloads = new ConcurrentHashMap<String, AtomicInteger>();
+		for (int i = 0; i < URIS; i++) {
+			downloads.put(uri(i), new AtomicInteger());
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		final CountDownLatch start = new CountDownLatch(1);
+		Set<Future<?>> futures = new HashSet<Future<?>>();
+		for (int n = 0; n < BINDINGS_PER_URI; n++) {
+			for (int i = 0; i < URIS; i++) {
+				final String uri = uri(i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						locks.lock(uri);
+						try {
+							if (!memoryCache.contains(uri)) {
+								downloads.get(uri).incrementAndGet();
+								Thread.sleep(5); // download and decoding
+								memoryCache.add(uri);
+							}
+						} finally {
+							locks.unlock(uri);
+						}
+						return null;
+					}
+				}));
+			}
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		for (int i = 0; i < URIS; i++) {
+			assertEquals("Downloads of " + uri(i), 1, downloads.get(uri(i)).get());
+		}
+		assertEquals("Locks of released keys must be removed", 0, locks.size());
+	}
+
+	@Test
+	public void loadingOfOtherUriIsNotBlocked() throws Exception {
+		final KeyedLocks<String> locks = new KeyedLocks<String>();
+		locks.lock(uri(0)); // long loading of image
+		try {
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			Future<Boolean> otherLoading = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					locks.lock(uri(1));
+					try {
+						return locks.isLocked(uri(1));
+					} finally {
+						locks.unlock(uri(1));
+					}
+				}
+			});
+			assertTrue(otherLoading.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			executor.shutdown();
+			assertTrue(locks.isLocked(uri(0)));
+		} finally {
+			locks.unlock(uri(0));
+		}
+		assertFalse(locks.isLocked(uri(0)));
+		assertEquals(0, locks.size());
+	}
+
+	@Test(expected = IllegalMonitorStateException.class)
+	public void unlockOfNotHeldLockFails() {
+		new KeyedLocks<String>().unlock(uri(0));
+	}
+
+	private static String uri(int i) {
+		return "http://example.com/image" + i + ".jpg";
+	}
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2014 Android-Universal-Image-Loader contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.disc.EntryMetadata;
+import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
+import com.nostra13.universalimageloader.core.DisplayImageOptions;
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
+import com.nostra13.universalimageloader.core.decode.ImageDecoder;
+import com.nostra13.universalimageloader.core.decode.ImageDecodingInfo;
+import com.nostra13.universalimageloader.utils.IoUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of revalidation of cached images against local HTTP server: image is downloaded with its validators, stale
+ * image is revalidated by conditional request ("304 Not Modified" keeps cached file, "200 OK" replaces it), stale image
+ * without validators isn't requested again.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ConditionalRevalidationTest {
+
+	private static final String ETAG_1 = "\"v1\"";
+	private static final String ETAG_2 = "\"v2\"";
+	private static final byte[] BODY_1 = {1, 2, 3, 4};
+	private static final byte[] BODY_2 = {5, 6, 7, 8, 9};
+
+	private HttpServer server;
+	private final ImageServer images = new ImageServer();
+	private UnlimitedDiscCache discCache;
+	private final ImageLoader imageLoader = ImageLoader.getInstance();
+	private final DisplayImageOptions options = new DisplayImageOptions.Builder().cacheOnDisc(true).build();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", images);
+		server.start();
+
+		discCache = new UnlimitedDiscCache(new File(RuntimeEnvironment.application.getCacheDir(), "images"));
+		imageLoader.init(new ImageLoaderConfiguration.Builder(RuntimeEnvironment.application)
+				.discCache(discCache)
+				.imageDecoder(new StreamReadingDecoder())
+				.build());
+	}
+
+	@After
+	public void tearDown() {
+		imageLoader.destroy();
+		server.stop(0);
+	}
+
+	@Test
+	public void downloadedImageKeepsValidators() throws IOException {
+		String uri = images.put("/image.png", BODY_1, ETAG_1, "max-age=0");
+
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+
+		assertEquals(Collections.singletonList((String) null), images.conditions);
+		assertEquals(1, images.fullResponses);
+		assertArrayEquals(BODY_1, readCachedFile(uri));
+		EntryMetadata metadata = discCache.getMetadata(uri);
+		assertEquals(ETAG_1, metadata.getETag());
+		assertEquals(0, metadata.getMaxAge());
+	}
+
+	@Test
+	public void notModifiedStaleImageIsNotDownloadedAgain() throws IOException {
+		String uri = images.put("/image.png", BODY_1, ETAG_1, "max-age=0");
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+		long firstResponseTime = discCache.getMetadata(uri).getResponseTime();
+
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+
+		assertEquals(2, images.conditions.size());
+		assertEquals(ETAG_1, images.conditions.get(1));
+		assertEquals("Body must be sent once, then \"304 Not Modified\"", 1, images.fullResponses);
+		assertArrayEquals(BODY_1, readCachedFile(uri));
+		EntryMetadata metadata = discCache.getMetadata(uri);
+		assertEquals(ETAG_1, metadata.getETag());
+		assertTrue(metadata.getResponseTime() >= firstResponseTime);
+	}
+
+	@Test
+	public void modifiedStaleImageReplacesCachedFile() throws IOException {
+		String uri = images.put("/image.png", BODY_1, ETAG_1, "max-age=0");
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+		images.put("/image.png", BODY_2, ETAG_2, "max-age=0");
+
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+
+		assertEquals(ETAG_1, images.conditions.get(1));
+		assertEquals(2, images.fullResponses);
+		assertArrayEquals(BODY_2, readCachedFile(uri));
+		assertEquals(ETAG_2, discCache.getMetadata(uri).getETag());
+	}
+
+	@Test
+	public void freshImageIsNotRevalidated() throws IOException {
+		String uri = images.put("/image.png", BODY_1, ETAG_1, "max-age=3600");
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+
+		assertEquals(1, images.conditions.size());
+	}
+
+	@Test
+	public void staleImageWithoutValidatorsIsNotRefetched() throws IOException {
+		String uri = images.put("/image.png", BODY_1, null, "no-cache");
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+		assertNull(discCache.getMetadata(uri).getETag());
+
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+		assertNotNull(imageLoader.loadImageSync(uri, options));
+
+		assertEquals("Image without validators must be taken from disc cache", 1, images.conditions.size());
+		assertArrayEquals(BODY_1, readCachedFile(uri));
+	}
+
+	private byte[] readCachedFile(String uri) throws IOException {
+		return readAll(new FileInputStream(discCache.get(uri)));
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[1024];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				os.write(buffer, 0, count);
+			}
+		} finally {
+			IoUtils.closeSilently(is);
+		}
+		return os.toByteArray();
+	}
+
+	/** Reads image stream through downloader (so disc cache file is read) and returns 1x1 bitmap */
+	private static class StreamReadingDecoder implements ImageDecoder {
+		@Override
+		public Bitmap decode(ImageDecodingInfo info) throws IOException {
+			readAll(info.getDownloader().getStream(info.getImageUri(), info.getExtraForDownloader()));
+			return Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+		}
+	}
+
+	/** Serves images with validators; answers "304 Not Modified" if {@code If-None-Match} matches current ETag */
+	private class ImageServer implements HttpHandler {
+		private final Map<String, Image> images = new HashMap<String, Image>();
+		/** Value of {@code If-None-Match} header of every request (<b>null</b> for unconditional request) */
+		final List<String> conditions = Collections.synchronizedList(new ArrayList<String>());
+		volatile int fullResponses;
+
+		synchronized String put(String path, byte[] body, String eTag, String cacheControl) {
+			images.put(path, new Image(body, eTag, cacheControl));
+			return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			Image image;
+			synchronized (this) {
+				image = images.get(exchange.getRequestURI().getPath());
+			}
+			String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+			conditions.add(condition);
+			if (image == null) {
+				exchange.sendResponseHeaders(404, -1);
+			} else {
+				if (image.eTag != null) {
+					exchange.getResponseHeaders().set("ETag", image.eTag);
+				}
+				exchange.getResponseHeaders().set("Cache-Control", image.cacheControl);
+				if (image.eTag != null && image.eTag.equals(condition)) {
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					fullResponses++;
+					exchange.sendResponseHeaders(200, image.body.length);
+					OutputStream os = exchange.getResponseBody();
+					os.write(image.body);
+					os.close();
+				}
+			}
+			exchange.close();
+		}
+	}
+
+	private static class Image {
+		final byte[] body;
+		final String eTag;
+		final String cacheControl;
+
+		Image(byte[] body, String eTag, String cacheControl) {
+			this.body = body;
+			this.eTag = eTag;
+			this.cacheControl = cacheControl;
+		}
+	}
+}